@@ -0,0 +1,98 @@
+/**
+ * 分析进度事件配置类
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-22 09:00:00
+ */
+package com.historyanalysis.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 分析进度事件配置类
+ * 配置进度事件的发布频率、最新进度快照的保留时间、SSE连接超时和跨实例的Redis发布订阅
+ */
+@Configuration
+@ConfigurationProperties(prefix = "analysis.events")
+public class AnalysisEventsConfig {
+
+    /**
+     * 同一分析两次非阶段变化进度事件之间的最小间隔（毫秒），阶段变化和结束事件不受限制
+     */
+    private long publishInterval = 200;
+
+    /**
+     * 最新进度快照在内存中的保留时间（秒），进度查询优先读取快照而不访问数据库
+     */
+    private long snapshotTtl = 600;
+
+    /**
+     * 最多保留的进度快照数
+     */
+    private long maxSnapshots = 10000;
+
+    /**
+     * SSE连接超时时间（毫秒）
+     */
+    private long sseTimeout = 1800000;
+
+    /**
+     * 是否通过Redis发布订阅在实例间转发进度事件，多实例部署时开启
+     */
+    private boolean redisEnabled = false;
+
+    /**
+     * Redis频道名
+     */
+    private String redisChannel = "analysis:progress";
+
+    // Getters and Setters
+    public long getPublishInterval() {
+        return publishInterval;
+    }
+
+    public void setPublishInterval(long publishInterval) {
+        this.publishInterval = publishInterval;
+    }
+
+    public long getSnapshotTtl() {
+        return snapshotTtl;
+    }
+
+    public void setSnapshotTtl(long snapshotTtl) {
+        this.snapshotTtl = snapshotTtl;
+    }
+
+    public long getMaxSnapshots() {
+        return maxSnapshots;
+    }
+
+    public void setMaxSnapshots(long maxSnapshots) {
+        this.maxSnapshots = maxSnapshots;
+    }
+
+    public long getSseTimeout() {
+        return sseTimeout;
+    }
+
+    public void setSseTimeout(long sseTimeout) {
+        this.sseTimeout = sseTimeout;
+    }
+
+    public boolean isRedisEnabled() {
+        return redisEnabled;
+    }
+
+    public void setRedisEnabled(boolean redisEnabled) {
+        this.redisEnabled = redisEnabled;
+    }
+
+    public String getRedisChannel() {
+        return redisChannel;
+    }
+
+    public void setRedisChannel(String redisChannel) {
+        this.redisChannel = redisChannel;
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * 分析任务持久化队列配置类
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-12 09:30:00
+ */
+package com.historyanalysis.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 分析任务持久化队列配置类
+ * 配置从数据库领取PENDING任务、租约续约和超时回收的参数
+ */
+@Configuration
+@ConfigurationProperties(prefix = "analysis.queue")
+public class AnalysisQueueConfig {
+
+    /**
+     * 是否从数据库轮询领取待处理任务
+     */
+    private boolean enabled = true;
+
+    /**
+     * 每次轮询最多领取的任务数
+     */
+    private int batchSize = 10;
+
+    /**
+     * 租约时长（毫秒）
+     */
+    private long leaseDuration = 60000;
+
+    /**
+     * 任务最多被领取执行的次数，超过后标记为失败
+     */
+    private int maxAttempts = 3;
+
+    /**
+     * 等待分析结束接口的默认等待时长（毫秒），超时后返回当前状态
+     */
+    private long waitTimeout = 30000;
+
+    /**
+     * 等待分析结束接口允许的最长等待时长（毫秒）
+     */
+    private long maxWaitTimeout = 300000;
+
+    // Getters and Setters
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public long getLeaseDuration() {
+        return leaseDuration;
+    }
+
+    public void setLeaseDuration(long leaseDuration) {
+        this.leaseDuration = leaseDuration;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    public long getWaitTimeout() {
+        return waitTimeout;
+    }
+
+    public void setWaitTimeout(long waitTimeout) {
+        this.waitTimeout = waitTimeout;
+    }
+
+    public long getMaxWaitTimeout() {
+        return maxWaitTimeout;
+    }
+
+    public void setMaxWaitTimeout(long maxWaitTimeout) {
+        this.maxWaitTimeout = maxWaitTimeout;
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * 分析文本流式处理配置类
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-17 09:00:00
+ */
+package com.historyanalysis.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 分析文本流式处理配置类
+ * 分析任务逐个读取文件文本并切分为块，逐块调用NLP服务后合并结果，内存占用与文件数量无关
+ */
+@Configuration
+@ConfigurationProperties(prefix = "analysis.streaming")
+public class AnalysisStreamingConfig {
+
+    /**
+     * 每块文本的最大字符数，默认与NLP微批处理的max-text-length一致，使分块可以参与批处理
+     */
+    private int chunkSize = 20000;
+
+    /**
+     * 同一分析同时调用NLP服务的分块数，1表示逐块串行处理
+     */
+    private int parallelism = 4;
+
+    /**
+     * 词频分析时每块请求的高频词数量，大于最终返回数量以减小分块合并带来的误差
+     */
+    private int chunkTopN = 200;
+
+    /**
+     * 合并过程中最多跟踪的词汇数，超出时淘汰低频词
+     */
+    private int maxTrackedWords = 5000;
+
+    /**
+     * 合并后每个结果列表（如时间轴事件、地点）保留的最大条目数
+     */
+    private int maxListItems = 2000;
+
+    /**
+     * 是否合并同时进行的相同分析（相同文件内容、分析种类和参数），只调用一次NLP服务
+     */
+    private boolean singleFlight = true;
+
+    // Getters and Setters
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public int getChunkTopN() {
+        return chunkTopN;
+    }
+
+    public void setChunkTopN(int chunkTopN) {
+        this.chunkTopN = chunkTopN;
+    }
+
+    public int getMaxTrackedWords() {
+        return maxTrackedWords;
+    }
+
+    public void setMaxTrackedWords(int maxTrackedWords) {
+        this.maxTrackedWords = maxTrackedWords;
+    }
+
+    public int getMaxListItems() {
+        return maxListItems;
+    }
+
+    public void setMaxListItems(int maxListItems) {
+        this.maxListItems = maxListItems;
+    }
+
+    public boolean isSingleFlight() {
+        return singleFlight;
+    }
+
+    public void setSingleFlight(boolean singleFlight) {
+        this.singleFlight = singleFlight;
+    }
+}
@@ -0,0 +1,240 @@
+/**
+ * 分析任务执行配置类
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-10 10:00:00
+ */
+package com.historyanalysis.config;
+
+import com.historyanalysis.entity.AnalysisResult;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 分析任务执行配置类
+ * 配置分析任务执行引擎的执行模式、线程数、队列容量、各分析类型的并发上限和排队调度策略
+ */
+@Configuration
+@ConfigurationProperties(prefix = "analysis.task")
+public class AnalysisTaskConfig {
+
+    /**
+     * 执行模式：PLATFORM使用固定平台线程池，VIRTUAL为每个任务创建虚拟线程
+     */
+    private ExecutionMode executionMode = ExecutionMode.PLATFORM;
+
+    /**
+     * 工作线程数（PLATFORM模式下同时执行的分析任务总数上限）
+     */
+    private int poolSize = 10;
+
+    /**
+     * VIRTUAL模式下同时执行的分析任务总数上限
+     */
+    private int virtualMaxConcurrency = 1000;
+
+    /**
+     * 等待队列容量，超过后新任务被拒绝
+     */
+    private int queueCapacity = 100;
+
+    /**
+     * 分析任务超时时间（毫秒）
+     */
+    private long timeout = 300000;
+
+    /**
+     * 队列已满时等待入队的最长时间（毫秒），0表示立即拒绝
+     */
+    private long admissionTimeout = 0;
+
+    /**
+     * 保存分析结果的写事务超时时间（秒），NLP调用不在事务内，写事务只包含结果入库
+     */
+    private int writeTransactionTimeout = 60;
+
+    /**
+     * 各分析类型的并发上限，未配置的类型以总并发上限为准
+     */
+    private Map<String, Integer> typeLimits = new HashMap<>();
+
+    /**
+     * 排队调度配置
+     */
+    private Scheduling scheduling = new Scheduling();
+
+    /**
+     * 执行模式枚举
+     */
+    public enum ExecutionMode {
+        PLATFORM,
+        VIRTUAL
+    }
+
+    /**
+     * 获取当前执行模式下同时执行的分析任务总数上限
+     */
+    public int getMaxConcurrency() {
+        return executionMode == ExecutionMode.VIRTUAL ? virtualMaxConcurrency : poolSize;
+    }
+
+    /**
+     * 获取指定分析类型的并发上限
+     */
+    public int getTypeLimit(AnalysisResult.AnalysisType analysisType) {
+        Integer limit = typeLimits.get(analysisType.name());
+        if (limit == null || limit <= 0) {
+            return getMaxConcurrency();
+        }
+        return Math.min(limit, getMaxConcurrency());
+    }
+
+    /**
+     * 获取全部分析类型的并发上限
+     */
+    public Map<AnalysisResult.AnalysisType, Integer> resolveTypeLimits() {
+        Map<AnalysisResult.AnalysisType, Integer> limits = new EnumMap<>(AnalysisResult.AnalysisType.class);
+        for (AnalysisResult.AnalysisType type : AnalysisResult.AnalysisType.values()) {
+            limits.put(type, getTypeLimit(type));
+        }
+        return limits;
+    }
+
+    // Getters and Setters
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    public void setExecutionMode(ExecutionMode executionMode) {
+        this.executionMode = executionMode;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public void setPoolSize(int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    public int getVirtualMaxConcurrency() {
+        return virtualMaxConcurrency;
+    }
+
+    public void setVirtualMaxConcurrency(int virtualMaxConcurrency) {
+        this.virtualMaxConcurrency = virtualMaxConcurrency;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    public long getAdmissionTimeout() {
+        return admissionTimeout;
+    }
+
+    public void setAdmissionTimeout(long admissionTimeout) {
+        this.admissionTimeout = admissionTimeout;
+    }
+
+    public int getWriteTransactionTimeout() {
+        return writeTransactionTimeout;
+    }
+
+    public void setWriteTransactionTimeout(int writeTransactionTimeout) {
+        this.writeTransactionTimeout = writeTransactionTimeout;
+    }
+
+    public Map<String, Integer> getTypeLimits() {
+        return typeLimits;
+    }
+
+    public void setTypeLimits(Map<String, Integer> typeLimits) {
+        this.typeLimits = typeLimits;
+    }
+
+    public Scheduling getScheduling() {
+        return scheduling;
+    }
+
+    public void setScheduling(Scheduling scheduling) {
+        this.scheduling = scheduling;
+    }
+
+    /**
+     * 排队调度配置
+     * 排队任务按输入文件总大小分为交互和批量两个车道，车道之间加权轮转；
+     * 同一车道内按用户做差额轮转（DRR），每个用户每轮获得相同的额度，任务按输入大小消耗额度，
+     * 同一用户的多个项目之间轮流出队
+     */
+    public static class Scheduling {
+
+        /**
+         * 输入文件总大小不超过该值（字节）的任务进入交互车道
+         */
+        private long interactiveMaxBytes = 1024 * 1024;
+
+        /**
+         * 交互车道的轮转权重，两个车道都有任务时每轮最多连续调度的交互任务数
+         */
+        private int interactiveWeight = 4;
+
+        /**
+         * 批量车道的轮转权重
+         */
+        private int bulkWeight = 1;
+
+        /**
+         * 差额轮转的额度单位（字节），任务消耗的额度为输入大小除以该值向上取整，至少为1
+         */
+        private long quantumBytes = 1024 * 1024;
+
+        public long getInteractiveMaxBytes() {
+            return interactiveMaxBytes;
+        }
+
+        public void setInteractiveMaxBytes(long interactiveMaxBytes) {
+            this.interactiveMaxBytes = interactiveMaxBytes;
+        }
+
+        public int getInteractiveWeight() {
+            return interactiveWeight;
+        }
+
+        public void setInteractiveWeight(int interactiveWeight) {
+            this.interactiveWeight = interactiveWeight;
+        }
+
+        public int getBulkWeight() {
+            return bulkWeight;
+        }
+
+        public void setBulkWeight(int bulkWeight) {
+            this.bulkWeight = bulkWeight;
+        }
+
+        public long getQuantumBytes() {
+            return quantumBytes;
+        }
+
+        public void setQuantumBytes(long quantumBytes) {
+            this.quantumBytes = quantumBytes;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * 文件文本提取配置类
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-30 09:00:00
+ */
+package com.historyanalysis.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 文件文本提取配置类
+ * 上传请求只负责把文件写入磁盘，文本提取（Tika解析）在固定大小的后台线程池中进行
+ */
+@Configuration
+@ConfigurationProperties(prefix = "file.extraction")
+public class FileExtractionConfig {
+
+    /**
+     * 同时解析文件的工作线程数
+     */
+    private int poolSize = 4;
+
+    /**
+     * 等待提取的文件数上限，超过后新文件直接标记为提取失败，可稍后重新提取
+     */
+    private int queueCapacity = 1000;
+
+    /**
+     * 单个文件的提取超时时间（毫秒），超时后中断解析并标记为提取失败
+     */
+    private long timeout = 60000;
+
+    /**
+     * 单个文件最多提取的字符数，超出部分截断
+     */
+    private int maxChars = 5000000;
+
+    // Getters and Setters
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public void setPoolSize(int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    public int getMaxChars() {
+        return maxChars;
+    }
+
+    public void setMaxChars(int maxChars) {
+        this.maxChars = maxChars;
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * 文件上传配置类
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-12-03 09:00:00
+ */
+package com.historyanalysis.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 文件上传配置类
+ * - 批量上传时各文件并发写入磁盘，文件记录在一个事务中批量插入
+ * - 大文件分块上传：分块按偏移量写入同一个暂存文件，可并行上传、断点续传
+ */
+@Configuration
+@ConfigurationProperties(prefix = "file.upload")
+public class FileUploadConfig {
+
+    /**
+     * 批量上传时同时写入磁盘的文件数（所有请求共享）
+     */
+    private int batchParallelism = 4;
+
+    /**
+     * 分块上传的分块大小（字节），最后一块可以更小
+     */
+    private int chunkSize = 8 * 1024 * 1024;
+
+    /**
+     * 分块上传的文件大小上限（字节）
+     */
+    private long chunkedMaxSize = 1024L * 1024 * 1024;
+
+    /**
+     * 分块上传会话的空闲超时（毫秒），超时未完成的上传连同已接收的分块一起删除
+     */
+    private long chunkedSessionTimeout = 24 * 60 * 60 * 1000L;
+
+    /**
+     * 同时进行的分块上传会话数上限
+     */
+    private int maxChunkedSessions = 200;
+
+    // Getters and Setters
+    public int getBatchParallelism() {
+        return batchParallelism;
+    }
+
+    public void setBatchParallelism(int batchParallelism) {
+        this.batchParallelism = batchParallelism;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public long getChunkedMaxSize() {
+        return chunkedMaxSize;
+    }
+
+    public void setChunkedMaxSize(long chunkedMaxSize) {
+        this.chunkedMaxSize = chunkedMaxSize;
+    }
+
+    public long getChunkedSessionTimeout() {
+        return chunkedSessionTimeout;
+    }
+
+    public void setChunkedSessionTimeout(long chunkedSessionTimeout) {
+        this.chunkedSessionTimeout = chunkedSessionTimeout;
+    }
+
+    public int getMaxChunkedSessions() {
+        return maxChunkedSessions;
+    }
+
+    public void setMaxChunkedSessions(int maxChunkedSessions) {
+        this.maxChunkedSessions = maxChunkedSessions;
+    }
+}
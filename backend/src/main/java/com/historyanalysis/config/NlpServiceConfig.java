@@ -6,13 +6,24 @@
  */
 package com.historyanalysis.config;
 
+import io.netty.channel.ChannelOption;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * NLP服务配置类
@@ -27,6 +38,11 @@ public class NlpServiceConfig {
      */
     private String baseUrl = "http://127.0.0.1:5001";
 
+    /**
+     * NLP服务副本基础URL列表，配置后在各副本之间负载均衡；为空时只使用baseUrl
+     */
+    private List<String> replicas = new ArrayList<>();
+
     /**
      * 连接超时时间（秒）
      */
@@ -47,6 +63,82 @@ public class NlpServiceConfig {
      */
     private long retryInterval = 1000;
 
+    /**
+     * 响应式客户端连接池最大连接数
+     */
+    private int maxConnections = 200;
+
+    /**
+     * 响应式客户端等待获取连接的最大请求数
+     */
+    private int pendingAcquireMaxCount = 1000;
+
+    /**
+     * 连接最大空闲时间（秒）
+     */
+    private int maxIdleTime = 30;
+
+    /**
+     * 响应式客户端重试退避上限（毫秒）
+     */
+    private long maxRetryBackoff = 10000;
+
+    /**
+     * 各端点的响应超时时间（秒），键为端点路径最后一段，如word-frequency、summary；未配置时使用readTimeout
+     */
+    private Map<String, Integer> endpointTimeouts = new HashMap<>();
+
+    /**
+     * 微批处理配置
+     */
+    private Batch batch = new Batch();
+
+    /**
+     * 分析结果缓存配置
+     */
+    private ResultCache cache = new ResultCache();
+
+    /**
+     * 各端点熔断配置
+     */
+    private CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+    /**
+     * 各端点并发隔离配置
+     */
+    private Bulkhead bulkhead = new Bulkhead();
+
+    /**
+     * 多副本负载均衡配置
+     */
+    private Balancer balancer = new Balancer();
+
+    /**
+     * 自适应并发限制配置
+     */
+    private Limiter limiter = new Limiter();
+
+    /**
+     * 传输压缩配置
+     */
+    private Compression compression = new Compression();
+
+    /**
+     * 获取实际使用的NLP服务副本基础URL
+     */
+    public List<String> getReplicaUrls() {
+        return replicas == null || replicas.isEmpty() ? List.of(baseUrl) : replicas;
+    }
+
+    /**
+     * 获取端点的响应超时时间
+     */
+    public Duration getEndpointTimeout(String endpoint) {
+        String key = endpoint.substring(endpoint.lastIndexOf('/') + 1);
+        Integer seconds = endpointTimeouts.get(key);
+        return Duration.ofSeconds(seconds != null && seconds > 0 ? seconds : readTimeout);
+    }
+
     /**
      * 创建RestTemplate Bean
      */
@@ -58,6 +150,30 @@ public class NlpServiceConfig {
                 .build();
     }
 
+    /**
+     * 创建基于Reactor Netty连接池的WebClient Bean
+     */
+    @Bean("nlpWebClient")
+    public WebClient nlpWebClient(WebClient.Builder builder) {
+        ConnectionProvider connectionProvider = ConnectionProvider.builder("nlp-service")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMaxCount)
+                .pendingAcquireTimeout(Duration.ofSeconds(connectTimeout))
+                .maxIdleTime(Duration.ofSeconds(maxIdleTime))
+                .build();
+
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeout * 1000)
+                .compress(compression.isEnabled() && compression.isAcceptCompressedResponses());
+
+        return builder
+                .baseUrl(baseUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(16 * 1024 * 1024))
+                .build();
+    }
+
     // Getters and Setters
     public String getBaseUrl() {
         return baseUrl;
@@ -67,6 +183,14 @@ public class NlpServiceConfig {
         this.baseUrl = baseUrl;
     }
 
+    public List<String> getReplicas() {
+        return replicas;
+    }
+
+    public void setReplicas(List<String> replicas) {
+        this.replicas = replicas;
+    }
+
     public int getConnectTimeout() {
         return connectTimeout;
     }
@@ -98,4 +222,732 @@ public class NlpServiceConfig {
     public void setRetryInterval(long retryInterval) {
         this.retryInterval = retryInterval;
     }
-}
\ No newline at end of file
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public int getPendingAcquireMaxCount() {
+        return pendingAcquireMaxCount;
+    }
+
+    public void setPendingAcquireMaxCount(int pendingAcquireMaxCount) {
+        this.pendingAcquireMaxCount = pendingAcquireMaxCount;
+    }
+
+    public int getMaxIdleTime() {
+        return maxIdleTime;
+    }
+
+    public void setMaxIdleTime(int maxIdleTime) {
+        this.maxIdleTime = maxIdleTime;
+    }
+
+    public long getMaxRetryBackoff() {
+        return maxRetryBackoff;
+    }
+
+    public void setMaxRetryBackoff(long maxRetryBackoff) {
+        this.maxRetryBackoff = maxRetryBackoff;
+    }
+
+    public Map<String, Integer> getEndpointTimeouts() {
+        return endpointTimeouts;
+    }
+
+    public void setEndpointTimeouts(Map<String, Integer> endpointTimeouts) {
+        this.endpointTimeouts = endpointTimeouts;
+    }
+
+    public Batch getBatch() {
+        return batch;
+    }
+
+    public void setBatch(Batch batch) {
+        this.batch = batch;
+    }
+
+    public ResultCache getCache() {
+        return cache;
+    }
+
+    public void setCache(ResultCache cache) {
+        this.cache = cache;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    public Bulkhead getBulkhead() {
+        return bulkhead;
+    }
+
+    public void setBulkhead(Bulkhead bulkhead) {
+        this.bulkhead = bulkhead;
+    }
+
+    public Balancer getBalancer() {
+        return balancer;
+    }
+
+    public void setBalancer(Balancer balancer) {
+        this.balancer = balancer;
+    }
+
+    public Limiter getLimiter() {
+        return limiter;
+    }
+
+    public void setLimiter(Limiter limiter) {
+        this.limiter = limiter;
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    public void setCompression(Compression compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * 微批处理配置
+     * 同一分析类型的并发短文本请求在时间窗口内合并为一次/api/analyze/batch调用，
+     * 达到maxSize或窗口到期时立即发送
+     */
+    public static class Batch {
+
+        /**
+         * 是否启用微批处理
+         */
+        private boolean enabled = true;
+
+        /**
+         * 单批最大条目数，需不超过NLP服务的NLP_MAX_BATCH_ITEMS
+         */
+        private int maxSize = 32;
+
+        /**
+         * 合并窗口（毫秒），从批次中第一条请求到达开始计时
+         */
+        private long windowMillis = 20;
+
+        /**
+         * 参与批处理的最大文本长度（字符），更长的文本直接调用单条接口
+         */
+        private int maxTextLength = 20000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public long getWindowMillis() {
+            return windowMillis;
+        }
+
+        public void setWindowMillis(long windowMillis) {
+            this.windowMillis = windowMillis;
+        }
+
+        public int getMaxTextLength() {
+            return maxTextLength;
+        }
+
+        public void setMaxTextLength(int maxTextLength) {
+            this.maxTextLength = maxTextLength;
+        }
+    }
+
+    /**
+     * 分析结果缓存配置
+     * 以输入文本的SHA-256加端点和参数为键，本地Caffeine（W-TinyLFU淘汰）为一级缓存，Redis为可选的二级缓存
+     */
+    public static class ResultCache {
+
+        /**
+         * 是否启用结果缓存
+         */
+        private boolean enabled = true;
+
+        /**
+         * 本地缓存最大条目数
+         */
+        private long maximumSize = 10000;
+
+        /**
+         * 本地缓存写入后过期时间（秒）
+         */
+        private long localTtl = 3600;
+
+        /**
+         * 是否启用Redis二级缓存，多实例间共享结果
+         */
+        private boolean redisEnabled = false;
+
+        /**
+         * Redis缓存过期时间（秒）
+         */
+        private long redisTtl = 86400;
+
+        /**
+         * Redis键前缀
+         */
+        private String keyPrefix = "nlp:result:";
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getMaximumSize() {
+            return maximumSize;
+        }
+
+        public void setMaximumSize(long maximumSize) {
+            this.maximumSize = maximumSize;
+        }
+
+        public long getLocalTtl() {
+            return localTtl;
+        }
+
+        public void setLocalTtl(long localTtl) {
+            this.localTtl = localTtl;
+        }
+
+        public boolean isRedisEnabled() {
+            return redisEnabled;
+        }
+
+        public void setRedisEnabled(boolean redisEnabled) {
+            this.redisEnabled = redisEnabled;
+        }
+
+        public long getRedisTtl() {
+            return redisTtl;
+        }
+
+        public void setRedisTtl(long redisTtl) {
+            this.redisTtl = redisTtl;
+        }
+
+        public String getKeyPrefix() {
+            return keyPrefix;
+        }
+
+        public void setKeyPrefix(String keyPrefix) {
+            this.keyPrefix = keyPrefix;
+        }
+    }
+
+    /**
+     * 熔断配置
+     * 每个端点按最近windowSize次调用统计失败率和慢调用率，任一超过阈值即熔断；
+     * 熔断期间调用立即失败，openDuration到期后由健康检查探测，健康时放行少量试探调用
+     */
+    public static class CircuitBreaker {
+
+        /**
+         * 是否启用熔断
+         */
+        private boolean enabled = true;
+
+        /**
+         * 统计窗口内的调用次数
+         */
+        private int windowSize = 20;
+
+        /**
+         * 窗口内至少有该次数的调用才计算失败率
+         */
+        private int minimumCalls = 10;
+
+        /**
+         * 失败率阈值（百分比）
+         */
+        private int failureRateThreshold = 50;
+
+        /**
+         * 超过该时长（毫秒）的调用计为慢调用
+         */
+        private long slowCallMillis = 30000;
+
+        /**
+         * 慢调用率阈值（百分比）
+         */
+        private int slowCallRateThreshold = 80;
+
+        /**
+         * 熔断后等待多久（毫秒）开始健康检查探测
+         */
+        private long openDuration = 30000;
+
+        /**
+         * 半开状态放行的试探调用数，全部成功后恢复
+         */
+        private int halfOpenCalls = 3;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getWindowSize() {
+            return windowSize;
+        }
+
+        public void setWindowSize(int windowSize) {
+            this.windowSize = windowSize;
+        }
+
+        public int getMinimumCalls() {
+            return minimumCalls;
+        }
+
+        public void setMinimumCalls(int minimumCalls) {
+            this.minimumCalls = minimumCalls;
+        }
+
+        public int getFailureRateThreshold() {
+            return failureRateThreshold;
+        }
+
+        public void setFailureRateThreshold(int failureRateThreshold) {
+            this.failureRateThreshold = failureRateThreshold;
+        }
+
+        public long getSlowCallMillis() {
+            return slowCallMillis;
+        }
+
+        public void setSlowCallMillis(long slowCallMillis) {
+            this.slowCallMillis = slowCallMillis;
+        }
+
+        public int getSlowCallRateThreshold() {
+            return slowCallRateThreshold;
+        }
+
+        public void setSlowCallRateThreshold(int slowCallRateThreshold) {
+            this.slowCallRateThreshold = slowCallRateThreshold;
+        }
+
+        public long getOpenDuration() {
+            return openDuration;
+        }
+
+        public void setOpenDuration(long openDuration) {
+            this.openDuration = openDuration;
+        }
+
+        public int getHalfOpenCalls() {
+            return halfOpenCalls;
+        }
+
+        public void setHalfOpenCalls(int halfOpenCalls) {
+            this.halfOpenCalls = halfOpenCalls;
+        }
+    }
+
+    /**
+     * 并发隔离配置
+     * 每个端点独立的并发上限，某个端点挂起时只占用自己的名额，不影响其他端点的调用
+     */
+    public static class Bulkhead {
+
+        /**
+         * 每个端点同时进行的最大调用数
+         */
+        private int maxConcurrent = 32;
+
+        /**
+         * 各端点的并发上限，键为端点路径最后一段；未配置时使用maxConcurrent
+         */
+        private Map<String, Integer> endpointLimits = new HashMap<>();
+
+        /**
+         * 名额已满时等待的最长时间（毫秒），0表示立即拒绝
+         */
+        private long maxWaitMillis = 5000;
+
+        /**
+         * 获取端点的并发上限
+         */
+        public int getLimit(String endpoint) {
+            Integer limit = endpointLimits.get(endpoint);
+            return limit != null && limit > 0 ? limit : maxConcurrent;
+        }
+
+        public int getMaxConcurrent() {
+            return maxConcurrent;
+        }
+
+        public void setMaxConcurrent(int maxConcurrent) {
+            this.maxConcurrent = maxConcurrent;
+        }
+
+        public Map<String, Integer> getEndpointLimits() {
+            return endpointLimits;
+        }
+
+        public void setEndpointLimits(Map<String, Integer> endpointLimits) {
+            this.endpointLimits = endpointLimits;
+        }
+
+        public long getMaxWaitMillis() {
+            return maxWaitMillis;
+        }
+
+        public void setMaxWaitMillis(long maxWaitMillis) {
+            this.maxWaitMillis = maxWaitMillis;
+        }
+    }
+
+    /**
+     * 多副本负载均衡配置
+     * 按在途请求数选择副本，连续失败或健康检查失败的副本被暂时摘除；
+     * 可选对请求进行对冲：超过该端点近期延迟分位数仍未返回时向另一个副本再发一次，取先返回者
+     */
+    public static class Balancer {
+
+        /**
+         * 副本选择策略
+         */
+        public enum Strategy {
+            /**
+             * 在途请求最少的副本
+             */
+            LEAST_OUTSTANDING,
+            /**
+             * 随机取两个副本，选在途请求较少者
+             */
+            POWER_OF_TWO
+        }
+
+        private Strategy strategy = Strategy.LEAST_OUTSTANDING;
+
+        /**
+         * 连续失败该次数后摘除副本
+         */
+        private int failureThreshold = 3;
+
+        /**
+         * 副本被摘除的时长（毫秒），到期或健康检查恢复后重新参与均衡
+         */
+        private long ejectDuration = 30000;
+
+        /**
+         * 对各副本主动健康检查的间隔（毫秒），0表示不做主动检查；只有一个副本时不检查
+         */
+        private long healthCheckInterval = 10000;
+
+        /**
+         * 是否启用请求对冲
+         */
+        private boolean hedgeEnabled = false;
+
+        /**
+         * 触发对冲的延迟分位数
+         */
+        private double hedgeQuantile = 0.95;
+
+        /**
+         * 对冲等待的最小时长（毫秒）
+         */
+        private long hedgeMinDelayMillis = 50;
+
+        /**
+         * 端点至少有该数量的延迟样本后才对冲
+         */
+        private int hedgeMinSamples = 20;
+
+        public Strategy getStrategy() {
+            return strategy;
+        }
+
+        public void setStrategy(Strategy strategy) {
+            this.strategy = strategy;
+        }
+
+        public int getFailureThreshold() {
+            return failureThreshold;
+        }
+
+        public void setFailureThreshold(int failureThreshold) {
+            this.failureThreshold = failureThreshold;
+        }
+
+        public long getEjectDuration() {
+            return ejectDuration;
+        }
+
+        public void setEjectDuration(long ejectDuration) {
+            this.ejectDuration = ejectDuration;
+        }
+
+        public long getHealthCheckInterval() {
+            return healthCheckInterval;
+        }
+
+        public void setHealthCheckInterval(long healthCheckInterval) {
+            this.healthCheckInterval = healthCheckInterval;
+        }
+
+        public boolean isHedgeEnabled() {
+            return hedgeEnabled;
+        }
+
+        public void setHedgeEnabled(boolean hedgeEnabled) {
+            this.hedgeEnabled = hedgeEnabled;
+        }
+
+        public double getHedgeQuantile() {
+            return hedgeQuantile;
+        }
+
+        public void setHedgeQuantile(double hedgeQuantile) {
+            this.hedgeQuantile = hedgeQuantile;
+        }
+
+        public long getHedgeMinDelayMillis() {
+            return hedgeMinDelayMillis;
+        }
+
+        public void setHedgeMinDelayMillis(long hedgeMinDelayMillis) {
+            this.hedgeMinDelayMillis = hedgeMinDelayMillis;
+        }
+
+        public int getHedgeMinSamples() {
+            return hedgeMinSamples;
+        }
+
+        public void setHedgeMinSamples(int hedgeMinSamples) {
+            this.hedgeMinSamples = hedgeMinSamples;
+        }
+    }
+
+    /**
+     * 自适应并发限制配置
+     * 按梯度算法根据调用延迟调整同时进行的NLP调用数上限：延迟接近基线（近期最小延迟）时逐步提高上限，
+     * 延迟升高时按比例降低，超时和服务端错误时乘性降低；超过上限的调用排队等待，排队过长或等待超时时拒绝
+     */
+    public static class Limiter {
+
+        /**
+         * 是否启用自适应并发限制
+         */
+        private boolean enabled = true;
+
+        /**
+         * 初始并发上限
+         */
+        private int initialLimit = 20;
+
+        /**
+         * 并发上限的下界
+         */
+        private int minLimit = 2;
+
+        /**
+         * 并发上限的上界
+         */
+        private int maxLimit = 200;
+
+        /**
+         * 可容忍的延迟升高倍数，延迟不超过基线的该倍数时不降低上限
+         */
+        private double rttTolerance = 1.5;
+
+        /**
+         * 每次调整时新上限所占的权重（0~1），越小调整越平滑
+         */
+        private double smoothing = 0.2;
+
+        /**
+         * 超时或服务端错误时上限乘以的系数
+         */
+        private double backoffRatio = 0.9;
+
+        /**
+         * 延迟基线取最近该数量（至多两倍）的成功调用中的最小延迟
+         */
+        private int baselineWindow = 600;
+
+        /**
+         * 超过上限的调用最多排队等待的时长（毫秒），0表示立即拒绝
+         */
+        private long maxWaitMillis = 30000;
+
+        /**
+         * 最多排队的调用数，超出时立即拒绝
+         */
+        private int maxQueued = 1000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getInitialLimit() {
+            return initialLimit;
+        }
+
+        public void setInitialLimit(int initialLimit) {
+            this.initialLimit = initialLimit;
+        }
+
+        public int getMinLimit() {
+            return minLimit;
+        }
+
+        public void setMinLimit(int minLimit) {
+            this.minLimit = minLimit;
+        }
+
+        public int getMaxLimit() {
+            return maxLimit;
+        }
+
+        public void setMaxLimit(int maxLimit) {
+            this.maxLimit = maxLimit;
+        }
+
+        public double getRttTolerance() {
+            return rttTolerance;
+        }
+
+        public void setRttTolerance(double rttTolerance) {
+            this.rttTolerance = rttTolerance;
+        }
+
+        public double getSmoothing() {
+            return smoothing;
+        }
+
+        public void setSmoothing(double smoothing) {
+            this.smoothing = smoothing;
+        }
+
+        public double getBackoffRatio() {
+            return backoffRatio;
+        }
+
+        public void setBackoffRatio(double backoffRatio) {
+            this.backoffRatio = backoffRatio;
+        }
+
+        public int getBaselineWindow() {
+            return baselineWindow;
+        }
+
+        public void setBaselineWindow(int baselineWindow) {
+            this.baselineWindow = baselineWindow;
+        }
+
+        public long getMaxWaitMillis() {
+            return maxWaitMillis;
+        }
+
+        public void setMaxWaitMillis(long maxWaitMillis) {
+            this.maxWaitMillis = maxWaitMillis;
+        }
+
+        public int getMaxQueued() {
+            return maxQueued;
+        }
+
+        public void setMaxQueued(int maxQueued) {
+            this.maxQueued = maxQueued;
+        }
+    }
+
+    /**
+     * 传输压缩配置
+     * 文本较长的请求体以gzip压缩并直接从请求对象流式写出；NLP服务不支持时（返回415）自动退回不压缩并记住该副本；
+     * 同时声明接受gzip压缩的响应
+     */
+    public static class Compression {
+
+        /**
+         * 是否启用传输压缩
+         */
+        private boolean enabled = true;
+
+        /**
+         * 请求中文本的总字符数达到该值时压缩请求体
+         */
+        private int minTextLength = 4096;
+
+        /**
+         * gzip压缩级别（1~9），本机回环传输时低级别即可获得大部分收益
+         */
+        private int level = 1;
+
+        /**
+         * 是否声明接受gzip压缩的响应
+         */
+        private boolean acceptCompressedResponses = true;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMinTextLength() {
+            return minTextLength;
+        }
+
+        public void setMinTextLength(int minTextLength) {
+            this.minTextLength = minTextLength;
+        }
+
+        public int getLevel() {
+            return level;
+        }
+
+        public void setLevel(int level) {
+            this.level = level;
+        }
+
+        public boolean isAcceptCompressedResponses() {
+            return acceptCompressedResponses;
+        }
+
+        public void setAcceptCompressedResponses(boolean acceptCompressedResponses) {
+            this.acceptCompressedResponses = acceptCompressedResponses;
+        }
+    }
+}
@@ -7,11 +7,17 @@
  */
 package com.historyanalysis.controller;
 
+import com.historyanalysis.config.AnalysisEventsConfig;
+import com.historyanalysis.config.AnalysisQueueConfig;
+import com.historyanalysis.dto.AnalysisProgressEvent;
 import com.historyanalysis.dto.AnalysisRequest;
 import com.historyanalysis.entity.AnalysisResult;
 import com.historyanalysis.entity.WordFrequency;
 import com.historyanalysis.entity.TimelineEvent;
 import com.historyanalysis.entity.GeoLocation;
+import com.historyanalysis.exception.HistoryAnalysisException;
+import com.historyanalysis.service.AnalysisCompletionNotifier;
+import com.historyanalysis.service.AnalysisEventBus;
 import com.historyanalysis.service.AnalysisService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,10 +27,14 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.net.URI;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -50,6 +60,18 @@ public class AnalysisController {
     @Autowired
     private AnalysisService analysisService;
 
+    @Autowired
+    private AnalysisCompletionNotifier completionNotifier;
+
+    @Autowired
+    private AnalysisQueueConfig queueConfig;
+
+    @Autowired
+    private AnalysisEventBus analysisEventBus;
+
+    @Autowired
+    private AnalysisEventsConfig eventsConfig;
+
     /**
      * 创建分析任务
      */
@@ -96,6 +118,12 @@ public class AnalysisController {
             response.put("success", false);
             response.put("message", e.getMessage());
             return ResponseEntity.badRequest().body(response);
+        } catch (HistoryAnalysisException e) {
+            logger.warn("分析任务被拒绝: {}", e.getMessage());
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            response.put("code", e.getCode());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(response);
         } catch (Exception e) {
             logger.error("分析任务创建异常: {}", e.getMessage(), e);
             response.put("success", false);
@@ -105,149 +133,79 @@ public class AnalysisController {
     }
 
     /**
-     * 执行词频分析
+     * 执行词频分析：提交任务后立即返回202和任务状态地址
      */
     @PostMapping("/word-frequency")
     public ResponseEntity<Map<String, Object>> executeWordFrequencyAnalysis(@RequestBody Map<String, String> request) {
-        logger.info("执行词频分析请求, projectId={}", request.get("projectId"));
-
-        Map<String, Object> response = new HashMap<>();
-
-        try {
-            String projectId = request.get("projectId");
-            String description = request.get("description");
-
-            // 参数验证
-            if (!StringUtils.hasText(projectId)) {
-                response.put("success", false);
-                response.put("message", "项目ID不能为空");
-                return ResponseEntity.badRequest().body(response);
-            }
-
-            // 执行词频分析
-            boolean success = analysisService.executeWordFrequencyAnalysis(projectId, description);
-
-            if (success) {
-                response.put("success", true);
-                response.put("message", "词频分析任务已启动");
-            } else {
-                response.put("success", false);
-                response.put("message", "词频分析任务启动失败");
-            }
-
-            logger.info("词频分析任务启动, success={}", success);
-            return ResponseEntity.ok(response);
-        } catch (IllegalArgumentException e) {
-            logger.warn("词频分析启动失败: {}", e.getMessage());
-            response.put("success", false);
-            response.put("message", e.getMessage());
-            return ResponseEntity.badRequest().body(response);
-        } catch (Exception e) {
-            logger.error("词频分析启动异常: {}", e.getMessage(), e);
-            response.put("success", false);
-            response.put("message", "词频分析启动失败，请稍后重试");
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
-        }
+        return submitAnalysis(request, AnalysisResult.AnalysisType.WORD_FREQUENCY, "词频分析");
     }
 
     /**
-     * 执行时间轴分析
+     * 执行时间轴分析：提交任务后立即返回202和任务状态地址
      */
     @PostMapping("/timeline")
     public ResponseEntity<Map<String, Object>> executeTimelineAnalysis(@RequestBody Map<String, String> request) {
-        logger.info("执行时间轴分析请求, projectId={}", request.get("projectId"));
-
-        Map<String, Object> response = new HashMap<>();
-
-        try {
-            String projectId = request.get("projectId");
-            String description = request.get("description");
-
-            // 参数验证
-            if (!StringUtils.hasText(projectId)) {
-                response.put("success", false);
-                response.put("message", "项目ID不能为空");
-                return ResponseEntity.badRequest().body(response);
-            }
-
-            // 执行时间轴分析
-            boolean success = analysisService.executeTimelineAnalysis(projectId, description);
-
-            if (success) {
-                response.put("success", true);
-                response.put("message", "时间轴分析任务已启动");
-            } else {
-                response.put("success", false);
-                response.put("message", "时间轴分析任务启动失败");
-            }
-
-            logger.info("时间轴分析任务启动, success={}", success);
-            return ResponseEntity.ok(response);
-        } catch (IllegalArgumentException e) {
-            logger.warn("时间轴分析启动失败: {}", e.getMessage());
-            response.put("success", false);
-            response.put("message", e.getMessage());
-            return ResponseEntity.badRequest().body(response);
-        } catch (Exception e) {
-            logger.error("时间轴分析启动异常: {}", e.getMessage(), e);
-            response.put("success", false);
-            response.put("message", "时间轴分析启动失败，请稍后重试");
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
-        }
+        return submitAnalysis(request, AnalysisResult.AnalysisType.TIMELINE, "时间轴分析");
     }
 
     /**
-     * 执行地理位置分析
+     * 执行地理位置分析：提交任务后立即返回202和任务状态地址
      */
     @PostMapping("/geography")
     public ResponseEntity<Map<String, Object>> executeGeographyAnalysis(@RequestBody Map<String, String> request) {
-        logger.info("执行地理位置分析请求, projectId={}", request.get("projectId"));
-
-        Map<String, Object> response = new HashMap<>();
-
-        try {
-            String projectId = request.get("projectId");
-            String description = request.get("description");
-
-            // 参数验证
-            if (!StringUtils.hasText(projectId)) {
-                response.put("success", false);
-                response.put("message", "项目ID不能为空");
-                return ResponseEntity.badRequest().body(response);
-            }
+        return submitAnalysis(request, AnalysisResult.AnalysisType.GEOGRAPHY, "地理位置分析");
+    }
 
-            // 执行地理位置分析
-            boolean success = analysisService.executeGeographyAnalysis(projectId, description);
+    /**
+     * 执行多维度分析：提交任务后立即返回202和任务状态地址
+     */
+    @PostMapping("/multidimensional")
+    public ResponseEntity<Map<String, Object>> executeMultidimensionalAnalysis(@RequestBody Map<String, String> request) {
+        return submitAnalysis(request, AnalysisResult.AnalysisType.MULTIDIMENSIONAL, "多维度分析");
+    }
 
-            if (success) {
-                response.put("success", true);
-                response.put("message", "地理分析任务已启动");
-            } else {
-                response.put("success", false);
-                response.put("message", "地理分析任务启动失败");
-            }
+    /**
+     * 执行文本摘要分析：提交任务后立即返回202和任务状态地址
+     */
+    @PostMapping("/text-summary")
+    public ResponseEntity<Map<String, Object>> executeTextSummaryAnalysis(@RequestBody Map<String, String> request) {
+        return submitAnalysis(request, AnalysisResult.AnalysisType.TEXT_SUMMARY, "文本摘要分析");
+    }
 
-            logger.info("地理分析任务启动, success={}", success);
-            return ResponseEntity.ok(response);
-        } catch (IllegalArgumentException e) {
-            logger.warn("地理位置分析启动失败: {}", e.getMessage());
-            response.put("success", false);
-            response.put("message", e.getMessage());
-            return ResponseEntity.badRequest().body(response);
-        } catch (Exception e) {
-            logger.error("地理位置分析启动异常: {}", e.getMessage(), e);
-            response.put("success", false);
-            response.put("message", "地理位置分析启动失败，请稍后重试");
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+    /**
+     * 等待分析结束
+     *
+     * 以DeferredResult挂起请求，不占用Web线程：任务在本实例结束时立即返回200和最终状态；
+     * 超过timeout（毫秒）仍未结束时返回202和当前状态，客户端可以再次等待
+     */
+    @GetMapping("/{analysisId}/await")
+    public DeferredResult<ResponseEntity<Map<String, Object>>> awaitAnalysis(
+            @PathVariable Long analysisId,
+            @RequestParam(required = false) Long timeout) {
+        long waitMillis = Math.min(timeout != null && timeout > 0 ? timeout : queueConfig.getWaitTimeout(),
+                queueConfig.getMaxWaitTimeout());
+        DeferredResult<ResponseEntity<Map<String, Object>>> deferred = new DeferredResult<>(waitMillis);
+
+        Runnable listener = () -> deferred.setResult(analysisStatusResponse(analysisId));
+        deferred.onTimeout(() -> deferred.setResult(analysisStatusResponse(analysisId)));
+        deferred.onCompletion(() -> completionNotifier.unregister(analysisId, listener));
+        completionNotifier.register(analysisId, listener);
+
+        // 注册后再检查一次状态，避免注册前任务已经结束而错过通知
+        ResponseEntity<Map<String, Object>> current = analysisStatusResponse(analysisId);
+        if (current.getStatusCode() != HttpStatus.ACCEPTED) {
+            deferred.setResult(current);
         }
+        return deferred;
     }
 
     /**
-     * 执行多维度分析
+     * 创建分析任务并交给任务队列异步执行，请求线程不等待NLP调用
      */
-    @PostMapping("/multidimensional")
-    public ResponseEntity<Map<String, Object>> executeMultidimensionalAnalysis(@RequestBody Map<String, String> request) {
-        logger.info("执行多维度分析请求, projectId={}", request.get("projectId"));
+    private ResponseEntity<Map<String, Object>> submitAnalysis(Map<String, String> request,
+                                                               AnalysisResult.AnalysisType analysisType,
+                                                               String label) {
+        logger.info("提交{}请求, projectId={}", label, request.get("projectId"));
 
         Map<String, Object> response = new HashMap<>();
 
@@ -262,74 +220,68 @@ public class AnalysisController {
                 return ResponseEntity.badRequest().body(response);
             }
 
-            // 执行多维度分析
-            boolean success = analysisService.executeMultidimensionalAnalysis(projectId, description);
-
-            if (success) {
-                response.put("success", true);
-                response.put("message", "多维度分析任务已启动");
-            } else {
-                response.put("success", false);
-                response.put("message", "多维度分析任务启动失败");
-            }
+            AnalysisResult analysis = analysisService.createAnalysis(projectId, analysisType, description);
+            String statusUrl = "/api/analysis/" + analysis.getId() + "/progress";
 
-            logger.info("多维度分析任务启动, success={}", success);
-            return ResponseEntity.ok(response);
+            response.put("success", true);
+            response.put("message", label + "任务已提交");
+            response.put("analysisId", analysis.getId());
+            response.put("status", analysis.getStatus());
+            response.put("statusUrl", statusUrl);
+            response.put("awaitUrl", "/api/analysis/" + analysis.getId() + "/await");
+            response.put("resultUrl", "/api/analysis/" + analysis.getId());
+
+            logger.info("{}任务已提交, analysisId={}", label, analysis.getId());
+            return ResponseEntity.status(HttpStatus.ACCEPTED).location(URI.create(statusUrl)).body(response);
         } catch (IllegalArgumentException e) {
-            logger.warn("多维度分析启动失败: {}", e.getMessage());
+            logger.warn("{}提交失败: {}", label, e.getMessage());
             response.put("success", false);
             response.put("message", e.getMessage());
             return ResponseEntity.badRequest().body(response);
+        } catch (HistoryAnalysisException e) {
+            logger.warn("{}任务被拒绝: {}", label, e.getMessage());
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            response.put("code", e.getCode());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(response);
         } catch (Exception e) {
-            logger.error("多维度分析启动异常: {}", e.getMessage(), e);
+            logger.error("{}提交异常: {}", label, e.getMessage(), e);
             response.put("success", false);
-            response.put("message", "多维度分析启动失败，请稍后重试");
+            response.put("message", label + "提交失败，请稍后重试");
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
         }
     }
 
     /**
-     * 执行文本摘要分析
+     * 构建分析状态响应：已结束返回200，未结束返回202，不存在返回404
      */
-    @PostMapping("/text-summary")
-    public ResponseEntity<Map<String, Object>> executeTextSummaryAnalysis(@RequestBody Map<String, String> request) {
-        logger.info("执行文本摘要分析请求, projectId={}", request.get("projectId"));
-
+    private ResponseEntity<Map<String, Object>> analysisStatusResponse(Long analysisId) {
         Map<String, Object> response = new HashMap<>();
-
         try {
-            String projectId = request.get("projectId");
-            String description = request.get("description");
-
-            // 参数验证
-            if (!StringUtils.hasText(projectId)) {
+            Optional<AnalysisResult> analysisOpt = analysisService.findById(analysisId.toString());
+            if (!analysisOpt.isPresent()) {
                 response.put("success", false);
-                response.put("message", "项目ID不能为空");
-                return ResponseEntity.badRequest().body(response);
+                response.put("message", "分析任务不存在");
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
             }
 
-            // 执行文本摘要分析
-            boolean success = analysisService.executeTextSummaryAnalysis(projectId, description);
-
-            if (success) {
-                response.put("success", true);
-                response.put("message", "文本摘要分析任务已启动");
-            } else {
-                response.put("success", false);
-                response.put("message", "文本摘要分析任务启动失败");
-            }
+            AnalysisResult analysis = analysisOpt.get();
+            AnalysisResult.AnalysisStatus status = analysis.getStatus();
+            Map<String, Object> data = new HashMap<>();
+            data.put("analysisId", analysisId);
+            data.put("status", status);
+            data.put("progress", analysis.getProgress() != null ? analysis.getProgress() : 0);
+            data.put("message", getProgressMessage(status));
+            data.put("errorMessage", analysis.getErrorMessage());
 
-            logger.info("文本摘要分析任务启动, success={}", success);
-            return ResponseEntity.ok(response);
-        } catch (IllegalArgumentException e) {
-            logger.warn("文本摘要分析启动失败: {}", e.getMessage());
-            response.put("success", false);
-            response.put("message", e.getMessage());
-            return ResponseEntity.badRequest().body(response);
+            response.put("success", true);
+            response.put("data", data);
+            boolean finished = analysis.isCompleted();
+            return ResponseEntity.status(finished ? HttpStatus.OK : HttpStatus.ACCEPTED).body(response);
         } catch (Exception e) {
-            logger.error("文本摘要分析启动异常: {}", e.getMessage(), e);
+            logger.error("获取分析状态失败: {}", e.getMessage(), e);
             response.put("success", false);
-            response.put("message", "文本摘要分析启动失败，请稍后重试");
+            response.put("message", "获取分析状态失败: " + e.getMessage());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
         }
     }
@@ -703,8 +655,18 @@ public class AnalysisController {
     @GetMapping("/{id}/progress")
     public ResponseEntity<Map<String, Object>> getAnalysisProgress(@PathVariable Long id) {
         try {
-            logger.info("获取分析进度, analysisId={}", id);
-            
+            logger.debug("获取分析进度, analysisId={}", id);
+
+            // 优先返回流水线上报的最新进度快照，不访问数据库
+            Optional<AnalysisProgressEvent> latest = analysisEventBus.latest(id);
+            if (latest.isPresent()) {
+                Map<String, Object> response = new HashMap<>();
+                response.put("success", true);
+                response.put("message", "获取进度成功");
+                response.put("data", progressData(latest.get()));
+                return ResponseEntity.ok(response);
+            }
+
             // 查询分析结果
             Optional<AnalysisResult> analysisOpt = analysisService.findById(id.toString());
             if (!analysisOpt.isPresent()) {
@@ -736,6 +698,116 @@ public class AnalysisController {
         }
     }
     
+    /**
+     * 以SSE推送分析进度
+     *
+     * 连接建立后先推送当前进度，之后推送流水线各阶段的进度事件，分析结束后关闭连接。
+     * 进度事件由事件总线分发，开启Redis转发时任意实例都可以处理该连接。
+     */
+    @GetMapping(value = "/{analysisId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamAnalysisProgress(@PathVariable Long analysisId) {
+        SseEmitter emitter = new SseEmitter(eventsConfig.getSseTimeout());
+
+        Runnable unsubscribe = analysisEventBus.subscribe(analysisId, event -> sendProgress(emitter, event));
+        emitter.onCompletion(unsubscribe);
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(e -> unsubscribe.run());
+
+        Optional<AnalysisProgressEvent> current = analysisEventBus.latest(analysisId);
+        if (current.isPresent()) {
+            sendProgress(emitter, current.get());
+            return emitter;
+        }
+
+        // 没有进度快照时（尚未开始或快照已过期）从数据库读取一次当前状态
+        Optional<AnalysisResult> analysisOpt = analysisService.findById(analysisId.toString());
+        if (!analysisOpt.isPresent()) {
+            try {
+                emitter.send(SseEmitter.event().name("error").data(Map.of("message", "分析任务不存在")));
+            } catch (Exception e) {
+                logger.debug("推送SSE事件失败, analysisId={}: {}", analysisId, e.getMessage());
+            }
+            emitter.complete();
+            return emitter;
+        }
+        AnalysisResult analysis = analysisOpt.get();
+        AnalysisResult.AnalysisStatus status = analysis.getStatus();
+        sendProgress(emitter, AnalysisProgressEvent.builder()
+                .analysisId(analysisId)
+                .status(status.name())
+                .stage(status.name())
+                .progress(status == AnalysisResult.AnalysisStatus.COMPLETED ? 100
+                        : analysis.getProgress() != null ? analysis.getProgress() : 0)
+                .message(analysis.getErrorMessage())
+                .timestamp(System.currentTimeMillis())
+                .build());
+        return emitter;
+    }
+
+    /**
+     * 推送一条进度事件，结束事件推送后关闭连接；客户端已断开时结束该连接
+     */
+    private void sendProgress(SseEmitter emitter, AnalysisProgressEvent event) {
+        try {
+            emitter.send(SseEmitter.event()
+                    .name("progress")
+                    .id(String.valueOf(event.getTimestamp()))
+                    .data(progressData(event)));
+            if (event.isFinished()) {
+                emitter.complete();
+            }
+        } catch (Exception e) {
+            logger.debug("推送SSE事件失败, analysisId={}: {}", event.getAnalysisId(), e.getMessage());
+            emitter.completeWithError(e);
+        }
+    }
+
+    /**
+     * 进度事件的响应数据，字段与进度查询接口一致并附带各阶段计数
+     */
+    private Map<String, Object> progressData(AnalysisProgressEvent event) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("analysisId", event.getAnalysisId());
+        data.put("progress", event.getProgress());
+        data.put("status", event.getStatus());
+        data.put("stage", event.getStage());
+        data.put("message", event.getMessage() != null ? event.getMessage() : getStageMessage(event.getStage()));
+        data.put("filesTotal", event.getFilesTotal());
+        data.put("filesCompleted", event.getFilesCompleted());
+        data.put("filesReused", event.getFilesReused());
+        data.put("textsLoaded", event.getTextsLoaded());
+        data.put("chunksSent", event.getChunksSent());
+        data.put("chunksCompleted", event.getChunksCompleted());
+        data.put("rowsPersisted", event.getRowsPersisted());
+        return data;
+    }
+
+    /**
+     * 获取流水线阶段消息
+     */
+    private String getStageMessage(String stage) {
+        if (stage == null) {
+            return "未知状态";
+        }
+
+        switch (stage) {
+            case "STARTED":
+                return "分析已开始...";
+            case "ANALYZING":
+                return "正在读取文本并调用NLP服务...";
+            case "PERSISTING":
+                return "正在保存分析结果...";
+            case "COMPLETED":
+                return "分析已完成";
+            case "FAILED":
+                return "分析失败";
+            case "CANCELLED":
+                return "分析已取消";
+            default:
+                return "任务等待中...";
+        }
+    }
+
     /**
      * 获取进度消息
      */
@@ -753,6 +825,8 @@ public class AnalysisController {
                 return "分析已完成";
             case FAILED:
                 return "分析失败";
+            case CANCELLED:
+                return "分析已取消";
             default:
                 return "未知状态";
         }
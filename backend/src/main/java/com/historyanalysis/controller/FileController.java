@@ -7,7 +7,10 @@
 package com.historyanalysis.controller;
 
 import com.historyanalysis.dto.FileUploadResponse;
+import com.historyanalysis.dto.FileUploadResult;
 import com.historyanalysis.entity.UploadedFile;
+import com.historyanalysis.exception.HistoryAnalysisException;
+import com.historyanalysis.service.ChunkedUploadStore;
 import com.historyanalysis.service.FileService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -18,16 +21,20 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -40,8 +47,15 @@ import java.util.Map;
 @Slf4j
 public class FileController {
 
+    /**
+     * 分块校验和请求头：分块内容的SHA-256（十六进制）
+     */
+    private static final String CHUNK_SHA256_HEADER = "X-Chunk-Sha256";
+
     private final FileService fileService;
 
+    private final ChunkedUploadStore chunkedUploadStore;
+
     /**
      * 上传文件
      * 
@@ -348,31 +362,36 @@ public class FileController {
         log.info("收到批量文件上传请求，文件数量: {}, 项目ID: {}", files.length, projectId);
         
         Map<String, Object> result = new HashMap<>();
+        List<FileUploadResult> fileResults;
+        try {
+            // 处理匿名访问的情况（开发环境）
+            String userId = (authentication != null) ? authentication.getName() : "anonymous";
+            fileResults = fileService.uploadFiles(projectId.toString(), userId, Arrays.asList(files));
+        } catch (IllegalArgumentException e) {
+            log.warn("批量文件上传失败: {}", e.getMessage());
+            result.put("success", false);
+            result.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(result);
+        }
+        
         Map<String, Object> uploadResults = new HashMap<>();
         int successCount = 0;
         int failCount = 0;
         
-        for (int i = 0; i < files.length; i++) {
-            MultipartFile file = files[i];
-            String fileKey = "file_" + i;
-            
-            try {
-                String userId = authentication.getName();
-                UploadedFile uploadedFile = fileService.uploadFile(projectId.toString(), userId, file);
-                FileUploadResponse response = new FileUploadResponse(uploadedFile);
+        for (FileUploadResult fileResult : fileResults) {
+            String fileKey = "file_" + fileResult.getIndex();
+            if (fileResult.isSuccess()) {
                 uploadResults.put(fileKey, Map.of(
                     "success", true,
-                    "fileName", file.getOriginalFilename(),
-                    "data", response
+                    "fileName", fileResult.getFileName(),
+                    "data", new FileUploadResponse(fileResult.getUploadedFile())
                 ));
                 successCount++;
-                
-            } catch (Exception e) {
-                log.warn("批量上传中文件 {} 失败: {}", file.getOriginalFilename(), e.getMessage());
+            } else {
                 uploadResults.put(fileKey, Map.of(
                     "success", false,
-                    "fileName", file.getOriginalFilename(),
-                    "error", e.getMessage()
+                    "fileName", String.valueOf(fileResult.getFileName()),
+                    "error", fileResult.getError()
                 ));
                 failCount++;
             }
@@ -391,4 +410,148 @@ public class FileController {
         
         return ResponseEntity.ok(result);
     }
-}
\ No newline at end of file
+
+    /**
+     * 创建分块上传
+     * 大文件按返回的chunkSize分块，各分块可并行上传，中断后查询已接收的分块并补传
+     * 
+     * @param projectId 项目ID
+     * @param fileName 文件名
+     * @param fileSize 文件大小（字节）
+     * @param sha256 整个文件的SHA-256摘要（可选），完成时校验
+     * @param authentication 认证信息
+     * @return 上传ID、分块大小和分块数
+     */
+    @PostMapping("/chunked-uploads")
+    public ResponseEntity<Map<String, Object>> initiateChunkedUpload(
+            @RequestParam("projectId") Long projectId,
+            @RequestParam("fileName") String fileName,
+            @RequestParam("fileSize") long fileSize,
+            @RequestParam(value = "sha256", required = false) String sha256,
+            Authentication authentication) {
+        
+        log.info("收到分块上传请求: {}, 大小: {}, 项目ID: {}", fileName, fileSize, projectId);
+        
+        return chunkedUploadResponse("创建分块上传", () -> fileService.initiateChunkedUpload(
+                projectId.toString(), userIdOf(authentication), fileName, fileSize, sha256));
+    }
+
+    /**
+     * 上传一个分块
+     * 
+     * @param uploadId 上传ID
+     * @param index 分块序号（从0开始）
+     * @param sha256 分块的SHA-256校验和
+     * @param body 分块内容（application/octet-stream）
+     * @param authentication 认证信息
+     * @return 上传状态
+     */
+    @PutMapping(value = "/chunked-uploads/{uploadId}/chunks/{index}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<Map<String, Object>> uploadChunk(
+            @PathVariable String uploadId,
+            @PathVariable int index,
+            @RequestHeader(CHUNK_SHA256_HEADER) String sha256,
+            InputStream body,
+            Authentication authentication) {
+        
+        return chunkedUploadResponse("上传分块", () -> chunkedUploadStore.statusOf(
+                chunkedUploadStore.writeChunk(uploadId, userIdOf(authentication), index, sha256, body)));
+    }
+
+    /**
+     * 查询分块上传状态（已接收的分块区间）
+     * 
+     * @param uploadId 上传ID
+     * @param authentication 认证信息
+     * @return 上传状态
+     */
+    @GetMapping("/chunked-uploads/{uploadId}")
+    public ResponseEntity<Map<String, Object>> getChunkedUpload(
+            @PathVariable String uploadId,
+            Authentication authentication) {
+        
+        return chunkedUploadResponse("查询分块上传", () -> chunkedUploadStore.statusOf(
+                chunkedUploadStore.get(uploadId, userIdOf(authentication))));
+    }
+
+    /**
+     * 完成分块上传，之后与普通上传相同：创建文件记录并在后台提取文本
+     * 
+     * @param uploadId 上传ID
+     * @param authentication 认证信息
+     * @return 文件信息
+     */
+    @PostMapping("/chunked-uploads/{uploadId}/complete")
+    public ResponseEntity<Map<String, Object>> completeChunkedUpload(
+            @PathVariable String uploadId,
+            Authentication authentication) {
+        
+        return chunkedUploadResponse("完成分块上传", () -> new FileUploadResponse(
+                fileService.completeChunkedUpload(uploadId, userIdOf(authentication))));
+    }
+
+    /**
+     * 取消分块上传，删除已接收的分块
+     * 
+     * @param uploadId 上传ID
+     * @param authentication 认证信息
+     * @return 操作结果
+     */
+    @DeleteMapping("/chunked-uploads/{uploadId}")
+    public ResponseEntity<Map<String, Object>> abortChunkedUpload(
+            @PathVariable String uploadId,
+            Authentication authentication) {
+        
+        return chunkedUploadResponse("取消分块上传", () -> {
+            chunkedUploadStore.abort(uploadId, userIdOf(authentication));
+            return null;
+        });
+    }
+
+    /**
+     * 分块上传接口的统一响应：参数错误返回400，系统繁忙返回503
+     */
+    private ResponseEntity<Map<String, Object>> chunkedUploadResponse(String action, ChunkedUploadAction handler) {
+        Map<String, Object> result = new HashMap<>();
+        try {
+            Object data = handler.run();
+            result.put("success", true);
+            result.put("message", action + "成功");
+            if (data != null) {
+                result.put("data", data);
+            }
+            return ResponseEntity.ok(result);
+            
+        } catch (IllegalArgumentException e) {
+            log.warn("{}失败: {}", action, e.getMessage());
+            result.put("success", false);
+            result.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(result);
+            
+        } catch (HistoryAnalysisException e) {
+            log.warn("{}被拒绝: {}", action, e.getMessage());
+            result.put("success", false);
+            result.put("message", e.getMessage());
+            result.put("code", e.getCode());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(result);
+            
+        } catch (Exception e) {
+            log.error("{}异常: {}", action, e.getMessage(), e);
+            result.put("success", false);
+            result.put("message", action + "失败，请稍后重试");
+            return ResponseEntity.internalServerError().body(result);
+        }
+    }
+
+    /**
+     * 处理匿名访问的情况（开发环境）
+     */
+    private String userIdOf(Authentication authentication) {
+        return (authentication != null) ? authentication.getName() : "anonymous";
+    }
+
+    @FunctionalInterface
+    private interface ChunkedUploadAction {
+        Object run() throws Exception;
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * 分析进度事件DTO
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-22 09:05:00
+ * @description 分析流水线各阶段的进度，经事件总线推送给SSE客户端并在实例间转发
+ */
+package com.historyanalysis.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 分析进度事件DTO
+ *
+ * 阶段（stage）依次为：
+ * - STARTED：分析已标记为PROCESSING
+ * - ANALYZING：读取文本并调用NLP服务，按文件和分块计数
+ * - PERSISTING：保存结果行
+ * - COMPLETED / FAILED：分析结束
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AnalysisProgressEvent {
+
+    /**
+     * 分析ID
+     */
+    private Long analysisId;
+
+    /**
+     * 分析状态（PROCESSING、COMPLETED、FAILED）
+     */
+    private String status;
+
+    /**
+     * 流水线阶段
+     */
+    private String stage;
+
+    /**
+     * 进度百分比（0-100）
+     */
+    private int progress;
+
+    /**
+     * 需要分析的文件数
+     */
+    private int filesTotal;
+
+    /**
+     * 已完成的文件数（包括复用中间结果的文件）
+     */
+    private int filesCompleted;
+
+    /**
+     * 复用已保存中间结果、未调用NLP服务的文件数
+     */
+    private int filesReused;
+
+    /**
+     * 已读取文本的文件数
+     */
+    private int textsLoaded;
+
+    /**
+     * 已发送给NLP服务的分块数
+     */
+    private int chunksSent;
+
+    /**
+     * NLP服务已返回的分块数
+     */
+    private int chunksCompleted;
+
+    /**
+     * 已保存的结果行数
+     */
+    private int rowsPersisted;
+
+    /**
+     * 进度说明或错误信息
+     */
+    private String message;
+
+    /**
+     * 发布事件的实例ID，用于跳过Redis转发回本实例的事件
+     */
+    private String origin;
+
+    /**
+     * 事件时间（毫秒时间戳）
+     */
+    private long timestamp;
+
+    /**
+     * 是否为结束事件
+     */
+    @JsonIgnore
+    public boolean isFinished() {
+        return "COMPLETED".equals(status) || "FAILED".equals(status) || "CANCELLED".equals(status);
+    }
+}
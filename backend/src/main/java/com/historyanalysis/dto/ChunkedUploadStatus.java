@@ -0,0 +1,60 @@
+/**
+ * 分块上传状态DTO
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-12-04 09:05:00
+ */
+package com.historyanalysis.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 分块上传状态DTO
+ * 客户端按receivedRanges补传缺少的分块，全部收到后调用完成接口
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChunkedUploadStatus {
+
+    /**
+     * 上传ID
+     */
+    private String uploadId;
+
+    /**
+     * 原始文件名
+     */
+    private String fileName;
+
+    /**
+     * 文件大小（字节）
+     */
+    private long fileSize;
+
+    /**
+     * 分块大小（字节），第N块从N*chunkSize处开始，最后一块可以更小
+     */
+    private int chunkSize;
+
+    /**
+     * 分块总数
+     */
+    private int totalChunks;
+
+    /**
+     * 已接收的分块数
+     */
+    private int receivedChunks;
+
+    /**
+     * 已接收的分块序号区间，每项为[起始序号, 结束序号]（含两端）
+     */
+    private List<int[]> receivedRanges;
+}
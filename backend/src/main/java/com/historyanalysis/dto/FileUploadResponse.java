@@ -36,7 +36,7 @@ public class FileUploadResponse {
         this.fileSize = uploadedFile.getFileSize();
         this.formattedSize = uploadedFile.getFormattedFileSize();
         this.status = "UPLOADED";
-        this.processStatus = "PENDING";
+        this.processStatus = processStatusOf(uploadedFile.getExtractionStatus());
         this.uploadTime = uploadedFile.getUploadedAt();
         this.canAnalyze = uploadedFile.getFileType() != null && 
                          (uploadedFile.getFileType() == UploadedFile.FileType.TXT ||
@@ -45,6 +45,23 @@ public class FileUploadResponse {
                           uploadedFile.getFileType() == UploadedFile.FileType.DOCX);
     }
 
+    /**
+     * 文本提取状态对应的处理状态，旧数据没有提取状态，视为已完成
+     */
+    private static String processStatusOf(UploadedFile.ExtractionStatus extractionStatus) {
+        if (extractionStatus == null) {
+            return "PROCESSED";
+        }
+        switch (extractionStatus) {
+            case EXTRACTING:
+                return "PROCESSING";
+            case FAILED:
+                return "FAILED";
+            default:
+                return "PROCESSED";
+        }
+    }
+
     /**
      * 格式化文件大小
      */
@@ -0,0 +1,57 @@
+/**
+ * 批量上传单个文件结果DTO
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-12-03 09:05:00
+ */
+package com.historyanalysis.dto;
+
+import com.historyanalysis.entity.UploadedFile;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 批量上传单个文件结果DTO
+ * 批量上传允许部分成功，每个文件各自记录成功的文件记录或失败原因
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FileUploadResult {
+
+    /**
+     * 文件在请求中的序号（从0开始）
+     */
+    private int index;
+
+    /**
+     * 原始文件名
+     */
+    private String fileName;
+
+    /**
+     * 是否上传成功
+     */
+    private boolean success;
+
+    /**
+     * 保存的文件记录，失败时为null
+     */
+    private UploadedFile uploadedFile;
+
+    /**
+     * 失败原因，成功时为null
+     */
+    private String error;
+
+    public static FileUploadResult succeeded(int index, String fileName, UploadedFile uploadedFile) {
+        return new FileUploadResult(index, fileName, true, uploadedFile, null);
+    }
+
+    public static FileUploadResult failed(int index, String fileName, String error) {
+        return new FileUploadResult(index, fileName, false, null, error != null ? error : "上传文件失败");
+    }
+}
@@ -60,6 +60,26 @@ public class NlpRequest {
         this.type = type;
     }
     
+    /**
+     * 创建词频分析请求
+     */
+    public static NlpRequest wordFrequency(String text, Integer topN, Integer minLength) {
+        NlpRequest request = new NlpRequest(text);
+        request.setTopN(topN != null ? topN : 50);
+        request.setMinLength(minLength != null ? minLength : 2);
+        return request;
+    }
+
+    /**
+     * 创建文本摘要请求
+     */
+    public static NlpRequest summary(String text, String summaryType, Integer maxSentences) {
+        NlpRequest request = new NlpRequest(text);
+        request.setType(summaryType != null ? summaryType : "comprehensive");
+        request.setMaxSentences(maxSentences != null ? maxSentences : 5);
+        return request;
+    }
+    
     // Setter methods
     public void setText(String text) {
         this.text = text;
@@ -0,0 +1,130 @@
+/**
+ * 单文件分析中间结果实体类
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-19 09:10:00
+ * @description 按文件内容摘要缓存的单文件NLP分析结果，用于增量重新分析
+ */
+package com.historyanalysis.entity;
+
+import jakarta.persistence.*;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 单文件分析中间结果实体类
+ *
+ * 包含以下信息：
+ * - 文件内容摘要（与UploadedFile.contentHash一致）
+ * - 分析种类（word-frequency、timeline等）
+ * - 参数键（影响结果的分析参数与分块配置）
+ * - 该文件合并后的NLP结果（JSON）
+ *
+ * 同一内容的文件无论属于哪个项目都共享中间结果；内容变化后摘要随之变化，旧结果不再命中。
+ */
+@Entity
+@Table(name = "analysis_partial_results",
+        uniqueConstraints = @UniqueConstraint(name = "uk_partial_hash_kind_params",
+                columnNames = {"content_hash", "analysis_kind", "params_key"}))
+@NoArgsConstructor
+public class AnalysisPartialResult {
+
+    /**
+     * 主键，自增
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * 文件文本的SHA-256摘要
+     */
+    @Column(name = "content_hash", nullable = false, length = 64)
+    private String contentHash;
+
+    /**
+     * 分析种类，与NLP服务端点名一致
+     */
+    @Column(name = "analysis_kind", nullable = false, length = 30)
+    private String analysisKind;
+
+    /**
+     * 参数键
+     */
+    @Column(name = "params_key", nullable = false, length = 200)
+    private String paramsKey;
+
+    /**
+     * 单文件分析结果 - JSON格式存储
+     */
+    @Column(name = "result_data", columnDefinition = "LONGTEXT")
+    private String resultData;
+
+    /**
+     * 创建时间
+     */
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    public AnalysisPartialResult(String contentHash, String analysisKind, String paramsKey, String resultData) {
+        this.contentHash = contentHash;
+        this.analysisKind = analysisKind;
+        this.paramsKey = paramsKey;
+        this.resultData = resultData;
+    }
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+
+    // Getter and Setter methods
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public String getAnalysisKind() {
+        return analysisKind;
+    }
+
+    public void setAnalysisKind(String analysisKind) {
+        this.analysisKind = analysisKind;
+    }
+
+    public String getParamsKey() {
+        return paramsKey;
+    }
+
+    public void setParamsKey(String paramsKey) {
+        this.paramsKey = paramsKey;
+    }
+
+    public String getResultData() {
+        return resultData;
+    }
+
+    public void setResultData(String resultData) {
+        this.resultData = resultData;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
@@ -144,6 +144,24 @@ public class AnalysisResult {
     @Column(name = "started_at")
     private LocalDateTime startedAt;
 
+    /**
+     * 租约持有者（执行该任务的后端实例ID）
+     */
+    @Column(name = "lease_owner", length = 100)
+    private String leaseOwner;
+
+    /**
+     * 租约到期时间，持有者需在到期前续约，否则任务会被重新放回队列
+     */
+    @Column(name = "lease_expires_at")
+    private LocalDateTime leaseExpiresAt;
+
+    /**
+     * 已被领取执行的次数
+     */
+    @Column(name = "attempt_count")
+    private Integer attemptCount = 0;
+
     /**
      * 分析类型枚举
      */
@@ -172,7 +190,8 @@ public class AnalysisResult {
         PENDING("待处理"),
         PROCESSING("处理中"),
         COMPLETED("已完成"),
-        FAILED("失败");
+        FAILED("失败"),
+        CANCELLED("已取消");
 
         private final String description;
 
@@ -237,11 +256,22 @@ public class AnalysisResult {
         this.updatedAt = LocalDateTime.now();
     }
 
+    /**
+     * 取消分析
+     */
+    public void cancelAnalysis(String reason) {
+        this.status = AnalysisStatus.CANCELLED;
+        this.errorMessage = reason;
+        this.completedAt = LocalDateTime.now();
+        this.updatedAt = LocalDateTime.now();
+    }
+
     /**
      * 检查分析是否完成
      */
     public boolean isCompleted() {
-        return status == AnalysisStatus.COMPLETED || status == AnalysisStatus.FAILED;
+        return status == AnalysisStatus.COMPLETED || status == AnalysisStatus.FAILED
+                || status == AnalysisStatus.CANCELLED;
     }
 
     /**
@@ -421,4 +451,28 @@ public class AnalysisResult {
     public void setProcessingTime(Long processingTime) {
         this.processingTime = processingTime;
     }
+
+    public String getLeaseOwner() {
+        return leaseOwner;
+    }
+
+    public void setLeaseOwner(String leaseOwner) {
+        this.leaseOwner = leaseOwner;
+    }
+
+    public LocalDateTime getLeaseExpiresAt() {
+        return leaseExpiresAt;
+    }
+
+    public void setLeaseExpiresAt(LocalDateTime leaseExpiresAt) {
+        this.leaseExpiresAt = leaseExpiresAt;
+    }
+
+    public Integer getAttemptCount() {
+        return attemptCount;
+    }
+
+    public void setAttemptCount(Integer attemptCount) {
+        this.attemptCount = attemptCount;
+    }
 }
\ No newline at end of file
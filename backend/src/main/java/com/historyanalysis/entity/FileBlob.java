@@ -0,0 +1,98 @@
+/**
+ * 文件内容存储实体类
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-12-02 09:00:00
+ * @description 按内容摘要寻址的文件存储记录，记录被多少个上传文件引用
+ */
+package com.historyanalysis.entity;
+
+import jakarta.persistence.*;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 文件内容存储实体类
+ *
+ * 包含以下信息：
+ * - 文件内容的SHA-256摘要（主键，与UploadedFile.fileHash一致）
+ * - 文件大小
+ * - 引用计数：引用该内容的UploadedFile记录数
+ *
+ * 相同内容的文件无论上传到哪个项目都只在磁盘上保存一份，引用计数归零时删除磁盘文件和本记录。
+ */
+@Entity
+@Table(name = "file_blobs")
+@NoArgsConstructor
+public class FileBlob {
+
+    /**
+     * 文件内容的SHA-256摘要，主键
+     */
+    @Id
+    @Column(name = "hash", length = 64)
+    private String hash;
+
+    /**
+     * 文件大小（字节）
+     */
+    @Column(name = "size", nullable = false)
+    private Long size;
+
+    /**
+     * 引用计数
+     */
+    @Column(name = "ref_count", nullable = false)
+    private Integer refCount;
+
+    /**
+     * 创建时间
+     */
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    public FileBlob(String hash, Long size) {
+        this.hash = hash;
+        this.size = size;
+        this.refCount = 0;
+    }
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+
+    // Getter and Setter methods
+    public String getHash() {
+        return hash;
+    }
+
+    public void setHash(String hash) {
+        this.hash = hash;
+    }
+
+    public Long getSize() {
+        return size;
+    }
+
+    public void setSize(Long size) {
+        this.size = size;
+    }
+
+    public Integer getRefCount() {
+        return refCount;
+    }
+
+    public void setRefCount(Integer refCount) {
+        this.refCount = refCount;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
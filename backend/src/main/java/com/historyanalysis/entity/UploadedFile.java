@@ -33,7 +33,8 @@ import java.time.LocalDateTime;
  * - 上传时间
  */
 @Entity
-@Table(name = "uploaded_files")
+@Table(name = "uploaded_files",
+        indexes = @Index(name = "idx_uploaded_files_file_hash", columnList = "file_hash"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -139,6 +140,52 @@ public class UploadedFile {
     @Column(name = "extracted_text", columnDefinition = "LONGTEXT")
     private String extractedText;
 
+    /**
+     * 提取文本的SHA-256摘要
+     * 用于增量重新分析时识别内容未变化的文件，旧数据可能为空
+     */
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    /**
+     * 文本提取状态枚举
+     */
+    public enum ExtractionStatus {
+        EXTRACTING("提取中"),
+        EXTRACTED("已提取"),
+        FAILED("提取失败");
+
+        private final String description;
+
+        ExtractionStatus(String description) {
+            this.description = description;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    /**
+     * 文本提取状态
+     * 上传后为EXTRACTING，由后台提取完成后更新；旧数据为空，视为已提取
+     */
+    @Enumerated(EnumType.STRING)
+    @Column(name = "extraction_status", length = 20)
+    private ExtractionStatus extractionStatus;
+
+    /**
+     * 文本提取失败的原因
+     */
+    @Column(name = "extraction_error", length = 500)
+    private String extractionError;
+
+    /**
+     * 文件内容（原始字节）的SHA-256摘要，上传时计算，旧数据可能为空
+     */
+    @Column(name = "file_hash", length = 64)
+    private String fileHash;
+
     /**
      * 文件大小（字节）
      */
@@ -202,6 +249,15 @@ public class UploadedFile {
         return extractedText != null && !extractedText.trim().isEmpty();
     }
 
+    /**
+     * 检查文本是否仍在后台提取中
+     * 
+     * @return 如果正在提取返回true，否则返回false
+     */
+    public boolean isExtracting() {
+        return extractionStatus == ExtractionStatus.EXTRACTING;
+    }
+
     /**
      * 获取文件扩展名
      * 
@@ -314,6 +370,38 @@ public class UploadedFile {
         this.extractedText = extractedText;
     }
 
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public ExtractionStatus getExtractionStatus() {
+        return extractionStatus;
+    }
+
+    public void setExtractionStatus(ExtractionStatus extractionStatus) {
+        this.extractionStatus = extractionStatus;
+    }
+
+    public String getExtractionError() {
+        return extractionError;
+    }
+
+    public void setExtractionError(String extractionError) {
+        this.extractionError = extractionError;
+    }
+
+    public String getFileHash() {
+        return fileHash;
+    }
+
+    public void setFileHash(String fileHash) {
+        this.fileHash = fileHash;
+    }
+
     public Long getFileSize() {
         return fileSize;
     }
@@ -0,0 +1,21 @@
+/**
+ * 分析任务已取消异常类
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-23 09:00:00
+ */
+package com.historyanalysis.exception;
+
+/**
+ * 分析任务已取消异常
+ * 分析执行过程中发现任务已被用户取消时抛出，用于尽快结束分析流水线
+ */
+public class AnalysisCancelledException extends HistoryAnalysisException {
+
+    /**
+     * 构造函数
+     */
+    public AnalysisCancelledException(Long analysisId) {
+        super("分析任务已取消, analysisId=" + analysisId, "ANALYSIS_CANCELLED");
+    }
+}
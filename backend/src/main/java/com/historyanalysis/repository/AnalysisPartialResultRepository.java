@@ -0,0 +1,36 @@
+/**
+ * 单文件分析中间结果数据访问接口
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-19 09:15:00
+ * @description 单文件分析中间结果的数据访问层接口
+ */
+package com.historyanalysis.repository;
+
+import com.historyanalysis.entity.AnalysisPartialResult;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+/**
+ * 单文件分析中间结果数据访问接口
+ *
+ * 提供以下操作：
+ * - 基础CRUD操作（继承自JpaRepository）
+ * - 按内容摘要、分析种类和参数键查找中间结果
+ */
+@Repository
+public interface AnalysisPartialResultRepository extends JpaRepository<AnalysisPartialResult, Long> {
+
+    /**
+     * 按内容摘要、分析种类和参数键查找中间结果
+     *
+     * @param contentHash 文件内容摘要
+     * @param analysisKind 分析种类
+     * @param paramsKey 参数键
+     * @return 中间结果的Optional包装
+     */
+    Optional<AnalysisPartialResult> findByContentHashAndAnalysisKindAndParamsKey(
+            String contentHash, String analysisKind, String paramsKey);
+}
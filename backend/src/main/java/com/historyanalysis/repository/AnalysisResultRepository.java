@@ -9,9 +9,13 @@ package com.historyanalysis.repository;
 import com.historyanalysis.entity.AnalysisResult;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
@@ -260,6 +264,129 @@ public interface AnalysisResultRepository extends JpaRepository<AnalysisResult,
            "ar.startedAt < :timeoutThreshold")
     List<AnalysisResult> findTimeoutAnalysis(@Param("timeoutThreshold") LocalDateTime timeoutThreshold);
 
+    /**
+     * 锁定并查找待处理的分析任务，已被其他实例锁定的行会被跳过（FOR UPDATE SKIP LOCKED）
+     * 
+     * @param pageable 分页参数（用于限制领取数量）
+     * @return 分析结果列表
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT ar FROM AnalysisResult ar WHERE ar.status = 'PENDING' ORDER BY ar.createdAt ASC")
+    List<AnalysisResult> findPendingForClaim(Pageable pageable);
+
+    /**
+     * 领取单个待处理的分析任务（仅当状态仍为PENDING时成功）
+     * 
+     * @param resultId 结果ID
+     * @param leaseOwner 租约持有者
+     * @param leaseExpiresAt 租约到期时间
+     * @param startedAt 开始时间
+     * @return 更新的记录数，0表示任务已被其他实例领取
+     */
+    @Modifying
+    @Query("UPDATE AnalysisResult ar SET ar.status = 'PROCESSING', ar.leaseOwner = :leaseOwner, " +
+           "ar.leaseExpiresAt = :leaseExpiresAt, ar.startedAt = :startedAt, " +
+           "ar.attemptCount = COALESCE(ar.attemptCount, 0) + 1 " +
+           "WHERE ar.id = :resultId AND ar.status = 'PENDING'")
+    int claimPending(@Param("resultId") Long resultId,
+                     @Param("leaseOwner") String leaseOwner,
+                     @Param("leaseExpiresAt") LocalDateTime leaseExpiresAt,
+                     @Param("startedAt") LocalDateTime startedAt);
+
+    /**
+     * 续约本实例正在执行的分析任务
+     * 
+     * @param resultIds 结果ID列表
+     * @param leaseOwner 租约持有者
+     * @param leaseExpiresAt 新的租约到期时间
+     * @return 更新的记录数
+     */
+    @Modifying
+    @Query("UPDATE AnalysisResult ar SET ar.leaseExpiresAt = :leaseExpiresAt " +
+           "WHERE ar.id IN :resultIds AND ar.leaseOwner = :leaseOwner AND ar.status = 'PROCESSING'")
+    int renewLeases(@Param("resultIds") List<Long> resultIds,
+                    @Param("leaseOwner") String leaseOwner,
+                    @Param("leaseExpiresAt") LocalDateTime leaseExpiresAt);
+
+    /**
+     * 从给定ID中查找仍由指定实例持有租约的处理中任务，用于续约后发现已丢失的租约
+     * 
+     * @param resultIds 结果ID列表
+     * @param leaseOwner 租约持有者
+     * @return 仍持有租约的分析ID
+     */
+    @Query("SELECT ar.id FROM AnalysisResult ar WHERE ar.id IN :resultIds AND ar.leaseOwner = :leaseOwner " +
+           "AND ar.status = 'PROCESSING'")
+    List<Long> findLeasedIds(@Param("resultIds") List<Long> resultIds, @Param("leaseOwner") String leaseOwner);
+
+    /**
+     * 释放租约
+     * 
+     * @param resultId 结果ID
+     * @param leaseOwner 租约持有者
+     * @return 更新的记录数
+     */
+    @Modifying
+    @Query("UPDATE AnalysisResult ar SET ar.leaseOwner = NULL, ar.leaseExpiresAt = NULL " +
+           "WHERE ar.id = :resultId AND ar.leaseOwner = :leaseOwner")
+    int releaseLease(@Param("resultId") Long resultId, @Param("leaseOwner") String leaseOwner);
+
+    /**
+     * 将已领取但未能开始执行的任务退回待处理队列
+     * 
+     * @param resultId 结果ID
+     * @param leaseOwner 租约持有者
+     * @return 更新的记录数
+     */
+    @Modifying
+    @Query("UPDATE AnalysisResult ar SET ar.status = 'PENDING', ar.leaseOwner = NULL, ar.leaseExpiresAt = NULL, " +
+           "ar.startedAt = NULL WHERE ar.id = :resultId AND ar.leaseOwner = :leaseOwner AND ar.status = 'PROCESSING'")
+    int returnToPending(@Param("resultId") Long resultId, @Param("leaseOwner") String leaseOwner);
+
+    /**
+     * 查找租约已过期的处理中任务
+     * 
+     * @param now 当前时间
+     * @return 分析结果列表
+     */
+    @Query("SELECT ar FROM AnalysisResult ar WHERE ar.status = 'PROCESSING' AND ar.leaseExpiresAt < :now")
+    List<AnalysisResult> findExpiredLeases(@Param("now") LocalDateTime now);
+
+    /**
+     * 将租约过期（或无租约且超时）的处理中任务放回待处理队列
+     * 
+     * @param resultId 结果ID
+     * @param now 当前时间
+     * @param timeoutThreshold 无租约任务的超时阈值
+     * @return 更新的记录数
+     */
+    @Modifying
+    @Query("UPDATE AnalysisResult ar SET ar.status = 'PENDING', ar.leaseOwner = NULL, ar.leaseExpiresAt = NULL, " +
+           "ar.startedAt = NULL WHERE ar.id = :resultId AND ar.status = 'PROCESSING' AND " +
+           "(ar.leaseExpiresAt < :now OR (ar.leaseExpiresAt IS NULL AND ar.startedAt < :timeoutThreshold))")
+    int requeueExpired(@Param("resultId") Long resultId,
+                       @Param("now") LocalDateTime now,
+                       @Param("timeoutThreshold") LocalDateTime timeoutThreshold);
+
+    /**
+     * 将租约过期（或无租约且超时）且已达到最大执行次数的处理中任务标记为失败，条件与requeueExpired相同
+     * 
+     * @param resultId 结果ID
+     * @param now 当前时间
+     * @param timeoutThreshold 无租约任务的超时阈值
+     * @param errorMessage 错误信息
+     * @return 更新的记录数，0表示任务已完成或已被重新领取
+     */
+    @Modifying
+    @Query("UPDATE AnalysisResult ar SET ar.status = 'FAILED', ar.errorMessage = :errorMessage, " +
+           "ar.leaseOwner = NULL, ar.leaseExpiresAt = NULL WHERE ar.id = :resultId AND ar.status = 'PROCESSING' AND " +
+           "(ar.leaseExpiresAt < :now OR (ar.leaseExpiresAt IS NULL AND ar.startedAt < :timeoutThreshold))")
+    int failExpired(@Param("resultId") Long resultId,
+                    @Param("now") LocalDateTime now,
+                    @Param("timeoutThreshold") LocalDateTime timeoutThreshold,
+                    @Param("errorMessage") String errorMessage);
+
     /**
      * 计算平均处理时间
      * 
@@ -286,13 +413,36 @@ public interface AnalysisResultRepository extends JpaRepository<AnalysisResult,
 
     /**
      * 批量取消分析任务
+     * 只取消待处理或正在处理的分析；与完成分析的写事务互斥，已完成的分析不会被改为已取消
      * 
      * @param resultIds 结果ID列表
+     * @param reason 取消原因
+     * @return 实际取消的数量
      */
     @Modifying
-    @Query("UPDATE AnalysisResult ar SET ar.status = 'CANCELLED', ar.completedAt = CURRENT_TIMESTAMP " +
+    @Query("UPDATE AnalysisResult ar SET ar.status = 'CANCELLED', ar.errorMessage = :reason, " +
+           "ar.completedAt = CURRENT_TIMESTAMP, ar.updatedAt = CURRENT_TIMESTAMP " +
            "WHERE ar.id IN :resultIds AND ar.status IN ('PENDING', 'PROCESSING')")
-    void batchCancelAnalysis(@Param("resultIds") List<Long> resultIds);
+    int batchCancelAnalysis(@Param("resultIds") List<Long> resultIds, @Param("reason") String reason);
+
+    /**
+     * 锁定分析结果行并读取其当前状态，用于在完成分析前确认任务未被取消
+     * 
+     * @param resultId 结果ID
+     * @return 当前状态
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT ar FROM AnalysisResult ar WHERE ar.id = :resultId")
+    Optional<AnalysisResult> lockById(@Param("resultId") Long resultId);
+
+    /**
+     * 从给定ID中查找已被取消的分析，用于执行实例发现由其他实例发出的取消
+     * 
+     * @param resultIds 结果ID列表
+     * @return 已取消的分析ID
+     */
+    @Query("SELECT ar.id FROM AnalysisResult ar WHERE ar.id IN :resultIds AND ar.status = 'CANCELLED'")
+    List<Long> findCancelledIds(@Param("resultIds") List<Long> resultIds);
 
     /**
      * 根据项目ID列表查找分析结果
@@ -0,0 +1,79 @@
+/**
+ * 文件内容存储数据访问接口
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-12-02 09:05:00
+ * @description 文件内容存储记录的数据访问层接口
+ */
+package com.historyanalysis.repository;
+
+import com.historyanalysis.entity.FileBlob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 文件内容存储数据访问接口
+ *
+ * 提供以下操作：
+ * - 基础CRUD操作（继承自JpaRepository）
+ * - 原子地增减引用计数：UPDATE语句持有行锁直到事务结束，同一内容的上传和删除互相串行
+ * - 删除引用计数已归零的记录，查询遗留的0引用记录
+ */
+@Repository
+public interface FileBlobRepository extends JpaRepository<FileBlob, String> {
+
+    /**
+     * 引用计数加一
+     *
+     * @param hash 内容摘要
+     * @return 更新的行数，记录不存在时为0
+     */
+    @Modifying
+    @Query("UPDATE FileBlob b SET b.refCount = b.refCount + 1 WHERE b.hash = :hash")
+    int incrementRefCount(@Param("hash") String hash);
+
+    /**
+     * 引用计数减一
+     *
+     * @param hash 内容摘要
+     * @return 更新的行数，记录不存在时为0
+     */
+    @Modifying
+    @Query("UPDATE FileBlob b SET b.refCount = b.refCount - 1 WHERE b.hash = :hash AND b.refCount > 0")
+    int decrementRefCount(@Param("hash") String hash);
+
+    /**
+     * 只查询引用计数
+     *
+     * @param hash 内容摘要
+     * @return 引用计数
+     */
+    @Query("SELECT b.refCount FROM FileBlob b WHERE b.hash = :hash")
+    Optional<Integer> findRefCountByHash(@Param("hash") String hash);
+
+    /**
+     * 删除引用计数已归零的记录
+     *
+     * @param hash 内容摘要
+     * @return 删除的行数
+     */
+    @Modifying
+    @Query("DELETE FROM FileBlob b WHERE b.hash = :hash AND b.refCount <= 0")
+    int deleteIfUnreferenced(@Param("hash") String hash);
+
+    /**
+     * 查询引用计数为0且创建时间早于指定时间的记录
+     *
+     * @param before 创建时间上限
+     * @return 内容摘要列表
+     */
+    @Query("SELECT b.hash FROM FileBlob b WHERE b.refCount <= 0 AND b.createdAt < :before")
+    List<String> findUnreferencedHashesCreatedBefore(@Param("before") LocalDateTime before);
+}
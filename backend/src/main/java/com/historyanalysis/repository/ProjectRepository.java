@@ -197,6 +197,18 @@ public interface ProjectRepository extends JpaRepository<Project, Long> {
     @Query("UPDATE Project p SET p.fileCount = :fileCount WHERE p.id = :projectId")
     void updateFileCount(@Param("projectId") Long projectId, @Param("fileCount") Integer fileCount);
 
+    /**
+     * 原子地调整项目文件数量，结果不小于0
+     *
+     * @param projectId 项目ID
+     * @param delta 增加的文件数，减少时为负数
+     * @return 更新的行数
+     */
+    @Modifying
+    @Query("UPDATE Project p SET p.fileCount = CASE WHEN COALESCE(p.fileCount, 0) + :delta < 0 THEN 0 " +
+           "ELSE COALESCE(p.fileCount, 0) + :delta END WHERE p.id = :projectId")
+    int adjustFileCount(@Param("projectId") Long projectId, @Param("delta") int delta);
+
     /**
      * 更新项目分析数量
      * 
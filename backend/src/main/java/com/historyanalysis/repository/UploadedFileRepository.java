@@ -265,11 +265,12 @@ public interface UploadedFileRepository extends JpaRepository<UploadedFile, Stri
     long countFilesByUserId(@Param("userId") Long userId);
 
     /**
-     * 删除指定时间之前上传且未处理的文件
+     * 查找指定时间之前上传且未处理的文件
+     * 逐个删除以便释放文件内容的引用计数
      */
-    @Modifying
-    @Query("DELETE FROM UploadedFile f WHERE f.uploadedAt < :uploadedBefore AND (f.extractedText IS NULL OR f.extractedText = '')")
-    void deleteUnprocessedFilesUploadedBefore(@Param("uploadedBefore") LocalDateTime uploadedBefore);
+    @Query("SELECT f FROM UploadedFile f WHERE f.uploadedAt < :uploadedBefore AND (f.extractedText IS NULL OR f.extractedText = '') " +
+           "AND (f.extractionStatus IS NULL OR f.extractionStatus <> 'EXTRACTING')")
+    List<UploadedFile> findUnprocessedFilesUploadedBefore(@Param("uploadedBefore") LocalDateTime uploadedBefore);
 
     // 添加缺少的方法
 
@@ -421,4 +422,115 @@ public interface UploadedFileRepository extends JpaRepository<UploadedFile, Stri
      */
     @Query("SELECT f FROM UploadedFile f WHERE f.project.id = :projectId AND f.fileSize <= :maxSize ORDER BY f.fileSize ASC")
     Page<UploadedFile> findByProjectIdAndFileSizeLessThanEqual(@Param("projectId") Long projectId, @Param("maxSize") Long maxSize, Pageable pageable);
-}
\ No newline at end of file
+
+    /**
+     * 只查询文件的内容摘要，不加载提取文本
+     *
+     * @param fileId 文件ID
+     * @return 内容摘要，旧数据可能为null
+     */
+    @Query("SELECT f.contentHash FROM UploadedFile f WHERE f.id = :fileId")
+    Optional<String> findContentHashById(@Param("fileId") String fileId);
+
+    /**
+     * 统计一组文件的总大小，用于估算分析任务的输入规模
+     *
+     * @param fileIds 文件ID列表
+     * @return 文件总大小（字节）
+     */
+    @Query("SELECT COALESCE(SUM(f.fileSize), 0) FROM UploadedFile f WHERE f.id IN :fileIds")
+    long sumFileSizeByIdIn(@Param("fileIds") List<String> fileIds);
+
+    /**
+     * 只查询文件的文本提取状态，不加载提取文本
+     *
+     * @param fileId 文件ID
+     * @return 提取状态，旧数据可能为null
+     */
+    @Query("SELECT f.extractionStatus FROM UploadedFile f WHERE f.id = :fileId")
+    Optional<UploadedFile.ExtractionStatus> findExtractionStatusById(@Param("fileId") String fileId);
+
+    /**
+     * 只查询文件的存储路径
+     *
+     * @param fileId 文件ID
+     * @return 文件存储路径
+     */
+    @Query("SELECT f.filePath FROM UploadedFile f WHERE f.id = :fileId")
+    Optional<String> findFilePathById(@Param("fileId") String fileId);
+
+    /**
+     * 只查询文件内容（原始字节）的摘要
+     *
+     * @param fileId 文件ID
+     * @return 文件内容摘要，旧数据可能为null
+     */
+    @Query("SELECT f.fileHash FROM UploadedFile f WHERE f.id = :fileId")
+    Optional<String> findFileHashById(@Param("fileId") String fileId);
+
+    /**
+     * 查找一个内容相同且已提取文本的文件，用于复用提取结果
+     *
+     * @param fileHash 文件内容摘要
+     * @param status 提取状态（EXTRACTED）
+     * @return 文件信息的Optional包装
+     */
+    Optional<UploadedFile> findFirstByFileHashAndExtractionStatus(String fileHash, UploadedFile.ExtractionStatus status);
+
+    /**
+     * 查询处于指定文本提取状态的文件ID
+     *
+     * @param status 提取状态
+     * @return 文件ID列表
+     */
+    @Query("SELECT f.id FROM UploadedFile f WHERE f.extractionStatus = :status")
+    List<String> findIdsByExtractionStatus(@Param("status") UploadedFile.ExtractionStatus status);
+
+    /**
+     * 更新文件的文本提取状态并清除失败原因
+     *
+     * @param fileId 文件ID
+     * @param status 提取状态
+     * @return 更新的行数
+     */
+    @Modifying
+    @Query("UPDATE UploadedFile f SET f.extractionStatus = :status, f.extractionError = NULL WHERE f.id = :fileId")
+    int updateExtractionStatus(@Param("fileId") String fileId,
+                               @Param("status") UploadedFile.ExtractionStatus status);
+
+    /**
+     * 保存提取的文本及其摘要，同时写入内容相同且仍在等待提取的其他文件
+     *
+     * @param fileId 文件ID
+     * @param fileHash 文件内容摘要，为null时只更新fileId
+     * @param text 提取的文本
+     * @param contentHash 文本的SHA-256摘要
+     * @param status 提取状态（EXTRACTED）
+     * @param extracting 等待提取的状态（EXTRACTING）
+     * @return 更新的行数
+     */
+    @Modifying
+    @Query("UPDATE UploadedFile f SET f.extractedText = :text, f.contentHash = :contentHash, " +
+           "f.extractionStatus = :status, f.extractionError = NULL " +
+           "WHERE f.id = :fileId OR (f.fileHash = :fileHash AND f.extractionStatus = :extracting)")
+    int completeExtractionForContent(@Param("fileId") String fileId,
+                                     @Param("fileHash") String fileHash,
+                                     @Param("text") String text,
+                                     @Param("contentHash") String contentHash,
+                                     @Param("status") UploadedFile.ExtractionStatus status,
+                                     @Param("extracting") UploadedFile.ExtractionStatus extracting);
+
+    /**
+     * 记录文本提取失败
+     *
+     * @param fileId 文件ID
+     * @param status 提取状态（FAILED）
+     * @param error 失败原因
+     * @return 更新的行数
+     */
+    @Modifying
+    @Query("UPDATE UploadedFile f SET f.extractionStatus = :status, f.extractionError = :error WHERE f.id = :fileId")
+    int failExtraction(@Param("fileId") String fileId,
+                       @Param("status") UploadedFile.ExtractionStatus status,
+                       @Param("error") String error);
+}
@@ -0,0 +1,95 @@
+/**
+ * 分析任务取消令牌
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-23 09:10:00
+ */
+package com.historyanalysis.service;
+
+import com.historyanalysis.exception.AnalysisCancelledException;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+
+/**
+ * 分析任务取消令牌
+ *
+ * 每次分析执行持有一个令牌，取消以协作方式传递到正在运行的流水线：
+ * - 流水线在发送每个分块、开始每个文件和写入结果前检查令牌，已取消时抛出AnalysisCancelledException
+ * - 分块并行调用的Future登记在令牌上，取消时以中断方式取消，虚拟线程上阻塞的HTTP请求随之中止
+ * 登记和取消可以在不同线程上并发调用。
+ */
+public class AnalysisCancellation {
+
+    /**
+     * 永不取消的令牌，用于没有对应分析记录的调用
+     */
+    public static final AnalysisCancellation NONE = new AnalysisCancellation(null);
+
+    private final Long analysisId;
+    private final Set<Future<?>> inFlight = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean cancelled = false;
+    private volatile long cancelledAt;
+
+    AnalysisCancellation(Long analysisId) {
+        this.analysisId = analysisId;
+    }
+
+    /**
+     * 取消分析：标记令牌并中断全部已登记的在途调用
+     */
+    void cancel() {
+        if (this == NONE || cancelled) {
+            return;
+        }
+        cancelledAt = System.nanoTime();
+        cancelled = true;
+        inFlight.forEach(future -> future.cancel(true));
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * 已取消时抛出AnalysisCancelledException
+     */
+    public void throwIfCancelled() {
+        if (cancelled) {
+            throw new AnalysisCancelledException(analysisId);
+        }
+    }
+
+    /**
+     * 登记在途调用；令牌已取消时立即取消该调用
+     */
+    public void register(Future<?> future) {
+        if (this == NONE) {
+            return;
+        }
+        inFlight.add(future);
+        if (cancelled) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * 在途调用结束后取消登记
+     */
+    public void unregister(Future<?> future) {
+        inFlight.remove(future);
+    }
+
+    public Long getAnalysisId() {
+        return analysisId;
+    }
+
+    /**
+     * 发出取消请求的时间（System.nanoTime），未取消时为0
+     */
+    long getCancelledAt() {
+        return cancelledAt;
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * 分析任务取消登记服务
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-23 09:20:00
+ */
+package com.historyanalysis.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分析任务取消登记服务
+ *
+ * - 本实例开始执行分析时登记取消令牌，执行结束（释放执行名额）时移除
+ * - 取消请求找到本实例上正在执行的分析后触发其令牌
+ * - 通过Micrometer导出取消次数，以及从发出取消到任务释放执行名额的耗时
+ */
+@Service
+public class AnalysisCancellationRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisCancellationRegistry.class);
+
+    private final Map<Long, AnalysisCancellation> running = new ConcurrentHashMap<>();
+
+    private final Counter cancelledCounter;
+    private final Timer releaseTimer;
+
+    public AnalysisCancellationRegistry(MeterRegistry meterRegistry) {
+        this.cancelledCounter = Counter.builder("analysis.cancelled")
+                .description("在执行过程中被取消的分析任务数")
+                .register(meterRegistry);
+        this.releaseTimer = Timer.builder("analysis.cancel.release")
+                .description("从取消分析到任务停止并释放执行名额的耗时")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 分析开始执行时登记取消令牌
+     */
+    public AnalysisCancellation open(Long analysisId) {
+        AnalysisCancellation cancellation = new AnalysisCancellation(analysisId);
+        running.put(analysisId, cancellation);
+        return cancellation;
+    }
+
+    /**
+     * 获取正在执行的分析的取消令牌，未登记时返回永不取消的令牌
+     */
+    public AnalysisCancellation get(Long analysisId) {
+        return running.getOrDefault(analysisId, AnalysisCancellation.NONE);
+    }
+
+    /**
+     * 分析执行结束时移除取消令牌
+     */
+    public void close(AnalysisCancellation cancellation) {
+        running.remove(cancellation.getAnalysisId(), cancellation);
+        if (cancellation.isCancelled()) {
+            long elapsed = System.nanoTime() - cancellation.getCancelledAt();
+            releaseTimer.record(elapsed, TimeUnit.NANOSECONDS);
+            logger.info("已取消的分析任务停止执行, analysisId={}, elapsedMs={}",
+                    cancellation.getAnalysisId(), TimeUnit.NANOSECONDS.toMillis(elapsed));
+        }
+    }
+
+    /**
+     * 取消本实例上正在执行的分析
+     *
+     * @return 分析正在本实例上执行时返回true
+     */
+    public boolean cancel(Long analysisId) {
+        AnalysisCancellation cancellation = running.get(analysisId);
+        if (cancellation == null || cancellation.isCancelled()) {
+            return false;
+        }
+        cancellation.cancel();
+        cancelledCounter.increment();
+        logger.info("已向正在执行的分析任务发出取消, analysisId={}", analysisId);
+        return true;
+    }
+
+    /**
+     * 获取本实例正在执行的分析数
+     */
+    public int getRunningCount() {
+        return running.size();
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * 分析任务完成通知服务
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-20 09:00:00
+ */
+package com.historyanalysis.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 分析任务完成通知服务
+ *
+ * - 等待分析结果的请求注册回调，不占用Web线程
+ * - 本实例执行的任务结束（成功或失败）时触发并移除该任务的全部回调
+ * - 由其他实例执行的任务不会在这里触发，等待方超时后回退为查询数据库状态
+ */
+@Service
+public class AnalysisCompletionNotifier {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisCompletionNotifier.class);
+
+    private final Map<Long, Set<Runnable>> listeners = new ConcurrentHashMap<>();
+
+    /**
+     * 注册任务结束回调
+     *
+     * @param analysisId 分析ID
+     * @param listener 任务结束时执行的回调，在执行任务的线程上调用
+     */
+    public void register(Long analysisId, Runnable listener) {
+        listeners.computeIfAbsent(analysisId, id -> ConcurrentHashMap.newKeySet()).add(listener);
+    }
+
+    /**
+     * 取消注册（等待超时或连接断开时调用）
+     */
+    public void unregister(Long analysisId, Runnable listener) {
+        listeners.computeIfPresent(analysisId, (id, set) -> {
+            set.remove(listener);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    /**
+     * 通知任务已结束
+     */
+    public void notifyFinished(Long analysisId) {
+        Set<Runnable> finished = listeners.remove(analysisId);
+        if (finished == null) {
+            return;
+        }
+        for (Runnable listener : finished) {
+            try {
+                listener.run();
+            } catch (Exception e) {
+                logger.warn("分析完成回调执行失败, analysisId={}: {}", analysisId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 当前等待中的任务数
+     */
+    public int getWaitingCount() {
+        return listeners.size();
+    }
+}
@@ -0,0 +1,220 @@
+/**
+ * 分析进度事件总线
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-22 09:20:00
+ */
+package com.historyanalysis.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.historyanalysis.config.AnalysisEventsConfig;
+import com.historyanalysis.dto.AnalysisProgressEvent;
+import com.historyanalysis.entity.AnalysisResult;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * 分析进度事件总线
+ *
+ * - 分析流水线通过AnalysisProgressReporter发布进度事件，总线在本实例内同步分发给订阅者（SSE连接）
+ * - 每个分析的最新事件保存为内存快照，进度查询直接读取快照，不再访问数据库
+ * - 开启analysis.events.redis-enabled时，事件同时发布到Redis频道，其他实例收到后在本地分发并更新快照，
+ *   因此SSE连接和进度查询可以由任意实例处理
+ * - 结束事件同时通知AnalysisCompletionNotifier，使等待接口也能感知其他实例执行完成的任务
+ */
+@Service
+public class AnalysisEventBus {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisEventBus.class);
+
+    private final AnalysisEventsConfig config;
+    private final ObjectMapper objectMapper;
+    private final AnalysisCompletionNotifier completionNotifier;
+    private final StringRedisTemplate redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    /**
+     * 本实例ID，写入事件的origin字段
+     */
+    private final String nodeId =
+            ManagementFactory.getRuntimeMXBean().getName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+
+    private final Cache<Long, AnalysisProgressEvent> snapshots;
+    private final Map<Long, Set<Consumer<AnalysisProgressEvent>>> subscribers = new ConcurrentHashMap<>();
+
+    public AnalysisEventBus(AnalysisEventsConfig config,
+                            ObjectMapper objectMapper,
+                            AnalysisCompletionNotifier completionNotifier,
+                            ObjectProvider<StringRedisTemplate> redisTemplateProvider,
+                            ObjectProvider<RedisConnectionFactory> connectionFactoryProvider) {
+        this.config = config;
+        this.objectMapper = objectMapper;
+        this.completionNotifier = completionNotifier;
+        this.snapshots = Caffeine.newBuilder()
+                .maximumSize(config.getMaxSnapshots())
+                .expireAfterWrite(Duration.ofSeconds(config.getSnapshotTtl()))
+                .build();
+
+        RedisConnectionFactory connectionFactory =
+                config.isRedisEnabled() ? connectionFactoryProvider.getIfAvailable() : null;
+        this.redisTemplate = connectionFactory != null ? redisTemplateProvider.getIfAvailable() : null;
+        this.listenerContainer = redisTemplate != null ? startListener(connectionFactory) : null;
+
+        logger.info("分析进度事件总线初始化完成, nodeId={}, redis={}", nodeId, listenerContainer != null);
+    }
+
+    private RedisMessageListenerContainer startListener(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener((message, pattern) ->
+                onRedisMessage(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(config.getRedisChannel()));
+        container.afterPropertiesSet();
+        container.start();
+        return container;
+    }
+
+    /**
+     * 创建某个分析的进度报告器
+     */
+    public AnalysisProgressReporter reporter(Long analysisId) {
+        return new AnalysisProgressReporter(this, analysisId, config.getPublishInterval());
+    }
+
+    /**
+     * 发布进度事件：本地分发，并在开启时转发到其他实例
+     */
+    public void publish(AnalysisProgressEvent event) {
+        event.setOrigin(nodeId);
+        if (event.getTimestamp() == 0) {
+            event.setTimestamp(System.currentTimeMillis());
+        }
+        deliver(event);
+
+        if (redisTemplate != null) {
+            try {
+                redisTemplate.convertAndSend(config.getRedisChannel(), objectMapper.writeValueAsString(event));
+            } catch (Exception e) {
+                logger.warn("转发分析进度事件失败, analysisId={}: {}", event.getAnalysisId(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 发布分析结束事件，进度取最近一次事件的值
+     */
+    public void publishFinished(Long analysisId, AnalysisResult.AnalysisStatus status, String message) {
+        AnalysisProgressEvent last = snapshots.getIfPresent(analysisId);
+        AnalysisProgressEvent event = last != null ? copy(last) : new AnalysisProgressEvent();
+        event.setAnalysisId(analysisId);
+        event.setStatus(status.name());
+        event.setStage(status.name());
+        event.setProgress(status == AnalysisResult.AnalysisStatus.COMPLETED ? 100 : event.getProgress());
+        event.setMessage(message);
+        event.setTimestamp(0);
+        publish(event);
+    }
+
+    /**
+     * 订阅某个分析的进度事件，回调在发布事件的线程上执行，收到结束事件后自动取消订阅
+     *
+     * @return 取消订阅的操作
+     */
+    public Runnable subscribe(Long analysisId, Consumer<AnalysisProgressEvent> subscriber) {
+        subscribers.computeIfAbsent(analysisId, id -> ConcurrentHashMap.newKeySet()).add(subscriber);
+        return () -> subscribers.computeIfPresent(analysisId, (id, set) -> {
+            set.remove(subscriber);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    /**
+     * 某个分析最近一次的进度事件
+     */
+    public Optional<AnalysisProgressEvent> latest(Long analysisId) {
+        return Optional.ofNullable(snapshots.getIfPresent(analysisId));
+    }
+
+    /**
+     * 当前存在订阅者的分析数
+     */
+    public int getSubscribedCount() {
+        return subscribers.size();
+    }
+
+    void onRedisMessage(String json) {
+        try {
+            AnalysisProgressEvent event = objectMapper.readValue(json, AnalysisProgressEvent.class);
+            if (!nodeId.equals(event.getOrigin())) {
+                deliver(event);
+            }
+        } catch (Exception e) {
+            logger.warn("解析分析进度事件失败: {}", e.getMessage());
+        }
+    }
+
+    private void deliver(AnalysisProgressEvent event) {
+        Long analysisId = event.getAnalysisId();
+        snapshots.put(analysisId, event);
+
+        Set<Consumer<AnalysisProgressEvent>> targets = subscribers.get(analysisId);
+        if (targets != null) {
+            for (Consumer<AnalysisProgressEvent> subscriber : targets) {
+                try {
+                    subscriber.accept(event);
+                } catch (Exception e) {
+                    logger.debug("分发分析进度事件失败, analysisId={}: {}", analysisId, e.getMessage());
+                }
+            }
+        }
+        if (event.isFinished()) {
+            // 结束事件之后不会再有进度，订阅随之失效
+            subscribers.remove(analysisId);
+            completionNotifier.notifyFinished(analysisId);
+        }
+    }
+
+    private static AnalysisProgressEvent copy(AnalysisProgressEvent event) {
+        return AnalysisProgressEvent.builder()
+                .analysisId(event.getAnalysisId())
+                .filesTotal(event.getFilesTotal())
+                .filesCompleted(event.getFilesCompleted())
+                .filesReused(event.getFilesReused())
+                .textsLoaded(event.getTextsLoaded())
+                .chunksSent(event.getChunksSent())
+                .chunksCompleted(event.getChunksCompleted())
+                .rowsPersisted(event.getRowsPersisted())
+                .progress(event.getProgress())
+                .build();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (listenerContainer != null) {
+            try {
+                listenerContainer.destroy();
+            } catch (Exception e) {
+                logger.warn("关闭Redis事件监听失败: {}", e.getMessage());
+            }
+        }
+    }
+}
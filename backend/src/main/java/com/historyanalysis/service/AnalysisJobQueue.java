@@ -0,0 +1,323 @@
+/**
+ * 分析任务持久化队列
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-12 10:00:00
+ */
+package com.historyanalysis.service;
+
+import com.historyanalysis.config.AnalysisQueueConfig;
+import com.historyanalysis.config.AnalysisTaskConfig;
+import com.historyanalysis.entity.AnalysisResult;
+import com.historyanalysis.exception.HistoryAnalysisException;
+import com.historyanalysis.repository.AnalysisResultRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 分析任务持久化队列
+ *
+ * 以analysis_results表的PENDING状态作为工作队列，使多个后端实例可以并发领取任务：
+ * - 轮询时以SELECT ... FOR UPDATE SKIP LOCKED锁定待处理行并写入租约
+ * - 单个任务以条件更新（仅当仍为PENDING）领取，保证同一任务只被一个实例执行
+ * - 定期为本实例持有的任务续约，同时发现其中已被取消（可能由其他实例发出）的任务并停止执行；
+ *   续约时发现租约已丢失（已被回收或被其他实例重新领取）的任务同样停止，且不再写入其状态和结果
+ * - 回收租约过期（实例崩溃或重启）的任务：以条件更新重新放回PENDING或标记失败，期间已完成或被重新领取的任务不受影响
+ * - 轮询、续约和回收都只在analysis.queue.enabled时运行
+ */
+@Service
+public class AnalysisJobQueue {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisJobQueue.class);
+
+    private final AnalysisResultRepository analysisResultRepository;
+    private final AnalysisTaskExecutor analysisTaskExecutor;
+    private final AnalysisQueueConfig queueConfig;
+    private final AnalysisTaskConfig taskConfig;
+    private final TransactionTemplate transactionTemplate;
+    private final AnalysisCancellationRegistry cancellationRegistry;
+    private final AnalysisJobSizer jobSizer;
+
+    @Autowired
+    @Lazy
+    private AnalysisService analysisService;
+
+    /**
+     * 本实例ID，作为租约持有者写入数据库
+     */
+    private final String instanceId;
+
+    /**
+     * 本实例已领取（排队或执行中）的任务ID
+     */
+    private final Set<Long> heldIds = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 本实例仍在执行、但租约已丢失的任务ID
+     */
+    private final Set<Long> lostIds = ConcurrentHashMap.newKeySet();
+
+    public AnalysisJobQueue(AnalysisResultRepository analysisResultRepository,
+                            AnalysisTaskExecutor analysisTaskExecutor,
+                            AnalysisQueueConfig queueConfig,
+                            AnalysisTaskConfig taskConfig,
+                            PlatformTransactionManager transactionManager,
+                            AnalysisCancellationRegistry cancellationRegistry,
+                            AnalysisJobSizer jobSizer) {
+        this.analysisResultRepository = analysisResultRepository;
+        this.analysisTaskExecutor = analysisTaskExecutor;
+        this.queueConfig = queueConfig;
+        this.taskConfig = taskConfig;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.cancellationRegistry = cancellationRegistry;
+        this.jobSizer = jobSizer;
+        this.instanceId = ManagementFactory.getRuntimeMXBean().getName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+        logger.info("分析任务队列初始化完成, instanceId={}", instanceId);
+    }
+
+    /**
+     * 领取单个待处理任务
+     *
+     * @param analysisId 分析ID
+     * @return 领取成功返回true；任务已被其他实例领取或不再是PENDING时返回false
+     */
+    public boolean tryClaim(Long analysisId) {
+        LocalDateTime now = LocalDateTime.now();
+        Integer updated = transactionTemplate.execute(status ->
+                analysisResultRepository.claimPending(analysisId, instanceId, leaseExpiry(now), now));
+        if (updated != null && updated > 0) {
+            heldIds.add(analysisId);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 任务结束后释放租约
+     */
+    public void release(Long analysisId) {
+        heldIds.remove(analysisId);
+        lostIds.remove(analysisId);
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+                    analysisResultRepository.releaseLease(analysisId, instanceId));
+        } catch (Exception e) {
+            logger.warn("释放分析任务租约失败, analysisId={}: {}", analysisId, e.getMessage());
+        }
+    }
+
+    /**
+     * 轮询数据库中的待处理任务并提交到执行引擎
+     */
+    @Scheduled(fixedDelayString = "${analysis.queue.poll-interval:2000}",
+               initialDelayString = "${analysis.queue.poll-interval:2000}")
+    public void pollPending() {
+        if (!queueConfig.isEnabled()) {
+            return;
+        }
+
+        int slots = Math.min(queueConfig.getBatchSize(), analysisTaskExecutor.getIdleSlots());
+        if (slots <= 0) {
+            return;
+        }
+
+        List<AnalysisResult> claimed;
+        try {
+            claimed = transactionTemplate.execute(status -> claimBatch(slots));
+        } catch (Exception e) {
+            logger.error("领取待处理分析任务失败: {}", e.getMessage(), e);
+            return;
+        }
+        if (claimed == null || claimed.isEmpty()) {
+            return;
+        }
+
+        logger.info("从数据库队列领取分析任务, count={}, instanceId={}", claimed.size(), instanceId);
+        for (AnalysisResult analysis : claimed) {
+            Long analysisId = analysis.getId();
+            heldIds.add(analysisId);
+            try {
+                analysisTaskExecutor.submit(analysisId, analysis.getAnalysisType(), analysis.getUserId(),
+                        analysis.getProjectId(), jobSizer.estimateInputBytes(analysis), () ->
+                                analysisService.runClaimedAnalysis(analysisId.toString(),
+                                        analysis.getUserId().toString(), analysis.getAnalysisType()));
+            } catch (HistoryAnalysisException e) {
+                logger.warn("执行引擎已满，任务退回队列, analysisId={}", analysisId);
+                heldIds.remove(analysisId);
+                transactionTemplate.executeWithoutResult(status ->
+                        analysisResultRepository.returnToPending(analysisId, instanceId));
+            }
+        }
+    }
+
+    /**
+     * 在事务中锁定并领取一批待处理任务，调用方需在事务中执行
+     */
+    private List<AnalysisResult> claimBatch(int limit) {
+        LocalDateTime now = LocalDateTime.now();
+        List<AnalysisResult> claimed = new ArrayList<>();
+        for (AnalysisResult analysis : analysisResultRepository.findPendingForClaim(PageRequest.of(0, limit))) {
+            if (analysisResultRepository.claimPending(analysis.getId(), instanceId, leaseExpiry(now), now) > 0) {
+                claimed.add(analysis);
+            }
+        }
+        return claimed;
+    }
+
+    /**
+     * 为本实例持有的任务续约，并停止其中已被取消或租约已丢失的任务
+     */
+    @Scheduled(fixedDelayString = "${analysis.queue.heartbeat-interval:20000}")
+    public void renewLeases() {
+        if (!queueConfig.isEnabled() || heldIds.isEmpty()) {
+            return;
+        }
+        List<Long> ids = new ArrayList<>(heldIds);
+        try {
+            List<Long> leased = transactionTemplate.execute(status -> {
+                analysisResultRepository.renewLeases(ids, instanceId, leaseExpiry(LocalDateTime.now()));
+                return analysisResultRepository.findLeasedIds(ids, instanceId);
+            });
+            logger.debug("分析任务租约续约, held={}, renewed={}", ids.size(), leased.size());
+            if (leased.size() == ids.size()) {
+                return;
+            }
+
+            Set<Long> cancelled = Set.copyOf(analysisResultRepository.findCancelledIds(ids));
+            for (Long analysisId : ids) {
+                if (leased.contains(analysisId) || !heldIds.contains(analysisId)) {
+                    // 仍持有租约，或续约期间已执行结束并释放
+                    continue;
+                }
+                if (cancelled.contains(analysisId)) {
+                    stopCancelled(analysisId);
+                } else {
+                    stopLost(analysisId);
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("分析任务租约续约失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 停止租约已丢失的任务：任务可能已被其他实例重新领取，本实例不再执行，也不释放不属于自己的租约
+     */
+    private void stopLost(Long analysisId) {
+        logger.warn("分析任务租约已丢失，停止执行, analysisId={}, instanceId={}", analysisId, instanceId);
+        lostIds.add(analysisId);
+        if (analysisTaskExecutor.remove(analysisId)) {
+            heldIds.remove(analysisId);
+            lostIds.remove(analysisId);
+        }
+        cancellationRegistry.cancel(analysisId);
+    }
+
+    /**
+     * 本实例执行的任务租约是否已丢失；租约丢失的任务不应再写入状态或结果
+     */
+    public boolean isLeaseLost(Long analysisId) {
+        return lostIds.contains(analysisId);
+    }
+
+    /**
+     * 判断本实例是否仍可写入该分析：需在锁定分析行后调用
+     * 有租约时必须由本实例持有；没有租约（未经队列直接执行）时必须仍为PROCESSING，已被回收放回PENDING的不可写入
+     *
+     * @param locked 已锁定的分析
+     * @return 可以写入时返回true
+     */
+    public boolean ownsLease(AnalysisResult locked) {
+        if (lostIds.contains(locked.getId()) || locked.getStatus() != AnalysisResult.AnalysisStatus.PROCESSING) {
+            return false;
+        }
+        return locked.getLeaseOwner() == null || instanceId.equals(locked.getLeaseOwner());
+    }
+
+    /**
+     * 停止本实例上已被取消的任务：仍在排队的直接移出执行引擎并释放租约，正在执行的触发其取消令牌
+     */
+    public void stopCancelled(Long analysisId) {
+        if (analysisTaskExecutor.remove(analysisId)) {
+            release(analysisId);
+        }
+        cancellationRegistry.cancel(analysisId);
+    }
+
+    /**
+     * 回收租约过期或超时的处理中任务
+     */
+    @Scheduled(fixedDelayString = "${analysis.queue.reclaim-interval:30000}")
+    public void reclaimExpired() {
+        if (!queueConfig.isEnabled()) {
+            return;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime timeoutThreshold = now.minusNanos(taskConfig.getTimeout() * 1_000_000L);
+
+        List<AnalysisResult> candidates = new ArrayList<>(analysisResultRepository.findExpiredLeases(now));
+        for (AnalysisResult analysis : analysisResultRepository.findTimeoutAnalysis(timeoutThreshold)) {
+            if (analysis.getLeaseOwner() == null) {
+                candidates.add(analysis);
+            }
+        }
+
+        for (AnalysisResult analysis : candidates) {
+            try {
+                reclaim(analysis, now, timeoutThreshold);
+            } catch (Exception e) {
+                logger.error("回收分析任务失败, analysisId={}: {}", analysis.getId(), e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * 回收单个任务：未超过最大执行次数时放回队列，否则标记失败
+     */
+    private void reclaim(AnalysisResult analysis, LocalDateTime now, LocalDateTime timeoutThreshold) {
+        int attempts = analysis.getAttemptCount() != null ? analysis.getAttemptCount() : 0;
+        if (attempts >= queueConfig.getMaxAttempts()) {
+            Integer failed = transactionTemplate.execute(status ->
+                    analysisResultRepository.failExpired(analysis.getId(), now, timeoutThreshold,
+                            "任务执行超时，已达到最大重试次数" + attempts));
+            if (failed != null && failed > 0) {
+                logger.warn("分析任务超过最大执行次数，标记失败, analysisId={}, attempts={}", analysis.getId(), attempts);
+            }
+            return;
+        }
+
+        Integer requeued = transactionTemplate.execute(status ->
+                analysisResultRepository.requeueExpired(analysis.getId(), now, timeoutThreshold));
+        if (requeued != null && requeued > 0) {
+            logger.warn("分析任务租约过期，重新放回队列, analysisId={}, previousOwner={}, attempts={}",
+                    analysis.getId(), analysis.getLeaseOwner(), attempts);
+        }
+    }
+
+    /**
+     * 获取本实例ID
+     */
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    private LocalDateTime leaseExpiry(LocalDateTime now) {
+        return now.plusNanos(queueConfig.getLeaseDuration() * 1_000_000L);
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * 分析任务输入规模估算服务
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-25 09:00:00
+ */
+package com.historyanalysis.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.historyanalysis.entity.AnalysisResult;
+import com.historyanalysis.repository.UploadedFileRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 分析任务输入规模估算服务
+ * 以分析覆盖的上传文件总大小估算任务规模，供执行引擎区分交互任务和批量任务
+ */
+@Service
+public class AnalysisJobSizer {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisJobSizer.class);
+
+    private final UploadedFileRepository uploadedFileRepository;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public AnalysisJobSizer(UploadedFileRepository uploadedFileRepository) {
+        this.uploadedFileRepository = uploadedFileRepository;
+    }
+
+    /**
+     * 估算分析任务的输入大小
+     *
+     * @param analysis 分析记录
+     * @return 文件总大小（字节），没有文件或无法解析时返回0
+     */
+    public long estimateInputBytes(AnalysisResult analysis) {
+        String fileIdsJson = analysis.getFileIds();
+        if (!StringUtils.hasText(fileIdsJson)) {
+            return 0L;
+        }
+        try {
+            List<Long> fileIds = objectMapper.readValue(fileIdsJson,
+                    objectMapper.getTypeFactory().constructCollectionType(List.class, Long.class));
+            if (fileIds.isEmpty()) {
+                return 0L;
+            }
+            return uploadedFileRepository.sumFileSizeByIdIn(
+                    fileIds.stream().map(String::valueOf).collect(Collectors.toList()));
+        } catch (Exception e) {
+            logger.debug("估算分析任务输入大小失败, analysisId={}: {}", analysis.getId(), e.getMessage());
+            return 0L;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * 单文件分析中间结果存储服务
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-19 09:20:00
+ */
+package com.historyanalysis.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.historyanalysis.entity.AnalysisPartialResult;
+import com.historyanalysis.repository.AnalysisPartialResultRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * 单文件分析中间结果存储服务
+ *
+ * - 以文件内容摘要、分析种类和参数键为键持久化单文件的NLP结果
+ * - 重新分析时命中的文件不再调用NLP服务，只有新增或内容变化的文件需要重新计算
+ * - 读写失败只记录日志，不影响分析本身
+ */
+@Service
+public class AnalysisPartialStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisPartialStore.class);
+
+    private static final TypeReference<Map<String, Object>> RESULT_TYPE = new TypeReference<>() {
+    };
+
+    private final AnalysisPartialResultRepository repository;
+    private final ObjectMapper objectMapper;
+
+    public AnalysisPartialStore(AnalysisPartialResultRepository repository, ObjectMapper objectMapper) {
+        this.repository = repository;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * 查找单文件中间结果
+     */
+    public Optional<Map<String, Object>> find(String contentHash, String kind, String paramsKey) {
+        try {
+            return repository.findByContentHashAndAnalysisKindAndParamsKey(contentHash, kind, paramsKey)
+                    .map(partial -> read(partial.getResultData()));
+        } catch (Exception e) {
+            logger.warn("读取分析中间结果失败, contentHash={}, kind={}: {}", contentHash, kind, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * 保存单文件中间结果，并发分析同一内容时以先写入者为准
+     */
+    public void save(String contentHash, String kind, String paramsKey, Map<String, Object> result) {
+        try {
+            String json = objectMapper.writeValueAsString(result);
+            repository.save(new AnalysisPartialResult(contentHash, kind, paramsKey, json));
+        } catch (DataIntegrityViolationException e) {
+            logger.debug("分析中间结果已存在, contentHash={}, kind={}", contentHash, kind);
+        } catch (Exception e) {
+            logger.warn("保存分析中间结果失败, contentHash={}, kind={}: {}", contentHash, kind, e.getMessage());
+        }
+    }
+
+    private Map<String, Object> read(String json) {
+        try {
+            return objectMapper.readValue(json, RESULT_TYPE);
+        } catch (Exception e) {
+            throw new IllegalStateException("分析中间结果格式错误", e);
+        }
+    }
+}
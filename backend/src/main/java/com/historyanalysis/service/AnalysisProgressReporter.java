@@ -0,0 +1,215 @@
+/**
+ * 分析进度报告器
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-22 09:40:00
+ */
+package com.historyanalysis.service;
+
+import com.historyanalysis.dto.AnalysisProgressEvent;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 分析进度报告器
+ *
+ * 每个分析执行创建一个实例，在流水线各阶段累计计数并发布AnalysisProgressEvent：
+ * - 阶段变化和结束时立即发布
+ * - 同一阶段内的计数变化（文本读取、分块发送与返回、文件完成、结果行写入）按publishInterval限频发布
+ * - 进度百分比：STARTED为5，ANALYZING按已完成文件数在10到90之间线性增长，PERSISTING为90，COMPLETED为100
+ * 计数方法可以在分块并行调用的多个线程上同时调用。
+ * 相同请求合并执行时，共享计算使用不对应分析记录的共享报告器，每次发布时把当前进度同步给全部参与请求的报告器并以各自的分析ID发布。
+ */
+public class AnalysisProgressReporter {
+
+    /**
+     * 不发布任何事件的报告器，用于没有对应分析记录的调用
+     */
+    public static final AnalysisProgressReporter NONE = new AnalysisProgressReporter(null, null, 0);
+
+    private final AnalysisEventBus eventBus;
+    private final Long analysisId;
+    private final long publishInterval;
+
+    private final AtomicInteger filesTotal = new AtomicInteger();
+    private final AtomicInteger filesCompleted = new AtomicInteger();
+    private final AtomicInteger filesReused = new AtomicInteger();
+    private final AtomicInteger textsLoaded = new AtomicInteger();
+    private final AtomicInteger chunksSent = new AtomicInteger();
+    private final AtomicInteger chunksCompleted = new AtomicInteger();
+    private final AtomicInteger rowsPersisted = new AtomicInteger();
+    private final AtomicLong lastPublished = new AtomicLong();
+
+    /**
+     * 跟随本报告器进度的参与请求报告器，只用于共享报告器
+     */
+    private final Set<AnalysisProgressReporter> followers = ConcurrentHashMap.newKeySet();
+
+    private volatile String stage = "STARTED";
+
+    AnalysisProgressReporter(AnalysisEventBus eventBus, Long analysisId, long publishInterval) {
+        this.eventBus = eventBus;
+        this.analysisId = analysisId;
+        this.publishInterval = publishInterval;
+    }
+
+    /**
+     * 分析已标记为PROCESSING
+     */
+    public void started() {
+        changeStage("STARTED");
+    }
+
+    /**
+     * 已确定需要分析的文件数，开始读取文本并调用NLP服务
+     */
+    public void filesResolved(int total) {
+        filesTotal.set(total);
+        changeStage("ANALYZING");
+    }
+
+    public void textLoaded() {
+        textsLoaded.incrementAndGet();
+        publishThrottled();
+    }
+
+    public void chunkSent() {
+        chunksSent.incrementAndGet();
+        publishThrottled();
+    }
+
+    public void chunkCompleted() {
+        chunksCompleted.incrementAndGet();
+        publishThrottled();
+    }
+
+    /**
+     * 一个文件的结果已就绪
+     *
+     * @param reused 是否复用了已保存的中间结果
+     */
+    public void fileCompleted(boolean reused) {
+        filesCompleted.incrementAndGet();
+        if (reused) {
+            filesReused.incrementAndGet();
+        }
+        publishThrottled();
+    }
+
+    /**
+     * 开始保存结果
+     */
+    public void persisting() {
+        changeStage("PERSISTING");
+    }
+
+    public void rowsPersisted(int rows) {
+        rowsPersisted.addAndGet(rows);
+        publishThrottled();
+    }
+
+    /**
+     * 分析完成，结果已提交
+     */
+    public void completed() {
+        changeStage("COMPLETED");
+    }
+
+    /**
+     * 创建合并执行的共享计算使用的报告器，发布间隔与本报告器相同
+     */
+    AnalysisProgressReporter newShared() {
+        return new AnalysisProgressReporter(null, null, publishInterval);
+    }
+
+    /**
+     * 参与请求开始跟随共享计算的进度，立即同步并发布当前进度
+     */
+    void addFollower(AnalysisProgressReporter follower) {
+        if (follower == NONE) {
+            return;
+        }
+        followers.add(follower);
+        follower.copyFrom(this);
+        follower.publish();
+    }
+
+    /**
+     * 参与请求停止跟随共享计算的进度，保留已同步的计数继续后续阶段
+     */
+    void removeFollower(AnalysisProgressReporter follower) {
+        if (follower == NONE) {
+            return;
+        }
+        followers.remove(follower);
+        follower.copyFrom(this);
+    }
+
+    private void copyFrom(AnalysisProgressReporter source) {
+        filesTotal.set(source.filesTotal.get());
+        filesCompleted.set(source.filesCompleted.get());
+        filesReused.set(source.filesReused.get());
+        textsLoaded.set(source.textsLoaded.get());
+        chunksSent.set(source.chunksSent.get());
+        chunksCompleted.set(source.chunksCompleted.get());
+        rowsPersisted.set(source.rowsPersisted.get());
+        stage = source.stage;
+    }
+
+    private void changeStage(String newStage) {
+        stage = newStage;
+        publish();
+    }
+
+    private void publishThrottled() {
+        long now = System.currentTimeMillis();
+        long last = lastPublished.get();
+        if (now - last >= publishInterval && lastPublished.compareAndSet(last, now)) {
+            publish();
+        }
+    }
+
+    private void publish() {
+        lastPublished.set(System.currentTimeMillis());
+        for (AnalysisProgressReporter follower : followers) {
+            follower.copyFrom(this);
+            follower.publish();
+        }
+        if (eventBus == null) {
+            return;
+        }
+        String current = stage;
+        eventBus.publish(AnalysisProgressEvent.builder()
+                .analysisId(analysisId)
+                .status("COMPLETED".equals(current) ? "COMPLETED" : "PROCESSING")
+                .stage(current)
+                .progress(progress(current))
+                .filesTotal(filesTotal.get())
+                .filesCompleted(filesCompleted.get())
+                .filesReused(filesReused.get())
+                .textsLoaded(textsLoaded.get())
+                .chunksSent(chunksSent.get())
+                .chunksCompleted(chunksCompleted.get())
+                .rowsPersisted(rowsPersisted.get())
+                .build());
+    }
+
+    private int progress(String current) {
+        switch (current) {
+            case "STARTED":
+                return 5;
+            case "ANALYZING":
+                int total = filesTotal.get();
+                return total > 0 ? 10 + 80 * Math.min(filesCompleted.get(), total) / total : 10;
+            case "PERSISTING":
+                return 90;
+            case "COMPLETED":
+                return 100;
+            default:
+                return 0;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * 分析结果明细批量写入器
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-16 09:00:00
+ */
+package com.historyanalysis.service;
+
+import com.historyanalysis.entity.GeoLocation;
+import com.historyanalysis.entity.TimelineEvent;
+import com.historyanalysis.entity.WordFrequency;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * 分析结果明细批量写入器
+ *
+ * 词频、时间轴事件和地理位置的明细行在一个事务内写入，配合hibernate.jdbc.batch_size和
+ * order_inserts，Hibernate将每批INSERT合并为一次JDBC批量执行：
+ * - 实体主键为UUID，由Hibernate在persist时生成，不影响批量插入
+ * - 每写满一批即flush并将该批实体从持久化上下文中分离，避免大批量写入时内存持续增长
+ * - 只分离本次写入的实体，不影响调用方事务中已加载的其他实体
+ */
+@Service
+public class AnalysisResultWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisResultWriter.class);
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * 每批写入的行数，与hibernate.jdbc.batch_size保持一致
+     */
+    @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:100}")
+    private int batchSize;
+
+    /**
+     * 批量写入词频明细
+     */
+    @Transactional
+    public void saveWordFrequencies(List<WordFrequency> rows) {
+        persistInBatches(rows);
+    }
+
+    /**
+     * 批量写入时间轴事件
+     */
+    @Transactional
+    public void saveTimelineEvents(List<TimelineEvent> rows) {
+        persistInBatches(rows);
+    }
+
+    /**
+     * 批量写入地理位置
+     */
+    @Transactional
+    public void saveGeoLocations(List<GeoLocation> rows) {
+        persistInBatches(rows);
+    }
+
+    private void persistInBatches(List<?> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        int size = Math.max(batchSize, 1);
+        for (int start = 0; start < rows.size(); start += size) {
+            List<?> chunk = rows.subList(start, Math.min(start + size, rows.size()));
+            chunk.forEach(entityManager::persist);
+            entityManager.flush();
+            chunk.forEach(entityManager::detach);
+        }
+        logger.debug("批量写入分析结果明细: {} 行, batchSize={}", rows.size(), size);
+    }
+}
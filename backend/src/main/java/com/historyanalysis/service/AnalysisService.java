@@ -52,6 +52,15 @@ public interface AnalysisService {
      */
     AnalysisResult createAnalysis(String projectId, AnalysisResult.AnalysisType analysisType, String description);
 
+    /**
+     * 执行已被任务队列领取的分析任务（在分析工作线程中调用）
+     * 
+     * @param analysisId 分析ID
+     * @param userId 用户ID
+     * @param analysisType 分析类型
+     */
+    void runClaimedAnalysis(String analysisId, String userId, AnalysisResult.AnalysisType analysisType);
+
     /**
      * 执行词频分析
      * 
@@ -0,0 +1,218 @@
+/**
+ * 相同分析请求合并执行服务
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-24 09:00:00
+ */
+package com.historyanalysis.service;
+
+import com.historyanalysis.config.AnalysisStreamingConfig;
+import com.historyanalysis.exception.NlpServiceException;
+import com.historyanalysis.util.ContentHashUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiFunction;
+
+/**
+ * 相同分析请求合并执行服务
+ *
+ * 多个用户同时对相同文本发起同类分析时（如课堂上全班同时点击分析），只调用一次NLP服务：
+ * - 以（排序后的文件内容摘要、分析种类、分析参数）为键登记进行中的计算
+ * - 第一个请求发起计算，计算期间到达的相同请求加入该计算并等待其结果
+ * - 计算使用共享的进度报告器，进度同时发布给全部等待中的请求，计算期间加入的请求先收到当前进度
+ * - 各请求拿到同一份合并结果后各自写入自己的分析记录
+ * - 计算在独立的虚拟线程上执行，使用自己的取消令牌：单个请求被取消只会退出等待，
+ *   全部参与的请求都被取消后才取消计算本身
+ * 合并只在本实例内进行；跨实例和先后发起的重复分析由AnalysisPartialStore中保存的单文件结果复用。
+ */
+@Service
+public class AnalysisSingleFlight {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisSingleFlight.class);
+
+    private final AnalysisStreamingConfig config;
+    private final Map<String, Flight> flights = new ConcurrentHashMap<>();
+
+    /**
+     * 执行共享计算的虚拟线程
+     */
+    private final ExecutorService executor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("analysis-flight-", 0).factory());
+
+    private final Counter leaderCounter;
+    private final Counter joinedCounter;
+
+    public AnalysisSingleFlight(AnalysisStreamingConfig config, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.leaderCounter = Counter.builder("analysis.singleflight.computations")
+                .description("实际发起的分析计算数")
+                .register(meterRegistry);
+        this.joinedCounter = Counter.builder("analysis.singleflight.joined")
+                .description("加入进行中的相同计算而未调用NLP服务的分析数")
+                .register(meterRegistry);
+        Gauge.builder("analysis.singleflight.inflight", flights, Map::size)
+                .description("进行中的可合并分析计算数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 生成合并键：任一文件缺少内容摘要时返回null，表示不参与合并
+     *
+     * @param kind 分析种类
+     * @param params 影响结果的分析参数
+     * @param sources 分析的文件文本来源
+     */
+    public static String key(String kind, String params, List<AnalysisTextSource> sources) {
+        if (sources.isEmpty()) {
+            return null;
+        }
+        List<String> hashes = new ArrayList<>(sources.size());
+        for (AnalysisTextSource source : sources) {
+            if (source.getContentHash() == null) {
+                return null;
+            }
+            hashes.add(source.getContentHash());
+        }
+        Collections.sort(hashes);
+        return kind + "|" + params + "|" + ContentHashUtil.sha256Hex(String.join(",", hashes));
+    }
+
+    /**
+     * 执行分析计算；相同键的计算正在进行时加入该计算并等待其结果
+     *
+     * @param key 合并键，为null或关闭合并时直接在当前线程计算
+     * @param progress 当前请求的进度报告器
+     * @param cancellation 当前请求的取消令牌
+     * @param computation 分析计算，参数为计算使用的进度报告器和取消令牌
+     * @return 分析结果，多个请求共享同一实例，调用方不得修改
+     */
+    public Map<String, Object> execute(String key, AnalysisProgressReporter progress, AnalysisCancellation cancellation,
+                                       BiFunction<AnalysisProgressReporter, AnalysisCancellation, Map<String, Object>> computation) {
+        if (key == null || !config.isSingleFlight()) {
+            return computation.apply(progress, cancellation);
+        }
+
+        Flight flight = join(key, progress, computation);
+        CompletableFuture<Map<String, Object>> view = flight.result.copy();
+        flight.progress.addFollower(progress);
+        cancellation.register(view);
+        try {
+            return view.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NlpServiceException("调用被中断", e);
+        } catch (CancellationException e) {
+            cancellation.throwIfCancelled();
+            throw new NlpServiceException("调用已取消", e);
+        } catch (ExecutionException e) {
+            cancellation.throwIfCancelled();
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new NlpServiceException("分析计算失败: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            cancellation.unregister(view);
+            flight.progress.removeFollower(progress);
+            leave(key, flight);
+        }
+    }
+
+    /**
+     * 加入相同键的进行中计算，没有时发起新的计算
+     */
+    private Flight join(String key, AnalysisProgressReporter progress,
+                        BiFunction<AnalysisProgressReporter, AnalysisCancellation, Map<String, Object>> computation) {
+        while (true) {
+            Flight created = new Flight(progress.newShared());
+            Flight flight = flights.computeIfAbsent(key, k -> created);
+            int participants;
+            synchronized (flight) {
+                if (flight.abandoned) {
+                    // 该计算的全部请求刚刚取消，等待其移除后重新登记
+                    continue;
+                }
+                participants = ++flight.participants;
+            }
+            if (flight == created) {
+                leaderCounter.increment();
+                start(key, flight, computation);
+            } else {
+                joinedCounter.increment();
+                logger.info("加入进行中的相同分析计算, key={}, participants={}", key, participants);
+            }
+            return flight;
+        }
+    }
+
+    private void start(String key, Flight flight,
+                       BiFunction<AnalysisProgressReporter, AnalysisCancellation, Map<String, Object>> computation) {
+        executor.execute(() -> {
+            try {
+                flight.result.complete(computation.apply(flight.progress, flight.cancellation));
+            } catch (Throwable e) {
+                flight.result.completeExceptionally(e);
+            } finally {
+                flights.remove(key, flight);
+            }
+        });
+    }
+
+    /**
+     * 请求结束等待；最后一个请求在计算完成前离开时取消计算
+     */
+    private void leave(String key, Flight flight) {
+        synchronized (flight) {
+            flight.participants--;
+            if (flight.participants > 0 || flight.result.isDone()) {
+                return;
+            }
+            flight.abandoned = true;
+            flights.remove(key, flight);
+        }
+        logger.info("相同分析计算的全部请求已取消，停止计算, key={}", key);
+        flight.cancellation.cancel();
+    }
+
+    /**
+     * 获取进行中的可合并计算数
+     */
+    public int getInFlightCount() {
+        return flights.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 进行中的计算，participants和abandoned由实例锁保护
+     */
+    private static class Flight {
+        private final CompletableFuture<Map<String, Object>> result = new CompletableFuture<>();
+        private final AnalysisCancellation cancellation = new AnalysisCancellation(null);
+        private final AnalysisProgressReporter progress;
+        private int participants = 0;
+        private boolean abandoned = false;
+
+        private Flight(AnalysisProgressReporter progress) {
+            this.progress = progress;
+        }
+    }
+}
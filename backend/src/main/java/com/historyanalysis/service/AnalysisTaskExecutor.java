@@ -0,0 +1,599 @@
+/**
+ * 分析任务执行引擎
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-10 10:20:00
+ */
+package com.historyanalysis.service;
+
+import com.historyanalysis.config.AnalysisTaskConfig;
+import com.historyanalysis.entity.AnalysisResult;
+import com.historyanalysis.exception.HistoryAnalysisException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分析任务执行引擎
+ *
+ * 替代公共ForkJoin线程池执行分析任务：
+ * - PLATFORM模式使用固定数量的专用工作线程
+ * - VIRTUAL模式为每个任务（包括其中的NLP调用和重试等待）创建虚拟线程
+ * - 有界等待队列，队列满时按配置等待或拒绝
+ * - 按分析类型限制并发数
+ * - 通过Micrometer导出队列深度、活跃线程数和各车道的排队等待时间
+ *
+ * 排队任务的调度顺序：
+ * - 按输入文件总大小分为交互车道（小任务）和批量车道，车道之间按权重轮转，小任务优先但批量任务不会饿死
+ * - 同一车道内按用户做差额轮转（DRR）：每轮各用户获得相同额度，任务按输入大小消耗额度，
+ *   一个用户提交大量任务不会推迟其他用户的任务
+ * - 同一用户的多个项目之间轮流出队
+ * - 所属分析类型已达到并发上限的任务暂时跳过，不阻塞其他任务
+ */
+@Service
+public class AnalysisTaskExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisTaskExecutor.class);
+
+    private static final AnalysisResult.AnalysisType[] TYPES = AnalysisResult.AnalysisType.values();
+
+    /**
+     * 未提供用户或项目时使用的分组键
+     */
+    private static final Long UNKNOWN = -1L;
+
+    /**
+     * 排队车道
+     */
+    public enum Lane {
+        /**
+         * 输入较小的交互式任务
+         */
+        INTERACTIVE,
+        /**
+         * 输入较大的批量任务
+         */
+        BULK
+    }
+
+    private final AnalysisTaskConfig config;
+    private final AnalysisTaskConfig.Scheduling scheduling;
+    private final ExecutorService workers;
+    private final int maxConcurrency;
+    private final Map<AnalysisResult.AnalysisType, Integer> typeLimits;
+    private final Map<Lane, LaneQueue> lanes = new EnumMap<>(Lane.class);
+    private final Map<AnalysisResult.AnalysisType, int[]> queued = new EnumMap<>(AnalysisResult.AnalysisType.class);
+    private final Map<AnalysisResult.AnalysisType, int[]> running = new EnumMap<>(AnalysisResult.AnalysisType.class);
+
+    private final Object lock = new Object();
+    private int queuedCount = 0;
+    private int activeCount = 0;
+
+    private final Counter rejectedCounter;
+
+    public AnalysisTaskExecutor(AnalysisTaskConfig config, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.scheduling = config.getScheduling();
+        this.typeLimits = config.resolveTypeLimits();
+        this.maxConcurrency = config.getMaxConcurrency();
+        this.workers = createWorkers(config);
+
+        for (AnalysisResult.AnalysisType type : TYPES) {
+            queued.put(type, new int[1]);
+            running.put(type, new int[1]);
+
+            Gauge.builder("analysis.executor.queue.depth", this, e -> e.getQueueDepth(type))
+                    .description("等待执行的分析任务数")
+                    .tag("type", type.name())
+                    .register(meterRegistry);
+            Gauge.builder("analysis.executor.active", this, e -> e.getActiveCount(type))
+                    .description("正在执行的分析任务数")
+                    .tag("type", type.name())
+                    .register(meterRegistry);
+        }
+
+        for (Lane lane : Lane.values()) {
+            Timer waitTimer = Timer.builder("analysis.executor.wait")
+                    .description("分析任务从提交到开始执行的等待时间")
+                    .tag("lane", lane.name())
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .register(meterRegistry);
+            int weight = lane == Lane.INTERACTIVE ? scheduling.getInteractiveWeight() : scheduling.getBulkWeight();
+            lanes.put(lane, new LaneQueue(Math.max(1, weight), waitTimer));
+
+            Gauge.builder("analysis.executor.lane.depth", this, e -> e.getQueueDepth(lane))
+                    .description("车道中等待执行的分析任务数")
+                    .tag("lane", lane.name())
+                    .register(meterRegistry);
+            Gauge.builder("analysis.executor.lane.users", this, e -> e.getWaitingUsers(lane))
+                    .description("车道中有任务排队的用户数")
+                    .tag("lane", lane.name())
+                    .register(meterRegistry);
+        }
+
+        Gauge.builder("analysis.executor.queue.capacity", config, AnalysisTaskConfig::getQueueCapacity)
+                .description("分析任务等待队列容量")
+                .register(meterRegistry);
+        Gauge.builder("analysis.executor.max.concurrency", config, AnalysisTaskConfig::getMaxConcurrency)
+                .description("同时执行的分析任务总数上限")
+                .tag("mode", config.getExecutionMode().name())
+                .register(meterRegistry);
+
+        this.rejectedCounter = Counter.builder("analysis.executor.rejected")
+                .description("因队列已满被拒绝的分析任务数")
+                .register(meterRegistry);
+
+        logger.info("分析任务执行引擎初始化完成, mode={}, maxConcurrency={}, queueCapacity={}, typeLimits={}, "
+                        + "interactiveMaxBytes={}, laneWeights={}:{}",
+                config.getExecutionMode(), maxConcurrency, config.getQueueCapacity(), typeLimits,
+                scheduling.getInteractiveMaxBytes(), scheduling.getInteractiveWeight(), scheduling.getBulkWeight());
+    }
+
+    /**
+     * 根据执行模式创建工作线程
+     */
+    private static ExecutorService createWorkers(AnalysisTaskConfig config) {
+        if (config.getExecutionMode() == AnalysisTaskConfig.ExecutionMode.VIRTUAL) {
+            return Executors.newThreadPerTaskExecutor(
+                    Thread.ofVirtual().name("analysis-vt-", 0).factory());
+        }
+        return new ThreadPoolExecutor(
+                config.getPoolSize(), config.getPoolSize(),
+                60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new CustomizableThreadFactory("analysis-worker-"));
+    }
+
+    /**
+     * 提交分析任务（不区分用户和项目，按交互任务调度）
+     *
+     * @param analysisId 分析ID
+     * @param analysisType 分析类型
+     * @param job 任务内容
+     * @throws HistoryAnalysisException 队列已满且在admissionTimeout内未能入队时抛出
+     */
+    public void submit(Long analysisId, AnalysisResult.AnalysisType analysisType, Runnable job) {
+        submit(analysisId, analysisType, null, null, 0L, job);
+    }
+
+    /**
+     * 提交分析任务
+     *
+     * @param analysisId 分析ID
+     * @param analysisType 分析类型
+     * @param userId 提交任务的用户ID，用于用户间公平调度
+     * @param projectId 任务所属项目ID，同一用户的项目之间轮流出队
+     * @param inputBytes 输入文件总大小（字节），决定车道和调度额度消耗
+     * @param job 任务内容
+     * @throws HistoryAnalysisException 队列已满且在admissionTimeout内未能入队时抛出
+     */
+    public void submit(Long analysisId, AnalysisResult.AnalysisType analysisType, Long userId, Long projectId,
+                       long inputBytes, Runnable job) {
+        Lane lane = inputBytes <= scheduling.getInteractiveMaxBytes() ? Lane.INTERACTIVE : Lane.BULK;
+        long quantum = Math.max(1, scheduling.getQuantumBytes());
+        long cost = Math.max(1, (inputBytes + quantum - 1) / quantum);
+        QueuedTask task = new QueuedTask(analysisId, analysisType, userId != null ? userId : UNKNOWN,
+                projectId != null ? projectId : UNKNOWN, lane, cost, job, System.nanoTime());
+
+        synchronized (lock) {
+            awaitAdmission(analysisId, analysisType);
+
+            lanes.get(lane).add(task);
+            queued.get(analysisType)[0]++;
+            queuedCount++;
+            logger.debug("分析任务入队, analysisId={}, type={}, lane={}, userId={}, inputBytes={}, queued={}, active={}",
+                    analysisId, analysisType, lane, userId, inputBytes, queuedCount, activeCount);
+            dispatch();
+        }
+    }
+
+    /**
+     * 检查当前是否可以接收新任务（不入队）
+     *
+     * @throws HistoryAnalysisException 队列已满且在admissionTimeout内未腾出空间时抛出
+     */
+    public void checkAdmission(Long analysisId, AnalysisResult.AnalysisType analysisType) {
+        synchronized (lock) {
+            awaitAdmission(analysisId, analysisType);
+        }
+    }
+
+    /**
+     * 等待队列腾出空间，调用方必须持有lock
+     */
+    private void awaitAdmission(Long analysisId, AnalysisResult.AnalysisType analysisType) {
+        long deadline = System.currentTimeMillis() + config.getAdmissionTimeout();
+        while (queuedCount >= config.getQueueCapacity()) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                rejectedCounter.increment();
+                logger.warn("分析任务队列已满，拒绝任务, analysisId={}, type={}, queued={}",
+                        analysisId, analysisType, queuedCount);
+                throw new HistoryAnalysisException("系统繁忙，分析任务队列已满，请稍后重试", "ANALYSIS_QUEUE_FULL");
+            }
+            try {
+                lock.wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new HistoryAnalysisException("提交分析任务被中断", "ANALYSIS_QUEUE_FULL", e);
+            }
+        }
+    }
+
+    /**
+     * 按调度顺序把满足并发限制的任务交给工作线程
+     * 调用方必须持有lock
+     */
+    private void dispatch() {
+        while (activeCount < maxConcurrency) {
+            QueuedTask task = pollNext();
+            if (task == null) {
+                break;
+            }
+            queuedCount--;
+            queued.get(task.analysisType)[0]--;
+            running.get(task.analysisType)[0]++;
+            activeCount++;
+
+            try {
+                workers.execute(() -> runTask(task));
+            } catch (RejectedExecutionException e) {
+                running.get(task.analysisType)[0]--;
+                activeCount--;
+                logger.error("工作线程池拒绝执行分析任务, analysisId={}", task.analysisId, e);
+            }
+        }
+        lock.notifyAll();
+    }
+
+    /**
+     * 在车道之间加权轮转取出下一个可执行的任务；有额度的车道都没有可执行任务时重置各车道额度
+     * 调用方必须持有lock
+     */
+    private QueuedTask pollNext() {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            for (LaneQueue lane : lanes.values()) {
+                if (lane.credits > 0 && lane.size > 0) {
+                    QueuedTask task = lane.poll();
+                    if (task != null) {
+                        lane.credits--;
+                        return task;
+                    }
+                }
+            }
+            lanes.values().forEach(lane -> lane.credits = lane.weight);
+        }
+        return null;
+    }
+
+    /**
+     * 判断分析类型是否还有并发名额，调用方必须持有lock
+     */
+    private boolean hasCapacity(AnalysisResult.AnalysisType analysisType) {
+        return running.get(analysisType)[0] < typeLimits.get(analysisType);
+    }
+
+    /**
+     * 在工作线程中执行任务，结束后释放并发名额并继续调度
+     */
+    private void runTask(QueuedTask task) {
+        lanes.get(task.lane).waitTimer.record(System.nanoTime() - task.enqueuedAt, TimeUnit.NANOSECONDS);
+        try {
+            task.job.run();
+        } catch (Exception e) {
+            logger.error("分析任务执行异常, analysisId={}: {}", task.analysisId, e.getMessage(), e);
+        } finally {
+            synchronized (lock) {
+                running.get(task.analysisType)[0]--;
+                activeCount--;
+                dispatch();
+            }
+        }
+    }
+
+    /**
+     * 从等待队列中移除尚未开始执行的任务（任务被取消时调用），立即腾出队列空间
+     *
+     * @return 任务仍在排队并已被移除时返回true
+     */
+    public boolean remove(Long analysisId) {
+        synchronized (lock) {
+            for (LaneQueue lane : lanes.values()) {
+                QueuedTask task = lane.remove(analysisId);
+                if (task != null) {
+                    queuedCount--;
+                    queued.get(task.analysisType)[0]--;
+                    logger.info("已从等待队列移除分析任务, analysisId={}, queued={}", analysisId, queuedCount);
+                    lock.notifyAll();
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 获取等待执行的任务总数
+     */
+    public int getQueueDepth() {
+        synchronized (lock) {
+            return queuedCount;
+        }
+    }
+
+    /**
+     * 获取指定类型等待执行的任务数
+     */
+    public int getQueueDepth(AnalysisResult.AnalysisType analysisType) {
+        synchronized (lock) {
+            return queued.get(analysisType)[0];
+        }
+    }
+
+    /**
+     * 获取指定车道等待执行的任务数
+     */
+    public int getQueueDepth(Lane lane) {
+        synchronized (lock) {
+            return lanes.get(lane).size;
+        }
+    }
+
+    /**
+     * 获取指定车道中有任务排队的用户数
+     */
+    public int getWaitingUsers(Lane lane) {
+        synchronized (lock) {
+            return lanes.get(lane).flows.size();
+        }
+    }
+
+    /**
+     * 获取正在执行的任务总数
+     */
+    public int getActiveCount() {
+        synchronized (lock) {
+            return activeCount;
+        }
+    }
+
+    /**
+     * 获取指定类型正在执行的任务数
+     */
+    public int getActiveCount(AnalysisResult.AnalysisType analysisType) {
+        synchronized (lock) {
+            return running.get(analysisType)[0];
+        }
+    }
+
+    /**
+     * 获取可立即开始执行的空闲名额（总并发上限减去执行中和排队中的任务）
+     */
+    public int getIdleSlots() {
+        synchronized (lock) {
+            return Math.max(0, maxConcurrency - activeCount - queuedCount);
+        }
+    }
+
+    /**
+     * 关闭执行引擎
+     */
+    @PreDestroy
+    public void shutdown() {
+        logger.info("关闭分析任务执行引擎, 未执行任务数={}", getQueueDepth());
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(30, TimeUnit.SECONDS)) {
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * 车道：各用户的任务组成轮转环，按差额轮转出队，由lock保护
+     */
+    private class LaneQueue {
+        private final int weight;
+        private final Timer waitTimer;
+        private final Deque<UserFlow> ring = new ArrayDeque<>();
+        private final Map<Long, UserFlow> flows = new HashMap<>();
+        private int size = 0;
+        private int credits;
+
+        LaneQueue(int weight, Timer waitTimer) {
+            this.weight = weight;
+            this.waitTimer = waitTimer;
+            this.credits = weight;
+        }
+
+        void add(QueuedTask task) {
+            UserFlow flow = flows.get(task.userId);
+            if (flow == null) {
+                flow = new UserFlow();
+                flows.put(task.userId, flow);
+                ring.addLast(flow);
+            }
+            flow.add(task);
+            size++;
+        }
+
+        /**
+         * 差额轮转：从环首开始，额度足够支付其第一个可执行任务的用户出队该任务，
+         * 额度用完后轮到下一个用户；一整轮都没有用户额度足够时，所有有可执行任务的用户一次补足最小缺口
+         * （等价于连续进行若干轮，每轮每个用户获得一个单位额度）
+         */
+        QueuedTask poll() {
+            while (!ring.isEmpty()) {
+                long shortfall = Long.MAX_VALUE;
+                for (int i = 0, n = ring.size(); i < n; i++) {
+                    UserFlow flow = ring.peekFirst();
+                    QueuedTask task = flow.firstRunnable();
+                    if (task != null) {
+                        if (task.cost <= flow.deficit) {
+                            flow.deficit -= task.cost;
+                            take(flow, task);
+                            endTurnIfExhausted(flow);
+                            return task;
+                        }
+                        shortfall = Math.min(shortfall, task.cost - flow.deficit);
+                    }
+                    ring.addLast(ring.pollFirst());
+                }
+                if (shortfall == Long.MAX_VALUE) {
+                    // 车道中的任务所属类型都已达到并发上限
+                    return null;
+                }
+                for (UserFlow flow : ring) {
+                    if (flow.firstRunnable() != null) {
+                        flow.deficit += shortfall;
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * 额度不足以支付下一个任务时本轮结束，轮到下一个用户
+         */
+        private void endTurnIfExhausted(UserFlow flow) {
+            if (flow.size == 0 || ring.peekFirst() != flow) {
+                return;
+            }
+            QueuedTask next = flow.firstRunnable();
+            if (next == null || next.cost > flow.deficit) {
+                ring.addLast(ring.pollFirst());
+            }
+        }
+
+        QueuedTask remove(Long analysisId) {
+            for (UserFlow flow : ring) {
+                QueuedTask task = flow.find(analysisId);
+                if (task != null) {
+                    take(flow, task);
+                    return task;
+                }
+            }
+            return null;
+        }
+
+        private void take(UserFlow flow, QueuedTask task) {
+            flow.remove(task);
+            size--;
+            if (flow.size == 0) {
+                ring.remove(flow);
+                flows.remove(task.userId);
+            }
+        }
+    }
+
+    /**
+     * 单个用户在车道中的任务：按项目分组，项目之间轮流出队
+     */
+    private class UserFlow {
+        private final Deque<Deque<QueuedTask>> projects = new ArrayDeque<>();
+        private final Map<Long, Deque<QueuedTask>> byProject = new HashMap<>();
+        private long deficit = 0;
+        private int size = 0;
+
+        void add(QueuedTask task) {
+            Deque<QueuedTask> tasks = byProject.get(task.projectId);
+            if (tasks == null) {
+                tasks = new ArrayDeque<>();
+                byProject.put(task.projectId, tasks);
+                projects.addLast(tasks);
+            }
+            tasks.addLast(task);
+            size++;
+        }
+
+        /**
+         * 按项目轮转顺序找到第一个所属类型仍有并发名额的任务
+         */
+        QueuedTask firstRunnable() {
+            for (Deque<QueuedTask> tasks : projects) {
+                for (QueuedTask task : tasks) {
+                    if (hasCapacity(task.analysisType)) {
+                        return task;
+                    }
+                }
+            }
+            return null;
+        }
+
+        QueuedTask find(Long analysisId) {
+            for (Deque<QueuedTask> tasks : projects) {
+                for (QueuedTask task : tasks) {
+                    if (task.analysisId.equals(analysisId)) {
+                        return task;
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * 移除任务，任务所在项目轮到队尾
+         */
+        void remove(QueuedTask task) {
+            Deque<QueuedTask> tasks = byProject.get(task.projectId);
+            tasks.remove(task);
+            projects.remove(tasks);
+            if (tasks.isEmpty()) {
+                byProject.remove(task.projectId);
+            } else {
+                projects.addLast(tasks);
+            }
+            size--;
+            if (size == 0) {
+                deficit = 0;
+            }
+        }
+    }
+
+    /**
+     * 排队中的任务
+     */
+    private static class QueuedTask {
+        private final Long analysisId;
+        private final AnalysisResult.AnalysisType analysisType;
+        private final Long userId;
+        private final Long projectId;
+        private final Lane lane;
+        private final long cost;
+        private final Runnable job;
+        private final long enqueuedAt;
+
+        QueuedTask(Long analysisId, AnalysisResult.AnalysisType analysisType, Long userId, Long projectId,
+                   Lane lane, long cost, Runnable job, long enqueuedAt) {
+            this.analysisId = analysisId;
+            this.analysisType = analysisType;
+            this.userId = userId;
+            this.projectId = projectId;
+            this.lane = lane;
+            this.cost = cost;
+            this.job = job;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ * 分析文本来源
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-19 09:25:00
+ */
+package com.historyanalysis.service;
+
+import java.util.function.Supplier;
+
+/**
+ * 分析文本来源：单个文件的内容摘要和按需读取文本的方法
+ * 内容摘要为null时（旧数据）由分析过程读取文本后计算
+ */
+public class AnalysisTextSource {
+
+    private final String contentHash;
+    private final Supplier<String> textLoader;
+
+    public AnalysisTextSource(String contentHash, Supplier<String> textLoader) {
+        this.contentHash = contentHash;
+        this.textLoader = textLoader;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public String loadText() {
+        return textLoader.get();
+    }
+}
@@ -0,0 +1,413 @@
+/**
+ * 分块上传会话管理
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-12-04 09:10:00
+ */
+package com.historyanalysis.service;
+
+import com.historyanalysis.config.FileUploadConfig;
+import com.historyanalysis.dto.ChunkedUploadStatus;
+import com.historyanalysis.exception.HistoryAnalysisException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分块上传会话管理
+ *
+ * 大文件按固定大小分块上传，每块单独校验，网络中断后只需补传缺少的分块：
+ * - 创建会话时在暂存目录中分配文件，所有分块经同一个FileChannel按偏移量（N*chunkSize）写入，
+ *   分块可以乱序、并行上传，完成后文件已在最终内容位置，不需要再拼接复制
+ * - 每块带SHA-256校验和，分块开始写入时即清除其已接收标记，长度或校验和不符时保持未接收，
+ *   已接收的分块被错误数据覆盖后也必须重传；同一分块同一时间只允许一个请求写入
+ * - 会话信息保存在内存中，空闲超时或服务停止时删除会话及已接收的分块
+ * - 会话数、分块接收结果通过Micrometer导出
+ */
+@Service
+public class ChunkedUploadStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkedUploadStore.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileUploadConfig config;
+    private final FileBlobStore fileBlobStore;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService sweeper;
+
+    public ChunkedUploadStore(FileUploadConfig config, FileBlobStore fileBlobStore, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.fileBlobStore = fileBlobStore;
+        this.meterRegistry = meterRegistry;
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("chunked-upload-sweeper-"));
+        this.sweeper.scheduleWithFixedDelay(this::expireIdleSessions, 1, 1, TimeUnit.MINUTES);
+
+        Gauge.builder("file.chunked.sessions", sessions, Map::size)
+                .description("进行中的分块上传数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 创建上传会话
+     * 调用方负责检查项目权限、文件类型和大小
+     *
+     * @param projectId 项目ID
+     * @param userId 用户ID，之后的分块和完成请求必须来自同一用户
+     * @param fileName 原始文件名
+     * @param fileSize 文件大小（字节）
+     * @param sha256 整个文件的SHA-256摘要，完成时校验；可以为null
+     * @return 上传会话
+     * @throws IOException 创建暂存文件失败
+     */
+    public Session create(String projectId, String userId, String fileName, long fileSize, String sha256) throws IOException {
+        if (sessions.size() >= config.getMaxChunkedSessions()) {
+            throw new HistoryAnalysisException("系统繁忙，进行中的上传过多，请稍后重试", "CHUNKED_UPLOAD_SESSIONS_FULL");
+        }
+        String uploadId = UUID.randomUUID().toString();
+        Path path = fileBlobStore.newStagingFile(uploadId + ".part");
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Session session = new Session(uploadId, projectId, userId, fileName, fileSize, config.getChunkSize(),
+                sha256, path, channel);
+        sessions.put(uploadId, session);
+        logger.info("创建分块上传, uploadId={}, fileName={}, fileSize={}, totalChunks={}",
+                uploadId, fileName, fileSize, session.getTotalChunks());
+        return session;
+    }
+
+    /**
+     * 查询上传会话
+     *
+     * @param uploadId 上传ID
+     * @param userId 用户ID
+     * @return 上传会话
+     */
+    public Session get(String uploadId, String userId) {
+        Session session = sessions.get(uploadId);
+        if (session == null) {
+            throw new IllegalArgumentException("上传不存在或已过期");
+        }
+        if (!session.getUserId().equals(userId)) {
+            throw new IllegalArgumentException("无权限访问该上传");
+        }
+        session.touch();
+        return session;
+    }
+
+    /**
+     * 写入一个分块：边读取边计算校验和，按偏移量写入暂存文件
+     *
+     * @param uploadId 上传ID
+     * @param userId 用户ID
+     * @param index 分块序号（从0开始）
+     * @param sha256 分块的SHA-256校验和
+     * @param body 分块内容，写入完成后关闭
+     * @return 上传会话
+     * @throws IOException 读取或写入失败
+     */
+    public Session writeChunk(String uploadId, String userId, int index, String sha256, InputStream body) throws IOException {
+        Session session = get(uploadId, userId);
+        if (sha256 == null || sha256.isBlank()) {
+            throw new IllegalArgumentException("缺少分块校验和");
+        }
+        session.beginChunk(index);
+
+        boolean accepted = false;
+        long offset = (long) index * session.getChunkSize();
+        long expected = session.chunkLength(index);
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long written = 0;
+        try (InputStream in = body) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                if (written + read > expected) {
+                    throw new IllegalArgumentException("分块大小不正确");
+                }
+                digest.update(buffer, 0, read);
+                ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+                while (chunk.hasRemaining()) {
+                    written += session.channel.write(chunk, offset + written);
+                }
+            }
+            if (written != expected) {
+                throw new IllegalArgumentException("分块大小不正确");
+            }
+            if (!HexFormat.of().formatHex(digest.digest()).equalsIgnoreCase(sha256.trim())) {
+                throw new IllegalArgumentException("分块校验失败，请重新上传该分块");
+            }
+            accepted = true;
+        } finally {
+            session.endChunk(index, accepted);
+            chunkOutcome(accepted ? "accepted" : "rejected").increment();
+        }
+        return session;
+    }
+
+    /**
+     * 结束接收分块：检查所有分块均已收到并关闭暂存文件
+     * 之后由调用方创建文件记录，并调用remove删除会话
+     *
+     * @param uploadId 上传ID
+     * @param userId 用户ID
+     * @return 上传会话，getPath为完整的暂存文件
+     * @throws IOException 关闭文件失败
+     */
+    public Session finish(String uploadId, String userId) throws IOException {
+        Session session = get(uploadId, userId);
+        session.beginFinish();
+        try {
+            session.channel.close();
+        } catch (IOException e) {
+            remove(uploadId);
+            throw e;
+        }
+        return session;
+    }
+
+    /**
+     * 删除会话；暂存文件未被移动到存储中时一并删除
+     *
+     * @param uploadId 上传ID
+     */
+    public void remove(String uploadId) {
+        Session session = sessions.remove(uploadId);
+        if (session == null) {
+            return;
+        }
+        try {
+            session.channel.close();
+            Files.deleteIfExists(session.getPath());
+        } catch (IOException e) {
+            logger.warn("删除分块上传暂存文件失败, uploadId={}: {}", uploadId, e.getMessage());
+        }
+    }
+
+    /**
+     * 取消上传
+     *
+     * @param uploadId 上传ID
+     * @param userId 用户ID
+     */
+    public void abort(String uploadId, String userId) {
+        get(uploadId, userId);
+        remove(uploadId);
+        logger.info("取消分块上传, uploadId={}", uploadId);
+    }
+
+    /**
+     * 上传会话的状态
+     */
+    public ChunkedUploadStatus statusOf(Session session) {
+        return session.status();
+    }
+
+    private void expireIdleSessions() {
+        long deadline = System.currentTimeMillis() - config.getChunkedSessionTimeout();
+        sessions.values().stream()
+                .filter(session -> session.isIdleSince(deadline))
+                .map(Session::getUploadId)
+                .forEach(uploadId -> {
+                    logger.info("分块上传空闲超时，删除已接收的分块, uploadId={}", uploadId);
+                    remove(uploadId);
+                });
+    }
+
+    private Counter chunkOutcome(String outcome) {
+        return Counter.builder("file.chunked.chunks")
+                .description("接收的上传分块数")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256不可用", e);
+        }
+    }
+
+    /**
+     * 会话只保存在内存中，服务停止时删除未完成上传的暂存文件
+     */
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+        new ArrayList<>(sessions.keySet()).forEach(this::remove);
+    }
+
+    /**
+     * 分块上传会话
+     */
+    public static final class Session {
+        private final String uploadId;
+        private final String projectId;
+        private final String userId;
+        private final String fileName;
+        private final long fileSize;
+        private final int chunkSize;
+        private final int totalChunks;
+        private final String sha256;
+        private final Path path;
+        private final FileChannel channel;
+
+        private final BitSet received;
+        private final BitSet writing;
+        private boolean finishing = false;
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        Session(String uploadId, String projectId, String userId, String fileName, long fileSize, int chunkSize,
+                String sha256, Path path, FileChannel channel) {
+            this.uploadId = uploadId;
+            this.projectId = projectId;
+            this.userId = userId;
+            this.fileName = fileName;
+            this.fileSize = fileSize;
+            this.chunkSize = chunkSize;
+            this.totalChunks = (int) ((fileSize + chunkSize - 1) / chunkSize);
+            this.sha256 = sha256;
+            this.path = path;
+            this.channel = channel;
+            this.received = new BitSet(totalChunks);
+            this.writing = new BitSet(totalChunks);
+        }
+
+        long chunkLength(int index) {
+            return Math.min(chunkSize, fileSize - (long) index * chunkSize);
+        }
+
+        synchronized void beginChunk(int index) {
+            if (index < 0 || index >= totalChunks) {
+                throw new IllegalArgumentException("分块序号超出范围");
+            }
+            if (finishing) {
+                throw new IllegalArgumentException("上传已完成");
+            }
+            if (writing.get(index)) {
+                throw new IllegalArgumentException("该分块正在上传，请稍后重试");
+            }
+            // 写入会覆盖文件中该分块的内容，校验通过之前不能再算作已接收
+            writing.set(index);
+            received.clear(index);
+        }
+
+        synchronized void endChunk(int index, boolean accepted) {
+            writing.clear(index);
+            if (accepted) {
+                received.set(index);
+            }
+            touch();
+        }
+
+        synchronized void beginFinish() {
+            if (finishing) {
+                throw new IllegalArgumentException("上传正在完成");
+            }
+            if (!writing.isEmpty()) {
+                throw new IllegalArgumentException("仍有分块在上传，请稍后再完成");
+            }
+            int count = received.cardinality();
+            if (count < totalChunks) {
+                throw new IllegalArgumentException(String.format("分块未全部上传，已接收%d/%d", count, totalChunks));
+            }
+            finishing = true;
+        }
+
+        synchronized boolean isIdleSince(long deadline) {
+            return !finishing && writing.isEmpty() && lastAccess < deadline;
+        }
+
+        synchronized ChunkedUploadStatus status() {
+            List<int[]> ranges = new ArrayList<>();
+            for (int start = received.nextSetBit(0); start >= 0; ) {
+                int end = received.nextClearBit(start);
+                ranges.add(new int[]{start, end - 1});
+                start = received.nextSetBit(end);
+            }
+            return ChunkedUploadStatus.builder()
+                    .uploadId(uploadId)
+                    .fileName(fileName)
+                    .fileSize(fileSize)
+                    .chunkSize(chunkSize)
+                    .totalChunks(totalChunks)
+                    .receivedChunks(received.cardinality())
+                    .receivedRanges(ranges)
+                    .build();
+        }
+
+        void touch() {
+            lastAccess = System.currentTimeMillis();
+        }
+
+        public String getUploadId() {
+            return uploadId;
+        }
+
+        public String getProjectId() {
+            return projectId;
+        }
+
+        public String getUserId() {
+            return userId;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public long getFileSize() {
+            return fileSize;
+        }
+
+        public int getChunkSize() {
+            return chunkSize;
+        }
+
+        public int getTotalChunks() {
+            return totalChunks;
+        }
+
+        /**
+         * 创建会话时声明的整个文件摘要，可能为null
+         */
+        public String getSha256() {
+            return sha256;
+        }
+
+        /**
+         * 暂存文件路径
+         */
+        public Path getPath() {
+            return path;
+        }
+    }
+}
@@ -0,0 +1,365 @@
+/**
+ * 按内容寻址的文件存储
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-12-02 09:10:00
+ */
+package com.historyanalysis.service;
+
+import com.historyanalysis.entity.FileBlob;
+import com.historyanalysis.repository.FileBlobRepository;
+import com.historyanalysis.util.UploadStreamWriter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 按内容寻址的文件存储
+ *
+ * 上传文件按内容的SHA-256摘要保存在 {上传目录}/blobs/ab/cd/{摘要} 下（前两级目录取摘要的前4个字符，避免单个目录文件过多），
+ * 相同内容无论上传到哪个项目都只保存一份：
+ * - 上传内容先写入同一文件系统上的暂存文件，写入时计算摘要；内容已存在时删除暂存文件，否则原子移动到最终位置
+ * - 每条UploadedFile记录持有一个引用，引用计数保存在file_blobs表中，与文件记录在同一事务中增减
+ * - 引用计数的UPDATE持有行锁直到事务结束，同一内容的上传和删除互相串行，不会删除刚被新记录引用的文件
+ * - 磁盘文件只在事务结束后删除：最后一个引用释放的事务提交后、或新写入内容的事务回滚后，
+ *   在独立事务中删除引用计数仍为0的记录（持有行锁），再删除磁盘文件；事务回滚时磁盘文件不受影响
+ * - 服务在上述两步之间停止时留下的0引用记录和文件由定时清理删除
+ * - 旧数据的文件不在存储目录中，释放该记录的事务提交后直接删除
+ * - 新写入、重复内容和释放结果通过Micrometer导出
+ */
+@Service
+public class FileBlobStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileBlobStore.class);
+
+    /**
+     * 计数记录在上传和删除之间被并发删除时的重试次数
+     */
+    private static final int MAX_ATTEMPTS = 3;
+
+    /**
+     * 定时清理只删除创建超过该时长的0引用记录，避免与刚创建记录、尚未增加引用的上传竞争
+     */
+    private static final Duration UNREFERENCED_GRACE = Duration.ofMinutes(10);
+
+    private final Path root;
+    private final Path staging;
+    private final FileBlobRepository fileBlobRepository;
+    private final TransactionTemplate newTransaction;
+    private final MeterRegistry meterRegistry;
+
+    public FileBlobStore(@Value("${file.upload.path}") String uploadDir,
+                         FileBlobRepository fileBlobRepository,
+                         PlatformTransactionManager transactionManager,
+                         MeterRegistry meterRegistry) {
+        this.root = Paths.get(uploadDir, "blobs");
+        this.staging = root.resolve(".staging");
+        this.fileBlobRepository = fileBlobRepository;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 内容在存储中的路径
+     *
+     * @param sha256 内容摘要（64位小写十六进制）
+     * @return 文件路径
+     */
+    public Path pathOf(String sha256) {
+        return root.resolve(sha256.substring(0, 2)).resolve(sha256.substring(2, 4)).resolve(sha256);
+    }
+
+    /**
+     * 将上传内容写入暂存文件，同时计算摘要并保留文件头
+     *
+     * @param input 上传内容，写入完成后关闭
+     * @param maxSize 最大字节数，超过时抛出IllegalArgumentException
+     * @return 暂存文件
+     * @throws IOException 读取或写入失败
+     */
+    public StagedBlob stage(InputStream input, long maxSize) throws IOException {
+        Files.createDirectories(staging);
+        Path path = staging.resolve(UUID.randomUUID().toString());
+        return new StagedBlob(path, UploadStreamWriter.write(input, path, maxSize));
+    }
+
+    /**
+     * 在暂存目录中分配一个文件路径，用于分块上传按偏移量写入
+     *
+     * @param name 文件名
+     * @return 文件路径，与存储目录在同一文件系统上
+     * @throws IOException 创建目录失败
+     */
+    public Path newStagingFile(String name) throws IOException {
+        Files.createDirectories(staging);
+        return staging.resolve(name);
+    }
+
+    /**
+     * 把已写入暂存目录的文件作为暂存文件，读取一次计算摘要并保留文件头
+     *
+     * @param path 暂存目录中的文件（由newStagingFile分配）
+     * @return 暂存文件
+     * @throws IOException 读取失败
+     */
+    public StagedBlob stageFile(Path path) throws IOException {
+        return new StagedBlob(path, UploadStreamWriter.scan(path));
+    }
+
+    /**
+     * 为暂存文件的内容增加一个引用，并确保内容已在存储中
+     * 需要在保存文件记录的事务中调用：事务回滚时引用计数一并回滚，回滚后内容没有其他引用时删除
+     *
+     * @param staged 暂存文件，调用后不再可用
+     * @return 内容在存储中的路径
+     * @throws IOException 移动文件失败
+     */
+    public Path store(StagedBlob staged) throws IOException {
+        String hash = staged.getSha256();
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            if (fileBlobRepository.incrementRefCount(hash) == 0) {
+                createIfAbsent(hash, staged.getSize());
+                continue;
+            }
+
+            Path target = pathOf(hash);
+            if (Files.exists(target)) {
+                discard(staged);
+                uploadOutcome("deduplicated").increment();
+                logger.debug("文件内容已存在，复用已有文件, hash={}", hash);
+            } else {
+                try {
+                    Files.createDirectories(target.getParent());
+                    Files.move(staged.getPath(), target, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException e) {
+                    // 批量上传中单个文件失败不回滚整个事务，撤销本次增加的引用
+                    fileBlobRepository.decrementRefCount(hash);
+                    throw e;
+                }
+                uploadOutcome("stored").increment();
+            }
+            afterRollback(() -> reclaim(hash));
+            return target;
+        }
+        discard(staged);
+        throw new IllegalStateException("文件存储繁忙，请重试");
+    }
+
+    /**
+     * 删除暂存文件
+     *
+     * @param staged 暂存文件
+     */
+    public void discard(StagedBlob staged) {
+        try {
+            Files.deleteIfExists(staged.getPath());
+        } catch (IOException e) {
+            logger.warn("删除暂存文件失败, path={}: {}", staged.getPath(), e.getMessage());
+        }
+    }
+
+    /**
+     * 释放文件记录持有的引用，最后一个引用释放时在事务提交后删除磁盘文件
+     * 需要在删除文件记录的事务中调用：事务回滚时引用计数一并回滚，磁盘文件保留
+     *
+     * @param fileHash 文件内容摘要，旧数据可能为null
+     * @param filePath 文件记录中的存储路径
+     * @return 磁盘文件将在事务提交后删除时返回true
+     */
+    public boolean release(String fileHash, String filePath) {
+        if (!StringUtils.hasText(filePath)) {
+            return false;
+        }
+        Path path = Paths.get(filePath);
+        if (fileHash == null || !path.equals(pathOf(fileHash))) {
+            // 旧数据：文件只属于这一条记录
+            afterCommit(() -> deleteLegacyFile(path));
+            return true;
+        }
+
+        if (fileBlobRepository.decrementRefCount(fileHash) == 0) {
+            logger.warn("文件内容没有引用计数记录, hash={}", fileHash);
+            return false;
+        }
+        if (fileBlobRepository.findRefCountByHash(fileHash).orElse(0) > 0) {
+            releaseOutcome("retained").increment();
+            return false;
+        }
+
+        afterCommit(() -> {
+            if (reclaim(fileHash)) {
+                releaseOutcome("deleted").increment();
+            }
+        });
+        return true;
+    }
+
+    /**
+     * 定时删除0引用的记录和磁盘文件：服务在事务结束和删除文件之间停止时留下
+     */
+    @Scheduled(fixedDelayString = "${file.upload.blob-sweep-interval:600000}",
+               initialDelayString = "${file.upload.blob-sweep-interval:600000}")
+    public void sweepUnreferenced() {
+        List<String> hashes = fileBlobRepository.findUnreferencedHashesCreatedBefore(
+                LocalDateTime.now().minus(UNREFERENCED_GRACE));
+        long deleted = hashes.stream().filter(this::reclaim).count();
+        if (deleted > 0) {
+            logger.info("清理无引用的文件内容, 数量={}", deleted);
+        }
+    }
+
+    /**
+     * 在独立事务中删除引用计数为0的记录和磁盘文件
+     * DELETE持有行锁直到磁盘文件删除后才提交，并发上传的引用计数UPDATE等待提交后重新创建记录和文件
+     *
+     * @param hash 内容摘要
+     * @return 记录和磁盘文件被删除时返回true；内容又被引用时返回false
+     */
+    boolean reclaim(String hash) {
+        try {
+            return Boolean.TRUE.equals(newTransaction.execute(status -> {
+                if (fileBlobRepository.deleteIfUnreferenced(hash) == 0) {
+                    return false;
+                }
+                try {
+                    Files.deleteIfExists(pathOf(hash));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                logger.debug("文件内容已无引用，删除磁盘文件, hash={}", hash);
+                return true;
+            }));
+        } catch (RuntimeException e) {
+            logger.warn("删除无引用的文件内容失败，等待定时清理, hash={}: {}", hash, e.getMessage());
+            return false;
+        }
+    }
+
+    private void deleteLegacyFile(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.warn("删除磁盘文件失败, path={}: {}", path, e.getMessage());
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private static void afterRollback(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_ROLLED_BACK) {
+                        action.run();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * 在独立事务中创建引用计数为0的记录，并发上传已创建时忽略
+     */
+    private void createIfAbsent(String hash, long size) {
+        try {
+            newTransaction.executeWithoutResult(status -> {
+                if (!fileBlobRepository.existsById(hash)) {
+                    fileBlobRepository.saveAndFlush(new FileBlob(hash, size));
+                }
+            });
+        } catch (DataIntegrityViolationException e) {
+            logger.debug("文件内容记录已由并发上传创建, hash={}", hash);
+        }
+    }
+
+    private Counter uploadOutcome(String outcome) {
+        return Counter.builder("file.blobs.uploads")
+                .description("按内容存储的上传文件数")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private Counter releaseOutcome(String outcome) {
+        return Counter.builder("file.blobs.releases")
+                .description("释放的文件内容引用数")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 暂存文件：已写入磁盘但尚未放入存储的上传内容
+     */
+    public static final class StagedBlob {
+        private final Path path;
+        private final UploadStreamWriter.WrittenFile written;
+
+        StagedBlob(Path path, UploadStreamWriter.WrittenFile written) {
+            this.path = path;
+            this.written = written;
+        }
+
+        /**
+         * 暂存文件路径
+         */
+        public Path getPath() {
+            return path;
+        }
+
+        /**
+         * 内容字节数
+         */
+        public long getSize() {
+            return written.getSize();
+        }
+
+        /**
+         * 内容的SHA-256摘要
+         */
+        public String getSha256() {
+            return written.getSha256();
+        }
+
+        /**
+         * 文件头，用于类型识别
+         */
+        public byte[] getHead() {
+            return written.getHead();
+        }
+    }
+}
@@ -6,6 +6,8 @@
  */
 package com.historyanalysis.service;
 
+import com.historyanalysis.dto.ChunkedUploadStatus;
+import com.historyanalysis.dto.FileUploadResult;
 import com.historyanalysis.entity.UploadedFile;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -29,8 +31,21 @@ public interface FileService {
 
     /**
      * 批量上传文件
+     * 允许部分成功，按请求中的顺序返回每个文件的结果
      */
-    List<UploadedFile> uploadFiles(String projectId, String userId, List<MultipartFile> files);
+    List<FileUploadResult> uploadFiles(String projectId, String userId, List<MultipartFile> files);
+
+    /**
+     * 创建分块上传
+     *
+     * @param sha256 整个文件的SHA-256摘要，完成时校验；可以为null
+     */
+    ChunkedUploadStatus initiateChunkedUpload(String projectId, String userId, String fileName, long fileSize, String sha256);
+
+    /**
+     * 完成分块上传，创建文件记录并在后台提取文本
+     */
+    UploadedFile completeChunkedUpload(String uploadId, String userId);
 
     /**
      * 根据ID查找文件
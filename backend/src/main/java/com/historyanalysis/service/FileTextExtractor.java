@@ -0,0 +1,324 @@
+/**
+ * 文件文本后台提取
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-30 09:10:00
+ */
+package com.historyanalysis.service;
+
+import com.historyanalysis.config.FileExtractionConfig;
+import com.historyanalysis.entity.UploadedFile;
+import com.historyanalysis.repository.UploadedFileRepository;
+import com.historyanalysis.util.ContentHashUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.apache.tika.Tika;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 文件文本后台提取
+ *
+ * 上传请求在文件写入磁盘、记录保存后立即返回，文本提取在固定大小的线程池中进行：
+ * - 文件记录以EXTRACTING状态保存，事务提交后才提交提取任务，工作线程总能读到文件记录
+ * - 提取完成后写入文本和内容摘要并标记为EXTRACTED，失败或超时标记为FAILED并记录原因
+ * - 同一内容只解析一次：结果同时写入文件内容摘要相同、仍在等待提取的其他文件，这些文件的任务随后直接跳过
+ * - 每个文件的解析有超时上限：超时后关闭输入流并中断解析线程，不会长期占用工作线程
+ * - 提取的字符数有上限，超出部分截断
+ * - 排队已满时文件直接标记为FAILED，可通过重新提取接口再次提交
+ * - 应用启动后重新提交上次停止时仍处于EXTRACTING状态的文件
+ * - 排队和执行中的文件数、提取耗时、结果和提取字符数通过Micrometer导出
+ */
+@Service
+public class FileTextExtractor {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileTextExtractor.class);
+
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    private final FileExtractionConfig config;
+    private final UploadedFileRepository uploadedFileRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final Tika tika;
+
+    private final ThreadPoolExecutor workers;
+    private final ScheduledExecutorService watchdogs;
+
+    /**
+     * 已提交且尚未结束的文件ID，同一文件不会重复排队
+     */
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    private final Timer duration;
+    private final Counter extractedChars;
+
+    @Autowired
+    public FileTextExtractor(FileExtractionConfig config,
+                             UploadedFileRepository uploadedFileRepository,
+                             PlatformTransactionManager transactionManager,
+                             MeterRegistry meterRegistry) {
+        this(config, uploadedFileRepository, transactionManager, meterRegistry, new Tika());
+    }
+
+    FileTextExtractor(FileExtractionConfig config,
+                      UploadedFileRepository uploadedFileRepository,
+                      PlatformTransactionManager transactionManager,
+                      MeterRegistry meterRegistry,
+                      Tika tika) {
+        this.config = config;
+        this.uploadedFileRepository = uploadedFileRepository;
+        // 队列已满时在afterCommit回调中记录失败，此时原事务已提交，必须开启新事务才能写入
+        this.transactionTemplate = transactionManager != null ? new TransactionTemplate(transactionManager) : null;
+        if (transactionTemplate != null) {
+            transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        }
+        this.meterRegistry = meterRegistry;
+        this.tika = tika;
+
+        int poolSize = Math.max(1, config.getPoolSize());
+        this.workers = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, config.getQueueCapacity())),
+                new CustomizableThreadFactory("file-extraction-"));
+        this.watchdogs = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("file-extraction-watchdog-"));
+
+        Gauge.builder("file.extraction.queue.depth", workers, executor -> executor.getQueue().size())
+                .description("等待文本提取的文件数")
+                .register(meterRegistry);
+        Gauge.builder("file.extraction.active", workers, ThreadPoolExecutor::getActiveCount)
+                .description("正在提取文本的文件数")
+                .register(meterRegistry);
+        this.duration = Timer.builder("file.extraction.duration")
+                .description("单个文件的文本提取耗时")
+                .register(meterRegistry);
+        this.extractedChars = Counter.builder("file.extraction.chars")
+                .description("提取的文本字符数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 提交文件的文本提取任务
+     * 在事务中调用时等事务提交后再提交，事务回滚则不提交
+     *
+     * @param fileId 文件ID，文件记录应已处于EXTRACTING状态
+     */
+    public void submit(String fileId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(fileId);
+                }
+            });
+        } else {
+            enqueue(fileId);
+        }
+    }
+
+    /**
+     * 应用启动后重新提交仍处于EXTRACTING状态的文件（上次停止时未完成的提取）
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumePending() {
+        try {
+            List<String> fileIds = uploadedFileRepository.findIdsByExtractionStatus(UploadedFile.ExtractionStatus.EXTRACTING);
+            if (!fileIds.isEmpty()) {
+                logger.info("重新提交未完成的文本提取, 文件数={}", fileIds.size());
+                fileIds.forEach(this::enqueue);
+            }
+        } catch (Exception e) {
+            logger.error("查询未完成的文本提取失败: {}", e.getMessage(), e);
+        }
+    }
+
+    public int getQueueDepth() {
+        return workers.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return workers.getActiveCount();
+    }
+
+    private void enqueue(String fileId) {
+        if (!pending.add(fileId)) {
+            return;
+        }
+        try {
+            workers.execute(() -> run(fileId));
+        } catch (RejectedExecutionException e) {
+            pending.remove(fileId);
+            logger.warn("文本提取队列已满, fileId={}", fileId);
+            fail(fileId, "文本提取队列已满，请稍后重新提取", "rejected");
+        }
+    }
+
+    private void run(String fileId) {
+        long start = System.nanoTime();
+        try {
+            Optional<String> filePath = uploadedFileRepository.findFilePathById(fileId);
+            if (filePath.isEmpty()) {
+                logger.debug("文件已删除，跳过文本提取, fileId={}", fileId);
+                return;
+            }
+
+            if (uploadedFileRepository.findExtractionStatusById(fileId).orElse(null) != UploadedFile.ExtractionStatus.EXTRACTING) {
+                // 内容相同的文件已先完成提取，结果已一并写入
+                logger.debug("文件已不在等待提取，跳过文本提取, fileId={}", fileId);
+                return;
+            }
+
+            String fileHash = uploadedFileRepository.findFileHashById(fileId).orElse(null);
+            String text = extract(Paths.get(filePath.get()));
+            String contentHash = ContentHashUtil.sha256Hex(text);
+            transactionTemplate.executeWithoutResult(status -> uploadedFileRepository.completeExtractionForContent(
+                    fileId, fileHash, text, contentHash,
+                    UploadedFile.ExtractionStatus.EXTRACTED, UploadedFile.ExtractionStatus.EXTRACTING));
+            extractedChars.increment(text.length());
+            outcome("extracted").increment();
+            logger.info("文件文本提取成功, fileId={}, textLength={}, 耗时={}ms",
+                    fileId, text.length(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (TimeoutException e) {
+            logger.warn("文件文本提取超时, fileId={}, timeout={}ms", fileId, config.getTimeout());
+            fail(fileId, "文本提取超时", "timeout");
+        } catch (Exception e) {
+            logger.warn("文件文本提取失败, fileId={}: {}", fileId, e.getMessage());
+            fail(fileId, "文本提取失败: " + e.getMessage(), "failed");
+        } finally {
+            pending.remove(fileId);
+            duration.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 在超时和字符数上限内提取文件文本
+     *
+     * @param path 文件路径
+     * @return 提取的文本，超过字符数上限时截断
+     * @throws TimeoutException 解析超过超时时间
+     */
+    String extract(Path path) throws IOException, TikaException, TimeoutException {
+        Metadata metadata = new Metadata();
+        TikaInputStream stream = TikaInputStream.get(path, metadata);
+        Watchdog watchdog = new Watchdog(Thread.currentThread(), stream);
+        ScheduledFuture<?> timer = config.getTimeout() > 0
+                ? watchdogs.schedule(watchdog::fire, config.getTimeout(), TimeUnit.MILLISECONDS)
+                : null;
+        String text;
+        try {
+            text = tika.parseToString(stream, metadata, config.getMaxChars());
+        } catch (IOException | TikaException e) {
+            if (watchdog.hasFired()) {
+                throw new TimeoutException("文本提取超时");
+            }
+            throw e;
+        } finally {
+            if (timer != null) {
+                timer.cancel(false);
+            }
+            watchdog.finish();
+            stream.close();
+        }
+        if (watchdog.hasFired()) {
+            throw new TimeoutException("文本提取超时");
+        }
+        return text;
+    }
+
+    private void fail(String fileId, String error, String outcome) {
+        String message = error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error;
+        try {
+            transactionTemplate.executeWithoutResult(status -> uploadedFileRepository.failExtraction(
+                    fileId, UploadedFile.ExtractionStatus.FAILED, message));
+        } catch (Exception e) {
+            logger.error("记录文本提取失败状态失败, fileId={}: {}", fileId, e.getMessage(), e);
+        }
+        outcome(outcome).increment();
+    }
+
+    private Counter outcome(String outcome) {
+        return Counter.builder("file.extraction.files")
+                .description("文本提取结束的文件数")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 关闭提取线程池，未完成的文件保持EXTRACTING状态，下次启动时重新提交
+     */
+    @PreDestroy
+    public void shutdown() {
+        logger.info("关闭文件文本提取, 未执行文件数={}", getQueueDepth());
+        watchdogs.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    /**
+     * 解析超时处理：关闭输入流使解析器读取失败，并中断解析线程；
+     * 解析结束后不再生效，解析线程上残留的中断标记在finish时清除
+     */
+    private static class Watchdog {
+        private final Thread thread;
+        private final TikaInputStream stream;
+        private boolean finished = false;
+        private volatile boolean fired = false;
+
+        Watchdog(Thread thread, TikaInputStream stream) {
+            this.thread = thread;
+            this.stream = stream;
+        }
+
+        synchronized void fire() {
+            if (finished) {
+                return;
+            }
+            fired = true;
+            try {
+                stream.close();
+            } catch (IOException ignored) {
+                // 只为打断解析
+            }
+            thread.interrupt();
+        }
+
+        synchronized void finish() {
+            finished = true;
+            Thread.interrupted();
+        }
+
+        boolean hasFired() {
+            return fired;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/**
+ * NLP调用自适应并发限制器
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-28 09:00:00
+ */
+package com.historyanalysis.service;
+
+import com.historyanalysis.config.NlpServiceConfig;
+import com.historyanalysis.exception.NlpServiceException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * NLP调用自适应并发限制器
+ *
+ * 不再依赖人工设定的并发数，而是根据NLP服务的实际延迟持续调整同时进行的调用数上限（梯度算法）：
+ * - 每个端点维护延迟基线（近期最小延迟，近似不排队时的处理时间），不同端点的延迟差异不会互相干扰
+ * - 每次调用成功后以 基线×容忍倍数/本次延迟 作为梯度（限制在0.5~1），
+ *   新上限 = 上限×梯度 + sqrt(上限)，并与旧上限平滑混合；延迟未升高时上限缓慢增长，NLP服务开始排队时上限随之下降
+ * - 在途调用不足上限一半时不提高上限，避免空闲时上限无限增长
+ * - 超时和服务端错误时上限乘以backoffRatio；4xx错误和被取消的调用不影响上限
+ * - 超过上限的调用排队等待，已有调用排队时新调用不插队；排队过长或等待超时时以NLP_OVERLOADED拒绝
+ * - 当前上限、在途和排队调用数、各端点延迟及基线通过Micrometer导出
+ */
+@Service
+public class NlpConcurrencyLimiter {
+
+    private final NlpServiceConfig.Limiter limiterConfig;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Baseline> baselines = new ConcurrentHashMap<>();
+    private final Counter rejected;
+
+    /**
+     * 以下状态由lock保护
+     */
+    private final Object lock = new Object();
+    private double limit;
+    private int inFlight = 0;
+    private int queued = 0;
+
+    public NlpConcurrencyLimiter(NlpServiceConfig config, MeterRegistry meterRegistry) {
+        this.limiterConfig = config.getLimiter();
+        this.meterRegistry = meterRegistry;
+        this.limit = clamp(limiterConfig.getInitialLimit());
+
+        Gauge.builder("nlp.limiter.limit", this, NlpConcurrencyLimiter::getLimit)
+                .description("NLP调用当前的并发上限")
+                .register(meterRegistry);
+        Gauge.builder("nlp.limiter.inflight", this, NlpConcurrencyLimiter::getInFlight)
+                .description("NLP在途调用数")
+                .register(meterRegistry);
+        Gauge.builder("nlp.limiter.queued", this, NlpConcurrencyLimiter::getQueued)
+                .description("等待并发名额的NLP调用数")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("nlp.limiter.rejected")
+                .description("因排队过长或等待超时被拒绝的NLP调用数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 在并发上限内执行调用，超过上限时排队等待
+     *
+     * @param endpoint 端点路径或其最后一段，用于按端点维护延迟基线
+     * @param call 实际调用
+     * @return 调用结果
+     * @throws NlpServiceException 排队过长或等待超时（NLP_OVERLOADED），或等待期间被中断
+     */
+    public <T> T execute(String endpoint, Supplier<T> call) {
+        if (!limiterConfig.isEnabled()) {
+            return call.get();
+        }
+        int inFlightAtStart = acquire();
+        long start = System.nanoTime();
+        try {
+            T result = call.get();
+            onSuccess(endpoint, System.nanoTime() - start, inFlightAtStart);
+            return result;
+        } catch (RuntimeException e) {
+            if (!Thread.currentThread().isInterrupted() && !(e instanceof HttpClientErrorException)) {
+                onDrop();
+            }
+            throw e;
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * 当前并发上限
+     */
+    public int getLimit() {
+        synchronized (lock) {
+            return (int) limit;
+        }
+    }
+
+    public int getInFlight() {
+        synchronized (lock) {
+            return inFlight;
+        }
+    }
+
+    public int getQueued() {
+        synchronized (lock) {
+            return queued;
+        }
+    }
+
+    /**
+     * 获取并发名额，返回获取后的在途调用数
+     */
+    private int acquire() {
+        synchronized (lock) {
+            if (inFlight < (int) limit && queued == 0) {
+                return ++inFlight;
+            }
+            long maxWait = limiterConfig.getMaxWaitMillis();
+            if (maxWait <= 0 || queued >= limiterConfig.getMaxQueued()) {
+                throw overloaded();
+            }
+
+            queued++;
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWait);
+            try {
+                while (inFlight >= (int) limit) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        throw overloaded();
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                }
+                return ++inFlight;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new NlpServiceException("调用被中断", e);
+            } finally {
+                queued--;
+            }
+        }
+    }
+
+    private NlpServiceException overloaded() {
+        rejected.increment();
+        return new NlpServiceException("NLP服务繁忙，并发已达上限", "NLP_OVERLOADED");
+    }
+
+    private void release() {
+        synchronized (lock) {
+            inFlight--;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * 按本次延迟与端点基线的比值调整上限
+     */
+    private void onSuccess(String endpoint, long elapsedNanos, int inFlightAtStart) {
+        long rttNanos = Math.max(1, elapsedNanos);
+        Baseline baseline = baselines.computeIfAbsent(endpoint.substring(endpoint.lastIndexOf('/') + 1), Baseline::new);
+        long baselineRtt = baseline.update(rttNanos);
+
+        synchronized (lock) {
+            if (inFlightAtStart < limit / 2) {
+                // 调用方本身的并发不足，延迟不能说明NLP服务的承载能力
+                return;
+            }
+            double gradient = Math.max(0.5, Math.min(1.0, limiterConfig.getRttTolerance() * baselineRtt / rttNanos));
+            double target = limit * gradient + Math.sqrt(limit);
+            double smoothing = limiterConfig.getSmoothing();
+            setLimit(limit * (1 - smoothing) + target * smoothing);
+        }
+    }
+
+    /**
+     * 超时或服务端错误：乘性降低上限
+     */
+    private void onDrop() {
+        synchronized (lock) {
+            setLimit(limit * limiterConfig.getBackoffRatio());
+        }
+    }
+
+    private void setLimit(double newLimit) {
+        double previous = limit;
+        limit = clamp(newLimit);
+        if ((int) limit > (int) previous) {
+            lock.notifyAll();
+        }
+    }
+
+    private double clamp(double value) {
+        return Math.max(limiterConfig.getMinLimit(), Math.min(limiterConfig.getMaxLimit(), value));
+    }
+
+    /**
+     * 单个端点的延迟基线：最近baselineWindow到2×baselineWindow次成功调用中的最小延迟，
+     * 近似NLP服务不排队时的处理时间；两个样本桶轮换，服务整体变慢后基线随之更新
+     */
+    private class Baseline {
+        private final Timer rtt;
+        private long previousMin = Long.MAX_VALUE;
+        private long currentMin = Long.MAX_VALUE;
+        private int samples = 0;
+
+        Baseline(String endpoint) {
+            this.rtt = Timer.builder("nlp.limiter.rtt")
+                    .description("NLP调用延迟")
+                    .tag("endpoint", endpoint)
+                    .register(meterRegistry);
+            Gauge.builder("nlp.limiter.rtt.baseline", this, baseline -> baseline.value() / 1_000_000.0)
+                    .description("NLP端点延迟基线（毫秒）")
+                    .tag("endpoint", endpoint)
+                    .register(meterRegistry);
+        }
+
+        synchronized long update(long rttNanos) {
+            rtt.record(rttNanos, TimeUnit.NANOSECONDS);
+            currentMin = Math.min(currentMin, rttNanos);
+            if (++samples >= Math.max(1, limiterConfig.getBaselineWindow())) {
+                previousMin = currentMin;
+                currentMin = Long.MAX_VALUE;
+                samples = 0;
+            }
+            return Math.min(previousMin, currentMin);
+        }
+
+        synchronized double value() {
+            long min = Math.min(previousMin, currentMin);
+            return min == Long.MAX_VALUE ? 0 : min;
+        }
+    }
+}
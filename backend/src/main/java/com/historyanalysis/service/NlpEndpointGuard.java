@@ -0,0 +1,309 @@
+/**
+ * NLP服务端点熔断与并发隔离
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-26 09:00:00
+ */
+package com.historyanalysis.service;
+
+import com.historyanalysis.config.NlpServiceConfig;
+import com.historyanalysis.exception.NlpServiceException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * NLP服务端点熔断与并发隔离
+ *
+ * 每个端点（端点路径最后一段，如word-frequency、summary）独立维护：
+ * - 熔断器：按最近若干次调用的失败率和慢调用率熔断，熔断期间调用立即失败而不再重试和等待超时
+ * - 熔断到期后在后台调用NlpServiceClient.isHealthy探测，健康时进入半开状态放行少量试探调用，
+ *   试探全部成功后恢复，任一失败重新熔断
+ * - 并发隔离：每个端点一个信号量，挂起的端点只占满自己的名额，不影响其他端点
+ * - 4xx错误和被取消的调用不计入失败率
+ * - 熔断状态、状态切换、拒绝次数和各端点在途调用数通过Micrometer导出
+ */
+@Service
+public class NlpEndpointGuard {
+
+    private static final Logger logger = LoggerFactory.getLogger(NlpEndpointGuard.class);
+
+    /**
+     * 熔断器状态，code为导出到状态指标的值
+     */
+    public enum State {
+        CLOSED(0), HALF_OPEN(1), OPEN(2);
+
+        private final int code;
+
+        State(int code) {
+            this.code = code;
+        }
+
+        public int getCode() {
+            return code;
+        }
+    }
+
+    private final NlpServiceConfig.CircuitBreaker breakerConfig;
+    private final NlpServiceConfig.Bulkhead bulkheadConfig;
+    private final MeterRegistry meterRegistry;
+    private final ObjectProvider<NlpServiceClient> clientProvider;
+
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    public NlpEndpointGuard(NlpServiceConfig config,
+                            MeterRegistry meterRegistry,
+                            ObjectProvider<NlpServiceClient> clientProvider) {
+        this.breakerConfig = config.getCircuitBreaker();
+        this.bulkheadConfig = config.getBulkhead();
+        this.meterRegistry = meterRegistry;
+        this.clientProvider = clientProvider;
+    }
+
+    /**
+     * 在端点的熔断器和并发名额保护下执行调用
+     *
+     * @param endpoint 端点路径或其最后一段
+     * @param call 实际调用
+     * @return 调用结果
+     * @throws NlpServiceException 端点已熔断（NLP_CIRCUIT_OPEN）或并发名额已满（NLP_BULKHEAD_FULL）
+     */
+    public <T> T execute(String endpoint, Supplier<T> call) {
+        Endpoint guard = endpoint(endpoint);
+        if (!guard.tryAcquirePermission()) {
+            guard.rejectedOpen.increment();
+            throw new NlpServiceException("NLP服务端点已熔断: " + guard.name, "NLP_CIRCUIT_OPEN");
+        }
+        try {
+            if (!guard.acquireBulkhead()) {
+                guard.releasePermission();
+                guard.rejectedFull.increment();
+                throw new NlpServiceException("NLP服务端点并发已满: " + guard.name, "NLP_BULKHEAD_FULL");
+            }
+        } catch (InterruptedException e) {
+            guard.releasePermission();
+            Thread.currentThread().interrupt();
+            throw new NlpServiceException("调用被中断", e);
+        }
+
+        long start = System.nanoTime();
+        try {
+            T result = call.get();
+            guard.record(System.nanoTime() - start, false);
+            return result;
+        } catch (RuntimeException e) {
+            if (Thread.currentThread().isInterrupted() || e instanceof HttpClientErrorException) {
+                guard.releasePermission();
+            } else {
+                guard.record(System.nanoTime() - start, true);
+            }
+            throw e;
+        } finally {
+            guard.bulkhead.release();
+        }
+    }
+
+    /**
+     * 端点当前的熔断状态
+     */
+    public State getState(String endpoint) {
+        return endpoint(endpoint).state;
+    }
+
+    private Endpoint endpoint(String endpoint) {
+        String name = endpoint.substring(endpoint.lastIndexOf('/') + 1);
+        return endpoints.computeIfAbsent(name, Endpoint::new);
+    }
+
+    /**
+     * 在后台线程调用健康检查，健康时进入半开状态，否则重新开始熔断计时
+     */
+    private void probe(Endpoint guard) {
+        Thread.ofVirtual().name("nlp-probe-" + guard.name).start(() -> {
+            boolean healthy;
+            try {
+                NlpServiceClient client = clientProvider.getIfAvailable();
+                healthy = client != null && client.isHealthy();
+            } catch (Exception e) {
+                logger.warn("NLP服务健康检查探测失败: endpoint={}, error={}", guard.name, e.getMessage());
+                healthy = false;
+            }
+            guard.probed(healthy);
+        });
+    }
+
+    /**
+     * 单个端点的熔断器与并发名额，熔断状态由自身监视器保护
+     */
+    private class Endpoint {
+        private final String name;
+        private final Semaphore bulkhead;
+        private final Counter rejectedOpen;
+        private final Counter rejectedFull;
+
+        /**
+         * 最近windowSize次调用的结果，环形覆盖
+         */
+        private final boolean[] failures;
+        private final boolean[] slows;
+        private int next = 0;
+        private int count = 0;
+        private int failureCount = 0;
+        private int slowCount = 0;
+
+        private volatile State state = State.CLOSED;
+        private long openedAt;
+        private boolean probing = false;
+        private int halfOpenIssued = 0;
+        private int halfOpenSucceeded = 0;
+
+        Endpoint(String name) {
+            this.name = name;
+            int windowSize = Math.max(1, breakerConfig.getWindowSize());
+            this.failures = new boolean[windowSize];
+            this.slows = new boolean[windowSize];
+
+            int limit = bulkheadConfig.getLimit(name);
+            this.bulkhead = new Semaphore(limit > 0 ? limit : Integer.MAX_VALUE, true);
+
+            Gauge.builder("nlp.circuit.state", this, endpoint -> endpoint.state.getCode())
+                    .description("NLP端点熔断状态：0关闭，1半开，2熔断")
+                    .tag("endpoint", name)
+                    .register(meterRegistry);
+            Gauge.builder("nlp.bulkhead.active", this,
+                            endpoint -> limit > 0 ? limit - endpoint.bulkhead.availablePermits() : 0)
+                    .description("NLP端点在途调用数")
+                    .tag("endpoint", name)
+                    .register(meterRegistry);
+            this.rejectedOpen = rejectedCounter(name, "circuit_open");
+            this.rejectedFull = rejectedCounter(name, "bulkhead_full");
+        }
+
+        private Counter rejectedCounter(String endpoint, String reason) {
+            return Counter.builder("nlp.circuit.rejected")
+                    .description("NLP端点因熔断或并发已满而被拒绝的调用次数")
+                    .tag("endpoint", endpoint)
+                    .tag("reason", reason)
+                    .register(meterRegistry);
+        }
+
+        boolean acquireBulkhead() throws InterruptedException {
+            long maxWait = bulkheadConfig.getMaxWaitMillis();
+            return maxWait > 0 ? bulkhead.tryAcquire(maxWait, TimeUnit.MILLISECONDS) : bulkhead.tryAcquire();
+        }
+
+        synchronized boolean tryAcquirePermission() {
+            if (!breakerConfig.isEnabled()) {
+                return true;
+            }
+            switch (state) {
+                case CLOSED:
+                    return true;
+                case HALF_OPEN:
+                    if (halfOpenIssued < breakerConfig.getHalfOpenCalls()) {
+                        halfOpenIssued++;
+                        return true;
+                    }
+                    return false;
+                default:
+                    if (!probing && System.nanoTime() - openedAt >= TimeUnit.MILLISECONDS.toNanos(breakerConfig.getOpenDuration())) {
+                        probing = true;
+                        probe(this);
+                    }
+                    return false;
+            }
+        }
+
+        /**
+         * 未产生有效结果的调用（被拒绝、被取消或4xx）归还半开状态的试探名额
+         */
+        synchronized void releasePermission() {
+            if (state == State.HALF_OPEN && halfOpenIssued > 0) {
+                halfOpenIssued--;
+            }
+        }
+
+        synchronized void record(long durationNanos, boolean failed) {
+            if (!breakerConfig.isEnabled()) {
+                return;
+            }
+            boolean slow = durationNanos >= TimeUnit.MILLISECONDS.toNanos(breakerConfig.getSlowCallMillis());
+            if (state == State.HALF_OPEN) {
+                if (failed || slow) {
+                    transition(State.OPEN);
+                } else if (++halfOpenSucceeded >= breakerConfig.getHalfOpenCalls()) {
+                    transition(State.CLOSED);
+                }
+                return;
+            }
+            if (state == State.OPEN) {
+                // 熔断前发出的调用陆续返回，不再影响状态
+                return;
+            }
+
+            if (count == failures.length) {
+                failureCount -= failures[next] ? 1 : 0;
+                slowCount -= slows[next] ? 1 : 0;
+            } else {
+                count++;
+            }
+            failures[next] = failed;
+            slows[next] = slow;
+            failureCount += failed ? 1 : 0;
+            slowCount += slow ? 1 : 0;
+            next = (next + 1) % failures.length;
+
+            if (count >= breakerConfig.getMinimumCalls()
+                    && (failureCount * 100 >= breakerConfig.getFailureRateThreshold() * count
+                    || slowCount * 100 >= breakerConfig.getSlowCallRateThreshold() * count)) {
+                logger.warn("NLP服务端点熔断: endpoint={}, 失败{}次, 慢调用{}次, 共{}次",
+                        name, failureCount, slowCount, count);
+                transition(State.OPEN);
+            }
+        }
+
+        synchronized void probed(boolean healthy) {
+            probing = false;
+            if (state != State.OPEN) {
+                return;
+            }
+            if (healthy) {
+                transition(State.HALF_OPEN);
+            } else {
+                openedAt = System.nanoTime();
+            }
+        }
+
+        private void transition(State target) {
+            state = target;
+            openedAt = System.nanoTime();
+            halfOpenIssued = 0;
+            halfOpenSucceeded = 0;
+            if (target == State.CLOSED) {
+                next = 0;
+                count = 0;
+                failureCount = 0;
+                slowCount = 0;
+            }
+            Counter.builder("nlp.circuit.transitions")
+                    .description("NLP端点熔断状态切换次数")
+                    .tag("endpoint", name)
+                    .tag("state", target.name())
+                    .register(meterRegistry)
+                    .increment();
+            logger.info("NLP服务端点熔断状态切换: endpoint={}, state={}", name, target);
+        }
+    }
+}
@@ -0,0 +1,447 @@
+/**
+ * NLP服务多副本负载均衡器
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-27 09:00:00
+ */
+package com.historyanalysis.service;
+
+import com.historyanalysis.config.NlpServiceConfig;
+import com.historyanalysis.exception.NlpServiceException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * NLP服务多副本负载均衡器
+ *
+ * 在nlp.service.replicas配置的多个NLP服务进程之间分发请求，无需外部负载均衡：
+ * - 按在途请求最少或二选一（power of two choices）选择副本
+ * - 连续失败达到阈值或主动健康检查失败的副本被摘除一段时间；全部副本都被摘除时仍在全部副本中选择
+ * - 可选请求对冲：请求超过该端点近期延迟分位数仍未返回时向另一个副本再发一次，先返回者胜出，另一个被取消
+ * - 4xx错误和被取消的请求不计为副本失败
+ * - 各副本在途请求数、摘除状态、请求结果和对冲次数通过Micrometer导出
+ */
+@Service
+public class NlpReplicaBalancer {
+
+    private static final Logger logger = LoggerFactory.getLogger(NlpReplicaBalancer.class);
+
+    /**
+     * 每个端点保留的最近延迟样本数
+     */
+    private static final int LATENCY_WINDOW = 256;
+
+    private final NlpServiceConfig.Balancer balancerConfig;
+    private final RestTemplate restTemplate;
+    private final MeterRegistry meterRegistry;
+    private final List<Replica> replicas;
+    private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+    private final ExecutorService hedgeExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final ScheduledExecutorService healthChecker;
+    private final Counter hedgesSent;
+    private final Counter hedgesWon;
+
+    public NlpReplicaBalancer(NlpServiceConfig config,
+                              @Qualifier("nlpRestTemplate") RestTemplate restTemplate,
+                              MeterRegistry meterRegistry) {
+        this.balancerConfig = config.getBalancer();
+        this.restTemplate = restTemplate;
+        this.meterRegistry = meterRegistry;
+
+        List<Replica> list = new ArrayList<>();
+        for (String url : config.getReplicaUrls()) {
+            list.add(new Replica(url.endsWith("/") ? url.substring(0, url.length() - 1) : url));
+        }
+        this.replicas = List.copyOf(list);
+
+        this.hedgesSent = Counter.builder("nlp.balancer.hedges")
+                .description("NLP请求对冲次数")
+                .tag("result", "sent")
+                .register(meterRegistry);
+        this.hedgesWon = Counter.builder("nlp.balancer.hedges")
+                .description("NLP请求对冲次数")
+                .tag("result", "won")
+                .register(meterRegistry);
+
+        if (replicas.size() > 1 && balancerConfig.getHealthCheckInterval() > 0 && restTemplate != null) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("nlp-health-");
+            threadFactory.setDaemon(true);
+            this.healthChecker = Executors.newSingleThreadScheduledExecutor(threadFactory);
+            healthChecker.scheduleWithFixedDelay(this::checkHealth, balancerConfig.getHealthCheckInterval(),
+                    balancerConfig.getHealthCheckInterval(), TimeUnit.MILLISECONDS);
+        } else {
+            this.healthChecker = null;
+        }
+
+        logger.info("NLP服务负载均衡初始化完成, replicas={}, strategy={}, hedge={}",
+                replicas.stream().map(Replica::getBaseUrl).toList(), balancerConfig.getStrategy(),
+                balancerConfig.isHedgeEnabled());
+    }
+
+    /**
+     * 全部副本的基础URL
+     */
+    public List<String> getBaseUrls() {
+        return replicas.stream().map(Replica::getBaseUrl).toList();
+    }
+
+    /**
+     * 以阻塞方式在选中的副本上执行调用，满足条件时对冲到另一个副本
+     *
+     * @param endpoint 端点路径，用于按端点统计延迟
+     * @param call 以副本基础URL为参数的调用
+     * @return 先返回的调用结果
+     */
+    public <T> T execute(String endpoint, Function<String, T> call) {
+        Replica primary = acquire(null);
+        Duration hedgeDelay = hedgeDelay(endpoint);
+        if (hedgeDelay == null) {
+            return invoke(primary, endpoint, call);
+        }
+
+        // 使用可中断的Future，对冲的另一方被取消时中断其阻塞中的请求
+        ExecutorCompletionService<T> completion = new ExecutorCompletionService<>(hedgeExecutor);
+        Future<T> first = completion.submit(() -> invoke(primary, endpoint, call));
+        Future<T> second = null;
+        try {
+            Future<T> done = completion.poll(hedgeDelay.toNanos(), TimeUnit.NANOSECONDS);
+            if (done == null) {
+                Replica secondary = acquire(primary);
+                if (secondary == primary) {
+                    release(primary, 0, Outcome.IGNORED, endpoint);
+                } else {
+                    hedgesSent.increment();
+                    second = completion.submit(() -> invoke(secondary, endpoint, call));
+                }
+                // 先结束的调用即使失败也以它的结果为准，交给调用方的重试处理
+                done = completion.take();
+                if (done == second) {
+                    hedgesWon.increment();
+                }
+            }
+            return done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NlpServiceException("调用被中断", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new NlpServiceException("NLP服务调用失败: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            first.cancel(true);
+            if (second != null) {
+                second.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * 以响应式方式在选中的副本上执行调用，满足条件时对冲到另一个副本；每次订阅重新选择副本
+     *
+     * @param endpoint 端点路径，用于按端点统计延迟
+     * @param call 以副本基础URL为参数的调用
+     * @return 先发出信号的调用结果，另一个调用被取消
+     */
+    public <T> Mono<T> exchange(String endpoint, Function<String, Mono<T>> call) {
+        return Mono.defer(() -> {
+            AtomicReference<Replica> primary = new AtomicReference<>();
+            Mono<T> first = attempt(endpoint, call, null, primary);
+            Duration hedgeDelay = hedgeDelay(endpoint);
+            if (hedgeDelay == null) {
+                return first;
+            }
+            Mono<T> second = Mono.delay(hedgeDelay)
+                    .then(Mono.defer(() -> {
+                        hedgesSent.increment();
+                        return attempt(endpoint, call, primary.get(), new AtomicReference<>());
+                    }))
+                    .doOnSuccess(result -> hedgesWon.increment());
+            return Mono.firstWithSignal(first, second);
+        });
+    }
+
+    private <T> Mono<T> attempt(String endpoint, Function<String, Mono<T>> call,
+                                Replica exclude, AtomicReference<Replica> chosen) {
+        return Mono.defer(() -> {
+            Replica replica = acquire(exclude);
+            chosen.set(replica);
+            long start = System.nanoTime();
+            return call.apply(replica.baseUrl)
+                    .doOnSuccess(result -> release(replica, System.nanoTime() - start, Outcome.SUCCESS, endpoint))
+                    .doOnError(e -> release(replica, System.nanoTime() - start,
+                            isFailure(e) ? Outcome.FAILURE : Outcome.IGNORED, endpoint))
+                    .doOnCancel(() -> release(replica, 0, Outcome.IGNORED, endpoint));
+        });
+    }
+
+    private <T> T invoke(Replica replica, String endpoint, Function<String, T> call) {
+        long start = System.nanoTime();
+        try {
+            T result = call.apply(replica.baseUrl);
+            release(replica, System.nanoTime() - start, Outcome.SUCCESS, endpoint);
+            return result;
+        } catch (RuntimeException e) {
+            boolean cancelled = Thread.currentThread().isInterrupted();
+            release(replica, System.nanoTime() - start,
+                    !cancelled && isFailure(e) ? Outcome.FAILURE : Outcome.IGNORED, endpoint);
+            throw e;
+        }
+    }
+
+    /**
+     * 选择副本并计入在途请求；exclude不为空时优先选择其他副本
+     */
+    Replica acquire(Replica exclude) {
+        long now = System.nanoTime();
+        List<Replica> candidates = new ArrayList<>(replicas.size());
+        for (Replica replica : replicas) {
+            if (replica != exclude && replica.ejectedUntil <= now) {
+                candidates.add(replica);
+            }
+        }
+        if (candidates.isEmpty()) {
+            // 全部副本都被摘除时不拒绝请求，仍在全部副本中选择
+            for (Replica replica : replicas) {
+                if (replica != exclude) {
+                    candidates.add(replica);
+                }
+            }
+        }
+        if (candidates.isEmpty()) {
+            candidates.add(exclude);
+        }
+
+        Replica chosen;
+        if (candidates.size() == 1) {
+            chosen = candidates.get(0);
+        } else if (balancerConfig.getStrategy() == NlpServiceConfig.Balancer.Strategy.POWER_OF_TWO) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int a = random.nextInt(candidates.size());
+            int b = random.nextInt(candidates.size() - 1);
+            if (b >= a) {
+                b++;
+            }
+            Replica first = candidates.get(a);
+            Replica second = candidates.get(b);
+            chosen = second.outstanding.get() < first.outstanding.get() ? second : first;
+        } else {
+            // 在途请求数相同的副本之间随机选择，避免总是落在列表靠前的副本上
+            int offset = ThreadLocalRandom.current().nextInt(candidates.size());
+            chosen = candidates.get(offset);
+            for (int i = 1; i < candidates.size(); i++) {
+                Replica replica = candidates.get((offset + i) % candidates.size());
+                if (replica.outstanding.get() < chosen.outstanding.get()) {
+                    chosen = replica;
+                }
+            }
+        }
+        chosen.outstanding.incrementAndGet();
+        return chosen;
+    }
+
+    /**
+     * 结束一次请求：减少在途请求数，记录延迟，连续失败达到阈值时摘除副本
+     */
+    void release(Replica replica, long durationNanos, Outcome outcome, String endpoint) {
+        replica.outstanding.decrementAndGet();
+        switch (outcome) {
+            case SUCCESS:
+                replica.consecutiveFailures.set(0);
+                replica.successes.increment();
+                latencies.computeIfAbsent(endpoint, key -> new LatencyWindow()).record(durationNanos);
+                break;
+            case FAILURE:
+                replica.failures.increment();
+                if (replica.consecutiveFailures.incrementAndGet() >= balancerConfig.getFailureThreshold()) {
+                    replica.consecutiveFailures.set(0);
+                    eject(replica, "连续失败");
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * 端点当前的对冲等待时长；未启用对冲、只有一个副本或样本不足时返回null
+     */
+    Duration hedgeDelay(String endpoint) {
+        if (!balancerConfig.isHedgeEnabled() || replicas.size() < 2) {
+            return null;
+        }
+        LatencyWindow window = latencies.get(endpoint);
+        if (window == null) {
+            return null;
+        }
+        long quantile = window.quantile(balancerConfig.getHedgeQuantile(), balancerConfig.getHedgeMinSamples());
+        if (quantile < 0) {
+            return null;
+        }
+        return Duration.ofNanos(Math.max(quantile, TimeUnit.MILLISECONDS.toNanos(balancerConfig.getHedgeMinDelayMillis())));
+    }
+
+    private void eject(Replica replica, String reason) {
+        boolean wasAvailable = replica.ejectedUntil <= System.nanoTime();
+        replica.ejectedUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(balancerConfig.getEjectDuration());
+        if (wasAvailable) {
+            replica.ejections.increment();
+            logger.warn("NLP服务副本被摘除: {} ({}), {}毫秒后恢复", replica.baseUrl, reason, balancerConfig.getEjectDuration());
+        }
+    }
+
+    /**
+     * 主动检查各副本健康状态：失败的副本被摘除，已摘除但恢复健康的副本立即重新参与均衡
+     */
+    void checkHealth() {
+        for (Replica replica : replicas) {
+            boolean healthy;
+            try {
+                ResponseEntity<?> response = restTemplate.getForEntity(replica.baseUrl + "/api/health", String.class);
+                healthy = response.getStatusCode().is2xxSuccessful();
+            } catch (Exception e) {
+                healthy = false;
+            }
+            if (!healthy) {
+                eject(replica, "健康检查失败");
+            } else if (replica.ejectedUntil > System.nanoTime()) {
+                replica.ejectedUntil = Long.MIN_VALUE;
+                replica.consecutiveFailures.set(0);
+                logger.info("NLP服务副本恢复: {}", replica.baseUrl);
+            }
+        }
+    }
+
+    private static boolean isFailure(Throwable e) {
+        if (e instanceof HttpClientErrorException) {
+            return false;
+        }
+        if (e instanceof WebClientResponseException) {
+            return !((WebClientResponseException) e).getStatusCode().is4xxClientError();
+        }
+        return true;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (healthChecker != null) {
+            healthChecker.shutdownNow();
+        }
+        hedgeExecutor.shutdownNow();
+    }
+
+    /**
+     * 请求结果
+     */
+    enum Outcome {
+        SUCCESS, FAILURE, IGNORED
+    }
+
+    /**
+     * 单个NLP服务副本
+     */
+    class Replica {
+        private final String baseUrl;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private final Counter successes;
+        private final Counter failures;
+        private final Counter ejections;
+        private volatile long ejectedUntil = Long.MIN_VALUE;
+
+        Replica(String baseUrl) {
+            this.baseUrl = baseUrl;
+            Gauge.builder("nlp.balancer.outstanding", outstanding, AtomicInteger::get)
+                    .description("NLP服务副本的在途请求数")
+                    .tag("replica", baseUrl)
+                    .register(meterRegistry);
+            Gauge.builder("nlp.balancer.ejected", this, replica -> replica.isEjected() ? 1 : 0)
+                    .description("NLP服务副本是否被摘除")
+                    .tag("replica", baseUrl)
+                    .register(meterRegistry);
+            this.successes = requestCounter(baseUrl, "success");
+            this.failures = requestCounter(baseUrl, "failure");
+            this.ejections = Counter.builder("nlp.balancer.ejections")
+                    .description("NLP服务副本被摘除次数")
+                    .tag("replica", baseUrl)
+                    .register(meterRegistry);
+        }
+
+        private Counter requestCounter(String replica, String outcome) {
+            return Counter.builder("nlp.balancer.requests")
+                    .description("发往NLP服务副本的请求数")
+                    .tag("replica", replica)
+                    .tag("outcome", outcome)
+                    .register(meterRegistry);
+        }
+
+        String getBaseUrl() {
+            return baseUrl;
+        }
+
+        int getOutstanding() {
+            return outstanding.get();
+        }
+
+        boolean isEjected() {
+            return ejectedUntil > System.nanoTime();
+        }
+    }
+
+    /**
+     * 端点最近若干次成功请求的延迟，环形覆盖
+     */
+    private static class LatencyWindow {
+        private final long[] samples = new long[LATENCY_WINDOW];
+        private int next = 0;
+        private int count = 0;
+
+        synchronized void record(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+        }
+
+        /**
+         * 样本数不足minSamples时返回-1
+         */
+        synchronized long quantile(double q, int minSamples) {
+            if (count < Math.max(1, minSamples)) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            return sorted[Math.max(0, Math.min(count - 1, (int) Math.ceil(q * count) - 1))];
+        }
+    }
+}
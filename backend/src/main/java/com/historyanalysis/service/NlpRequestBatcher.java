@@ -0,0 +1,252 @@
+/**
+ * NLP请求微批处理器
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-14 09:00:00
+ */
+package com.historyanalysis.service;
+
+import com.historyanalysis.config.NlpServiceConfig;
+import com.historyanalysis.dto.nlp.NlpRequest;
+import com.historyanalysis.exception.NlpServiceException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * NLP请求微批处理器
+ *
+ * 将并发到达的同类型分析请求在一个短时间窗口内合并为一次/api/analyze/batch调用：
+ * - 每种分析类型一个待发送批次，第一条请求到达时开始计时
+ * - 批次达到maxSize或窗口到期时发送，以先到者为准
+ * - 批量结果按顺序分发给各调用方，单条失败只影响对应调用方
+ * - 发送前已被调用方撤回的条目不会发送
+ * - 每个批次作为一次调用经过所属端点的熔断器、并发隔离和自适应并发限制：批次只占一个名额，
+ *   整批调用失败只计一次失败，限制器采样的是批量调用的往返延迟而不是等待凑批的时间；
+ *   批次在虚拟线程中发送，等待名额时不阻塞计时线程
+ */
+@Service
+public class NlpRequestBatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(NlpRequestBatcher.class);
+
+    private final ReactiveNlpServiceClient reactiveClient;
+    private final NlpEndpointGuard endpointGuard;
+    private final NlpConcurrencyLimiter concurrencyLimiter;
+    private final NlpServiceConfig.Batch batchConfig;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService senders;
+    private final DistributionSummary batchSize;
+    private final Counter itemFailures;
+
+    /**
+     * 各分析类型当前正在收集的批次，由lock保护
+     */
+    private final Map<String, PendingBatch> pending = new HashMap<>();
+    private final Object lock = new Object();
+
+    public NlpRequestBatcher(ReactiveNlpServiceClient reactiveClient,
+                             NlpEndpointGuard endpointGuard,
+                             NlpConcurrencyLimiter concurrencyLimiter,
+                             NlpServiceConfig config,
+                             MeterRegistry meterRegistry) {
+        this.reactiveClient = reactiveClient;
+        this.endpointGuard = endpointGuard;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.batchConfig = config.getBatch();
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("nlp-batcher-");
+        threadFactory.setDaemon(true);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        this.senders = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("nlp-batch-send-", 0).factory());
+
+        this.batchSize = DistributionSummary.builder("nlp.batch.size")
+                .description("每次批量调用合并的请求数")
+                .register(meterRegistry);
+        this.itemFailures = Counter.builder("nlp.batch.item.failures")
+                .description("批量调用中失败的条目数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 判断文本是否走批处理
+     */
+    public boolean accepts(String text) {
+        return batchConfig.isEnabled() && text != null && text.length() <= batchConfig.getMaxTextLength();
+    }
+
+    /**
+     * 提交请求并阻塞等待其所在批次的结果
+     *
+     * @param type 分析类型，如word-frequency、timeline、geographic、summary
+     * @param request 单条请求
+     * @return 该条目的分析结果
+     */
+    public Map<String, Object> execute(String type, NlpRequest request) {
+        CompletableFuture<Map<String, Object>> future = submit(type, request);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            // 调用方被中断（分析被取消）时撤回该条目，批次尚未发送时不再发送它
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new NlpServiceException("调用被中断", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    /**
+     * 提交请求，返回该条目结果的Future
+     */
+    public CompletableFuture<Map<String, Object>> submit(String type, NlpRequest request) {
+        CompletableFuture<Map<String, Object>> future = new CompletableFuture<>();
+        PendingBatch full = null;
+
+        synchronized (lock) {
+            PendingBatch batch = pending.computeIfAbsent(type, key -> new PendingBatch());
+            batch.requests.add(request);
+            batch.futures.add(future);
+
+            if (batch.requests.size() >= batchConfig.getMaxSize()) {
+                pending.remove(type);
+                if (batch.timer != null) {
+                    batch.timer.cancel(false);
+                }
+                full = batch;
+            } else if (batch.timer == null) {
+                batch.timer = scheduler.schedule(() -> flushExpired(type, batch),
+                        batchConfig.getWindowMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if (full != null) {
+            send(type, full);
+        }
+        return future;
+    }
+
+    /**
+     * 窗口到期，发送仍未因满额而发出的批次
+     */
+    private void flushExpired(String type, PendingBatch batch) {
+        synchronized (lock) {
+            if (pending.get(type) != batch) {
+                return;
+            }
+            pending.remove(type);
+        }
+        send(type, batch);
+    }
+
+    /**
+     * 发送批次并将结果分发给各调用方
+     */
+    private void send(String type, PendingBatch batch) {
+        List<NlpRequest> requests = new ArrayList<>(batch.requests.size());
+        List<CompletableFuture<Map<String, Object>>> futures = new ArrayList<>(batch.futures.size());
+        for (int i = 0; i < batch.requests.size(); i++) {
+            if (!batch.futures.get(i).isDone()) {
+                requests.add(batch.requests.get(i));
+                futures.add(batch.futures.get(i));
+            }
+        }
+        int size = requests.size();
+        if (size == 0) {
+            return;
+        }
+        batchSize.record(size);
+        logger.debug("发送NLP批量请求: type={}, size={}", type, size);
+
+        try {
+            senders.execute(() -> {
+                List<Map<String, Object>> results;
+                try {
+                    results = call(type, requests);
+                } catch (RuntimeException e) {
+                    logger.warn("NLP批量请求失败: type={}, size={}, error={}", type, size, e.getMessage());
+                    futures.forEach(future -> future.completeExceptionally(e));
+                    return;
+                }
+                for (int i = 0; i < size; i++) {
+                    complete(futures.get(i), results.get(i));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            futures.forEach(future -> future.completeExceptionally(new NlpServiceException("NLP批处理器已关闭", e)));
+        }
+    }
+
+    /**
+     * 在端点的熔断器、并发隔离和自适应并发限制下发送一次批量调用
+     */
+    private List<Map<String, Object>> call(String type, List<NlpRequest> requests) {
+        return endpointGuard.execute(type, () -> concurrencyLimiter.execute(type,
+                () -> reactiveClient.analyzeBatch(type, requests).block()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void complete(CompletableFuture<Map<String, Object>> future, Map<String, Object> result) {
+        if (result != null && Boolean.TRUE.equals(result.get("success"))) {
+            Object data = result.get("data");
+            future.complete(data instanceof Map ? (Map<String, Object>) data : null);
+            return;
+        }
+        itemFailures.increment();
+        Object error = result != null ? result.get("error") : null;
+        future.completeExceptionally(new NlpServiceException("NLP服务返回错误: " + (error != null ? error : "未知错误")));
+    }
+
+    private static NlpServiceException unwrap(Throwable e) {
+        if (e instanceof CompletionException && e.getCause() != null) {
+            e = e.getCause();
+        }
+        if (e instanceof NlpServiceException) {
+            return (NlpServiceException) e;
+        }
+        return new NlpServiceException("NLP服务调用失败: " + e.getMessage(), e);
+    }
+
+    /**
+     * 关闭调度线程，尚未发送的批次立即发送
+     */
+    @PreDestroy
+    public void shutdown() {
+        List<Map.Entry<String, PendingBatch>> remaining;
+        synchronized (lock) {
+            remaining = new ArrayList<>(pending.entrySet());
+            pending.clear();
+        }
+        remaining.forEach(entry -> send(entry.getKey(), entry.getValue()));
+        scheduler.shutdownNow();
+        senders.shutdown();
+    }
+
+    /**
+     * 正在收集中的批次
+     */
+    private static class PendingBatch {
+        private final List<NlpRequest> requests = new ArrayList<>();
+        private final List<CompletableFuture<Map<String, Object>>> futures = new ArrayList<>();
+        private ScheduledFuture<?> timer;
+    }
+}
@@ -0,0 +1,192 @@
+/**
+ * NLP分析结果缓存
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-15 09:00:00
+ */
+package com.historyanalysis.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.historyanalysis.config.NlpServiceConfig;
+import com.historyanalysis.dto.nlp.NlpRequest;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * NLP分析结果缓存
+ *
+ * 以内容寻址的方式缓存NLP服务的分析结果，相同文本和参数的重复分析（如重新执行分析、
+ * 不同项目分析同一批文件）不再调用NLP服务：
+ * - 键为端点、参数和输入文本的SHA-256摘要
+ * - 一级缓存为本地Caffeine，按条目数限制大小，W-TinyLFU淘汰
+ * - 二级缓存为可选的Redis，在多个后端实例间共享，读写失败时直接回源
+ * - 命中、未命中和淘汰通过Micrometer导出
+ */
+@Service
+public class NlpResultCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(NlpResultCache.class);
+
+    /**
+     * 键格式版本，键的组成变化时递增使旧缓存失效
+     */
+    private static final String KEY_VERSION = "v1";
+
+    private static final TypeReference<Map<String, Object>> RESULT_TYPE = new TypeReference<>() {
+    };
+
+    private final NlpServiceConfig.ResultCache cacheConfig;
+    private final Cache<String, Map<String, Object>> localCache;
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+
+    private final Counter redisHits;
+    private final Counter redisMisses;
+    private final Counter redisErrors;
+
+    public NlpResultCache(NlpServiceConfig config,
+                          MeterRegistry meterRegistry,
+                          ObjectMapper objectMapper,
+                          ObjectProvider<StringRedisTemplate> redisTemplateProvider) {
+        this.cacheConfig = config.getCache();
+        this.objectMapper = objectMapper;
+        this.redisTemplate = cacheConfig.isRedisEnabled() ? redisTemplateProvider.getIfAvailable() : null;
+
+        this.localCache = Caffeine.newBuilder()
+                .maximumSize(cacheConfig.getMaximumSize())
+                .expireAfterWrite(Duration.ofSeconds(cacheConfig.getLocalTtl()))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, localCache, "nlp.result", "tier", "local");
+
+        this.redisHits = redisCounter(meterRegistry, "hit");
+        this.redisMisses = redisCounter(meterRegistry, "miss");
+        this.redisErrors = redisCounter(meterRegistry, "error");
+
+        logger.info("NLP结果缓存初始化完成, enabled={}, maximumSize={}, redis={}",
+                cacheConfig.isEnabled(), cacheConfig.getMaximumSize(), redisTemplate != null);
+    }
+
+    private static Counter redisCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("nlp.result.cache.redis")
+                .description("NLP结果Redis二级缓存访问次数")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 查询缓存，未命中时调用loader并写入缓存
+     *
+     * @param endpoint NLP服务端点
+     * @param request 请求参数
+     * @param loader 回源调用
+     * @return 分析结果，调用方不应修改返回的Map
+     */
+    public Map<String, Object> get(String endpoint, NlpRequest request, Supplier<Map<String, Object>> loader) {
+        if (!cacheConfig.isEnabled() || request.getText() == null) {
+            return loader.get();
+        }
+
+        String key = key(endpoint, request);
+        Map<String, Object> result = localCache.getIfPresent(key);
+        if (result != null) {
+            return result;
+        }
+
+        result = readRedis(key);
+        if (result != null) {
+            localCache.put(key, result);
+            return result;
+        }
+
+        result = loader.get();
+        if (result != null) {
+            localCache.put(key, result);
+            writeRedis(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * 清空本地缓存
+     */
+    public void invalidateAll() {
+        localCache.invalidateAll();
+    }
+
+    /**
+     * 本地缓存当前条目数
+     */
+    public long size() {
+        return localCache.estimatedSize();
+    }
+
+    /**
+     * 计算缓存键：端点、影响结果的参数和输入文本共同做SHA-256摘要
+     */
+    public static String key(String endpoint, NlpRequest request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            String header = String.join("|", KEY_VERSION, endpoint,
+                    String.valueOf(request.getType()),
+                    String.valueOf(request.getTopN()),
+                    String.valueOf(request.getMinLength()),
+                    String.valueOf(request.getMaxSentences()));
+            digest.update(header.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+            digest.update(request.getText().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256不可用", e);
+        }
+    }
+
+    private Map<String, Object> readRedis(String key) {
+        if (redisTemplate == null) {
+            return null;
+        }
+        try {
+            String json = redisTemplate.opsForValue().get(cacheConfig.getKeyPrefix() + key);
+            if (json == null) {
+                redisMisses.increment();
+                return null;
+            }
+            redisHits.increment();
+            return objectMapper.readValue(json, RESULT_TYPE);
+        } catch (Exception e) {
+            redisErrors.increment();
+            logger.warn("读取NLP结果Redis缓存失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeRedis(String key, Map<String, Object> result) {
+        if (redisTemplate == null) {
+            return;
+        }
+        try {
+            redisTemplate.opsForValue().set(cacheConfig.getKeyPrefix() + key,
+                    objectMapper.writeValueAsString(result), Duration.ofSeconds(cacheConfig.getRedisTtl()));
+        } catch (Exception e) {
+            redisErrors.increment();
+            logger.warn("写入NLP结果Redis缓存失败: {}", e.getMessage());
+        }
+    }
+}
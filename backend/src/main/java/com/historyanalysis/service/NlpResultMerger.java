@@ -0,0 +1,367 @@
+/**
+ * NLP分块结果合并器
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-17 09:20:00
+ */
+package com.historyanalysis.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * NLP分块结果合并器
+ *
+ * 将同一分析类型各文本块的结果逐个合并为一个结果，不依赖具体的响应结构：
+ * - 嵌套Map逐字段递归合并
+ * - 词频列表（元素含word字段）按词累加count，最终按频次排序截取
+ * - 地点列表按地名去重，累计出现次数mentions，置信度取最大值
+ * - 事件列表最终按标准化年份排序，没有年份的事件保持原有顺序排在后面
+ * - 其他列表拼接并去重，超过maxListItems的部分丢弃
+ * - 整数视为计数累加，max_/min_前缀的字段取最大/最小值，小数取各块平均值
+ * - parameters和字符串等其他值保留第一块的值
+ * 传入的分块结果不会被修改（可能来自结果缓存）。
+ * 合并结果只取决于分块结果及其合并顺序，按分块顺序合并时与串行处理的结果完全一致。
+ * 非线程安全，每次分析创建一个实例。
+ */
+public class NlpResultMerger {
+
+    private static final String WORD_LIST_KEY = "word_frequency";
+
+    /**
+     * 按键去重的列表：列表字段名 -> 元素的键字段
+     */
+    private static final Map<String, String> KEYED_LISTS = Map.of(
+            "places", "name",
+            "geo_locations", "location_name");
+
+    /**
+     * 按时间排序的列表：列表字段名 -> 元素的时间字段
+     */
+    private static final Map<String, String> TIME_ORDERED_LISTS = Map.of(
+            "events", "normalized_year",
+            "timeline_events", "event_date");
+
+    /**
+     * 词汇排序：频次降序，相同时按相关性评分降序，再按词本身排序，保证结果确定
+     */
+    private static final Comparator<Map<String, Object>> WORD_RANKING =
+            Comparator.comparingDouble(NlpResultMerger::weight).reversed()
+                    .thenComparing(Comparator.comparingDouble(NlpResultMerger::relevance).reversed())
+                    .thenComparing(word -> String.valueOf(word.get("word")));
+
+    private final int maxTrackedWords;
+    private final int maxListItems;
+
+    private final Map<String, Object> merged = new LinkedHashMap<>();
+    private int chunks;
+
+    /**
+     * 词频列表 -> (词 -> 词条)，以及词频列表所在的Map
+     */
+    private final Map<List<Object>, Map<String, Map<String, Object>>> wordIndexes = new IdentityHashMap<>();
+    private final Map<List<Object>, Map<String, Object>> wordListOwners = new IdentityHashMap<>();
+
+    /**
+     * 普通列表 -> 已有元素，用于去重
+     */
+    private final Map<List<Object>, Set<Object>> listIndexes = new IdentityHashMap<>();
+
+    /**
+     * 按键去重的列表 -> (键 -> 元素)
+     */
+    private final Map<List<Object>, Map<Object, Map<String, Object>>> keyedIndexes = new IdentityHashMap<>();
+
+    /**
+     * 需按时间排序的列表 -> 时间字段
+     */
+    private final Map<List<Object>, String> timeOrderedLists = new IdentityHashMap<>();
+
+    public NlpResultMerger(int maxTrackedWords, int maxListItems) {
+        this.maxTrackedWords = maxTrackedWords;
+        this.maxListItems = maxListItems;
+    }
+
+    /**
+     * 合并一个分块结果
+     */
+    public void merge(Map<String, Object> partial) {
+        if (partial == null) {
+            return;
+        }
+        chunks++;
+        mergeMap(merged, partial);
+    }
+
+    /**
+     * 已合并的分块数
+     */
+    public int getChunkCount() {
+        return chunks;
+    }
+
+    /**
+     * 完成合并：词频列表按频次排序并截取前topN个，按各块过滤后词数之和重新计算相对频率
+     *
+     * @param topN 词频列表保留的数量，不大于0时不截取
+     * @return 合并结果
+     */
+    public Map<String, Object> finish(int topN) {
+        wordIndexes.forEach((list, index) -> {
+            List<Map<String, Object>> words = new ArrayList<>(index.values());
+            words.sort(WORD_RANKING);
+            if (topN > 0 && words.size() > topN) {
+                words = words.subList(0, topN);
+            }
+            double total = filteredTotal(wordListOwners.get(list));
+            if (total > 0) {
+                words.forEach(word -> {
+                    if (word.get("count") instanceof Number) {
+                        word.put("frequency", ((Number) word.get("count")).doubleValue() / total);
+                    }
+                });
+            }
+            list.clear();
+            list.addAll(words);
+        });
+        timeOrderedLists.forEach((list, field) -> list.sort((a, b) -> compareTime(a, b, field)));
+        return merged;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void mergeMap(Map<String, Object> target, Map<String, Object> source) {
+        for (Map.Entry<String, Object> entry : source.entrySet()) {
+            String key = entry.getKey();
+            Object value = entry.getValue();
+            Object existing = target.get(key);
+
+            if (existing == null) {
+                Object copy = copy(value);
+                target.put(key, copy);
+                if (copy instanceof List && isWordList(key, (List<Object>) copy)) {
+                    List<Object> words = (List<Object>) copy;
+                    List<Object> initial = new ArrayList<>(words);
+                    words.clear();
+                    wordListOwners.put(words, target);
+                    wordIndexes.put(words, new LinkedHashMap<>());
+                    mergeWords(words, initial);
+                } else if (copy instanceof List && KEYED_LISTS.containsKey(key)) {
+                    List<Object> items = (List<Object>) copy;
+                    List<Object> initial = new ArrayList<>(items);
+                    items.clear();
+                    keyedIndexes.put(items, new LinkedHashMap<>());
+                    mergeKeyed(items, initial, KEYED_LISTS.get(key));
+                } else if (copy instanceof List) {
+                    List<Object> items = (List<Object>) copy;
+                    Set<Object> seen = new HashSet<>(items);
+                    if (items.size() > maxListItems) {
+                        items.subList(maxListItems, items.size()).clear();
+                    }
+                    listIndexes.put(items, seen);
+                    if (TIME_ORDERED_LISTS.containsKey(key)) {
+                        timeOrderedLists.put(items, TIME_ORDERED_LISTS.get(key));
+                    }
+                }
+            } else if ("parameters".equals(key)) {
+                // 参数保留第一块的值
+            } else if (existing instanceof Map && value instanceof Map) {
+                mergeMap((Map<String, Object>) existing, (Map<String, Object>) value);
+            } else if (existing instanceof List && value instanceof List) {
+                List<Object> target0 = (List<Object>) existing;
+                if (wordIndexes.containsKey(target0)) {
+                    mergeWords(target0, (List<Object>) value);
+                } else if (keyedIndexes.containsKey(target0)) {
+                    mergeKeyed(target0, (List<Object>) value, KEYED_LISTS.get(key));
+                } else {
+                    mergeList(target0, (List<Object>) value);
+                }
+            } else if (existing instanceof Number && value instanceof Number) {
+                target.put(key, mergeNumber(key, (Number) existing, (Number) value));
+            }
+        }
+    }
+
+    private void mergeList(List<Object> target, List<Object> source) {
+        Set<Object> seen = listIndexes.computeIfAbsent(target, list -> new HashSet<>(list));
+        for (Object item : source) {
+            if (target.size() >= maxListItems) {
+                return;
+            }
+            Object copy = copy(item);
+            if (seen.add(copy)) {
+                target.add(copy);
+            }
+        }
+    }
+
+    /**
+     * 按键合并列表元素：同键元素只保留第一次出现的，累计mentions并取最大置信度
+     */
+    @SuppressWarnings("unchecked")
+    private void mergeKeyed(List<Object> target, List<Object> source, String keyField) {
+        Map<Object, Map<String, Object>> index = keyedIndexes.get(target);
+        for (Object item : source) {
+            if (!(item instanceof Map) || ((Map<String, Object>) item).get(keyField) == null) {
+                continue;
+            }
+            Map<String, Object> entry = (Map<String, Object>) item;
+            Map<String, Object> existing = index.get(entry.get(keyField));
+            if (existing == null) {
+                if (target.size() >= maxListItems) {
+                    continue;
+                }
+                Map<String, Object> copy = (Map<String, Object>) copy(entry);
+                copy.put("mentions", mentions(entry));
+                index.put(entry.get(keyField), copy);
+                target.add(copy);
+                continue;
+            }
+            existing.put("mentions", mentions(existing) + mentions(entry));
+            if (entry.get("confidence") instanceof Number && existing.get("confidence") instanceof Number
+                    && ((Number) entry.get("confidence")).doubleValue() > ((Number) existing.get("confidence")).doubleValue()) {
+                existing.put("confidence", entry.get("confidence"));
+            }
+        }
+    }
+
+    private static long mentions(Map<String, Object> entry) {
+        Object mentions = entry.get("mentions");
+        return mentions instanceof Number ? ((Number) mentions).longValue() : 1L;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void mergeWords(List<Object> target, List<Object> source) {
+        Map<String, Map<String, Object>> index = wordIndexes.get(target);
+        for (Object item : source) {
+            if (!(item instanceof Map)) {
+                continue;
+            }
+            Map<String, Object> entry = (Map<String, Object>) item;
+            Object word = entry.get("word");
+            if (word == null) {
+                continue;
+            }
+            Map<String, Object> existing = index.get(word.toString());
+            if (existing == null) {
+                index.put(word.toString(), (Map<String, Object>) copy(entry));
+                continue;
+            }
+            for (Map.Entry<String, Object> field : entry.entrySet()) {
+                Object current = existing.get(field.getKey());
+                if (current instanceof Number && field.getValue() instanceof Number) {
+                    existing.put(field.getKey(), mergeWordField(field.getKey(), (Number) current, (Number) field.getValue()));
+                }
+            }
+        }
+        if (index.size() > maxTrackedWords) {
+            prune(index);
+        }
+    }
+
+    /**
+     * 淘汰低频词，保留跟踪上限的一半
+     */
+    private void prune(Map<String, Map<String, Object>> index) {
+        List<Map.Entry<String, Map<String, Object>>> entries = new ArrayList<>(index.entrySet());
+        entries.sort(Map.Entry.comparingByValue(WORD_RANKING));
+        index.clear();
+        for (Map.Entry<String, Map<String, Object>> entry : entries.subList(0, maxTrackedWords / 2)) {
+            index.put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private static Number mergeWordField(String key, Number current, Number value) {
+        switch (key) {
+            case "count":
+            case "frequency":
+                return isIntegral(current) && isIntegral(value)
+                        ? (Number) (current.longValue() + value.longValue())
+                        : (Number) (current.doubleValue() + value.doubleValue());
+            default:
+                // 相关性评分等取最大值
+                return current.doubleValue() >= value.doubleValue() ? current : value;
+        }
+    }
+
+    private Number mergeNumber(String key, Number existing, Number value) {
+        if (key.startsWith("max_")) {
+            return existing.doubleValue() >= value.doubleValue() ? existing : value;
+        }
+        if (key.startsWith("min_")) {
+            return existing.doubleValue() <= value.doubleValue() ? existing : value;
+        }
+        if (isIntegral(existing) && isIntegral(value)) {
+            return existing.longValue() + value.longValue();
+        }
+        double mean = existing.doubleValue();
+        return mean + (value.doubleValue() - mean) / chunks;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static double filteredTotal(Map<String, Object> owner) {
+        if (owner == null || !(owner.get("statistics") instanceof Map)) {
+            return 0;
+        }
+        Object filtered = ((Map<String, Object>) owner.get("statistics")).get("filtered_words");
+        return filtered instanceof Number ? ((Number) filtered).doubleValue() : 0;
+    }
+
+    private static double relevance(Map<String, Object> word) {
+        Object value = word.get("relevance_score");
+        return value instanceof Number ? ((Number) value).doubleValue() : 0;
+    }
+
+    /**
+     * 按时间字段比较：有时间的排在前面，数值按大小、其他按字符串比较；List.sort为稳定排序，相同时间保持原有顺序
+     */
+    @SuppressWarnings("unchecked")
+    private static int compareTime(Object a, Object b, String field) {
+        Object left = a instanceof Map ? ((Map<String, Object>) a).get(field) : null;
+        Object right = b instanceof Map ? ((Map<String, Object>) b).get(field) : null;
+        if (left == null || right == null) {
+            return left == null ? (right == null ? 0 : 1) : -1;
+        }
+        if (left instanceof Number && right instanceof Number) {
+            return Double.compare(((Number) left).doubleValue(), ((Number) right).doubleValue());
+        }
+        if (left instanceof Number || right instanceof Number) {
+            return left instanceof Number ? -1 : 1;
+        }
+        return left.toString().compareTo(right.toString());
+    }
+
+    private static double weight(Map<String, Object> word) {
+        Object value = word.containsKey("count") ? word.get("count") : word.get("frequency");
+        return value instanceof Number ? ((Number) value).doubleValue() : 0;
+    }
+
+    private static boolean isWordList(String key, List<Object> list) {
+        return WORD_LIST_KEY.equals(key)
+                && (list.isEmpty() || (list.get(0) instanceof Map && ((Map<?, ?>) list.get(0)).containsKey("word")));
+    }
+
+    private static boolean isIntegral(Number number) {
+        return number instanceof Integer || number instanceof Long || number instanceof Short;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object copy(Object value) {
+        if (value instanceof Map) {
+            Map<String, Object> copy = new LinkedHashMap<>();
+            ((Map<String, Object>) value).forEach((k, v) -> copy.put(k, copy(v)));
+            return copy;
+        }
+        if (value instanceof List) {
+            List<Object> copy = new ArrayList<>(((List<Object>) value).size());
+            ((List<Object>) value).forEach(v -> copy.add(copy(v)));
+            return copy;
+        }
+        return value;
+    }
+}
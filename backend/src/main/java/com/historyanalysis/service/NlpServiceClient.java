@@ -31,25 +31,46 @@ public class NlpServiceClient {
 
     private final RestTemplate restTemplate;
     private final NlpServiceConfig config;
+    private final NlpRequestBatcher batcher;
+    private final NlpResultCache resultCache;
+    private final NlpEndpointGuard endpointGuard;
+    private final NlpReplicaBalancer replicaBalancer;
+    private final NlpConcurrencyLimiter concurrencyLimiter;
+    private final NlpTransportCodec transportCodec;
 
     public NlpServiceClient(@Qualifier("nlpRestTemplate") RestTemplate restTemplate, 
-                           NlpServiceConfig config) {
+                           NlpServiceConfig config,
+                           NlpRequestBatcher batcher,
+                           NlpResultCache resultCache,
+                           NlpEndpointGuard endpointGuard,
+                           NlpReplicaBalancer replicaBalancer,
+                           NlpConcurrencyLimiter concurrencyLimiter,
+                           NlpTransportCodec transportCodec) {
         this.restTemplate = restTemplate;
         this.config = config;
+        this.batcher = batcher;
+        this.resultCache = resultCache;
+        this.endpointGuard = endpointGuard;
+        this.replicaBalancer = replicaBalancer;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.transportCodec = transportCodec;
     }
 
     /**
-     * 健康检查
+     * 健康检查，配置了多个副本时任一副本健康即为健康
      */
     public boolean isHealthy() {
-        try {
-            String url = config.getBaseUrl() + "/api/health";
-            ResponseEntity<NlpResponse> response = restTemplate.getForEntity(url, NlpResponse.class);
-            return response.getStatusCode() == HttpStatus.OK;
-        } catch (Exception e) {
-            logger.warn("NLP服务健康检查失败: {}", e.getMessage());
-            return false;
+        for (String baseUrl : replicaBalancer.getBaseUrls()) {
+            try {
+                ResponseEntity<NlpResponse> response = restTemplate.getForEntity(baseUrl + "/api/health", NlpResponse.class);
+                if (response.getStatusCode() == HttpStatus.OK) {
+                    return true;
+                }
+            } catch (Exception e) {
+                logger.warn("NLP服务健康检查失败: {} - {}", baseUrl, e.getMessage());
+            }
         }
+        return false;
     }
 
     /**
@@ -57,19 +78,14 @@ public class NlpServiceClient {
      */
     public Map<String, Object> analyzeText(String text, String analysisType) {
         NlpRequest request = new NlpRequest(text, analysisType);
-        return callNlpService("/api/analyze/text", request);
+        return callCached("/api/analyze/text", request);
     }
 
     /**
      * 词频分析
      */
     public Map<String, Object> analyzeWordFrequency(String text, Integer topN, Integer minLength) {
-        NlpRequest request = new NlpRequest();
-        request.setText(text);
-        request.setTopN(topN != null ? topN : 50);
-        request.setMinLength(minLength != null ? minLength : 2);
-        
-        return callNlpService("/api/analyze/word-frequency", request);
+        return callBatchable("/api/analyze/word-frequency", NlpRequest.wordFrequency(text, topN, minLength));
     }
 
     /**
@@ -77,7 +93,7 @@ public class NlpServiceClient {
      */
     public Map<String, Object> analyzeTimeline(String text) {
         NlpRequest request = new NlpRequest(text);
-        return callNlpService("/api/analyze/timeline", request);
+        return callBatchable("/api/analyze/timeline", request);
     }
 
     /**
@@ -85,19 +101,14 @@ public class NlpServiceClient {
      */
     public Map<String, Object> analyzeGeographic(String text) {
         NlpRequest request = new NlpRequest(text);
-        return callNlpService("/api/analyze/geographic", request);
+        return callBatchable("/api/analyze/geographic", request);
     }
 
     /**
      * 文本摘要分析
      */
     public Map<String, Object> analyzeSummary(String text, String summaryType, Integer maxSentences) {
-        NlpRequest request = new NlpRequest();
-        request.setText(text);
-        request.setType(summaryType != null ? summaryType : "comprehensive");
-        request.setMaxSentences(maxSentences != null ? maxSentences : 5);
-        
-        return callNlpService("/api/analyze/summary", request);
+        return callBatchable("/api/analyze/summary", NlpRequest.summary(text, summaryType, maxSentences));
     }
 
     /**
@@ -105,7 +116,7 @@ public class NlpServiceClient {
      */
     public Map<String, Object> analyzeComprehensive(String text) {
         NlpRequest request = new NlpRequest(text);
-        return callNlpService("/api/analyze/comprehensive", request);
+        return callCached("/api/analyze/comprehensive", request);
     }
 
     /**
@@ -113,20 +124,38 @@ public class NlpServiceClient {
      */
     public Map<String, Object> analyzeMultidimensional(String text) {
         NlpRequest request = new NlpRequest(text);
-        return callNlpService("/api/analyze/multidimensional", request);
+        return callCached("/api/analyze/multidimensional", request);
+    }
+
+    /**
+     * 先查结果缓存，未命中时直接调用单条接口
+     */
+    private Map<String, Object> callCached(String endpoint, NlpRequest request) {
+        return resultCache.get(endpoint, request, () -> callNlpService(endpoint, request));
+    }
+
+    /**
+     * 先查结果缓存，未命中时短文本交给微批处理器与其他并发请求合并发送，长文本或关闭批处理时直接调用单条接口
+     * 批处理的每次批量调用由批处理器交给所属端点的熔断器、并发隔离和自适应并发限制保护，
+     * 在批次窗口中等待的单条请求不占用任何名额
+     */
+    private Map<String, Object> callBatchable(String endpoint, NlpRequest request) {
+        return resultCache.get(endpoint, request, () -> {
+            if (batcher.accepts(request.getText())) {
+                String type = endpoint.substring(endpoint.lastIndexOf('/') + 1);
+                return batcher.execute(type, request);
+            }
+            return callNlpService(endpoint, request);
+        });
     }
 
     /**
      * 调用NLP服务的通用方法
+     * 每次尝试都经过端点熔断器，端点熔断后不再重试，立即失败；每次尝试在自适应并发上限内进行，并重新选择NLP服务副本；
+     * 大文本请求体以gzip压缩流式发送
      */
     private Map<String, Object> callNlpService(String endpoint, NlpRequest request) {
-        String url = config.getBaseUrl() + endpoint;
-        
-        // 设置请求头
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        
-        HttpEntity<NlpRequest> httpEntity = new HttpEntity<>(request, headers);
+        long textLength = NlpTransportCodec.textLength(request);
         
         int retries = 0;
         Exception lastException = null;
@@ -135,8 +164,9 @@ public class NlpServiceClient {
             try {
                 logger.info("调用NLP服务: {} (第{}次尝试)", endpoint, retries + 1);
                 
-                ResponseEntity<NlpResponse> response = restTemplate.postForEntity(
-                    url, httpEntity, NlpResponse.class);
+                ResponseEntity<NlpResponse> response = endpointGuard.execute(endpoint,
+                    () -> concurrencyLimiter.execute(endpoint, () -> replicaBalancer.execute(endpoint,
+                        baseUrl -> transportCodec.post(restTemplate, baseUrl, endpoint, request, textLength))));
                 
                 if (response.getStatusCode() == HttpStatus.OK) {
                     NlpResponse nlpResponse = response.getBody();
@@ -153,6 +183,10 @@ public class NlpServiceClient {
                 }
                 
             } catch (RestClientException e) {
+                if (Thread.currentThread().isInterrupted()) {
+                    // 分析被取消时调用线程被中断，阻塞中的请求随之中止，不再重试
+                    throw new NlpServiceException("调用被中断", e);
+                }
                 lastException = e;
                 logger.warn("NLP服务调用失败 (第{}次尝试): {}", retries + 1, e.getMessage());
                 
@@ -0,0 +1,276 @@
+/**
+ * NLP服务请求与响应的传输编码
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-29 09:00:00
+ */
+package com.historyanalysis.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.historyanalysis.config.NlpServiceConfig;
+import com.historyanalysis.dto.nlp.NlpRequest;
+import com.historyanalysis.dto.nlp.NlpResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.StreamingHttpOutputMessage;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * NLP服务请求与响应的传输编码
+ *
+ * 大文本请求不再先序列化成完整的JSON字节数组再发送：
+ * - 文本总长度达到阈值的请求体以gzip压缩，JSON由Jackson直接写入压缩流，内存中只有压缩后的数据
+ * - 阻塞客户端的请求体以流的方式写出，不在内存中保留完整的请求体
+ * - 声明接受gzip响应，压缩的响应边读边解压
+ * - NLP服务以415拒绝压缩请求体时（旧版本服务）自动以不压缩方式重发，并记住该副本不再压缩
+ * - 压缩请求数、退回次数和压缩比通过Micrometer导出
+ */
+@Service
+public class NlpTransportCodec {
+
+    private static final Logger logger = LoggerFactory.getLogger(NlpTransportCodec.class);
+
+    private static final String GZIP = "gzip";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final NlpServiceConfig.Compression compressionConfig;
+    private final ObjectWriter writer;
+    private final ObjectReader responseReader;
+
+    /**
+     * 不接受压缩请求体的副本基础URL
+     */
+    private final Set<String> identityOnly = ConcurrentHashMap.newKeySet();
+
+    private final Counter gzipRequests;
+    private final Counter identityRequests;
+    private final Counter fallbacks;
+    private final DistributionSummary compressionRatio;
+
+    public NlpTransportCodec(NlpServiceConfig config, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.compressionConfig = config.getCompression();
+        this.writer = objectMapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.responseReader = objectMapper.readerFor(NlpResponse.class)
+                .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+        this.gzipRequests = requestCounter(meterRegistry, GZIP);
+        this.identityRequests = requestCounter(meterRegistry, "identity");
+        this.fallbacks = Counter.builder("nlp.transport.fallbacks")
+                .description("NLP服务不支持压缩请求体而退回不压缩的次数")
+                .register(meterRegistry);
+        this.compressionRatio = DistributionSummary.builder("nlp.transport.compression.ratio")
+                .description("压缩请求体的原始JSON字节数与压缩后字节数之比")
+                .register(meterRegistry);
+    }
+
+    private static Counter requestCounter(MeterRegistry meterRegistry, String encoding) {
+        return Counter.builder("nlp.transport.requests")
+                .description("发往NLP服务的请求数")
+                .tag("encoding", encoding)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 请求中文本的总字符数
+     */
+    public static long textLength(NlpRequest request) {
+        return request.getText() != null ? request.getText().length() : 0;
+    }
+
+    /**
+     * 批量请求中文本的总字符数
+     */
+    public static long textLength(List<NlpRequest> requests) {
+        return requests.stream().mapToLong(NlpTransportCodec::textLength).sum();
+    }
+
+    /**
+     * 判断发往该副本的请求体是否压缩
+     */
+    public boolean shouldCompress(String baseUrl, long textLength) {
+        return compressionConfig.isEnabled() && textLength >= compressionConfig.getMinTextLength()
+                && !identityOnly.contains(baseUrl);
+    }
+
+    /**
+     * 以阻塞方式发送请求，请求体流式写出
+     *
+     * @param restTemplate 阻塞客户端
+     * @param baseUrl 副本基础URL
+     * @param endpoint 端点路径
+     * @param body 请求体
+     * @param textLength 请求中文本的总字符数，决定是否压缩
+     * @return 响应，状态码非2xx时由restTemplate的错误处理抛出异常
+     */
+    public ResponseEntity<NlpResponse> post(RestTemplate restTemplate, String baseUrl, String endpoint,
+                                            Object body, long textLength) {
+        boolean compress = shouldCompress(baseUrl, textLength);
+        try {
+            return exchange(restTemplate, baseUrl + endpoint, body, compress);
+        } catch (HttpClientErrorException e) {
+            if (compress && e.getStatusCode() == HttpStatus.UNSUPPORTED_MEDIA_TYPE) {
+                rejectCompression(baseUrl);
+                return exchange(restTemplate, baseUrl + endpoint, body, false);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 以响应式方式发送请求；压缩在有界弹性线程池中进行，不占用事件循环线程
+     *
+     * @param webClient 响应式客户端
+     * @param baseUrl 副本基础URL
+     * @param endpoint 端点路径
+     * @param body 请求体
+     * @param textLength 请求中文本的总字符数，决定是否压缩
+     * @return 响应体
+     */
+    public Mono<NlpResponse> post(WebClient webClient, String baseUrl, String endpoint, Object body, long textLength) {
+        boolean compress = shouldCompress(baseUrl, textLength);
+        Mono<NlpResponse> response = exchange(webClient, baseUrl + endpoint, body, compress);
+        if (!compress) {
+            return response;
+        }
+        return response.onErrorResume(
+                e -> e instanceof WebClientResponseException
+                        && ((WebClientResponseException) e).getStatusCode() == HttpStatus.UNSUPPORTED_MEDIA_TYPE,
+                e -> {
+                    rejectCompression(baseUrl);
+                    return exchange(webClient, baseUrl + endpoint, body, false);
+                });
+    }
+
+    private ResponseEntity<NlpResponse> exchange(RestTemplate restTemplate, String url, Object body, boolean compress) {
+        return restTemplate.execute(url, HttpMethod.POST,
+                request -> writeRequest(request, body, compress), this::readResponse);
+    }
+
+    private Mono<NlpResponse> exchange(WebClient webClient, String url, Object body, boolean compress) {
+        if (!compress) {
+            identityRequests.increment();
+            return webClient.post()
+                    .uri(url)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(body)
+                    .retrieve()
+                    .bodyToMono(NlpResponse.class);
+        }
+        return Mono.fromCallable(() -> gzip(body))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(bytes -> {
+                    gzipRequests.increment();
+                    return webClient.post()
+                            .uri(url)
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .header(HttpHeaders.CONTENT_ENCODING, GZIP)
+                            .bodyValue(bytes)
+                            .retrieve()
+                            .bodyToMono(NlpResponse.class);
+                });
+    }
+
+    private void writeRequest(ClientHttpRequest request, Object body, boolean compress) throws IOException {
+        HttpHeaders headers = request.getHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setAccept(List.of(MediaType.APPLICATION_JSON));
+        if (compressionConfig.isEnabled() && compressionConfig.isAcceptCompressedResponses()) {
+            headers.set(HttpHeaders.ACCEPT_ENCODING, GZIP);
+        }
+        if (compress) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, GZIP);
+            gzipRequests.increment();
+        } else {
+            identityRequests.increment();
+        }
+
+        if (request instanceof StreamingHttpOutputMessage) {
+            ((StreamingHttpOutputMessage) request).setBody(out -> writeBody(out, body, compress));
+        } else {
+            writeBody(request.getBody(), body, compress);
+        }
+    }
+
+    /**
+     * 将请求体序列化写入输出流，需要压缩时经过gzip流
+     */
+    void writeBody(OutputStream out, Object body, boolean compress) throws IOException {
+        if (!compress) {
+            writer.writeValue(out, body);
+            return;
+        }
+        CountingOutputStream wire = new CountingOutputStream(out);
+        GZIPOutputStream gzip = new LeveledGzipOutputStream(wire, compressionConfig.getLevel());
+        CountingOutputStream raw = new CountingOutputStream(gzip);
+        writer.writeValue(raw, body);
+        gzip.finish();
+        if (wire.getByteCount() > 0) {
+            compressionRatio.record((double) raw.getByteCount() / wire.getByteCount());
+        }
+    }
+
+    private byte[] gzip(Object body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        writeBody(bytes, body, true);
+        return bytes.toByteArray();
+    }
+
+    private ResponseEntity<NlpResponse> readResponse(ClientHttpResponse response) throws IOException {
+        InputStream in = response.getBody();
+        String encoding = response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING);
+        if (encoding != null && encoding.trim().equalsIgnoreCase(GZIP)) {
+            in = new GZIPInputStream(in, BUFFER_SIZE);
+        }
+        NlpResponse body = responseReader.readValue(in);
+        return ResponseEntity.status(response.getStatusCode()).headers(response.getHeaders()).body(body);
+    }
+
+    private void rejectCompression(String baseUrl) {
+        if (identityOnly.add(baseUrl)) {
+            fallbacks.increment();
+            logger.warn("NLP服务副本不支持gzip压缩的请求体，改为不压缩发送: {}", baseUrl);
+        }
+    }
+
+    /**
+     * 可设置压缩级别的gzip输出流
+     */
+    private static class LeveledGzipOutputStream extends GZIPOutputStream {
+
+        LeveledGzipOutputStream(OutputStream out, int level) throws IOException {
+            super(out, BUFFER_SIZE);
+            def.setLevel(level);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/**
+ * 响应式NLP服务客户端
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-13 09:00:00
+ */
+package com.historyanalysis.service;
+
+import com.historyanalysis.config.NlpServiceConfig;
+import com.historyanalysis.dto.nlp.NlpRequest;
+import com.historyanalysis.exception.NlpServiceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 响应式NLP服务客户端
+ * 基于WebClient和Reactor Netty连接池与Python NLP微服务通信，调用过程不阻塞线程：
+ * - 连接复用，连接数和等待队列由NlpServiceConfig配置
+ * - 网络错误、超时和5xx响应以带抖动的指数退避重试
+ * - 每个端点独立的响应超时
+ * - 配置了多个NLP服务副本时经NlpReplicaBalancer选择副本，每次重试重新选择
+ */
+@Service
+public class ReactiveNlpServiceClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveNlpServiceClient.class);
+
+    private final WebClient webClient;
+    private final NlpServiceConfig config;
+    private final NlpReplicaBalancer replicaBalancer;
+    private final NlpTransportCodec transportCodec;
+
+    public ReactiveNlpServiceClient(@Qualifier("nlpWebClient") WebClient webClient,
+                                    NlpServiceConfig config,
+                                    NlpReplicaBalancer replicaBalancer,
+                                    NlpTransportCodec transportCodec) {
+        this.webClient = webClient;
+        this.config = config;
+        this.replicaBalancer = replicaBalancer;
+        this.transportCodec = transportCodec;
+    }
+
+    /**
+     * 健康检查，配置了多个副本时任一副本健康即为健康
+     */
+    public Mono<Boolean> isHealthy() {
+        return Flux.fromIterable(replicaBalancer.getBaseUrls())
+                .flatMap(baseUrl -> webClient.get()
+                        .uri(baseUrl + "/api/health")
+                        .retrieve()
+                        .toBodilessEntity()
+                        .map(response -> response.getStatusCode().is2xxSuccessful())
+                        .timeout(Duration.ofSeconds(config.getConnectTimeout()))
+                        .onErrorResume(e -> {
+                            logger.warn("NLP服务健康检查失败: {} - {}", baseUrl, e.getMessage());
+                            return Mono.just(false);
+                        }))
+                .any(Boolean::booleanValue);
+    }
+
+    /**
+     * 文本分析
+     */
+    public Mono<Map<String, Object>> analyzeText(String text, String analysisType) {
+        return callNlpService("/api/analyze/text", new NlpRequest(text, analysisType));
+    }
+
+    /**
+     * 词频分析
+     */
+    public Mono<Map<String, Object>> analyzeWordFrequency(String text, Integer topN, Integer minLength) {
+        return callNlpService("/api/analyze/word-frequency", NlpRequest.wordFrequency(text, topN, minLength));
+    }
+
+    /**
+     * 时间轴分析
+     */
+    public Mono<Map<String, Object>> analyzeTimeline(String text) {
+        return callNlpService("/api/analyze/timeline", new NlpRequest(text));
+    }
+
+    /**
+     * 地理位置分析
+     */
+    public Mono<Map<String, Object>> analyzeGeographic(String text) {
+        return callNlpService("/api/analyze/geographic", new NlpRequest(text));
+    }
+
+    /**
+     * 文本摘要分析
+     */
+    public Mono<Map<String, Object>> analyzeSummary(String text, String summaryType, Integer maxSentences) {
+        return callNlpService("/api/analyze/summary", NlpRequest.summary(text, summaryType, maxSentences));
+    }
+
+    /**
+     * 综合分析
+     */
+    public Mono<Map<String, Object>> analyzeComprehensive(String text) {
+        return callNlpService("/api/analyze/comprehensive", new NlpRequest(text));
+    }
+
+    /**
+     * 多维度分析
+     */
+    public Mono<Map<String, Object>> analyzeMultidimensional(String text) {
+        return callNlpService("/api/analyze/multidimensional", new NlpRequest(text));
+    }
+
+    /**
+     * 批量分析：一次调用处理多条同类型文本
+     *
+     * @param type 分析类型，取单条接口路径最后一段，如word-frequency、timeline
+     * @param requests 各条目的请求参数
+     * @return 与requests一一对应的条目结果，每条包含success、data或error
+     */
+    @SuppressWarnings("unchecked")
+    public Mono<List<Map<String, Object>>> analyzeBatch(String type, List<NlpRequest> requests) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("type", type);
+        body.put("items", requests);
+        return callNlpService("/api/analyze/batch", body, NlpTransportCodec.textLength(requests))
+                .flatMap(data -> {
+                    Object results = data.get("results");
+                    if (!(results instanceof List) || ((List<?>) results).size() != requests.size()) {
+                        return Mono.error(new NlpServiceException("NLP服务批量结果与请求条目数不一致: " + type));
+                    }
+                    return Mono.just((List<Map<String, Object>>) results);
+                });
+    }
+
+    /**
+     * 调用NLP服务的通用方法
+     */
+    private Mono<Map<String, Object>> callNlpService(String endpoint, NlpRequest request) {
+        return callNlpService(endpoint, request, NlpTransportCodec.textLength(request));
+    }
+
+    /**
+     * 调用NLP服务的通用方法，textLength为请求中文本的总字符数，达到阈值时请求体以gzip压缩发送
+     */
+    private Mono<Map<String, Object>> callNlpService(String endpoint, Object request, long textLength) {
+        Duration timeout = config.getEndpointTimeout(endpoint);
+
+        return replicaBalancer.exchange(endpoint, baseUrl -> {
+                    logger.debug("调用NLP服务(响应式): {}{}", baseUrl, endpoint);
+                    return transportCodec.post(webClient, baseUrl, endpoint, request, textLength)
+                            .timeout(timeout);
+                })
+                .retryWhen(Retry.backoff(config.getMaxRetries(), Duration.ofMillis(config.getRetryInterval()))
+                        .maxBackoff(Duration.ofMillis(config.getMaxRetryBackoff()))
+                        .jitter(0.5)
+                        .filter(ReactiveNlpServiceClient::isRetryable)
+                        .doBeforeRetry(signal -> logger.warn("NLP服务调用失败 (第{}次重试): {} - {}",
+                                signal.totalRetries() + 1, endpoint, signal.failure().getMessage()))
+                        .onRetryExhaustedThrow((spec, signal) -> new NlpServiceException(
+                                String.format("NLP服务调用失败，已重试%d次", config.getMaxRetries()), signal.failure())))
+                .flatMap(nlpResponse -> {
+                    if (nlpResponse.isSuccess()) {
+                        logger.debug("NLP服务调用成功(响应式): {}", endpoint);
+                        return Mono.justOrEmpty(nlpResponse.getData());
+                    }
+                    return Mono.error(new NlpServiceException("NLP服务返回错误: " + nlpResponse.getErrorMessage()));
+                })
+                .onErrorMap(e -> !(e instanceof NlpServiceException),
+                        e -> new NlpServiceException("NLP服务调用失败: " + e.getMessage(), e));
+    }
+
+    /**
+     * 判断异常是否值得重试：网络错误、超时和服务端5xx错误
+     */
+    private static boolean isRetryable(Throwable e) {
+        if (e instanceof WebClientResponseException) {
+            return ((WebClientResponseException) e).getStatusCode().is5xxServerError();
+        }
+        return e instanceof WebClientRequestException || e instanceof TimeoutException;
+    }
+}
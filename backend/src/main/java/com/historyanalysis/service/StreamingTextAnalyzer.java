@@ -0,0 +1,437 @@
+/**
+ * 流式文本分析服务
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-17 09:30:00
+ */
+package com.historyanalysis.service;
+
+import com.historyanalysis.config.AnalysisStreamingConfig;
+import com.historyanalysis.exception.NlpServiceException;
+import com.historyanalysis.util.ContentHashUtil;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 流式文本分析服务
+ *
+ * 分析任务不再把所有文件拼接为一个字符串，而是：
+ * - 按需逐个读取文件文本，切分为不超过chunkSize的块
+ * - 逐块调用NLP服务，用NlpResultMerger合并各块结果
+ * - 文本摘要在各块摘要的基础上再做一次摘要，累积的摘要过长时提前归约
+ * 内存占用取决于单个文件大小、块大小和合并结果的上限，与分析覆盖的文件数量无关。
+ *
+ * parallelism大于1时，最多parallelism个分块同时调用NLP服务，使多进程部署的NLP服务可以并行处理
+ * 同一分析的不同文件；结果仍按分块顺序交给合并器，因此合并结果与串行处理完全一致。
+ *
+ * 以AnalysisTextSource列表为输入时按文件增量分析：
+ * - 每个文件单独分块、合并为单文件结果，以文件内容摘要为键保存到AnalysisPartialStore
+ * - 重新分析时内容未变化的文件直接复用已保存的结果，只有新增或修改的文件调用NLP服务
+ * - 各文件结果再按文件顺序合并为最终结果
+ *
+ * 增量分析接受AnalysisCancellation：取消后不再发送新的分块或开始新的文件，在途的分块调用被中断，
+ * 分析以AnalysisCancelledException结束。
+ */
+@Service
+public class StreamingTextAnalyzer {
+
+    private static final Logger logger = LoggerFactory.getLogger(StreamingTextAnalyzer.class);
+
+    /**
+     * 中间结果格式版本，合并规则变化时递增使旧结果失效
+     */
+    private static final String PARTIAL_VERSION = "v1";
+
+    private final AnalysisStreamingConfig config;
+    private final NlpServiceClient nlpServiceClient;
+    private final AnalysisPartialStore partialStore;
+
+    /**
+     * 分块调用使用的虚拟线程，并行度由每个分析的在途窗口限制
+     */
+    private final ExecutorService fanOutExecutor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("nlp-fanout-", 0).factory());
+
+    public StreamingTextAnalyzer(AnalysisStreamingConfig config, NlpServiceClient nlpServiceClient,
+                                 AnalysisPartialStore partialStore) {
+        this.config = config;
+        this.nlpServiceClient = nlpServiceClient;
+        this.partialStore = partialStore;
+    }
+
+    /**
+     * 词频分析：各块请求chunkTopN个高频词，合并后截取前topN个
+     */
+    public Map<String, Object> analyzeWordFrequency(Iterator<String> texts, Integer topN, Integer minLength) {
+        int chunkTopN = Math.max(config.getChunkTopN(), topN != null ? topN : 0);
+        return analyze(texts, "word-frequency", topN != null ? topN : 0,
+                chunk -> nlpServiceClient.analyzeWordFrequency(chunk, chunkTopN, minLength));
+    }
+
+    /**
+     * 时间轴分析
+     */
+    public Map<String, Object> analyzeTimeline(Iterator<String> texts) {
+        return analyze(texts, "timeline", 0, nlpServiceClient::analyzeTimeline);
+    }
+
+    /**
+     * 地理位置分析
+     */
+    public Map<String, Object> analyzeGeographic(Iterator<String> texts) {
+        return analyze(texts, "geographic", 0, nlpServiceClient::analyzeGeographic);
+    }
+
+    /**
+     * 综合分析
+     */
+    public Map<String, Object> analyzeComprehensive(Iterator<String> texts) {
+        return analyze(texts, "comprehensive", 50, nlpServiceClient::analyzeComprehensive);
+    }
+
+    /**
+     * 多维度分析
+     */
+    public Map<String, Object> analyzeMultidimensional(Iterator<String> texts) {
+        return analyze(texts, "multidimensional", 50, nlpServiceClient::analyzeMultidimensional);
+    }
+
+    /**
+     * 文本摘要分析：各块分别摘要，多于一块时对各块摘要拼接后的文本再做一次摘要
+     */
+    public Map<String, Object> analyzeSummary(Iterator<String> texts, String summaryType, Integer maxSentences) {
+        Function<String, Map<String, Object>> summarize =
+                text -> nlpServiceClient.analyzeSummary(text, summaryType, maxSentences);
+
+        SummaryMerger merger = new SummaryMerger(summarize);
+        forEachResult(new TextChunkIterator(texts, config.getChunkSize()), parallelism(), summarize, merger::merge,
+                AnalysisCancellation.NONE);
+        return merger.finish();
+    }
+
+    /**
+     * 增量词频分析：各文件保留chunkTopN个高频词作为中间结果，合并后截取前topN个
+     */
+    public Map<String, Object> analyzeWordFrequency(List<AnalysisTextSource> sources, Integer topN, Integer minLength,
+                                                    AnalysisProgressReporter progress,
+                                                    AnalysisCancellation cancellation) {
+        int chunkTopN = Math.max(config.getChunkTopN(), topN != null ? topN : 0);
+        Function<String, Map<String, Object>> call = tracked(
+                chunk -> nlpServiceClient.analyzeWordFrequency(chunk, chunkTopN, minLength), progress, cancellation);
+        String params = "topN=" + chunkTopN + "|minLength=" + minLength;
+        return analyzeIncremental(sources, "word-frequency", params, topN != null ? topN : 0,
+                text -> mergeChunks(text, call, chunkTopN, cancellation), progress, cancellation);
+    }
+
+    /**
+     * 增量时间轴分析
+     */
+    public Map<String, Object> analyzeTimeline(List<AnalysisTextSource> sources, AnalysisProgressReporter progress,
+                                               AnalysisCancellation cancellation) {
+        Function<String, Map<String, Object>> call = tracked(nlpServiceClient::analyzeTimeline, progress, cancellation);
+        return analyzeIncremental(sources, "timeline", "", 0, text -> mergeChunks(text, call, 0, cancellation),
+                progress, cancellation);
+    }
+
+    /**
+     * 增量地理位置分析
+     */
+    public Map<String, Object> analyzeGeographic(List<AnalysisTextSource> sources, AnalysisProgressReporter progress,
+                                                 AnalysisCancellation cancellation) {
+        Function<String, Map<String, Object>> call = tracked(nlpServiceClient::analyzeGeographic, progress, cancellation);
+        return analyzeIncremental(sources, "geographic", "", 0, text -> mergeChunks(text, call, 0, cancellation),
+                progress, cancellation);
+    }
+
+    /**
+     * 增量综合分析
+     */
+    public Map<String, Object> analyzeComprehensive(List<AnalysisTextSource> sources, AnalysisProgressReporter progress,
+                                                    AnalysisCancellation cancellation) {
+        Function<String, Map<String, Object>> call = tracked(nlpServiceClient::analyzeComprehensive, progress, cancellation);
+        return analyzeIncremental(sources, "comprehensive", "", 50, text -> mergeChunks(text, call, 0, cancellation),
+                progress, cancellation);
+    }
+
+    /**
+     * 增量多维度分析
+     */
+    public Map<String, Object> analyzeMultidimensional(List<AnalysisTextSource> sources, AnalysisProgressReporter progress,
+                                                       AnalysisCancellation cancellation) {
+        Function<String, Map<String, Object>> call = tracked(nlpServiceClient::analyzeMultidimensional, progress, cancellation);
+        return analyzeIncremental(sources, "multidimensional", "", 50, text -> mergeChunks(text, call, 0, cancellation),
+                progress, cancellation);
+    }
+
+    /**
+     * 增量文本摘要分析：各文件的摘要作为中间结果，多于一个文件时对各文件摘要再做一次摘要
+     */
+    public Map<String, Object> analyzeSummary(List<AnalysisTextSource> sources, String summaryType, Integer maxSentences,
+                                              AnalysisProgressReporter progress, AnalysisCancellation cancellation) {
+        Function<String, Map<String, Object>> summarize =
+                text -> nlpServiceClient.analyzeSummary(text, summaryType, maxSentences);
+        Function<String, Map<String, Object>> trackedSummarize = tracked(summarize, progress, cancellation);
+
+        SummaryMerger merger = new SummaryMerger(summarize);
+        forEachFileResult(sources, "summary", "type=" + summaryType + "|maxSentences=" + maxSentences, text -> {
+            SummaryMerger fileMerger = new SummaryMerger(summarize);
+            forEachResult(new TextChunkIterator(List.of(text).iterator(), config.getChunkSize()), parallelism(),
+                    trackedSummarize, fileMerger::merge, cancellation);
+            return fileMerger.getChunkCount() > 0 ? fileMerger.finish() : null;
+        }, merger::merge, progress, cancellation);
+        return merger.finish();
+    }
+
+    /**
+     * 逐块调用NLP服务并合并结果
+     */
+    private Map<String, Object> analyze(Iterator<String> texts, String kind, int topN,
+                                        Function<String, Map<String, Object>> call) {
+        NlpResultMerger merger = newMerger();
+        forEachResult(new TextChunkIterator(texts, config.getChunkSize()), parallelism(), call, merger::merge,
+                AnalysisCancellation.NONE);
+        requireText(merger);
+        logger.debug("流式分析完成, kind={}, chunks={}", kind, merger.getChunkCount());
+        return merger.finish(topN);
+    }
+
+    /**
+     * 按文件合并中间结果，文件内容未变化时复用已保存的单文件结果
+     */
+    private Map<String, Object> analyzeIncremental(List<AnalysisTextSource> sources, String kind, String params,
+                                                   int topN, Function<String, Map<String, Object>> fileAnalysis,
+                                                   AnalysisProgressReporter progress,
+                                                   AnalysisCancellation cancellation) {
+        NlpResultMerger merger = newMerger();
+        forEachFileResult(sources, kind, params, fileAnalysis, merger::merge, progress, cancellation);
+        requireText(merger);
+        return merger.finish(topN);
+    }
+
+    /**
+     * 按文件顺序交付各文件的中间结果，多个文件的计算或查找并行进行，文本为空的文件被跳过
+     */
+    private void forEachFileResult(List<AnalysisTextSource> sources, String kind, String params,
+                                   Function<String, Map<String, Object>> fileAnalysis,
+                                   Consumer<Map<String, Object>> consumer,
+                                   AnalysisProgressReporter progress,
+                                   AnalysisCancellation cancellation) {
+        String paramsKey = paramsKey(params);
+        AtomicInteger computed = new AtomicInteger();
+        progress.filesResolved(sources.size());
+        forEachResult(sources.iterator(), parallelism(), source -> {
+            cancellation.throwIfCancelled();
+            String text = null;
+            String contentHash = source.getContentHash();
+            if (contentHash == null) {
+                text = source.loadText();
+                progress.textLoaded();
+                contentHash = ContentHashUtil.sha256Hex(text);
+            }
+            Optional<Map<String, Object>> cached = partialStore.find(contentHash, kind, paramsKey);
+            if (cached.isPresent()) {
+                progress.fileCompleted(true);
+                return cached.get();
+            }
+            if (text == null) {
+                text = source.loadText();
+                progress.textLoaded();
+            }
+            Map<String, Object> partial = text == null || text.isEmpty() ? null : fileAnalysis.apply(text);
+            if (partial != null) {
+                partialStore.save(contentHash, kind, paramsKey, partial);
+                computed.incrementAndGet();
+            }
+            progress.fileCompleted(false);
+            return partial;
+        }, partial -> {
+            if (partial != null) {
+                consumer.accept(partial);
+            }
+        }, cancellation);
+        logger.info("增量分析完成, kind={}, files={}, computed={}", kind, sources.size(), computed.get());
+    }
+
+    /**
+     * 包装分块调用，发送前检查是否已取消，在发送前和返回后报告分块进度
+     */
+    private static Function<String, Map<String, Object>> tracked(Function<String, Map<String, Object>> call,
+                                                                 AnalysisProgressReporter progress,
+                                                                 AnalysisCancellation cancellation) {
+        return chunk -> {
+            cancellation.throwIfCancelled();
+            progress.chunkSent();
+            Map<String, Object> result = call.apply(chunk);
+            progress.chunkCompleted();
+            return result;
+        };
+    }
+
+    /**
+     * 分析单个文件并合并为该文件的中间结果，文件内的分块与非增量分析一样按有界窗口并行发送、按顺序合并
+     */
+    private Map<String, Object> mergeChunks(String text, Function<String, Map<String, Object>> call, int topN,
+                                            AnalysisCancellation cancellation) {
+        NlpResultMerger merger = newMerger();
+        forEachResult(new TextChunkIterator(List.of(text).iterator(), config.getChunkSize()), parallelism(), call,
+                merger::merge, cancellation);
+        return merger.getChunkCount() > 0 ? merger.finish(topN) : null;
+    }
+
+    /**
+     * 中间结果的参数键：分析参数加上影响单文件结果的分块配置，配置变化后旧结果自然失效
+     */
+    private String paramsKey(String params) {
+        return PARTIAL_VERSION + "|" + params + "|chunk=" + config.getChunkSize() + "|words="
+                + config.getMaxTrackedWords() + "|items=" + config.getMaxListItems();
+    }
+
+    /**
+     * 逐项调用并按输入顺序在调用线程上交付结果
+     * 在途调用数不超过parallelism；任一调用失败时取消其余在途调用并抛出异常。
+     * 调用始终在虚拟线程上执行（parallelism为1时逐项串行），使取消时可以中断阻塞中的HTTP请求
+     */
+    private <T> void forEachResult(Iterator<T> items, int parallelism, Function<T, Map<String, Object>> call,
+                                   Consumer<Map<String, Object>> consumer, AnalysisCancellation cancellation) {
+        Deque<Future<Map<String, Object>>> inFlight = new ArrayDeque<>();
+        try {
+            while (items.hasNext()) {
+                cancellation.throwIfCancelled();
+                T item = items.next();
+                Future<Map<String, Object>> future = fanOutExecutor.submit(() -> call.apply(item));
+                cancellation.register(future);
+                inFlight.addLast(future);
+                if (inFlight.size() >= parallelism) {
+                    consumer.accept(await(inFlight.removeFirst(), cancellation));
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                consumer.accept(await(inFlight.removeFirst(), cancellation));
+            }
+        } finally {
+            inFlight.forEach(future -> {
+                future.cancel(true);
+                cancellation.unregister(future);
+            });
+        }
+    }
+
+    private int parallelism() {
+        return Math.max(1, config.getParallelism());
+    }
+
+    /**
+     * 等待单项结果；分析已取消时无论该项如何结束都抛出AnalysisCancelledException
+     */
+    private static Map<String, Object> await(Future<Map<String, Object>> future, AnalysisCancellation cancellation) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NlpServiceException("调用被中断", e);
+        } catch (CancellationException e) {
+            cancellation.throwIfCancelled();
+            throw new NlpServiceException("调用已取消", e);
+        } catch (ExecutionException e) {
+            cancellation.throwIfCancelled();
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new NlpServiceException("NLP服务调用失败: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            cancellation.unregister(future);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        fanOutExecutor.shutdownNow();
+    }
+
+    private NlpResultMerger newMerger() {
+        return new NlpResultMerger(config.getMaxTrackedWords(), config.getMaxListItems());
+    }
+
+    private static void requireText(NlpResultMerger merger) {
+        if (merger.getChunkCount() == 0) {
+            throw new RuntimeException("没有可分析的文本内容");
+        }
+    }
+
+    /**
+     * 从摘要结果中取出摘要文本，结构为{summary: {summary: "..."}}
+     */
+    @SuppressWarnings("unchecked")
+    private static String summaryText(Map<String, Object> result) {
+        if (result != null && result.get("summary") instanceof Map) {
+            Object text = ((Map<String, Object>) result.get("summary")).get("summary");
+            if (text != null) {
+                return text.toString();
+            }
+        }
+        return "";
+    }
+
+    /**
+     * 摘要合并：合并各部分的统计信息并累积各部分的摘要文本，累积过长时提前归约，
+     * 多于一部分时对累积的摘要再做一次摘要
+     */
+    private class SummaryMerger {
+
+        private final Function<String, Map<String, Object>> summarize;
+        private final NlpResultMerger merger = newMerger();
+        private final StringBuilder summaries = new StringBuilder();
+
+        SummaryMerger(Function<String, Map<String, Object>> summarize) {
+            this.summarize = summarize;
+        }
+
+        void merge(Map<String, Object> partial) {
+            merger.merge(partial);
+            summaries.append(summaryText(partial)).append('\n');
+            if (summaries.length() > config.getChunkSize()) {
+                String reduced = summaryText(summarize.apply(summaries.toString()));
+                summaries.setLength(0);
+                summaries.append(reduced).append('\n');
+            }
+        }
+
+        int getChunkCount() {
+            return merger.getChunkCount();
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> finish() {
+            requireText(merger);
+            Map<String, Object> merged = merger.finish(0);
+            if (merger.getChunkCount() > 1) {
+                Map<String, Object> statistics = (Map<String, Object>) merged.get("text_statistics");
+                Map<String, Object> result = summarize.apply(summaries.toString());
+                if (result != null) {
+                    merged.putAll(result);
+                    if (statistics != null) {
+                        merged.put("text_statistics", statistics);
+                    }
+                }
+            }
+            return merged;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * 文本分块迭代器
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-17 09:10:00
+ */
+package com.historyanalysis.service;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 文本分块迭代器
+ *
+ * 按需从文件文本迭代器中读取文本，切分为不超过chunkSize字符的块：
+ * - 多个短文件合并到同一块中，文件之间以换行分隔
+ * - 长文件优先在句末标点或换行处切分，找不到时按长度截断
+ * - 任一时刻只持有当前文件的文本和当前块
+ */
+public class TextChunkIterator implements Iterator<String> {
+
+    private static final String BREAK_CHARS = "。！？；!?;.\n";
+
+    private final Iterator<String> texts;
+    private final int chunkSize;
+
+    private String current;
+    private int position;
+    private String next;
+
+    public TextChunkIterator(Iterator<String> texts, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize必须大于0");
+        }
+        this.texts = texts;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            next = advance();
+        }
+        return next != null;
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        String chunk = next;
+        next = null;
+        return chunk;
+    }
+
+    private String advance() {
+        StringBuilder buffer = new StringBuilder();
+        while (buffer.length() < chunkSize) {
+            if (current == null) {
+                if (!texts.hasNext()) {
+                    break;
+                }
+                String text = texts.next();
+                if (text == null || text.isBlank()) {
+                    continue;
+                }
+                current = text;
+                position = 0;
+            }
+
+            int room = chunkSize - buffer.length();
+            if (current.length() - position <= room) {
+                buffer.append(current, position, current.length()).append('\n');
+                current = null;
+                continue;
+            }
+
+            // 当前块为空时只接受后半段的切分点，避免产生过小的块
+            int end = breakPoint(position, position + room, buffer.length() == 0 ? position + room / 2 : position);
+            if (end < 0) {
+                if (buffer.length() > 0) {
+                    break;
+                }
+                end = position + room;
+                if (Character.isHighSurrogate(current.charAt(end - 1))) {
+                    end--;
+                }
+            }
+            buffer.append(current, position, end);
+            position = end;
+            break;
+        }
+        return buffer.length() == 0 ? null : buffer.toString();
+    }
+
+    /**
+     * 在[lowest, limit)范围内从后向前查找切分点，返回切分位置（不含），找不到返回-1
+     */
+    private int breakPoint(int from, int limit, int lowest) {
+        for (int i = limit - 1; i >= Math.max(from, lowest); i--) {
+            if (BREAK_CHARS.indexOf(current.charAt(i)) >= 0) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+}
@@ -7,15 +7,32 @@
  */
 package com.historyanalysis.service.impl;
 
+import com.historyanalysis.config.AnalysisTaskConfig;
 import com.historyanalysis.entity.*;
 import com.historyanalysis.repository.*;
+import com.historyanalysis.service.AnalysisCancellation;
+import com.historyanalysis.service.AnalysisCancellationRegistry;
+import com.historyanalysis.service.AnalysisCompletionNotifier;
+import com.historyanalysis.service.AnalysisEventBus;
+import com.historyanalysis.service.AnalysisJobQueue;
+import com.historyanalysis.service.AnalysisJobSizer;
+import com.historyanalysis.service.AnalysisProgressReporter;
+import com.historyanalysis.service.AnalysisResultWriter;
 import com.historyanalysis.service.AnalysisService;
+import com.historyanalysis.service.AnalysisSingleFlight;
+import com.historyanalysis.service.AnalysisTaskExecutor;
+import com.historyanalysis.service.AnalysisTextSource;
+import com.historyanalysis.service.StreamingTextAnalyzer;
 import com.historyanalysis.service.FileService;
 import com.historyanalysis.service.NlpServiceClient;
+import com.historyanalysis.exception.AnalysisCancelledException;
+import com.historyanalysis.exception.HistoryAnalysisException;
 import com.historyanalysis.exception.NlpServiceException;
+import com.historyanalysis.dto.AnalysisProgressEvent;
 import com.historyanalysis.dto.nlp.NlpRequest;
 import com.historyanalysis.dto.nlp.NlpResponse;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -25,7 +42,12 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.StringUtils;
 
 import java.time.LocalDate;
@@ -33,7 +55,6 @@ import java.time.LocalDateTime;
 
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 /**
@@ -75,15 +96,71 @@ public class AnalysisServiceImpl implements AnalysisService {
     @Autowired
     private GeoLocationRepository geoLocationRepository;
 
+    @Autowired
+    private AnalysisTaskExecutor analysisTaskExecutor;
+
+    @Autowired
+    private AnalysisJobQueue analysisJobQueue;
+
+    @Autowired
+    private AnalysisResultWriter analysisResultWriter;
+
+    @Autowired
+    private StreamingTextAnalyzer streamingTextAnalyzer;
+
+    @Autowired
+    private UploadedFileRepository uploadedFileRepository;
+
+    @Autowired
+    private AnalysisCompletionNotifier completionNotifier;
+
+    @Autowired
+    private AnalysisEventBus analysisEventBus;
+
+    @Autowired
+    private AnalysisCancellationRegistry analysisCancellationRegistry;
+
+    @Autowired
+    private AnalysisSingleFlight analysisSingleFlight;
+
+    @Autowired
+    private AnalysisJobSizer analysisJobSizer;
+
+    @Autowired
+    private AnalysisTaskConfig analysisTaskConfig;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
     @Value("${app.analysis.timeout:300}")
     private int analysisTimeout;
 
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    /**
+     * 分析执行各阶段使用的短事务
+     */
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * 保存分析结果的写事务，超时上限防止慢写入长期占用连接
+     */
+    private TransactionTemplate writeTransactionTemplate;
+
+    @PostConstruct
+    public void initTransactionTemplates() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        writeTransactionTemplate = new TransactionTemplate(transactionManager);
+        writeTransactionTemplate.setTimeout(analysisTaskConfig.getWriteTransactionTimeout());
+    }
+
     /**
      * 创建分析任务
+     *
+     * 任务队列已满时抛出HistoryAnalysisException，此时任务记录以FAILED状态提交，不回滚
      */
     @Override
+    @Transactional(noRollbackFor = HistoryAnalysisException.class)
     public AnalysisResult createAnalysisTask(String projectId, String userId, AnalysisResult.AnalysisType analysisType, List<String> fileIds) {
         logger.info("创建分析任务, projectId={}, userId={}, analysisType={}, fileIds={}", projectId, userId, analysisType, fileIds);
 
@@ -147,6 +224,8 @@ public class AnalysisServiceImpl implements AnalysisService {
             executeAnalysisAsync(savedResult.getId().toString(), userId, analysisType);
 
             return savedResult;
+        } catch (HistoryAnalysisException e) {
+            throw e;
         } catch (Exception e) {
             logger.error("创建分析任务失败: {}", e.getMessage(), e);
             throw new RuntimeException("创建分析任务失败", e);
@@ -180,8 +259,11 @@ public class AnalysisServiceImpl implements AnalysisService {
 
     /**
      * 创建分析任务（简化版本）
+     *
+     * 任务队列已满时抛出HistoryAnalysisException，此时任务记录以FAILED状态提交，不回滚
      */
     @Override
+    @Transactional(noRollbackFor = HistoryAnalysisException.class)
     public AnalysisResult createAnalysis(String projectId, AnalysisResult.AnalysisType analysisType, String description) {
         logger.info("创建分析任务, projectId={}, analysisType={}, description={}", projectId, analysisType, description);
 
@@ -227,6 +309,8 @@ public class AnalysisServiceImpl implements AnalysisService {
         } catch (NumberFormatException e) {
             logger.error("无效的项目ID格式: {}", projectId);
             throw new IllegalArgumentException("无效的项目ID格式");
+        } catch (HistoryAnalysisException e) {
+            throw e;
         } catch (Exception e) {
             logger.error("创建分析任务失败: {}", e.getMessage(), e);
             throw new RuntimeException("创建分析任务失败", e);
@@ -241,54 +325,35 @@ public class AnalysisServiceImpl implements AnalysisService {
         logger.info("执行词频分析, analysisId={}, userId={}", analysisId, userId);
 
         try {
-            // 转换参数类型
-            Long analysisIdLong = Long.parseLong(analysisId);
-            Long userIdLong = Long.parseLong(userId);
-            
-            // 验证分析权限
-            if (!hasAnalysisAccess(analysisIdLong, userIdLong)) {
-                logger.warn("执行词频分析失败，无权限, analysisId={}, userId={}", analysisId, userId);
-                return false;
-            }
-
-            Optional<AnalysisResult> analysisOpt = analysisResultRepository.findById(analysisIdLong);
-            if (!analysisOpt.isPresent()) {
-                logger.warn("执行词频分析失败，分析不存在, analysisId={}", analysisId);
+            // 短事务内校验权限并标记为PROCESSING，之后读取文本和调用NLP服务均不持有数据库连接
+            AnalysisResult analysis = beginAnalysis(analysisId, userId, "词频分析");
+            if (analysis == null) {
                 return false;
             }
-
-            AnalysisResult analysis = analysisOpt.get();
-            analysis.setStatus(AnalysisResult.AnalysisStatus.PROCESSING);
-            analysis.setStartedAt(LocalDateTime.now());
-            analysisResultRepository.save(analysis);
+            AnalysisProgressReporter progress = analysisEventBus.reporter(analysis.getId());
+            progress.started();
+            AnalysisCancellation cancellation = analysisCancellationRegistry.get(analysis.getId());
 
             // 获取文件内容
             List<Long> fileIds = getFileIdsFromAnalysis(analysis);
-            StringBuilder combinedText = new StringBuilder();
-
+            Iterator<String> sampleText = null;
             if (fileIds.isEmpty()) {
                 // 如果没有文件ID，使用示例文本进行分析
                 logger.info("没有指定文件，使用示例文本进行词频分析, analysisId={}", analysisId);
-                combinedText.append("中国历史悠久，文化灿烂。从古代的夏商周三代，到秦汉统一，再到唐宋元明清各朝代，每个时期都有其独特的历史特色。" +
+                sampleText = List.of("中国历史悠久，文化灿烂。从古代的夏商周三代，到秦汉统一，再到唐宋元明清各朝代，每个时期都有其独特的历史特色。" +
                     "古代中国在政治、经济、文化、科技等方面都取得了辉煌的成就。政治上，建立了完善的官僚制度；经济上，农业和手工业发达；" +
-                    "文化上，儒家思想影响深远；科技上，四大发明改变了世界。这些历史文化遗产至今仍然影响着现代中国的发展。");
-            } else {
-                // 有文件ID时，读取文件内容
-                for (Long fileId : fileIds) {
-                    String fileContent = fileService.getFileContent(fileId.toString(), userId);
-                    if (StringUtils.hasText(fileContent)) {
-                        combinedText.append(fileContent).append("\n");
-                    }
-                }
-            }
-
-            if (combinedText.length() == 0) {
-                throw new RuntimeException("没有可分析的文本内容");
+                    "文化上，儒家思想影响深远；科技上，四大发明改变了世界。这些历史文化遗产至今仍然影响着现代中国的发展。").iterator();
             }
 
-            // 调用NLP服务进行词频分析
+            // 调用NLP服务进行词频分析；有文件ID时按文件增量分析，内容未变化的文件复用已保存的中间结果，
+            // 同时进行的相同分析合并为一次计算
             try {
-                Map<String, Object> nlpResponse = nlpServiceClient.analyzeWordFrequency(combinedText.toString(), 50, 2);
+                List<AnalysisTextSource> sources = sampleText != null ? null : fileSources(fileIds, userId);
+                Map<String, Object> nlpResponse = sampleText != null
+                        ? streamingTextAnalyzer.analyzeWordFrequency(sampleText, 50, 2)
+                        : analysisSingleFlight.execute(AnalysisSingleFlight.key("word-frequency", "50|2", sources),
+                                progress, cancellation, (sharedProgress, shared) -> streamingTextAnalyzer.analyzeWordFrequency(
+                                        sources, 50, 2, sharedProgress, shared));
 
                 if (nlpResponse == null) {
                     throw new RuntimeException("词频分析失败: NLP服务返回空结果");
@@ -298,12 +363,8 @@ public class AnalysisServiceImpl implements AnalysisService {
                 // 如果能成功返回数据，说明调用成功
                 logger.debug("NLP服务返回数据: {}", nlpResponse);
 
-                // 处理分析结果
-                processWordFrequencyResult(analysis, nlpResponse);
-
-                // 更新分析状态
-                analysis.completeAnalysis();
-                analysisResultRepository.save(analysis);
+                // 在有界的写事务中保存结果并完成分析
+                completeAnalysis(analysis, progress, cancellation, () -> processWordFrequencyResult(analysis, nlpResponse, progress));
 
                 logger.info("词频分析执行成功, analysisId={}", analysisId);
                 return true;
@@ -326,45 +387,24 @@ public class AnalysisServiceImpl implements AnalysisService {
         logger.info("执行时间轴分析, analysisId={}, userId={}", analysisId, userId);
 
         try {
-            // 转换参数类型
-            Long analysisIdLong = Long.parseLong(analysisId);
-            Long userIdLong = Long.parseLong(userId);
-            
-            // 验证分析权限
-            if (!hasAnalysisAccess(analysisIdLong, userIdLong)) {
-                logger.warn("执行时间轴分析失败，无权限, analysisId={}, userId={}", analysisId, userId);
-                return false;
-            }
-
-            Optional<AnalysisResult> analysisOpt = analysisResultRepository.findById(analysisIdLong);
-            if (!analysisOpt.isPresent()) {
-                logger.warn("执行时间轴分析失败，分析不存在, analysisId={}", analysisId);
+            // 短事务内校验权限并标记为PROCESSING，之后读取文本和调用NLP服务均不持有数据库连接
+            AnalysisResult analysis = beginAnalysis(analysisId, userId, "时间轴分析");
+            if (analysis == null) {
                 return false;
             }
-
-            AnalysisResult analysis = analysisOpt.get();
-            analysis.setStatus(AnalysisResult.AnalysisStatus.PROCESSING);
-            analysis.setStartedAt(LocalDateTime.now());
-            analysisResultRepository.save(analysis);
+            AnalysisProgressReporter progress = analysisEventBus.reporter(analysis.getId());
+            progress.started();
+            AnalysisCancellation cancellation = analysisCancellationRegistry.get(analysis.getId());
 
             // 获取文件内容
             List<Long> fileIds = getFileIdsFromAnalysis(analysis);
-            StringBuilder combinedText = new StringBuilder();
-
-            for (Long fileId : fileIds) {
-                String fileContent = fileService.getFileContent(fileId.toString(), userId);
-                if (StringUtils.hasText(fileContent)) {
-                    combinedText.append(fileContent).append("\n");
-                }
-            }
-
-            if (combinedText.length() == 0) {
-                throw new RuntimeException("没有可分析的文本内容");
-            }
+            List<AnalysisTextSource> sources = fileSources(fileIds, userId);
 
             // 调用NLP服务进行时间轴分析
             try {
-                Map<String, Object> nlpResponse = nlpServiceClient.analyzeTimeline(combinedText.toString());
+                Map<String, Object> nlpResponse = analysisSingleFlight.execute(
+                        AnalysisSingleFlight.key("timeline", "", sources), progress, cancellation,
+                        (sharedProgress, shared) -> streamingTextAnalyzer.analyzeTimeline(sources, sharedProgress, shared));
 
                 if (nlpResponse == null) {
                     throw new RuntimeException("时间轴分析失败: NLP服务返回空结果");
@@ -372,12 +412,8 @@ public class AnalysisServiceImpl implements AnalysisService {
                 
                 logger.debug("时间轴分析NLP服务返回数据: {}", nlpResponse);
 
-                // 处理分析结果
-                processTimelineResult(analysis, nlpResponse);
-
-                // 更新分析状态
-                analysis.completeAnalysis();
-                analysisResultRepository.save(analysis);
+                // 在有界的写事务中保存结果并完成分析
+                completeAnalysis(analysis, progress, cancellation, () -> processTimelineResult(analysis, nlpResponse, progress));
 
                 logger.info("时间轴分析执行成功, analysisId={}", analysisId);
                 return true;
@@ -400,45 +436,24 @@ public class AnalysisServiceImpl implements AnalysisService {
         logger.info("执行地理分析, analysisId={}, userId={}", analysisId, userId);
 
         try {
-            // 转换参数类型
-            Long analysisIdLong = Long.parseLong(analysisId);
-            Long userIdLong = Long.parseLong(userId);
-            
-            // 验证分析权限
-            if (!hasAnalysisAccess(analysisIdLong, userIdLong)) {
-                logger.warn("执行地理分析失败，无权限, analysisId={}, userId={}", analysisId, userId);
-                return false;
-            }
-
-            Optional<AnalysisResult> analysisOpt = analysisResultRepository.findById(analysisIdLong);
-            if (!analysisOpt.isPresent()) {
-                logger.warn("执行地理分析失败，分析不存在, analysisId={}", analysisId);
+            // 短事务内校验权限并标记为PROCESSING，之后读取文本和调用NLP服务均不持有数据库连接
+            AnalysisResult analysis = beginAnalysis(analysisId, userId, "地理分析");
+            if (analysis == null) {
                 return false;
             }
-
-            AnalysisResult analysis = analysisOpt.get();
-            analysis.setStatus(AnalysisResult.AnalysisStatus.PROCESSING);
-            analysis.setStartedAt(LocalDateTime.now());
-            analysisResultRepository.save(analysis);
+            AnalysisProgressReporter progress = analysisEventBus.reporter(analysis.getId());
+            progress.started();
+            AnalysisCancellation cancellation = analysisCancellationRegistry.get(analysis.getId());
 
             // 获取文件内容
             List<Long> fileIds = getFileIdsFromAnalysis(analysis);
-            StringBuilder combinedText = new StringBuilder();
-
-            for (Long fileId : fileIds) {
-                String fileContent = fileService.getFileContent(fileId.toString(), userId);
-                if (StringUtils.hasText(fileContent)) {
-                    combinedText.append(fileContent).append("\n");
-                }
-            }
-
-            if (combinedText.length() == 0) {
-                throw new RuntimeException("没有可分析的文本内容");
-            }
+            List<AnalysisTextSource> sources = fileSources(fileIds, userId);
 
             // 调用NLP服务进行地理分析
             try {
-                Map<String, Object> nlpResponse = nlpServiceClient.analyzeGeographic(combinedText.toString());
+                Map<String, Object> nlpResponse = analysisSingleFlight.execute(
+                        AnalysisSingleFlight.key("geographic", "", sources), progress, cancellation,
+                        (sharedProgress, shared) -> streamingTextAnalyzer.analyzeGeographic(sources, sharedProgress, shared));
 
                 if (nlpResponse == null) {
                     throw new RuntimeException("地理分析失败: NLP服务返回空结果");
@@ -446,12 +461,8 @@ public class AnalysisServiceImpl implements AnalysisService {
                 
                 logger.debug("地理分析NLP服务返回数据: {}", nlpResponse);
 
-                // 处理分析结果
-                processGeographyResult(analysis, nlpResponse);
-
-                // 更新分析状态
-                analysis.completeAnalysis();
-                analysisResultRepository.save(analysis);
+                // 在有界的写事务中保存结果并完成分析
+                completeAnalysis(analysis, progress, cancellation, () -> processGeographyResult(analysis, nlpResponse, progress));
 
                 logger.info("地理分析执行成功, analysisId={}", analysisId);
                 return true;
@@ -474,60 +485,36 @@ public class AnalysisServiceImpl implements AnalysisService {
         logger.info("执行多维度分析, analysisId={}, userId={}", analysisId, userId);
 
         try {
-            // 转换参数类型
-            Long analysisIdLong = Long.parseLong(analysisId);
-            Long userIdLong = Long.parseLong(userId);
-            
-            // 验证分析权限
-            if (!hasAnalysisAccess(analysisIdLong, userIdLong)) {
-                logger.warn("执行多维度分析失败，无权限, analysisId={}, userId={}", analysisId, userId);
-                return false;
-            }
-
-            Optional<AnalysisResult> analysisOpt = analysisResultRepository.findById(analysisIdLong);
-            if (!analysisOpt.isPresent()) {
-                logger.warn("执行多维度分析失败，分析不存在, analysisId={}", analysisId);
+            // 短事务内校验权限并标记为PROCESSING，之后读取文本和调用NLP服务均不持有数据库连接
+            AnalysisResult analysis = beginAnalysis(analysisId, userId, "多维度分析");
+            if (analysis == null) {
                 return false;
             }
-
-            AnalysisResult analysis = analysisOpt.get();
-            analysis.setStatus(AnalysisResult.AnalysisStatus.PROCESSING);
-            analysis.setStartedAt(LocalDateTime.now());
-            analysisResultRepository.save(analysis);
+            AnalysisProgressReporter progress = analysisEventBus.reporter(analysis.getId());
+            progress.started();
+            AnalysisCancellation cancellation = analysisCancellationRegistry.get(analysis.getId());
 
             // 获取文件内容
             List<Long> fileIds = getFileIdsFromAnalysis(analysis);
-            StringBuilder combinedText = new StringBuilder();
-
-            for (Long fileId : fileIds) {
-                String fileContent = fileService.getFileContent(fileId.toString(), userId);
-                if (fileContent != null && !fileContent.trim().isEmpty()) {
-                    combinedText.append(fileContent).append("\n");
-                }
-            }
-
-            if (combinedText.length() == 0) {
-                logger.warn("执行多维度分析失败，没有有效的文件内容, analysisId={}", analysisId);
-                updateAnalysisError(analysisId, "没有有效的文件内容");
-                return false;
-            }
+            List<AnalysisTextSource> sources = fileSources(fileIds, userId);
 
             // 调用NLP服务进行多维度分析
             try {
-                Map<String, Object> nlpResult = nlpServiceClient.analyzeMultidimensional(combinedText.toString());
-                
-                // 保存分析结果
-                analysis.setResultData(objectMapper.writeValueAsString(nlpResult));
-                analysis.setStatus(AnalysisResult.AnalysisStatus.COMPLETED);
-                analysis.setCompletedAt(LocalDateTime.now());
-                
-                // 计算处理时间
-                if (analysis.getStartedAt() != null) {
-                    long processingTime = java.time.Duration.between(analysis.getStartedAt(), analysis.getCompletedAt()).toMillis();
-                    analysis.setProcessingTime(processingTime);
-                }
+                Map<String, Object> nlpResult = analysisSingleFlight.execute(
+                        AnalysisSingleFlight.key("multidimensional", "", sources), progress, cancellation,
+                        (sharedProgress, shared) -> streamingTextAnalyzer.analyzeMultidimensional(sources, sharedProgress, shared));
                 
-                analysisResultRepository.save(analysis);
+                // 在有界的写事务中保存结果并完成分析
+                completeAnalysis(analysis, progress, cancellation, () -> {
+                    analysis.setResultData(convertToJson(nlpResult));
+                    analysis.setCompletedAt(LocalDateTime.now());
+
+                    // 计算处理时间
+                    if (analysis.getStartedAt() != null) {
+                        long processingTime = java.time.Duration.between(analysis.getStartedAt(), analysis.getCompletedAt()).toMillis();
+                        analysis.setProcessingTime(processingTime);
+                    }
+                });
                 
                 logger.info("多维度分析完成, analysisId={}", analysisId);
                 return true;
@@ -551,45 +538,24 @@ public class AnalysisServiceImpl implements AnalysisService {
         logger.info("执行综合分析, analysisId={}, userId={}", analysisId, userId);
 
         try {
-            // 转换参数类型
-            Long analysisIdLong = Long.parseLong(analysisId);
-            Long userIdLong = Long.parseLong(userId);
-            
-            // 验证分析权限
-            if (!hasAnalysisAccess(analysisIdLong, userIdLong)) {
-                logger.warn("执行综合分析失败，无权限, analysisId={}, userId={}", analysisId, userId);
+            // 短事务内校验权限并标记为PROCESSING，之后读取文本和调用NLP服务均不持有数据库连接
+            AnalysisResult analysis = beginAnalysis(analysisId, userId, "综合分析");
+            if (analysis == null) {
                 return false;
             }
-
-            Optional<AnalysisResult> analysisOpt = analysisResultRepository.findById(analysisIdLong);
-            if (!analysisOpt.isPresent()) {
-                logger.warn("执行综合分析失败，分析不存在, analysisId={}", analysisId);
-                return false;
-            }
-
-            AnalysisResult analysis = analysisOpt.get();
-            analysis.setStatus(AnalysisResult.AnalysisStatus.PROCESSING);
-            analysis.setStartedAt(LocalDateTime.now());
-            analysisResultRepository.save(analysis);
+            AnalysisProgressReporter progress = analysisEventBus.reporter(analysis.getId());
+            progress.started();
+            AnalysisCancellation cancellation = analysisCancellationRegistry.get(analysis.getId());
 
             // 获取文件内容
             List<Long> fileIds = getFileIdsFromAnalysis(analysis);
-            StringBuilder combinedText = new StringBuilder();
-
-            for (Long fileId : fileIds) {
-                String fileContent = fileService.getFileContent(fileId.toString(), userId);
-                if (StringUtils.hasText(fileContent)) {
-                    combinedText.append(fileContent).append("\n");
-                }
-            }
-
-            if (combinedText.length() == 0) {
-                throw new RuntimeException("没有可分析的文本内容");
-            }
+            List<AnalysisTextSource> sources = fileSources(fileIds, userId);
 
             // 调用NLP服务进行综合分析
             try {
-                Map<String, Object> nlpResponse = nlpServiceClient.analyzeComprehensive(combinedText.toString());
+                Map<String, Object> nlpResponse = analysisSingleFlight.execute(
+                        AnalysisSingleFlight.key("comprehensive", "", sources), progress, cancellation,
+                        (sharedProgress, shared) -> streamingTextAnalyzer.analyzeComprehensive(sources, sharedProgress, shared));
 
                 if (nlpResponse == null) {
                     throw new RuntimeException("综合分析失败: NLP服务返回空结果");
@@ -597,12 +563,8 @@ public class AnalysisServiceImpl implements AnalysisService {
                 
                 logger.debug("综合分析NLP服务返回数据: {}", nlpResponse);
 
-                // 处理分析结果
-                processComprehensiveResult(analysis, nlpResponse);
-
-                // 更新分析状态
-                analysis.completeAnalysis();
-                analysisResultRepository.save(analysis);
+                // 在有界的写事务中保存结果并完成分析
+                completeAnalysis(analysis, progress, cancellation, () -> processComprehensiveResult(analysis, nlpResponse, progress));
 
                 logger.info("综合分析执行成功, analysisId={}", analysisId);
                 return true;
@@ -628,45 +590,24 @@ public class AnalysisServiceImpl implements AnalysisService {
         logger.info("执行文本摘要分析, analysisId={}, userId={}", analysisId, userId);
 
         try {
-            // 转换参数类型
-            Long analysisIdLong = Long.parseLong(analysisId);
-            Long userIdLong = Long.parseLong(userId);
-            
-            // 验证分析权限
-            if (!hasAnalysisAccess(analysisIdLong, userIdLong)) {
-                logger.warn("执行文本摘要分析失败，无权限, analysisId={}, userId={}", analysisId, userId);
-                return false;
-            }
-
-            Optional<AnalysisResult> analysisOpt = analysisResultRepository.findById(analysisIdLong);
-            if (!analysisOpt.isPresent()) {
-                logger.warn("执行文本摘要分析失败，分析不存在, analysisId={}", analysisId);
+            // 短事务内校验权限并标记为PROCESSING，之后读取文本和调用NLP服务均不持有数据库连接
+            AnalysisResult analysis = beginAnalysis(analysisId, userId, "文本摘要分析");
+            if (analysis == null) {
                 return false;
             }
-
-            AnalysisResult analysis = analysisOpt.get();
-            analysis.setStatus(AnalysisResult.AnalysisStatus.PROCESSING);
-            analysis.setStartedAt(LocalDateTime.now());
-            analysisResultRepository.save(analysis);
+            AnalysisProgressReporter progress = analysisEventBus.reporter(analysis.getId());
+            progress.started();
+            AnalysisCancellation cancellation = analysisCancellationRegistry.get(analysis.getId());
 
             // 获取文件内容
             List<Long> fileIds = getFileIdsFromAnalysis(analysis);
-            StringBuilder combinedText = new StringBuilder();
-
-            for (Long fileId : fileIds) {
-                String fileContent = fileService.getFileContent(fileId.toString(), userId);
-                if (StringUtils.hasText(fileContent)) {
-                    combinedText.append(fileContent).append("\n");
-                }
-            }
-
-            if (combinedText.length() == 0) {
-                throw new RuntimeException("没有可分析的文本内容");
-            }
+            List<AnalysisTextSource> sources = fileSources(fileIds, userId);
 
             // 调用NLP服务进行文本摘要分析
             try {
-                Map<String, Object> nlpResponse = nlpServiceClient.analyzeSummary(combinedText.toString(), "comprehensive", 5);
+                Map<String, Object> nlpResponse = analysisSingleFlight.execute(
+                        AnalysisSingleFlight.key("summary", "comprehensive|5", sources), progress, cancellation,
+                        (sharedProgress, shared) -> streamingTextAnalyzer.analyzeSummary(sources, "comprehensive", 5, sharedProgress, shared));
 
                 if (nlpResponse == null) {
                     throw new RuntimeException("文本摘要分析失败: NLP服务返回空结果");
@@ -674,12 +615,8 @@ public class AnalysisServiceImpl implements AnalysisService {
                 
                 logger.debug("文本摘要分析NLP服务返回数据: {}", nlpResponse);
 
-                // 处理分析结果
-                processTextSummaryResult(analysis, nlpResponse);
-
-                // 更新分析状态
-                analysis.completeAnalysis();
-                analysisResultRepository.save(analysis);
+                // 在有界的写事务中保存结果并完成分析
+                completeAnalysis(analysis, progress, cancellation, () -> processTextSummaryResult(analysis, nlpResponse));
 
                 logger.info("文本摘要分析执行成功, analysisId={}", analysisId);
                 return true;
@@ -1220,26 +1157,18 @@ public class AnalysisServiceImpl implements AnalysisService {
                 return false;
             }
 
-            Optional<AnalysisResult> analysisOpt = analysisResultRepository.findById(analysisIdLong);
-            if (!analysisOpt.isPresent()) {
-                logger.warn("取消分析任务失败，分析不存在, analysisId={}", analysisId);
-                return false;
-            }
-
-            AnalysisResult analysis = analysisOpt.get();
-
-            // 只能取消待处理或正在处理的分析
-            if (analysis.getStatus() != AnalysisResult.AnalysisStatus.PENDING && 
-                analysis.getStatus() != AnalysisResult.AnalysisStatus.PROCESSING) {
-                logger.warn("取消分析任务失败，分析状态不允许取消, analysisId={}, status={}", analysisId, analysis.getStatus());
+            // 只能取消待处理或正在处理的分析，条件更新保证已完成的分析不会被改为已取消
+            String reason = "用户取消了分析任务";
+            if (analysisResultRepository.batchCancelAnalysis(List.of(analysisIdLong), reason) == 0) {
+                logger.warn("取消分析任务失败，分析不存在或状态不允许取消, analysisId={}", analysisId);
                 return false;
             }
 
-            // 更新分析状态为已取消
-            analysis.setStatus(AnalysisResult.AnalysisStatus.FAILED);
-            analysis.setErrorMessage("用户取消了分析任务");
-            analysis.setCompletedAt(LocalDateTime.now());
-            analysisResultRepository.save(analysis);
+            // 状态提交后停止执行：排队中的任务移出执行引擎，正在执行的任务中止NLP调用且不再写入结果
+            runAfterCommit(() -> {
+                analysisJobQueue.stopCancelled(analysisIdLong);
+                analysisEventBus.publishFinished(analysisIdLong, AnalysisResult.AnalysisStatus.CANCELLED, reason);
+            });
 
             logger.info("取消分析任务成功, analysisId={}", analysisId);
             return true;
@@ -1281,18 +1210,15 @@ public class AnalysisServiceImpl implements AnalysisService {
 
             AnalysisResult analysis = analysisOpt.get();
 
-            switch (analysis.getStatus()) {
-                case PENDING:
-                    return 0;
-                case PROCESSING:
-                    return 50; // 简化的进度计算
-                case COMPLETED:
-                    return 100;
-                case FAILED:
-                    return 0;
-                default:
-                    return 0;
+            // 执行中的分析以流水线上报的最新进度为准
+            Optional<AnalysisProgressEvent> latest = analysisEventBus.latest(analysisIdLong);
+            if (latest.isPresent()) {
+                return latest.get().getProgress();
             }
+            if (analysis.getStatus() == AnalysisResult.AnalysisStatus.COMPLETED) {
+                return 100;
+            }
+            return analysis.getProgress() != null ? analysis.getProgress() : 0;
         } catch (NumberFormatException e) {
             logger.error("无效的ID格式: analysisId={}, userId={}", analysisId, userId);
             throw new IllegalArgumentException("无效的ID格式");
@@ -1710,6 +1636,7 @@ public class AnalysisServiceImpl implements AnalysisService {
             statistics.put("totalAnalyses", countAnalysesByProject(projectId));
             statistics.put("completedAnalyses", countAnalysesByStatus(projectId, AnalysisResult.AnalysisStatus.COMPLETED));
             statistics.put("failedAnalyses", countAnalysesByStatus(projectId, AnalysisResult.AnalysisStatus.FAILED));
+            statistics.put("cancelledAnalyses", countAnalysesByStatus(projectId, AnalysisResult.AnalysisStatus.CANCELLED));
             statistics.put("processingAnalyses", countAnalysesByStatus(projectId, AnalysisResult.AnalysisStatus.PROCESSING));
             statistics.put("pendingAnalyses", countAnalysesByStatus(projectId, AnalysisResult.AnalysisStatus.PENDING));
             
@@ -1772,6 +1699,7 @@ public class AnalysisServiceImpl implements AnalysisService {
             statistics.put("totalAnalyses", getTotalAnalysisCount());
             statistics.put("completedAnalyses", analysisResultRepository.countByStatus(AnalysisResult.AnalysisStatus.COMPLETED));
             statistics.put("failedAnalyses", analysisResultRepository.countByStatus(AnalysisResult.AnalysisStatus.FAILED));
+            statistics.put("cancelledAnalyses", analysisResultRepository.countByStatus(AnalysisResult.AnalysisStatus.CANCELLED));
             statistics.put("processingAnalyses", analysisResultRepository.countByStatus(AnalysisResult.AnalysisStatus.PROCESSING));
             statistics.put("pendingAnalyses", analysisResultRepository.countByStatus(AnalysisResult.AnalysisStatus.PENDING));
             
@@ -1880,58 +1808,210 @@ public class AnalysisServiceImpl implements AnalysisService {
 
     /**
      * 异步执行分析
+     * 
+     * 在当前事务提交后提交到执行引擎，任务开始前先在数据库中领取租约，
+     * 已被其他实例领取的任务会被跳过；未能提交的任务保持PENDING，由任务队列轮询领取
      */
     private void executeAnalysisAsync(String analysisId, String userId, AnalysisResult.AnalysisType analysisType) {
         logger.info("开始异步执行分析任务, analysisId={}, userId={}, analysisType={}", analysisId, userId, analysisType);
-        
-        CompletableFuture.runAsync(() -> {
-            logger.info("异步任务线程开始执行, analysisId={}, thread={}", analysisId, Thread.currentThread().getName());
+
+        Long analysisIdLong = Long.parseLong(analysisId);
+        try {
+            analysisTaskExecutor.checkAdmission(analysisIdLong, analysisType);
+        } catch (HistoryAnalysisException e) {
+            // 队列已满，任务不会被执行，直接标记失败；创建任务的事务对该异常不回滚，失败状态随任务记录一起提交
+            updateAnalysisError(analysisId, e.getMessage());
+            throw e;
+        }
+
+        // 按用户、项目和输入文件总大小排队，小任务优先，各用户公平分享执行名额
+        AnalysisResult analysis = analysisResultRepository.findById(analysisIdLong).orElse(null);
+        Long userIdLong = Long.parseLong(userId);
+        Long projectId = analysis != null ? analysis.getProjectId() : null;
+        long inputBytes = analysis != null ? analysisJobSizer.estimateInputBytes(analysis) : 0L;
+
+        Runnable submit = () -> {
             try {
-                boolean success = false;
-                switch (analysisType) {
-                    case WORD_FREQUENCY:
-                        logger.info("执行词频分析, analysisId={}", analysisId);
-                        success = executeWordFrequencyAnalysis(analysisId, userId);
-                        break;
-                    case TIMELINE:
-                        logger.info("执行时间轴分析, analysisId={}", analysisId);
-                        success = executeTimelineAnalysis(analysisId, userId);
-                        break;
-                    case GEOGRAPHY:
-                        logger.info("执行地理分析, analysisId={}", analysisId);
-                        success = executeGeographyAnalysis(analysisId, userId);
-                        break;
-                    case MULTIDIMENSIONAL:
-                        logger.info("执行多维度分析, analysisId={}", analysisId);
-                        success = executeComprehensiveAnalysis(analysisId, userId);
-                        break;
-                    case TEXT_SUMMARY:
-                        logger.info("执行文本摘要分析, analysisId={}", analysisId);
-                        success = executeTextSummaryAnalysis(analysisId, userId);
-                        break;
-                    default:
-                        logger.warn("未知的分析类型: {}, analysisId={}", analysisType, analysisId);
-                        updateAnalysisError(analysisId, "未知的分析类型: " + analysisType);
+                analysisTaskExecutor.submit(analysisIdLong, analysisType, userIdLong, projectId, inputBytes, () -> {
+                    if (!analysisJobQueue.tryClaim(analysisIdLong)) {
+                        logger.info("分析任务已被其他实例领取或状态已变化，跳过, analysisId={}", analysisId);
                         return;
+                    }
+                    try {
+                        runAnalysis(analysisId, userId, analysisType);
+                    } finally {
+                        analysisJobQueue.release(analysisIdLong);
+                    }
+                });
+            } catch (HistoryAnalysisException e) {
+                logger.warn("执行引擎已满，任务保留在数据库队列中等待领取, analysisId={}", analysisId);
+            }
+        };
+
+        runAfterCommit(submit);
+    }
+
+    /**
+     * 当前事务提交后执行操作，没有事务时立即执行
+     */
+    private static void runAfterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
                 }
-                
-                if (success) {
-                    logger.info("异步分析任务执行成功, analysisId={}, analysisType={}", analysisId, analysisType);
-                } else {
-                    logger.error("异步分析任务执行失败, analysisId={}, analysisType={}", analysisId, analysisType);
-                }
-            } catch (Exception e) {
-                logger.error("异步执行分析失败, analysisId={}, analysisType={}: {}", analysisId, analysisType, e.getMessage(), e);
-                updateAnalysisError(analysisId, "执行失败: " + e.getMessage());
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * 执行已被任务队列领取的分析任务
+     *
+     * 这是分析执行经过服务代理的唯一入口：execute*方法在此处以自调用执行，方法注解不生效，
+     * 因此在这里挂起类级事务，各阶段只使用TransactionTemplate开启的短事务
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void runClaimedAnalysis(String analysisId, String userId, AnalysisResult.AnalysisType analysisType) {
+        try {
+            runAnalysis(analysisId, userId, analysisType);
+        } finally {
+            analysisJobQueue.release(Long.parseLong(analysisId));
+        }
+    }
+
+    /**
+     * 在分析工作线程中按类型执行分析
+     */
+    private void runAnalysis(String analysisId, String userId, AnalysisResult.AnalysisType analysisType) {
+        logger.info("异步任务线程开始执行, analysisId={}, thread={}", analysisId, Thread.currentThread().getName());
+        AnalysisCancellation cancellation = analysisCancellationRegistry.open(Long.parseLong(analysisId));
+        try {
+            boolean success = false;
+            switch (analysisType) {
+                case WORD_FREQUENCY:
+                    logger.info("执行词频分析, analysisId={}", analysisId);
+                    success = executeWordFrequencyAnalysis(analysisId, userId);
+                    break;
+                case TIMELINE:
+                    logger.info("执行时间轴分析, analysisId={}", analysisId);
+                    success = executeTimelineAnalysis(analysisId, userId);
+                    break;
+                case GEOGRAPHY:
+                    logger.info("执行地理分析, analysisId={}", analysisId);
+                    success = executeGeographyAnalysis(analysisId, userId);
+                    break;
+                case MULTIDIMENSIONAL:
+                    logger.info("执行多维度分析, analysisId={}", analysisId);
+                    success = executeComprehensiveAnalysis(analysisId, userId);
+                    break;
+                case TEXT_SUMMARY:
+                    logger.info("执行文本摘要分析, analysisId={}", analysisId);
+                    success = executeTextSummaryAnalysis(analysisId, userId);
+                    break;
+                default:
+                    logger.warn("未知的分析类型: {}, analysisId={}", analysisType, analysisId);
+                    updateAnalysisError(analysisId, "未知的分析类型: " + analysisType);
+                    return;
             }
-        }).whenComplete((result, throwable) -> {
-            if (throwable != null) {
-                logger.error("异步任务完成时发生异常, analysisId={}: {}", analysisId, throwable.getMessage(), throwable);
-                updateAnalysisError(analysisId, "任务执行异常: " + throwable.getMessage());
+            
+            if (success) {
+                logger.info("异步分析任务执行成功, analysisId={}, analysisType={}", analysisId, analysisType);
             } else {
-                logger.info("异步任务完成, analysisId={}", analysisId);
+                logger.error("异步分析任务执行失败, analysisId={}, analysisType={}", analysisId, analysisType);
+            }
+        } catch (Exception e) {
+            logger.error("异步执行分析失败, analysisId={}, analysisType={}: {}", analysisId, analysisType, e.getMessage(), e);
+            updateAnalysisError(analysisId, "执行失败: " + e.getMessage());
+        } finally {
+            analysisCancellationRegistry.close(cancellation);
+            completionNotifier.notifyFinished(Long.parseLong(analysisId));
+        }
+        logger.info("异步任务完成, analysisId={}", analysisId);
+    }
+
+    /**
+     * 分析执行的第一阶段：在短事务内校验权限、加载分析并标记为PROCESSING
+     *
+     * @return 已脱离持久化上下文的分析实体，无权限或不存在时返回null
+     */
+    private AnalysisResult beginAnalysis(String analysisId, String userId, String label) {
+        Long analysisIdLong = Long.parseLong(analysisId);
+        Long userIdLong = Long.parseLong(userId);
+        return transactionTemplate.execute(status -> {
+            // 验证分析权限
+            if (!hasAnalysisAccess(analysisIdLong, userIdLong)) {
+                logger.warn("执行{}失败，无权限, analysisId={}, userId={}", label, analysisId, userId);
+                return null;
             }
+
+            Optional<AnalysisResult> analysisOpt = analysisResultRepository.findById(analysisIdLong);
+            if (!analysisOpt.isPresent()) {
+                logger.warn("执行{}失败，分析不存在, analysisId={}", label, analysisId);
+                return null;
+            }
+
+            AnalysisResult analysis = analysisOpt.get();
+            if (analysis.getStatus() == AnalysisResult.AnalysisStatus.CANCELLED) {
+                logger.info("{}已被取消，不再执行, analysisId={}", label, analysisId);
+                return null;
+            }
+            analysis.setStatus(AnalysisResult.AnalysisStatus.PROCESSING);
+            analysis.setStartedAt(LocalDateTime.now());
+            return analysisResultRepository.save(analysis);
+        });
+    }
+
+    /**
+     * 分析执行的最后阶段：在一个有超时上限的写事务中保存结果行并把分析标记为完成，
+     * 结果与完成状态同时提交或同时回滚。
+     * 写入前锁定分析行确认其未被取消（取消可能由其他实例发出）且本实例仍持有租约，否则不写入任何结果；
+     * 完成状态写入锁定的受管实体，不合并开始阶段加载的实体，避免覆盖续约或重新领取写入的租约字段
+     */
+    private void completeAnalysis(AnalysisResult analysis, AnalysisProgressReporter progress,
+                                  AnalysisCancellation cancellation, Runnable writeResults) {
+        cancellation.throwIfCancelled();
+        progress.persisting();
+        writeTransactionTemplate.executeWithoutResult(status -> {
+            AnalysisResult locked = analysisResultRepository.lockById(analysis.getId())
+                    .orElseThrow(() -> new IllegalStateException("分析不存在: " + analysis.getId()));
+            if (locked.getStatus() == AnalysisResult.AnalysisStatus.CANCELLED) {
+                throw new AnalysisCancelledException(analysis.getId());
+            }
+            if (!analysisJobQueue.ownsLease(locked)) {
+                throw new IllegalStateException("分析任务租约已丢失，不再写入结果: " + analysis.getId());
+            }
+            writeResults.run();
+            analysis.completeAnalysis();
+            locked.setResultData(analysis.getResultData());
+            locked.setCompletedAt(analysis.getCompletedAt());
+            locked.setProcessingTime(analysis.getProcessingTime());
+            locked.completeAnalysis();
         });
+        progress.completed();
+    }
+
+    /**
+     * 构建分析文件的文本来源：预先校验访问权限和文本提取状态并只查询内容摘要，
+     * 文本在需要调用NLP服务时才按需读取，内容未变化的文件不会读取文本
+     */
+    private List<AnalysisTextSource> fileSources(List<Long> fileIds, String userId) {
+        List<AnalysisTextSource> sources = new ArrayList<>(fileIds.size());
+        for (Long fileId : fileIds) {
+            String id = fileId.toString();
+            if (!fileService.hasFileAccess(id, userId)) {
+                throw new IllegalArgumentException("无权限访问该文件: " + id);
+            }
+            if (uploadedFileRepository.findExtractionStatusById(id).orElse(null) == UploadedFile.ExtractionStatus.EXTRACTING) {
+                throw new IllegalArgumentException("文件文本尚在提取中，请稍后再试: " + id);
+            }
+            String contentHash = uploadedFileRepository.findContentHashById(id).orElse(null);
+            sources.add(new AnalysisTextSource(contentHash, () -> fileService.getFileContent(id, userId)));
+        }
+        return sources;
     }
 
     /**
@@ -1958,7 +2038,8 @@ public class AnalysisServiceImpl implements AnalysisService {
      * 处理词频分析结果
      */
     @SuppressWarnings("unchecked")
-    private void processWordFrequencyResult(AnalysisResult analysis, Map<String, Object> nlpResponse) {
+    private void processWordFrequencyResult(AnalysisResult analysis, Map<String, Object> nlpResponse,
+                                  AnalysisProgressReporter progress) {
         try {
             logger.info("开始处理词频分析结果, analysisId={}", analysis.getId());
             logger.debug("NLP响应数据结构: {}", nlpResponse);
@@ -1982,6 +2063,7 @@ public class AnalysisServiceImpl implements AnalysisService {
 
             logger.info("处理词频数据，共{}个词汇", wordFrequencies.size());
 
+            List<WordFrequency> rows = new ArrayList<>(wordFrequencies.size());
             for (Map<String, Object> wordData : wordFrequencies) {
                 logger.debug("处理词汇数据: {}", wordData);
                 String word = (String) wordData.get("word");
@@ -2028,12 +2110,12 @@ public class AnalysisServiceImpl implements AnalysisService {
                     }
                 }
 
-                WordFrequency wordFrequency = new WordFrequency(analysis, word, category, frequency, relevanceScore);
-                wordFrequencyRepository.save(wordFrequency);
-                
-                logger.debug("保存词频数据: word={}, frequency={}, category={}, relevanceScore={}", 
+                rows.add(new WordFrequency(analysis, word, category, frequency, relevanceScore));
+                logger.debug("解析词频数据: word={}, frequency={}, category={}, relevanceScore={}", 
                     word, frequency, category, relevanceScore);
             }
+            analysisResultWriter.saveWordFrequencies(rows);
+            progress.rowsPersisted(rows.size());
 
             // 更新分析结果数据
             analysis.setResultData(convertToJson(nlpResponse));
@@ -2048,10 +2130,12 @@ public class AnalysisServiceImpl implements AnalysisService {
      * 处理时间轴分析结果
      */
     @SuppressWarnings("unchecked")
-    private void processTimelineResult(AnalysisResult analysis, Map<String, Object> nlpResponse) {
+    private void processTimelineResult(AnalysisResult analysis, Map<String, Object> nlpResponse,
+                                  AnalysisProgressReporter progress) {
         try {
             List<Map<String, Object>> timelineEvents = (List<Map<String, Object>>) nlpResponse.get("timeline_events");
 
+            List<TimelineEvent> rows = new ArrayList<>(timelineEvents.size());
             for (Map<String, Object> eventData : timelineEvents) {
                 String eventName = (String) eventData.get("event_name");
                 String description = (String) eventData.get("description");
@@ -2076,8 +2160,10 @@ public class AnalysisServiceImpl implements AnalysisService {
                     timelineEvent.setMetadata(convertToJson(metadata));
                 }
 
-                timelineEventRepository.save(timelineEvent);
+                rows.add(timelineEvent);
             }
+            analysisResultWriter.saveTimelineEvents(rows);
+            progress.rowsPersisted(rows.size());
 
             // 更新分析结果数据
             analysis.setResultData(convertToJson(nlpResponse));
@@ -2091,10 +2177,12 @@ public class AnalysisServiceImpl implements AnalysisService {
      * 处理地理分析结果
      */
     @SuppressWarnings("unchecked")
-    private void processGeographyResult(AnalysisResult analysis, Map<String, Object> nlpResponse) {
+    private void processGeographyResult(AnalysisResult analysis, Map<String, Object> nlpResponse,
+                                  AnalysisProgressReporter progress) {
         try {
             List<Map<String, Object>> geoLocations = (List<Map<String, Object>>) nlpResponse.get("geo_locations");
 
+            List<GeoLocation> rows = new ArrayList<>(geoLocations.size());
             for (Map<String, Object> locationData : geoLocations) {
                 String locationName = (String) locationData.get("location_name");
                 
@@ -2125,8 +2213,10 @@ public class AnalysisServiceImpl implements AnalysisService {
                     geoLocation.setMetadata(convertToJson(metadata));
                 }
 
-                geoLocationRepository.save(geoLocation);
+                rows.add(geoLocation);
             }
+            analysisResultWriter.saveGeoLocations(rows);
+            progress.rowsPersisted(rows.size());
 
             // 更新分析结果数据
             analysis.setResultData(convertToJson(nlpResponse));
@@ -2140,21 +2230,22 @@ public class AnalysisServiceImpl implements AnalysisService {
      * 处理综合分析结果
      */
     @SuppressWarnings("unchecked")
-    private void processComprehensiveResult(AnalysisResult analysis, Map<String, Object> nlpResponse) {
+    private void processComprehensiveResult(AnalysisResult analysis, Map<String, Object> nlpResponse,
+                                  AnalysisProgressReporter progress) {
         try {
             // 处理词频数据
             if (nlpResponse.containsKey("word_frequencies")) {
-                processWordFrequencyResult(analysis, nlpResponse);
+                processWordFrequencyResult(analysis, nlpResponse, progress);
             }
 
             // 处理时间轴数据
             if (nlpResponse.containsKey("timeline_events")) {
-                processTimelineResult(analysis, nlpResponse);
+                processTimelineResult(analysis, nlpResponse, progress);
             }
 
             // 处理地理数据
             if (nlpResponse.containsKey("geo_locations")) {
-                processGeographyResult(analysis, nlpResponse);
+                processGeographyResult(analysis, nlpResponse, progress);
             }
 
             // 处理文本摘要数据
@@ -2191,8 +2282,20 @@ public class AnalysisServiceImpl implements AnalysisService {
             Optional<AnalysisResult> analysisOpt = analysisResultRepository.findById(analysisId);
             if (analysisOpt.isPresent()) {
                 AnalysisResult analysis = analysisOpt.get();
+                if (analysis.getStatus() == AnalysisResult.AnalysisStatus.CANCELLED) {
+                    // 取消导致的中断不是失败，保留已取消状态
+                    logger.info("分析已取消，不记录为失败, analysisId={}", analysisId);
+                    return;
+                }
+                if (analysisJobQueue.isLeaseLost(analysisId) || (analysis.getLeaseOwner() != null
+                        && !analysis.getLeaseOwner().equals(analysisJobQueue.getInstanceId()))) {
+                    // 任务已被回收或由其他实例执行，状态由当前持有者记录
+                    logger.info("分析任务租约已不属于本实例，不记录为失败, analysisId={}", analysisId);
+                    return;
+                }
                 analysis.failAnalysis(errorMessage);
                 analysisResultRepository.save(analysis);
+                analysisEventBus.publishFinished(analysisId, AnalysisResult.AnalysisStatus.FAILED, errorMessage);
             }
         } catch (Exception e) {
             logger.error("更新分析错误状态失败: {}", e.getMessage(), e);
@@ -7,14 +7,23 @@
  */
 package com.historyanalysis.service.impl;
 
+import com.historyanalysis.config.FileUploadConfig;
+import com.historyanalysis.dto.ChunkedUploadStatus;
+import com.historyanalysis.dto.FileUploadResult;
 import com.historyanalysis.entity.Project;
 import com.historyanalysis.entity.UploadedFile;
 import com.historyanalysis.entity.User;
 import com.historyanalysis.repository.ProjectRepository;
 import com.historyanalysis.repository.UploadedFileRepository;
 import com.historyanalysis.repository.UserRepository;
+import com.historyanalysis.service.ChunkedUploadStore;
+import com.historyanalysis.service.FileBlobStore;
 import com.historyanalysis.service.FileService;
-import org.apache.tika.Tika;
+import com.historyanalysis.service.FileTextExtractor;
+import com.historyanalysis.util.ContentHashUtil;
+import com.historyanalysis.util.FileTypeSniffer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -23,27 +32,32 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
 /**
  * 文件服务实现类
  * 
  * 实现文件相关的业务逻辑：
- * - 文件上传和存储
- * - 文件内容提取
+ * - 文件上传和存储（按内容寻址，相同内容只保存一份，由FileBlobStore管理）
+ * - 文件内容提取（由FileTextExtractor在后台进行）
  * - 文件查询和统计
  * - 文件权限控制
  */
@@ -62,8 +76,20 @@ public class FileServiceImpl implements FileService {
     @Autowired
     private UserRepository userRepository;
 
-    @Value("${file.upload.path}")
-    private String uploadDir;
+    @Autowired
+    private FileTextExtractor fileTextExtractor;
+
+    @Autowired
+    private FileBlobStore fileBlobStore;
+
+    @Autowired
+    private ChunkedUploadStore chunkedUploadStore;
+
+    @Autowired
+    private FileUploadConfig fileUploadConfig;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
 
     @Value("${file.upload.max-size}")
     private long maxFileSize;
@@ -71,7 +97,27 @@ public class FileServiceImpl implements FileService {
     @Value("${file.upload.allowed-types}")
     private List<String> allowedFileTypes;
 
-    private final Tika tika = new Tika();
+    /**
+     * 批量上传时并发写入磁盘的线程池，所有请求共享，并发数有上限
+     */
+    private ExecutorService uploadExecutor;
+
+    /**
+     * 批量插入文件记录的事务
+     */
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void initUploadExecutor() {
+        uploadExecutor = Executors.newFixedThreadPool(Math.max(1, fileUploadConfig.getBatchParallelism()),
+                new CustomizableThreadFactory("file-upload-"));
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @PreDestroy
+    public void shutdownUploadExecutor() {
+        uploadExecutor.shutdownNow();
+    }
 
     /**
      * 上传文件到项目
@@ -90,52 +136,14 @@ public class FileServiceImpl implements FileService {
                 throw new IllegalArgumentException("无权限访问该项目");
             }
 
-            // 验证文件
-            if (!isValidFileType(file)) {
-                throw new IllegalArgumentException("不支持的文件类型");
-            }
+            Project project = resolveUploadProject(projectId, userId);
+            StagedUpload staged = stageUpload(file);
 
-            if (!isValidFileSize(file, maxFileSize)) {
-                throw new IllegalArgumentException("文件大小超过限制");
+            UploadedFile savedFile = uploadedFileRepository.save(newUploadedFile(project, staged));
+            projectRepository.adjustFileCount(project.getId(), 1);
+            if (savedFile.isExtracting()) {
+                fileTextExtractor.submit(savedFile.getId());
             }
-
-            // 获取项目信息，如果不存在则创建默认项目
-            Optional<Project> projectOpt = projectRepository.findById(Long.valueOf(projectId));
-            Project project;
-            if (!projectOpt.isPresent()) {
-                // 为匿名用户创建默认项目
-                if ("anonymous".equals(userId)) {
-                    project = createDefaultProject(projectId);
-                } else {
-                    throw new IllegalArgumentException("项目不存在");
-                }
-            } else {
-                project = projectOpt.get();
-            }
-
-            // 保存文件到磁盘
-            String savedFilePath = saveFileToDisk(file, projectId);
-
-            // 创建文件记录
-            UploadedFile uploadedFile = new UploadedFile();
-            uploadedFile.setProject(project);
-            uploadedFile.setFilename(file.getOriginalFilename());
-            uploadedFile.setFilePath(savedFilePath);
-            uploadedFile.setFileType(determineFileType(file));
-            uploadedFile.setFileSize(file.getSize());
-
-            // 尝试提取文本内容
-            try {
-                String extractedText = extractTextFromFile(file);
-                uploadedFile.setExtractedText(extractedText);
-                logger.info("文本提取成功, filename={}, textLength={}", file.getOriginalFilename(), extractedText.length());
-            } catch (Exception e) {
-                logger.warn("提取文件文本失败, filename={}: {}", file.getOriginalFilename(), e.getMessage());
-                uploadedFile.setExtractedText(""); // 设置为空字符串
-                // 不影响文件上传，继续保存
-            }
-
-            UploadedFile savedFile = uploadedFileRepository.save(uploadedFile);
             logger.info("文件上传成功, fileId={}, filename={}", savedFile.getId(), savedFile.getFilename());
 
             return savedFile;
@@ -150,30 +158,267 @@ public class FileServiceImpl implements FileService {
 
     /**
      * 批量上传文件
+     * 项目权限只检查一次；各文件在上传线程池中并发写入磁盘，写入成功的文件在一个事务中批量插入记录，
+     * 项目文件数量只更新一次。单个文件失败不影响其他文件，磁盘写入期间不占用数据库连接
      */
     @Override
-    public List<UploadedFile> uploadFiles(String projectId, String userId, List<MultipartFile> files) {
-        logger.info("批量上传文件, projectId={}, userId={}, fileCount={}", projectId, userId, files.size());
-
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<FileUploadResult> uploadFiles(String projectId, String userId, List<MultipartFile> files) {
         if (files == null || files.isEmpty()) {
             throw new IllegalArgumentException("文件列表不能为空");
         }
+        logger.info("批量上传文件, projectId={}, userId={}, fileCount={}", projectId, userId, files.size());
 
-        List<UploadedFile> uploadedFiles = new ArrayList<>();
-        List<String> failedFiles = new ArrayList<>();
+        if (!StringUtils.hasText(projectId) || !StringUtils.hasText(userId)) {
+            throw new IllegalArgumentException("项目ID和用户ID不能为空");
+        }
+        if (!hasProjectAccess(projectId, userId)) {
+            logger.warn("批量上传失败，无项目权限, projectId={}, userId={}", projectId, userId);
+            throw new IllegalArgumentException("无权限访问该项目");
+        }
+        Project project = resolveUploadProject(projectId, userId);
 
+        // 并发写入暂存文件
+        List<CompletableFuture<StagedUpload>> stagings = new ArrayList<>(files.size());
         for (MultipartFile file : files) {
+            stagings.add(CompletableFuture.supplyAsync(() -> {
+                validateUploadParams(projectId, userId, file);
+                try {
+                    return stageUpload(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, uploadExecutor));
+        }
+
+        FileUploadResult[] results = new FileUploadResult[files.size()];
+        Map<Integer, StagedUpload> staged = new LinkedHashMap<>();
+        for (int i = 0; i < files.size(); i++) {
             try {
-                UploadedFile uploadedFile = uploadFile(projectId, userId, file);
-                uploadedFiles.add(uploadedFile);
-            } catch (Exception e) {
-                logger.warn("批量上传中文件失败, filename={}: {}", file.getOriginalFilename(), e.getMessage());
-                failedFiles.add(file.getOriginalFilename());
+                staged.put(i, stagings.get(i).join());
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                logger.warn("批量上传中文件失败, filename={}: {}", files.get(i).getOriginalFilename(), cause.getMessage());
+                results[i] = FileUploadResult.failed(i, files.get(i).getOriginalFilename(), uploadErrorMessage(cause));
+            }
+        }
+
+        if (!staged.isEmpty()) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> insertUploadedFiles(project, staged, results));
+            } catch (RuntimeException e) {
+                logger.error("批量保存文件记录失败: {}", e.getMessage(), e);
+                // 已移入存储的内容在事务回滚后由FileBlobStore删除（没有其他引用时），这里只删除尚未移动的暂存文件
+                staged.forEach((i, upload) -> {
+                    fileBlobStore.discard(upload.blob);
+                    results[i] = FileUploadResult.failed(i, upload.filename, "保存文件记录失败");
+                });
             }
         }
 
-        logger.info("批量上传完成, 成功={}, 失败={}, 失败文件={}", uploadedFiles.size(), failedFiles.size(), failedFiles);
-        return uploadedFiles;
+        long succeeded = Arrays.stream(results).filter(FileUploadResult::isSuccess).count();
+        logger.info("批量上传完成, 成功={}, 失败={}", succeeded, results.length - succeeded);
+        return Arrays.asList(results);
+    }
+
+    /**
+     * 在一个事务中为写入成功的文件批量插入记录，并一次性更新项目文件数量
+     */
+    private void insertUploadedFiles(Project project, Map<Integer, StagedUpload> staged, FileUploadResult[] results) {
+        List<Integer> indexes = new ArrayList<>(staged.size());
+        List<UploadedFile> rows = new ArrayList<>(staged.size());
+        for (Map.Entry<Integer, StagedUpload> entry : staged.entrySet()) {
+            String filename = entry.getValue().filename;
+            try {
+                rows.add(newUploadedFile(project, entry.getValue()));
+                indexes.add(entry.getKey());
+            } catch (IOException | IllegalStateException e) {
+                logger.warn("批量上传中文件失败, filename={}: {}", filename, e.getMessage());
+                results[entry.getKey()] = FileUploadResult.failed(entry.getKey(), filename, uploadErrorMessage(e));
+            }
+        }
+
+        List<UploadedFile> savedFiles = uploadedFileRepository.saveAll(rows);
+        projectRepository.adjustFileCount(project.getId(), savedFiles.size());
+        for (int i = 0; i < savedFiles.size(); i++) {
+            UploadedFile savedFile = savedFiles.get(i);
+            int index = indexes.get(i);
+            results[index] = FileUploadResult.succeeded(index, savedFile.getFilename(), savedFile);
+            if (savedFile.isExtracting()) {
+                fileTextExtractor.submit(savedFile.getId());
+            }
+        }
+    }
+
+    /**
+     * 创建分块上传
+     * 项目权限、文件类型和大小在创建时检查，分块经ChunkedUploadStore写入
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public ChunkedUploadStatus initiateChunkedUpload(String projectId, String userId, String fileName,
+                                                     long fileSize, String sha256) {
+        logger.info("创建分块上传, projectId={}, userId={}, fileName={}, fileSize={}", projectId, userId, fileName, fileSize);
+
+        if (!StringUtils.hasText(projectId) || !StringUtils.hasText(userId)) {
+            throw new IllegalArgumentException("项目ID和用户ID不能为空");
+        }
+        if (!StringUtils.hasText(fileName)) {
+            throw new IllegalArgumentException("文件名不能为空");
+        }
+        if (!isAllowedFileName(fileName)) {
+            throw new IllegalArgumentException("不支持的文件类型");
+        }
+        if (fileSize <= 0) {
+            throw new IllegalArgumentException("文件不能为空");
+        }
+        if (fileSize > fileUploadConfig.getChunkedMaxSize()) {
+            throw new IllegalArgumentException("文件大小超过限制");
+        }
+        if (sha256 != null && !sha256.matches("[0-9a-fA-F]{64}")) {
+            throw new IllegalArgumentException("文件摘要格式不正确");
+        }
+        if (!hasProjectAccess(projectId, userId)) {
+            logger.warn("创建分块上传失败，无项目权限, projectId={}, userId={}", projectId, userId);
+            throw new IllegalArgumentException("无权限访问该项目");
+        }
+        resolveUploadProject(projectId, userId);
+
+        try {
+            return chunkedUploadStore.statusOf(chunkedUploadStore.create(projectId, userId, fileName, fileSize, sha256));
+        } catch (IOException e) {
+            logger.error("创建分块上传失败: {}", e.getMessage(), e);
+            throw new RuntimeException("创建分块上传失败", e);
+        }
+    }
+
+    /**
+     * 完成分块上传
+     * 分块已按偏移量写在暂存文件中，读取一次计算摘要后直接移动到存储中，之后与普通上传相同：
+     * 创建文件记录、更新项目文件数量、在后台提取文本。完成失败时删除会话，需要重新上传
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public UploadedFile completeChunkedUpload(String uploadId, String userId) {
+        logger.info("完成分块上传, uploadId={}, userId={}", uploadId, userId);
+
+        ChunkedUploadStore.Session session;
+        try {
+            session = chunkedUploadStore.finish(uploadId, userId);
+        } catch (IOException e) {
+            logger.error("完成分块上传失败, uploadId={}: {}", uploadId, e.getMessage(), e);
+            throw new RuntimeException("上传文件失败", e);
+        }
+
+        try {
+            FileBlobStore.StagedBlob blob = fileBlobStore.stageFile(session.getPath());
+            if (session.getSha256() != null && !session.getSha256().equalsIgnoreCase(blob.getSha256())) {
+                throw new IllegalArgumentException("文件校验失败，请重新上传");
+            }
+            StagedUpload staged = checkContentType(session.getFileName(), blob);
+            if (!hasProjectAccess(session.getProjectId(), userId)) {
+                throw new IllegalArgumentException("无权限访问该项目");
+            }
+            Project project = resolveUploadProject(session.getProjectId(), userId);
+
+            UploadedFile savedFile = transactionTemplate.execute(status -> {
+                try {
+                    UploadedFile saved = uploadedFileRepository.save(newUploadedFile(project, staged));
+                    projectRepository.adjustFileCount(project.getId(), 1);
+                    if (saved.isExtracting()) {
+                        fileTextExtractor.submit(saved.getId());
+                    }
+                    return saved;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            logger.info("分块上传完成, uploadId={}, fileId={}, fileSize={}", uploadId, savedFile.getId(), blob.getSize());
+            return savedFile;
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            logger.error("完成分块上传失败, uploadId={}: {}", uploadId, e.getMessage(), e);
+            throw new RuntimeException("上传文件失败", e);
+        } finally {
+            chunkedUploadStore.remove(uploadId);
+        }
+    }
+
+    /**
+     * 获取上传的目标项目，匿名用户上传到不存在的项目时创建默认项目
+     */
+    private Project resolveUploadProject(String projectId, String userId) {
+        Optional<Project> projectOpt = projectRepository.findById(Long.valueOf(projectId));
+        if (projectOpt.isPresent()) {
+            return projectOpt.get();
+        }
+        // 为匿名用户创建默认项目
+        if ("anonymous".equals(userId)) {
+            return createDefaultProject(projectId);
+        }
+        throw new IllegalArgumentException("项目不存在");
+    }
+
+    /**
+     * 验证文件并写入暂存文件，写入的同时计算内容摘要并识别实际类型
+     */
+    private StagedUpload stageUpload(MultipartFile file) throws IOException {
+        if (!isValidFileType(file)) {
+            throw new IllegalArgumentException("不支持的文件类型");
+        }
+        if (!isValidFileSize(file, maxFileSize)) {
+            throw new IllegalArgumentException("文件大小超过限制");
+        }
+
+        return checkContentType(file.getOriginalFilename(), fileBlobStore.stage(file.getInputStream(), maxFileSize));
+    }
+
+    /**
+     * 按文件头识别暂存文件的实际类型，与扩展名不符时删除暂存文件
+     */
+    private StagedUpload checkContentType(String filename, FileBlobStore.StagedBlob blob) {
+        UploadedFile.FileType fileType = FileTypeSniffer.sniff(blob.getHead());
+        if (!FileTypeSniffer.isCompatible(determineFileType(filename), fileType)) {
+            fileBlobStore.discard(blob);
+            throw new IllegalArgumentException("文件内容与扩展名不符");
+        }
+        return new StagedUpload(filename, blob, fileType);
+    }
+
+    /**
+     * 将暂存文件放入存储并创建（未保存的）文件记录
+     * 相同内容已提取过文本时直接复用；否则保存后在事务提交后由后台线程提取，上传请求不等待解析
+     */
+    private UploadedFile newUploadedFile(Project project, StagedUpload staged) throws IOException {
+        // 相同内容已存在时丢弃暂存文件并引用已有文件
+        Path filePath = saveFileToDisk(staged.blob);
+
+        UploadedFile uploadedFile = new UploadedFile();
+        uploadedFile.setProject(project);
+        uploadedFile.setFilename(staged.filename);
+        uploadedFile.setFilePath(filePath.toString());
+        uploadedFile.setFileType(staged.fileType);
+        uploadedFile.setFileSize(staged.blob.getSize());
+        uploadedFile.setFileHash(staged.blob.getSha256());
+
+        Optional<UploadedFile> extracted = uploadedFileRepository.findFirstByFileHashAndExtractionStatus(
+                staged.blob.getSha256(), UploadedFile.ExtractionStatus.EXTRACTED);
+        if (extracted.isPresent()) {
+            uploadedFile.setExtractedText(extracted.get().getExtractedText());
+            uploadedFile.setContentHash(extracted.get().getContentHash());
+            uploadedFile.setExtractionStatus(UploadedFile.ExtractionStatus.EXTRACTED);
+        } else {
+            uploadedFile.setExtractionStatus(UploadedFile.ExtractionStatus.EXTRACTING);
+        }
+        return uploadedFile;
+    }
+
+    /**
+     * 返回给客户端的单个文件失败原因：校验失败返回具体原因，其他异常不暴露内部信息
+     */
+    private String uploadErrorMessage(Throwable e) {
+        return e instanceof IllegalArgumentException ? e.getMessage() : "上传文件失败";
     }
 
     /**
@@ -223,16 +468,12 @@ public class FileServiceImpl implements FileService {
 
             UploadedFile file = fileOpt.get();
 
-            // 删除磁盘文件
-            try {
-                deleteFileFromDisk(file.getFilePath());
-            } catch (Exception e) {
-                logger.warn("删除磁盘文件失败, filePath={}: {}", file.getFilePath(), e.getMessage());
-                // 继续删除数据库记录
-            }
-
             // 删除数据库记录
-            uploadedFileRepository.deleteById(fileId);
+            uploadedFileRepository.delete(file);
+            projectRepository.adjustFileCount(file.getProject().getId(), -1);
+
+            // 释放文件内容的引用，没有其他记录引用时在事务提交后删除磁盘文件
+            deleteFileFromDisk(file);
             logger.info("文件删除成功, fileId={}", fileId);
             return true;
         } catch (Exception e) {
@@ -637,6 +878,7 @@ public class FileServiceImpl implements FileService {
 
     /**
      * 提取文件文本内容
+     * 文件标记为EXTRACTING后提交到后台提取，返回true表示已提交
      */
     @Override
     public boolean extractFileText(String fileId, String userId) {
@@ -659,14 +901,14 @@ public class FileServiceImpl implements FileService {
                 return false;
             }
 
-            UploadedFile file = fileOpt.get();
-
-            // 从磁盘读取文件并提取文本
-            String extractedText = extractTextFromFilePath(file.getFilePath());
-            file.setExtractedText(extractedText);
+            if (fileOpt.get().isExtracting()) {
+                logger.debug("文件文本正在提取中, fileId={}", fileId);
+                return true;
+            }
 
-            uploadedFileRepository.save(file);
-            logger.info("文件文本提取成功, fileId={}", fileId);
+            uploadedFileRepository.updateExtractionStatus(fileId, UploadedFile.ExtractionStatus.EXTRACTING);
+            fileTextExtractor.submit(fileId);
+            logger.info("文件文本提取已提交, fileId={}", fileId);
             return true;
         } catch (Exception e) {
             logger.error("提取文件文本异常: {}", e.getMessage(), e);
@@ -706,7 +948,7 @@ public class FileServiceImpl implements FileService {
                 }
             }
 
-            logger.info("批量提取文件文本完成, 提取数量={}", extractedCount);
+            logger.info("批量提取文件文本已提交, 文件数量={}", extractedCount);
             return extractedCount;
         } catch (Exception e) {
             logger.error("批量提取文件文本异常: {}", e.getMessage(), e);
@@ -777,6 +1019,9 @@ public class FileServiceImpl implements FileService {
 
             if (extractedText != null) {
                 file.setExtractedText(extractedText);
+                file.setContentHash(ContentHashUtil.sha256Hex(extractedText));
+                file.setExtractionStatus(UploadedFile.ExtractionStatus.EXTRACTED);
+                file.setExtractionError(null);
             }
 
             UploadedFile updatedFile = uploadedFileRepository.save(file);
@@ -829,8 +1074,14 @@ public class FileServiceImpl implements FileService {
             return false;
         }
 
-        String extension = getFileExtension(originalFilename).toLowerCase();
-        return allowedFileTypes.contains(extension);
+        return isAllowedFileName(originalFilename);
+    }
+
+    /**
+     * 按扩展名判断是否为支持的文件类型
+     */
+    private boolean isAllowedFileName(String filename) {
+        return allowedFileTypes.contains(getFileExtension(filename).toLowerCase());
     }
 
     /**
@@ -889,11 +1140,14 @@ public class FileServiceImpl implements FileService {
         }
 
         try {
-            uploadedFileRepository.deleteUnprocessedFilesUploadedBefore(beforeDate);
-            // 由于deleteUnprocessedFilesUploadedBefore返回void，我们需要另一种方式获取删除数量
-            // 这里返回一个估计值或者修改repository方法
-            logger.info("清理未处理文件完成");
-            return 0; // 暂时返回0，实际应该返回删除的数量
+            List<UploadedFile> files = uploadedFileRepository.findUnprocessedFilesUploadedBefore(beforeDate);
+            for (UploadedFile file : files) {
+                uploadedFileRepository.delete(file);
+                projectRepository.adjustFileCount(file.getProject().getId(), -1);
+                deleteFileFromDisk(file);
+            }
+            logger.info("清理未处理文件完成, 删除数量={}", files.size());
+            return files.size();
         } catch (Exception e) {
             logger.error("清理未处理文件异常: {}", e.getMessage(), e);
             throw new RuntimeException("清理文件失败", e);
@@ -1022,54 +1276,29 @@ public class FileServiceImpl implements FileService {
     }
 
     /**
-     * 保存文件到磁盘
+     * 生成文件在项目目录下的唯一存储路径
      */
-    private String saveFileToDisk(MultipartFile file, String projectId) throws IOException {
-        // 创建项目目录
-        Path projectDir = Paths.get(uploadDir, projectId);
-        Files.createDirectories(projectDir);
-
-        // 生成唯一文件名
-        String originalFilename = file.getOriginalFilename();
-        String extension = getFileExtension(originalFilename);
-        String uniqueFilename = UUID.randomUUID().toString() + "." + extension;
-
-        // 保存文件
-        Path filePath = projectDir.resolve(uniqueFilename);
-        Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
-
-        return filePath.toString();
-    }
-
     /**
-     * 从磁盘删除文件
+     * 保存文件到磁盘
+     * 暂存文件的内容已存在时直接引用已有文件，否则移动到按内容摘要确定的位置
      */
-    private void deleteFileFromDisk(String filePath) throws IOException {
-        if (StringUtils.hasText(filePath)) {
-            Path path = Paths.get(filePath);
-            Files.deleteIfExists(path);
+    private Path saveFileToDisk(FileBlobStore.StagedBlob staged) throws IOException {
+        try {
+            return fileBlobStore.store(staged);
+        } catch (IOException | RuntimeException e) {
+            fileBlobStore.discard(staged);
+            throw e;
         }
     }
 
     /**
-     * 从上传文件提取文本内容
-     */
-    private String extractTextFromFile(MultipartFile file) throws IOException, org.apache.tika.exception.TikaException {
-        // 暂时禁用Tika文本提取，避免依赖冲突问题
-        // TODO: 修复Tika依赖冲突后重新启用
-        logger.info("文本提取功能暂时禁用，文件: {}", file.getOriginalFilename());
-        return "文本提取功能暂时禁用，等待依赖冲突修复。文件名: " + file.getOriginalFilename();
-        
-        // 原始代码（暂时注释）
-        // return tika.parseToString(file.getInputStream());
-    }
-
-    /**
-     * 从文件路径提取文本内容
+     * 从磁盘删除文件
+     * 只释放该记录的引用，同一内容没有其他记录引用时才在事务提交后删除磁盘文件
      */
-    private String extractTextFromFilePath(String filePath) throws IOException, org.apache.tika.exception.TikaException {
-        File file = new File(filePath);
-        return tika.parseToString(file);
+    private void deleteFileFromDisk(UploadedFile file) {
+        if (fileBlobStore.release(file.getFileHash(), file.getFilePath())) {
+            logger.debug("磁盘文件将在事务提交后删除, filePath={}", file.getFilePath());
+        }
     }
 
     /**
@@ -1091,8 +1320,8 @@ public class FileServiceImpl implements FileService {
     /**
      * 确定文件类型
      */
-    private UploadedFile.FileType determineFileType(MultipartFile file) {
-        String extension = getFileExtension(file.getOriginalFilename()).toUpperCase();
+    private UploadedFile.FileType determineFileType(String filename) {
+        String extension = getFileExtension(filename).toUpperCase();
 
         switch (extension) {
             case "PDF":
@@ -1209,4 +1438,19 @@ public class FileServiceImpl implements FileService {
         
         return userRepository.save(defaultUser);
     }
-}
\ No newline at end of file
+
+    /**
+     * 已通过校验并写入暂存文件的上传
+     */
+    private static final class StagedUpload {
+        private final String filename;
+        private final FileBlobStore.StagedBlob blob;
+        private final UploadedFile.FileType fileType;
+
+        StagedUpload(String filename, FileBlobStore.StagedBlob blob, UploadedFile.FileType fileType) {
+            this.filename = filename;
+            this.blob = blob;
+            this.fileType = fileType;
+        }
+    }
+}
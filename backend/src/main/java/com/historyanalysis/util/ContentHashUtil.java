@@ -0,0 +1,41 @@
+/**
+ * 内容摘要工具类
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-19 09:00:00
+ * @description 计算文件文本内容的SHA-256摘要，用于识别内容未变化的文件
+ */
+package com.historyanalysis.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * 内容摘要工具类
+ *
+ * 功能：
+ * - 计算文本的SHA-256摘要（64位十六进制字符串）
+ */
+public final class ContentHashUtil {
+
+    private ContentHashUtil() {
+    }
+
+    /**
+     * 计算文本的SHA-256摘要
+     *
+     * @param text 文本内容，null按空字符串处理
+     * @return 64位小写十六进制摘要
+     */
+    public static String sha256Hex(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] bytes = (text != null ? text : "").getBytes(StandardCharsets.UTF_8);
+            return HexFormat.of().formatHex(digest.digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256不可用", e);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * 文件类型识别工具类
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-12-01 09:10:00
+ * @description 根据文件头的特征字节识别上传文件的实际类型
+ */
+package com.historyanalysis.util;
+
+import com.historyanalysis.entity.UploadedFile;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * 文件类型识别工具类
+ *
+ * 功能：
+ * - PDF：以"%PDF-"开头
+ * - DOC：OLE2复合文档头（D0 CF 11 E0 A1 B1 1A E1）
+ * - DOCX：ZIP本地文件头（PK\3\4）
+ * - HTML：跳过BOM和空白后以"<!DOCTYPE html"或"<html"开头
+ * - TXT：带UTF-16 BOM，或文件头中没有NUL字节
+ * - 判断识别出的类型与扩展名声明的类型是否相符
+ */
+public final class FileTypeSniffer {
+
+    private static final byte[] PDF = "%PDF-".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] OLE2 = {(byte) 0xD0, (byte) 0xCF, 0x11, (byte) 0xE0, (byte) 0xA1, (byte) 0xB1, 0x1A, (byte) 0xE1};
+    private static final byte[] ZIP = {0x50, 0x4B, 0x03, 0x04};
+
+    private FileTypeSniffer() {
+    }
+
+    /**
+     * 根据文件头识别文件类型
+     *
+     * @param head 文件头字节
+     * @return 识别出的类型，无法识别的二进制内容返回null
+     */
+    public static UploadedFile.FileType sniff(byte[] head) {
+        if (startsWith(head, PDF)) {
+            return UploadedFile.FileType.PDF;
+        }
+        if (startsWith(head, OLE2)) {
+            return UploadedFile.FileType.DOC;
+        }
+        if (startsWith(head, ZIP)) {
+            return UploadedFile.FileType.DOCX;
+        }
+        if (head.length >= 2 && ((head[0] == (byte) 0xFF && head[1] == (byte) 0xFE)
+                || (head[0] == (byte) 0xFE && head[1] == (byte) 0xFF))) {
+            return UploadedFile.FileType.TXT;
+        }
+        for (byte b : head) {
+            if (b == 0) {
+                return null;
+            }
+        }
+        return isHtml(head) ? UploadedFile.FileType.HTML : UploadedFile.FileType.TXT;
+    }
+
+    /**
+     * 判断识别出的类型与扩展名声明的类型是否相符
+     * Word文档的两种格式互相兼容（旧版.doc可能实际为.docx），纯文本与HTML互相兼容
+     *
+     * @param declared 扩展名声明的类型
+     * @param sniffed 识别出的类型
+     * @return 相符返回true
+     */
+    public static boolean isCompatible(UploadedFile.FileType declared, UploadedFile.FileType sniffed) {
+        if (declared == null || sniffed == null) {
+            return false;
+        }
+        switch (declared) {
+            case DOC:
+            case DOCX:
+                return sniffed == UploadedFile.FileType.DOC || sniffed == UploadedFile.FileType.DOCX;
+            case TXT:
+            case HTML:
+                return sniffed == UploadedFile.FileType.TXT || sniffed == UploadedFile.FileType.HTML;
+            default:
+                return declared == sniffed;
+        }
+    }
+
+    private static boolean startsWith(byte[] head, byte[] magic) {
+        if (head.length < magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if (head[i] != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isHtml(byte[] head) {
+        int start = startsWith(head, new byte[]{(byte) 0xEF, (byte) 0xBB, (byte) 0xBF}) ? 3 : 0;
+        while (start < head.length && Character.isWhitespace(head[start])) {
+            start++;
+        }
+        int length = Math.min(head.length - start, 64);
+        String prefix = new String(head, start, length, StandardCharsets.ISO_8859_1).toLowerCase(Locale.ROOT);
+        return prefix.startsWith("<!doctype html") || prefix.startsWith("<html");
+    }
+}
@@ -0,0 +1,162 @@
+/**
+ * 上传文件单次读取写盘工具类
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-12-01 09:00:00
+ * @description 只读取一次上传内容，同时计算SHA-256摘要、保留文件头用于类型识别并写入目标文件
+ */
+package com.historyanalysis.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/**
+ * 上传文件单次读取写盘工具类
+ *
+ * 功能：
+ * - 逐块读取上传内容，每块依次更新SHA-256摘要、复制文件头（前SNIFF_BYTES字节）、经FileChannel写入目标文件
+ * - 内容只读取一次，不需要为计算摘要或识别类型再次读取文件
+ * - 超过大小上限或写入失败时删除已写入的部分文件
+ * - 分块上传的文件按偏移量写入，完成后用scan读取一次计算摘要
+ */
+public final class UploadStreamWriter {
+
+    /**
+     * 保留用于类型识别的文件头字节数
+     */
+    public static final int SNIFF_BYTES = 8192;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private UploadStreamWriter() {
+    }
+
+    /**
+     * 将输入流写入目标文件
+     *
+     * @param input 上传内容，写入完成后关闭
+     * @param target 目标文件，不能已存在
+     * @param maxSize 最大字节数，超过时抛出IllegalArgumentException
+     * @return 写入的字节数、内容摘要和文件头
+     * @throws IOException 读取或写入失败
+     */
+    public static WrittenFile write(InputStream input, Path target, long maxSize) throws IOException {
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        byte[] head = new byte[SNIFF_BYTES];
+        int headLength = 0;
+        long size = 0;
+
+        try (InputStream in = input;
+             FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                size += read;
+                if (size > maxSize) {
+                    throw new IllegalArgumentException("文件大小超过限制");
+                }
+                digest.update(buffer, 0, read);
+                if (headLength < SNIFF_BYTES) {
+                    int copied = Math.min(read, SNIFF_BYTES - headLength);
+                    System.arraycopy(buffer, 0, head, headLength, copied);
+                    headLength += copied;
+                }
+                ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+                while (chunk.hasRemaining()) {
+                    channel.write(chunk);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(target);
+            throw e;
+        }
+
+        return new WrittenFile(size, HexFormat.of().formatHex(digest.digest()), Arrays.copyOf(head, headLength));
+    }
+
+    /**
+     * 读取已写入磁盘的文件，计算摘要并保留文件头
+     * 用于分块按偏移量写入、无法在写入时顺序计算摘要的文件
+     *
+     * @param file 文件
+     * @return 文件字节数、内容摘要和文件头
+     * @throws IOException 读取失败
+     */
+    public static WrittenFile scan(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        byte[] head = new byte[SNIFF_BYTES];
+        int headLength = 0;
+        long size = 0;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            int read;
+            while ((read = channel.read(buffer)) != -1) {
+                buffer.flip();
+                if (headLength < SNIFF_BYTES) {
+                    int copied = Math.min(read, SNIFF_BYTES - headLength);
+                    buffer.get(buffer.position(), head, headLength, copied);
+                    headLength += copied;
+                }
+                digest.update(buffer);
+                size += read;
+                buffer.clear();
+            }
+        }
+
+        return new WrittenFile(size, HexFormat.of().formatHex(digest.digest()), Arrays.copyOf(head, headLength));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256不可用", e);
+        }
+    }
+
+    /**
+     * 写入结果
+     */
+    public static final class WrittenFile {
+        private final long size;
+        private final String sha256;
+        private final byte[] head;
+
+        WrittenFile(long size, String sha256, byte[] head) {
+            this.size = size;
+            this.sha256 = sha256;
+            this.head = head;
+        }
+
+        /**
+         * 写入的字节数
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * 文件内容的SHA-256摘要（64位小写十六进制）
+         */
+        public String getSha256() {
+            return sha256;
+        }
+
+        /**
+         * 文件头，最多SNIFF_BYTES字节
+         */
+        public byte[] getHead() {
+            return head;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * 分析接口异步提交与等待测试
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-20
+ */
+package com.historyanalysis.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.historyanalysis.config.AnalysisEventsConfig;
+import com.historyanalysis.config.AnalysisQueueConfig;
+import com.historyanalysis.entity.AnalysisResult;
+import com.historyanalysis.service.AnalysisCompletionNotifier;
+import com.historyanalysis.service.AnalysisEventBus;
+import com.historyanalysis.service.AnalysisProgressReporter;
+import com.historyanalysis.service.AnalysisService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * 验证执行接口只创建任务并返回202，等待接口在任务结束通知后返回最终状态，
+ * 进度接口和SSE接口读取事件总线上报的进度
+ */
+public class AnalysisControllerAsyncTest {
+
+    private AnalysisService analysisService;
+    private AnalysisCompletionNotifier notifier;
+    private AnalysisEventBus eventBus;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    public void setUp() {
+        analysisService = mock(AnalysisService.class);
+        notifier = new AnalysisCompletionNotifier();
+        StaticListableBeanFactory beans = new StaticListableBeanFactory();
+        eventBus = new AnalysisEventBus(new AnalysisEventsConfig(), new ObjectMapper(), notifier,
+                beans.getBeanProvider(org.springframework.data.redis.core.StringRedisTemplate.class),
+                beans.getBeanProvider(org.springframework.data.redis.connection.RedisConnectionFactory.class));
+        AnalysisController controller = new AnalysisController();
+        ReflectionTestUtils.setField(controller, "analysisService", analysisService);
+        ReflectionTestUtils.setField(controller, "completionNotifier", notifier);
+        ReflectionTestUtils.setField(controller, "queueConfig", new AnalysisQueueConfig());
+        ReflectionTestUtils.setField(controller, "analysisEventBus", eventBus);
+        ReflectionTestUtils.setField(controller, "eventsConfig", new AnalysisEventsConfig());
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @Test
+    public void executeEndpointReturnsAcceptedWithoutRunningAnalysis() throws Exception {
+        when(analysisService.createAnalysis(eq("1"), eq(AnalysisResult.AnalysisType.TIMELINE), any()))
+                .thenReturn(analysis(42L, AnalysisResult.AnalysisStatus.PENDING));
+
+        mockMvc.perform(post("/api/analysis/timeline")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"projectId\":\"1\"}"))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", "/api/analysis/42/progress"))
+                .andExpect(jsonPath("$.analysisId").value(42))
+                .andExpect(jsonPath("$.status").value("PENDING"));
+
+        verify(analysisService).createAnalysis(eq("1"), eq(AnalysisResult.AnalysisType.TIMELINE), any());
+    }
+
+    @Test
+    public void awaitCompletesWhenAnalysisFinishes() throws Exception {
+        AnalysisResult analysis = analysis(7L, AnalysisResult.AnalysisStatus.PROCESSING);
+        when(analysisService.findById("7")).thenReturn(Optional.of(analysis));
+
+        MvcResult pending = mockMvc.perform(get("/api/analysis/7/await").param("timeout", "10000"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        assertEquals(1, notifier.getWaitingCount());
+
+        analysis.setStatus(AnalysisResult.AnalysisStatus.COMPLETED);
+        notifier.notifyFinished(7L);
+
+        mockMvc.perform(asyncDispatch(pending))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.status").value("COMPLETED"));
+        assertEquals(0, notifier.getWaitingCount());
+    }
+
+    @Test
+    public void awaitReturnsImmediatelyForFinishedAnalysis() throws Exception {
+        when(analysisService.findById("8")).thenReturn(Optional.of(analysis(8L, AnalysisResult.AnalysisStatus.FAILED)));
+
+        MvcResult result = mockMvc.perform(get("/api/analysis/8/await")).andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.status").value("FAILED"));
+        assertEquals(0, notifier.getWaitingCount());
+    }
+
+    @Test
+    public void progressIsServedFromPipelineEventsWithoutDatabase() throws Exception {
+        AnalysisProgressReporter progress = eventBus.reporter(9L);
+        progress.started();
+        progress.filesResolved(4);
+        progress.fileCompleted(true);
+        progress.fileCompleted(false);
+        progress.persisting();
+
+        mockMvc.perform(get("/api/analysis/9/progress"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.stage").value("PERSISTING"))
+                .andExpect(jsonPath("$.data.progress").value(90))
+                .andExpect(jsonPath("$.data.filesReused").value(1));
+        verify(analysisService, org.mockito.Mockito.never()).findById(any());
+    }
+
+    @Test
+    public void eventStreamPushesProgressUntilFinished() throws Exception {
+        AnalysisProgressReporter progress = eventBus.reporter(11L);
+        progress.started();
+
+        MvcResult stream = mockMvc.perform(get("/api/analysis/11/events"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        assertEquals(1, eventBus.getSubscribedCount());
+
+        progress.filesResolved(2);
+        progress.completed();
+
+        String body = stream.getResponse().getContentAsString();
+        assertTrue(body.contains("\"stage\":\"STARTED\""), body);
+        assertTrue(body.contains("\"stage\":\"ANALYZING\""), body);
+        assertTrue(body.contains("\"stage\":\"COMPLETED\""), body);
+        assertEquals(0, eventBus.getSubscribedCount());
+    }
+
+    private static AnalysisResult analysis(Long id, AnalysisResult.AnalysisStatus status) {
+        AnalysisResult analysis = new AnalysisResult();
+        analysis.setId(id);
+        analysis.setStatus(status);
+        return analysis;
+    }
+}
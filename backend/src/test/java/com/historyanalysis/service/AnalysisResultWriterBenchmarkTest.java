@@ -0,0 +1,103 @@
+/**
+ * 分析结果明细写入基准测试
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-16
+ */
+package com.historyanalysis.service;
+
+import com.historyanalysis.entity.AnalysisResult;
+import com.historyanalysis.entity.WordFrequency;
+import com.historyanalysis.repository.AnalysisResultRepository;
+import com.historyanalysis.repository.WordFrequencyRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 对比逐行save与批量写入的吞吐（行/秒），结果输出到日志
+ *
+ * 耗时较长且结果依赖机器负载，只在指定-Dbenchmark=true时运行，只校验写入的行数；
+ * 默认使用内嵌H2，对MySQL测量时通过系统属性指定数据源，例如：
+ * mvn test -Dbenchmark=true -Dtest=AnalysisResultWriterBenchmarkTest
+ *     -Dspring.datasource.url="jdbc:mysql://localhost:3306/history_analysis?rewriteBatchedStatements=true"
+ *     -Dspring.datasource.username=... -Dspring.datasource.password=...
+ */
+@SpringBootTest(properties = {"spring.jpa.show-sql=false", "spring.jpa.properties.hibernate.format_sql=false"})
+@ActiveProfiles("test")
+@Import(TestFixtures.class)
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class AnalysisResultWriterBenchmarkTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisResultWriterBenchmarkTest.class);
+
+    private static final int ROWS = 2000;
+
+    @Autowired
+    private TestFixtures fixtures;
+
+    @Autowired
+    private AnalysisResultWriter analysisResultWriter;
+
+    @Autowired
+    private WordFrequencyRepository wordFrequencyRepository;
+
+    @Autowired
+    private AnalysisResultRepository analysisResultRepository;
+
+    @Test
+    public void compareBatchedWriterWithPerRowSave() {
+        AnalysisResult analysis = fixtures.createAnalysis("bench");
+
+        // 预热：两种路径各执行一次，排除类加载和语句缓存的影响
+        perRowSave(rows(analysis, 200));
+        analysisResultWriter.saveWordFrequencies(rows(analysis, 200));
+
+        List<WordFrequency> before = rows(analysis, ROWS);
+        long start = System.nanoTime();
+        perRowSave(before);
+        double beforeRate = rate(start);
+
+        List<WordFrequency> after = rows(analysis, ROWS);
+        start = System.nanoTime();
+        analysisResultWriter.saveWordFrequencies(after);
+        double afterRate = rate(start);
+
+        logger.info("逐行save: {} 行/秒, 批量写入: {} 行/秒", Math.round(beforeRate), Math.round(afterRate));
+
+        assertTrue(after.stream().allMatch(row -> row.getId() != null));
+        assertEquals(2 * (200 + ROWS), wordFrequencyRepository.countByAnalysisResultId(analysis.getId()));
+    }
+
+    /**
+     * 修改前的写入方式：每行一次repository.save，在无外层事务的执行线程中每行各自提交
+     */
+    private void perRowSave(List<WordFrequency> rows) {
+        for (WordFrequency row : rows) {
+            wordFrequencyRepository.save(row);
+        }
+    }
+
+    private static double rate(long startNanos) {
+        return ROWS / ((System.nanoTime() - startNanos) / 1_000_000_000.0);
+    }
+
+    private static List<WordFrequency> rows(AnalysisResult analysis, int count) {
+        List<WordFrequency> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            rows.add(new WordFrequency(analysis, "词汇" + i, WordFrequency.Category.OTHER, i + 1, 0.5f));
+        }
+        return rows;
+    }
+}
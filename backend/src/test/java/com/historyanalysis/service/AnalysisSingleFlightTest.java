@@ -0,0 +1,211 @@
+/**
+ * 相同分析请求合并执行测试
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-24
+ */
+package com.historyanalysis.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.historyanalysis.config.AnalysisEventsConfig;
+import com.historyanalysis.config.AnalysisStreamingConfig;
+import com.historyanalysis.dto.AnalysisProgressEvent;
+import com.historyanalysis.exception.AnalysisCancelledException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 验证同时到达的相同请求只计算一次并共享结果；计算进度发布给全部等待中的请求；
+ * 单个请求取消不影响其他请求，全部取消时停止计算
+ */
+public class AnalysisSingleFlightTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AnalysisSingleFlight singleFlight = new AnalysisSingleFlight(new AnalysisStreamingConfig(), meterRegistry);
+    private final ExecutorService requests = Executors.newFixedThreadPool(20);
+
+    @AfterEach
+    public void tearDown() {
+        singleFlight.shutdown();
+        requests.shutdownNow();
+    }
+
+    @Test
+    public void keyIgnoresFileOrderAndSkipsUnhashedFiles() {
+        List<AnalysisTextSource> sources = List.of(source("a"), source("b"));
+        List<AnalysisTextSource> reversed = List.of(source("b"), source("a"));
+
+        assertEquals(AnalysisSingleFlight.key("timeline", "", sources),
+                AnalysisSingleFlight.key("timeline", "", reversed));
+        assertNotEquals(AnalysisSingleFlight.key("timeline", "", sources),
+                AnalysisSingleFlight.key("geographic", "", sources));
+        assertNull(AnalysisSingleFlight.key("timeline", "", List.of(source("a"), source(null))));
+    }
+
+    @Test
+    public void concurrentIdenticalRequestsShareOneComputation() throws Exception {
+        AtomicInteger computations = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        Map<String, Object> result = Map.of("events", List.of());
+
+        List<CompletableFuture<Map<String, Object>>> results = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            results.add(CompletableFuture.supplyAsync(() ->
+                    singleFlight.execute("k", AnalysisProgressReporter.NONE, AnalysisCancellation.NONE, (progress, shared) -> {
+                        computations.incrementAndGet();
+                        await(release);
+                        return result;
+                    }), requests));
+        }
+        waitFor(() -> meterRegistry.counter("analysis.singleflight.joined").count() == 19);
+        release.countDown();
+
+        for (CompletableFuture<Map<String, Object>> request : results) {
+            assertSame(result, request.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, computations.get());
+        assertEquals(0, singleFlight.getInFlightCount());
+    }
+
+    @Test
+    public void cancellingOneParticipantLeavesComputationRunning() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<AnalysisCancellation> sharedTokens = new CopyOnWriteArrayList<>();
+        AnalysisCancellation first = new AnalysisCancellation(1L);
+        AnalysisCancellation second = new AnalysisCancellation(2L);
+
+        CompletableFuture<Map<String, Object>> leader = CompletableFuture.supplyAsync(() ->
+                singleFlight.execute("k", AnalysisProgressReporter.NONE, first, (progress, shared) -> {
+                    sharedTokens.add(shared);
+                    await(release);
+                    return Map.of("ok", true);
+                }), requests);
+        waitFor(() -> sharedTokens.size() == 1);
+        CompletableFuture<Map<String, Object>> follower = CompletableFuture.supplyAsync(() ->
+                singleFlight.execute("k", AnalysisProgressReporter.NONE, second, (progress, shared) -> {
+                    throw new IllegalStateException("相同请求不应再次计算");
+                }), requests);
+        waitFor(() -> meterRegistry.counter("analysis.singleflight.joined").count() == 1);
+
+        first.cancel();
+        ExecutionException error = assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(AnalysisCancelledException.class, error.getCause());
+        assertFalse(sharedTokens.get(0).isCancelled(), "仍有请求等待时计算被取消");
+
+        release.countDown();
+        assertEquals(Map.of("ok", true), follower.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void progressReachesEveryWaitingParticipant() throws Exception {
+        AnalysisEventBus eventBus = eventBus();
+        CountDownLatch step = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AnalysisCancellation first = new AnalysisCancellation(1L);
+
+        CompletableFuture<Map<String, Object>> leader = CompletableFuture.supplyAsync(() ->
+                singleFlight.execute("k", eventBus.reporter(1L), first, (progress, shared) -> {
+                    progress.filesResolved(2);
+                    await(step);
+                    progress.fileCompleted(false);
+                    await(release);
+                    return Map.of("ok", true);
+                }), requests);
+        waitFor(() -> eventBus.latest(1L).isPresent());
+        CompletableFuture<Map<String, Object>> follower = CompletableFuture.supplyAsync(() ->
+                singleFlight.execute("k", eventBus.reporter(2L), AnalysisCancellation.NONE, (progress, shared) -> {
+                    throw new IllegalStateException("相同请求不应再次计算");
+                }), requests);
+
+        // 计算期间加入的请求立即收到当前进度
+        waitFor(() -> eventBus.latest(2L).map(event -> event.getFilesTotal() == 2).orElse(false));
+        assertEquals("ANALYZING", eventBus.latest(2L).orElseThrow().getStage());
+
+        // 发起计算的请求取消后，其余请求继续收到进度，已取消的请求不再收到
+        first.cancel();
+        assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS));
+        step.countDown();
+        waitFor(() -> eventBus.latest(2L).map(event -> event.getFilesCompleted() == 1).orElse(false));
+        AnalysisProgressEvent cancelled = eventBus.latest(1L).orElseThrow();
+        assertEquals(0, cancelled.getFilesCompleted());
+
+        release.countDown();
+        assertEquals(Map.of("ok", true), follower.get(5, TimeUnit.SECONDS));
+        eventBus.shutdown();
+    }
+
+    @Test
+    public void cancellingAllParticipantsCancelsComputation() throws Exception {
+        List<AnalysisCancellation> sharedTokens = new CopyOnWriteArrayList<>();
+        AnalysisCancellation only = new AnalysisCancellation(1L);
+
+        CompletableFuture<Map<String, Object>> request = CompletableFuture.supplyAsync(() ->
+                singleFlight.execute("k", AnalysisProgressReporter.NONE, only, (progress, shared) -> {
+                    sharedTokens.add(shared);
+                    while (!shared.isCancelled()) {
+                        Thread.onSpinWait();
+                    }
+                    shared.throwIfCancelled();
+                    return Map.of();
+                }), requests);
+        waitFor(() -> sharedTokens.size() == 1);
+
+        only.cancel();
+        assertThrows(ExecutionException.class, () -> request.get(5, TimeUnit.SECONDS));
+        waitFor(() -> sharedTokens.get(0).isCancelled() && singleFlight.getInFlightCount() == 0);
+    }
+
+    private static AnalysisEventBus eventBus() {
+        AnalysisEventsConfig config = new AnalysisEventsConfig();
+        config.setPublishInterval(0);
+        StaticListableBeanFactory beans = new StaticListableBeanFactory();
+        return new AnalysisEventBus(config, new ObjectMapper(), new AnalysisCompletionNotifier(),
+                beans.getBeanProvider(StringRedisTemplate.class), beans.getBeanProvider(RedisConnectionFactory.class));
+    }
+
+    private static AnalysisTextSource source(String hash) {
+        return new AnalysisTextSource(hash, () -> "");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "等待条件超时");
+            Thread.sleep(5);
+        }
+    }
+}
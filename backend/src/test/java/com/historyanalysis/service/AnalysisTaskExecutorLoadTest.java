@@ -0,0 +1,106 @@
+/**
+ * 分析任务执行引擎负载测试
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-11
+ */
+package com.historyanalysis.service;
+
+import com.historyanalysis.config.AnalysisTaskConfig;
+import com.historyanalysis.entity.AnalysisResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 大量阻塞型任务下两种执行模式的行为：
+ * PLATFORM模式同时执行的任务数不超过线程池大小，VIRTUAL模式在虚拟线程上执行且并发不受线程池大小限制
+ * 每个任务阻塞在闭锁上模拟一次阻塞的NLP调用，只校验并发数和执行线程，不依赖耗时
+ */
+public class AnalysisTaskExecutorLoadTest {
+
+    private static final int POOL_SIZE = 10;
+    private static final int JOBS = 50;
+
+    @Test
+    public void virtualModeRunsBlockingJobsBeyondPoolSizeOnVirtualThreads() throws Exception {
+        AnalysisTaskExecutor executor = newExecutor(AnalysisTaskConfig.ExecutionMode.VIRTUAL);
+        CountDownLatch started = new CountDownLatch(JOBS);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(JOBS);
+        AtomicBoolean platformThreadUsed = new AtomicBoolean(false);
+        try {
+            for (int i = 0; i < JOBS; i++) {
+                executor.submit((long) i, AnalysisResult.AnalysisType.WORD_FREQUENCY, () -> {
+                    if (!Thread.currentThread().isVirtual()) {
+                        platformThreadUsed.set(true);
+                    }
+                    started.countDown();
+                    block(release);
+                    done.countDown();
+                });
+            }
+            // 所有任务同时阻塞，并发数超过线程池大小
+            assertTrue(started.await(10, TimeUnit.SECONDS), "VIRTUAL模式下阻塞任务未能同时执行");
+            release.countDown();
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+        assertFalse(platformThreadUsed.get(), "VIRTUAL模式应在虚拟线程上执行任务");
+    }
+
+    @Test
+    public void platformModeIsBoundedByPoolSize() throws Exception {
+        AnalysisTaskExecutor executor = newExecutor(AnalysisTaskConfig.ExecutionMode.PLATFORM);
+        CountDownLatch poolFull = new CountDownLatch(POOL_SIZE);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(JOBS);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        try {
+            for (int i = 0; i < JOBS; i++) {
+                executor.submit((long) i, AnalysisResult.AnalysisType.WORD_FREQUENCY, () -> {
+                    peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                    poolFull.countDown();
+                    block(release);
+                    inFlight.decrementAndGet();
+                    done.countDown();
+                });
+            }
+            assertTrue(poolFull.await(10, TimeUnit.SECONDS));
+            release.countDown();
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+        assertEquals(POOL_SIZE, peak.get());
+    }
+
+    private static AnalysisTaskExecutor newExecutor(AnalysisTaskConfig.ExecutionMode mode) {
+        AnalysisTaskConfig config = new AnalysisTaskConfig();
+        config.setExecutionMode(mode);
+        config.setPoolSize(POOL_SIZE);
+        config.setVirtualMaxConcurrency(JOBS);
+        config.setQueueCapacity(JOBS);
+        return new AnalysisTaskExecutor(config, new SimpleMeterRegistry());
+    }
+
+    private static void block(CountDownLatch release) {
+        try {
+            release.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
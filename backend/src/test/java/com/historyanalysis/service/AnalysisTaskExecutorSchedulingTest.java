@@ -0,0 +1,147 @@
+/**
+ * 分析任务排队调度测试
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-25
+ */
+package com.historyanalysis.service;
+
+import com.historyanalysis.config.AnalysisTaskConfig;
+import com.historyanalysis.entity.AnalysisResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 以单个工作线程验证排队任务的出队顺序：用户之间轮转、小任务优先但批量任务不会饿死、同一用户的项目轮流出队
+ */
+public class AnalysisTaskExecutorSchedulingTest {
+
+    private static final AnalysisResult.AnalysisType TYPE = AnalysisResult.AnalysisType.WORD_FREQUENCY;
+    private static final long MB = 1024 * 1024;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<String> order = new CopyOnWriteArrayList<>();
+    private AnalysisTaskExecutor executor;
+    private CountDownLatch gate;
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void usersTakeTurnsInsteadOfSubmissionOrder() throws Exception {
+        start();
+        for (int i = 0; i < 6; i++) {
+            submit("a" + i, 1L, 1L, 0);
+        }
+        submit("b0", 2L, 2L, 0);
+        submit("b1", 2L, 2L, 0);
+
+        List<String> ran = release(8);
+        assertEquals(List.of("a0", "b0", "a1", "b1", "a2", "a3", "a4", "a5"), ran);
+    }
+
+    @Test
+    public void smallJobsOvertakeBulkJobsWithoutStarvingThem() throws Exception {
+        start();
+        for (int i = 0; i < 10; i++) {
+            submit("bulk" + i, 1L, 1L, 200 * MB);
+        }
+        for (int i = 0; i < 5; i++) {
+            submit("small" + i, 2L, 2L, 10 * 1024);
+        }
+
+        List<String> ran = release(15);
+        // 交互车道权重为4：每4个小任务之后调度1个批量任务，占住工作线程的任务已用掉交互车道的一个额度
+        assertEquals(List.of("small0", "small1", "small2", "bulk0", "small3", "small4", "bulk1", "bulk2"),
+                ran.subList(0, 8));
+        assertTrue(meterRegistry.get("analysis.executor.wait").tag("lane", "BULK").timer().count() > 0);
+        assertTrue(meterRegistry.get("analysis.executor.wait").tag("lane", "INTERACTIVE").timer().count() > 0);
+    }
+
+    @Test
+    public void largerJobsConsumeMoreOfTheirUsersShare() throws Exception {
+        start();
+        for (int i = 0; i < 3; i++) {
+            submit("big" + i, 1L, 1L, 3 * MB);
+        }
+        for (int i = 0; i < 9; i++) {
+            submit("unit" + i, 2L, 2L, 2 * MB);
+        }
+
+        List<String> ran = release(12);
+        // 同在批量车道，额度按输入字节数消耗：前5个任务中两个用户各执行了6MB
+        assertEquals(List.of("unit0", "big0", "unit1", "big1", "unit2"), ran.subList(0, 5));
+    }
+
+    @Test
+    public void projectsOfOneUserAlternate() throws Exception {
+        start();
+        submit("p1-0", 1L, 1L, 0);
+        submit("p1-1", 1L, 1L, 0);
+        submit("p1-2", 1L, 1L, 0);
+        submit("p2-0", 1L, 2L, 0);
+
+        assertEquals(List.of("p1-0", "p2-0", "p1-1", "p1-2"), release(4));
+    }
+
+    @Test
+    public void removedTaskIsNeverRun() throws Exception {
+        start();
+        submit("a0", 1L, 1L, 0);
+        executor.submit(99L, TYPE, 1L, 1L, 0, () -> order.add("cancelled"));
+        submit("a1", 1L, 1L, 0);
+
+        assertTrue(executor.remove(99L));
+        assertEquals(2, executor.getQueueDepth());
+        assertEquals(List.of("a0", "a1"), release(2));
+    }
+
+    /**
+     * 单工作线程被第一个任务占用，之后提交的任务全部排队
+     */
+    private void start() throws InterruptedException {
+        AnalysisTaskConfig config = new AnalysisTaskConfig();
+        config.setPoolSize(1);
+        config.setQueueCapacity(100);
+        executor = new AnalysisTaskExecutor(config, meterRegistry);
+
+        gate = new CountDownLatch(1);
+        CountDownLatch blocking = new CountDownLatch(1);
+        executor.submit(0L, TYPE, () -> {
+            blocking.countDown();
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(blocking.await(5, TimeUnit.SECONDS));
+    }
+
+    private long nextId = 1;
+
+    private void submit(String name, Long userId, Long projectId, long inputBytes) {
+        executor.submit(nextId++, TYPE, userId, projectId, inputBytes, () -> order.add(name));
+    }
+
+    private List<String> release(int expected) throws InterruptedException {
+        gate.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (order.size() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(expected, order.size());
+        return List.copyOf(order);
+    }
+}
@@ -0,0 +1,214 @@
+/**
+ * 分析执行事务阶段测试
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-21
+ */
+package com.historyanalysis.service;
+
+import com.historyanalysis.config.AnalysisQueueConfig;
+import com.historyanalysis.entity.AnalysisResult;
+import com.historyanalysis.exception.HistoryAnalysisException;
+import com.historyanalysis.repository.AnalysisResultRepository;
+import com.historyanalysis.repository.WordFrequencyRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.when;
+
+/**
+ * 通过服务代理执行分析，验证调用NLP服务期间没有活动事务，且结果与完成状态一起提交；
+ * 执行期间被取消的分析不写入结果，也不会被改为完成或失败；
+ * 租约已丢失（被回收或由其他实例重新领取）的任务同样不写入，续约时被停止，回收只作用于租约确已过期的任务；
+ * 队列已满被拒绝的任务以失败状态保存
+ */
+@SpringBootTest(properties = {"spring.jpa.show-sql=false", "analysis.queue.enabled=false"})
+@ActiveProfiles("test")
+@Import(TestFixtures.class)
+public class AnalysisTransactionPhasesTest {
+
+    private static final String OTHER_INSTANCE = "other-instance";
+
+    @Autowired
+    private TestFixtures fixtures;
+
+    @Autowired
+    private AnalysisService analysisService;
+
+    @Autowired
+    private AnalysisResultRepository analysisResultRepository;
+
+    @Autowired
+    private WordFrequencyRepository wordFrequencyRepository;
+
+    @Autowired
+    private AnalysisJobQueue analysisJobQueue;
+
+    @Autowired
+    private AnalysisQueueConfig queueConfig;
+
+    @Autowired
+    private AnalysisCancellationRegistry cancellationRegistry;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @MockBean
+    private StreamingTextAnalyzer streamingTextAnalyzer;
+
+    @SpyBean
+    private AnalysisTaskExecutor analysisTaskExecutor;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void nlpCallRunsOutsideTransaction() {
+        AtomicBoolean transactionDuringNlp = new AtomicBoolean(true);
+        when(streamingTextAnalyzer.analyzeWordFrequency(any(Iterator.class), anyInt(), anyInt())).thenAnswer(call -> {
+            transactionDuringNlp.set(TransactionSynchronizationManager.isActualTransactionActive());
+            return Map.of("word_frequency", List.of(
+                    Map.of("word", "秦朝", "frequency", 5, "relevance_score", 0.9),
+                    Map.of("word", "汉朝", "frequency", 3, "relevance_score", 0.7)));
+        });
+
+        AnalysisResult analysis = fixtures.createAnalysis("tx");
+        run(analysis);
+
+        assertFalse(transactionDuringNlp.get(), "调用NLP服务时仍持有事务");
+        AnalysisResult stored = analysisResultRepository.findById(analysis.getId()).orElseThrow();
+        assertEquals(AnalysisResult.AnalysisStatus.COMPLETED, stored.getStatus());
+        assertEquals(2, wordFrequencyRepository.countByAnalysisResultId(analysis.getId()));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void cancelDuringNlpCallSkipsPersistence() {
+        AnalysisResult analysis = fixtures.createAnalysis("tx");
+        String analysisId = analysis.getId().toString();
+        String userId = analysis.getUserId().toString();
+        when(streamingTextAnalyzer.analyzeWordFrequency(any(Iterator.class), anyInt(), anyInt())).thenAnswer(call -> {
+            assertTrue(analysisService.cancelAnalysis(analysisId, userId));
+            return Map.of("word_frequency", List.of(Map.of("word", "秦朝", "frequency", 5, "relevance_score", 0.9)));
+        });
+
+        run(analysis);
+
+        AnalysisResult stored = analysisResultRepository.findById(analysis.getId()).orElseThrow();
+        assertEquals(AnalysisResult.AnalysisStatus.CANCELLED, stored.getStatus());
+        assertEquals(0, wordFrequencyRepository.countByAnalysisResultId(analysis.getId()));
+        assertFalse(analysisService.cancelAnalysis(analysisId, userId), "已取消的分析不能再次取消");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void lostLeaseDiscardsCompletion() {
+        AnalysisResult analysis = fixtures.createAnalysis("tx");
+        assertTrue(analysisJobQueue.tryClaim(analysis.getId()));
+        when(streamingTextAnalyzer.analyzeWordFrequency(any(Iterator.class), anyInt(), anyInt())).thenAnswer(call -> {
+            // 本实例停顿期间租约过期，任务被其他实例重新领取
+            leaseTo(analysis.getId(), OTHER_INSTANCE);
+            return Map.of("word_frequency", List.of(Map.of("word", "秦朝", "frequency", 5, "relevance_score", 0.9)));
+        });
+
+        run(analysis);
+
+        AnalysisResult stored = analysisResultRepository.findById(analysis.getId()).orElseThrow();
+        assertEquals(AnalysisResult.AnalysisStatus.PROCESSING, stored.getStatus(), "不能覆盖其他实例执行中的任务");
+        assertEquals(OTHER_INSTANCE, stored.getLeaseOwner());
+        assertNull(stored.getErrorMessage());
+        assertEquals(0, wordFrequencyRepository.countByAnalysisResultId(analysis.getId()));
+    }
+
+    @Test
+    public void renewalStopsTasksWhoseLeaseWasLost() {
+        AnalysisResult analysis = fixtures.createAnalysis("tx");
+        assertTrue(analysisJobQueue.tryClaim(analysis.getId()));
+        AnalysisCancellation cancellation = cancellationRegistry.open(analysis.getId());
+        leaseTo(analysis.getId(), OTHER_INSTANCE);
+
+        queueConfig.setEnabled(true);
+        try {
+            analysisJobQueue.renewLeases();
+        } finally {
+            queueConfig.setEnabled(false);
+            cancellationRegistry.close(cancellation);
+        }
+
+        assertTrue(cancellation.isCancelled());
+        assertTrue(analysisJobQueue.isLeaseLost(analysis.getId()));
+        analysisJobQueue.release(analysis.getId());
+        assertEquals(OTHER_INSTANCE, analysisResultRepository.findById(analysis.getId()).orElseThrow().getLeaseOwner(),
+                "不能释放其他实例的租约");
+    }
+
+    @Test
+    public void reclaimDoesNotFailReleasedTask() {
+        AnalysisResult analysis = fixtures.createAnalysis("tx");
+        leaseTo(analysis.getId(), OTHER_INSTANCE);
+        LocalDateTime now = LocalDateTime.now();
+
+        int failed = new TransactionTemplate(transactionManager).execute(status ->
+                analysisResultRepository.failExpired(analysis.getId(), now, now, "任务执行超时"));
+
+        assertEquals(0, failed, "租约未过期的任务不能被标记失败");
+        assertEquals(AnalysisResult.AnalysisStatus.PROCESSING,
+                analysisResultRepository.findById(analysis.getId()).orElseThrow().getStatus());
+    }
+
+    /**
+     * 与任务队列相同，通过服务代理的runClaimedAnalysis执行分析
+     */
+    private void run(AnalysisResult analysis) {
+        analysisService.runClaimedAnalysis(analysis.getId().toString(), analysis.getUserId().toString(),
+                analysis.getAnalysisType());
+    }
+
+    @Test
+    public void rejectedTaskIsStoredAsFailed() {
+        Long projectId = fixtures.createAnalysis("tx").getProjectId();
+        doThrow(new HistoryAnalysisException("系统繁忙，分析任务队列已满，请稍后重试", "ANALYSIS_QUEUE_FULL"))
+                .when(analysisTaskExecutor).checkAdmission(any(), any());
+
+        assertThrows(HistoryAnalysisException.class, () -> analysisService.createAnalysis(
+                projectId.toString(), AnalysisResult.AnalysisType.TIMELINE, null));
+
+        // 拒绝不回滚创建任务的事务，失败状态随任务记录一起提交
+        AnalysisResult rejected = analysisResultRepository.findRecentProjectAnalysis(projectId, PageRequest.of(0, 10))
+                .stream()
+                .filter(analysis -> analysis.getAnalysisType() == AnalysisResult.AnalysisType.TIMELINE)
+                .findFirst()
+                .orElseThrow();
+        assertEquals(AnalysisResult.AnalysisStatus.FAILED, rejected.getStatus());
+        assertEquals("系统繁忙，分析任务队列已满，请稍后重试", rejected.getErrorMessage());
+    }
+
+    private void leaseTo(Long analysisId, String owner) {
+        AnalysisResult row = analysisResultRepository.findById(analysisId).orElseThrow();
+        row.setStatus(AnalysisResult.AnalysisStatus.PROCESSING);
+        row.setLeaseOwner(owner);
+        row.setLeaseExpiresAt(LocalDateTime.now().plusMinutes(1));
+        analysisResultRepository.save(row);
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * 分块上传测试
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-12-04
+ */
+package com.historyanalysis.service;
+
+import com.historyanalysis.config.FileUploadConfig;
+import com.historyanalysis.dto.ChunkedUploadStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 验证分块乱序按偏移量写入、校验和不符的分块不计入（包括覆盖已接收的分块）、未收齐时不能完成，以及完成后的摘要计算
+ */
+public class ChunkedUploadStoreTest {
+
+    private static final int CHUNK_SIZE = 1000;
+
+    @TempDir
+    Path tempDir;
+
+    private FileBlobStore fileBlobStore;
+    private ChunkedUploadStore store;
+    private byte[] content;
+
+    @BeforeEach
+    public void setUp() {
+        FileUploadConfig config = new FileUploadConfig();
+        config.setChunkSize(CHUNK_SIZE);
+        fileBlobStore = new FileBlobStore(tempDir.toString(), null, null, new SimpleMeterRegistry());
+        store = new ChunkedUploadStore(config, fileBlobStore, new SimpleMeterRegistry());
+        content = new byte[3500];
+        new Random(7).nextBytes(content);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        store.shutdown();
+    }
+
+    @Test
+    public void chunksAreWrittenAtTheirOffsetsInAnyOrder() throws Exception {
+        String uploadId = store.create("1", "u1", "gazetteer.pdf", content.length, null).getUploadId();
+
+        for (int index : new int[]{3, 1, 0}) {
+            writeChunk(uploadId, index, sha256(chunk(index)));
+        }
+        ChunkedUploadStatus status = store.statusOf(store.get(uploadId, "u1"));
+        assertEquals(4, status.getTotalChunks());
+        assertEquals(3, status.getReceivedChunks());
+        assertArrayEquals(new int[]{0, 1}, status.getReceivedRanges().get(0));
+        assertArrayEquals(new int[]{3, 3}, status.getReceivedRanges().get(1));
+        assertThrows(IllegalArgumentException.class, () -> store.finish(uploadId, "u1"));
+
+        writeChunk(uploadId, 2, sha256(chunk(2)));
+        ChunkedUploadStore.Session session = store.finish(uploadId, "u1");
+
+        assertArrayEquals(content, Files.readAllBytes(session.getPath()));
+        FileBlobStore.StagedBlob blob = fileBlobStore.stageFile(session.getPath());
+        assertEquals(content.length, blob.getSize());
+        assertEquals(sha256(content), blob.getSha256());
+        assertArrayEquals(content, blob.getHead());
+
+        store.remove(uploadId);
+        assertFalse(Files.exists(session.getPath()));
+    }
+
+    @Test
+    public void corruptedChunkIsNotCounted() throws Exception {
+        String uploadId = store.create("1", "u1", "gazetteer.pdf", content.length, null).getUploadId();
+
+        assertThrows(IllegalArgumentException.class, () -> writeChunk(uploadId, 0, sha256(new byte[CHUNK_SIZE])));
+        assertThrows(IllegalArgumentException.class,
+                () -> store.writeChunk(uploadId, "u1", 3, sha256(chunk(0)), new ByteArrayInputStream(chunk(0))));
+        assertThrows(IllegalArgumentException.class, () -> writeChunk(uploadId, 4, sha256(chunk(0))));
+        assertEquals(0, store.statusOf(store.get(uploadId, "u1")).getReceivedChunks());
+
+        // 重传覆盖损坏的分块
+        writeChunk(uploadId, 0, sha256(chunk(0)));
+        assertEquals(1, store.statusOf(store.get(uploadId, "u1")).getReceivedChunks());
+    }
+
+    @Test
+    public void acceptedChunkOverwrittenWithBadDataMustBeResent() throws Exception {
+        String uploadId = store.create("1", "u1", "gazetteer.pdf", content.length, null).getUploadId();
+        for (int index = 0; index < 4; index++) {
+            writeChunk(uploadId, index, sha256(chunk(index)));
+        }
+
+        byte[] corrupted = chunk(1).clone();
+        corrupted[0] ^= 1;
+        assertThrows(IllegalArgumentException.class, () -> store.writeChunk(uploadId, "u1", 1, sha256(chunk(1)),
+                new ByteArrayInputStream(corrupted)));
+        assertThrows(IllegalArgumentException.class, () -> store.writeChunk(uploadId, "u1", 2, sha256(chunk(2)),
+                new ByteArrayInputStream(Arrays.copyOf(chunk(2), 10))));
+        ChunkedUploadStatus status = store.statusOf(store.get(uploadId, "u1"));
+        assertEquals(2, status.getReceivedChunks());
+        assertThrows(IllegalArgumentException.class, () -> store.finish(uploadId, "u1"));
+
+        writeChunk(uploadId, 1, sha256(chunk(1)));
+        writeChunk(uploadId, 2, sha256(chunk(2)));
+        assertArrayEquals(content, Files.readAllBytes(store.finish(uploadId, "u1").getPath()));
+    }
+
+    @Test
+    public void otherUsersCannotAccessUpload() throws Exception {
+        String uploadId = store.create("1", "u1", "gazetteer.pdf", content.length, null).getUploadId();
+
+        assertThrows(IllegalArgumentException.class, () -> store.get(uploadId, "u2"));
+        assertThrows(IllegalArgumentException.class, () -> store.abort(uploadId, "u2"));
+        store.abort(uploadId, "u1");
+        assertThrows(IllegalArgumentException.class, () -> store.get(uploadId, "u1"));
+    }
+
+    private void writeChunk(String uploadId, int index, String sha256) throws Exception {
+        store.writeChunk(uploadId, "u1", index, sha256, new ByteArrayInputStream(chunk(index)));
+    }
+
+    private byte[] chunk(int index) {
+        int start = Math.min(index * CHUNK_SIZE, content.length);
+        return Arrays.copyOfRange(content, start, Math.min(start + CHUNK_SIZE, content.length));
+    }
+
+    private static String sha256(byte[] data) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+    }
+}
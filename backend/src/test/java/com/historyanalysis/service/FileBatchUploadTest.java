@@ -0,0 +1,120 @@
+/**
+ * 批量上传测试
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-12-03
+ */
+package com.historyanalysis.service;
+
+import com.historyanalysis.dto.FileUploadResult;
+import com.historyanalysis.entity.Project;
+import com.historyanalysis.repository.FileBlobRepository;
+import com.historyanalysis.repository.ProjectRepository;
+import com.historyanalysis.repository.UploadedFileRepository;
+import com.historyanalysis.util.ContentHashUtil;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doThrow;
+
+/**
+ * 批量上传部分成功：失败的文件不影响其他文件，结果按请求顺序返回，项目文件数量按成功数更新；
+ * 保存记录失败时已移入存储的内容被删除
+ */
+@SpringBootTest(properties = {"spring.jpa.show-sql=false", "analysis.queue.enabled=false",
+        "file.upload.path=target/test-uploads/"})
+@ActiveProfiles("test")
+@Import(TestFixtures.class)
+public class FileBatchUploadTest {
+
+    @Autowired
+    private TestFixtures fixtures;
+
+    @Autowired
+    private FileService fileService;
+
+    @SpyBean
+    private UploadedFileRepository uploadedFileRepository;
+
+    @Autowired
+    private FileBlobStore fileBlobStore;
+
+    @Autowired
+    private FileBlobRepository fileBlobRepository;
+
+    @Autowired
+    private ProjectRepository projectRepository;
+
+    @Test
+    public void partialSuccessKeepsRequestOrder() {
+        Project project = fixtures.createProject("batch");
+        String userId = project.getUserId().toString();
+        List<MultipartFile> files = List.of(
+                text("hanshu.txt", "汉书·高帝纪 " + UUID.randomUUID()),
+                text("fake.pdf", "不是PDF " + UUID.randomUUID()),
+                text("houhanshu.txt", "后汉书·光武帝纪 " + UUID.randomUUID()),
+                text("notes.exe", "不支持的类型"));
+
+        List<FileUploadResult> results = fileService.uploadFiles(project.getId().toString(), userId, files);
+
+        assertEquals(4, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(i, results.get(i).getIndex());
+            assertEquals(files.get(i).getOriginalFilename(), results.get(i).getFileName());
+        }
+        assertTrue(results.get(0).isSuccess());
+        assertFalse(results.get(1).isSuccess());
+        assertEquals("文件内容与扩展名不符", results.get(1).getError());
+        assertTrue(results.get(2).isSuccess());
+        assertFalse(results.get(3).isSuccess());
+
+        assertEquals(2, uploadedFileRepository.countByProjectId(project.getId()));
+        assertEquals(2, projectRepository.findById(project.getId()).orElseThrow().getFileCount());
+    }
+
+    @Test
+    public void projectAccessIsCheckedOnce() {
+        Project project = fixtures.createProject("batch");
+        Project other = fixtures.createProject("batch");
+
+        assertThrows(IllegalArgumentException.class, () -> fileService.uploadFiles(project.getId().toString(),
+                other.getUserId().toString(), List.of(text("shiji.txt", "史记"))));
+        assertEquals(0, uploadedFileRepository.countByProjectId(project.getId()));
+    }
+
+    @Test
+    public void failedInsertLeavesNoStoredContent() {
+        Project project = fixtures.createProject("batch");
+        String content = "晋书·武帝纪 " + UUID.randomUUID();
+        MockMultipartFile file = text("jinshu.txt", content);
+        String hash = ContentHashUtil.sha256Hex(content);
+        doThrow(new IllegalStateException("数据库不可用")).when(uploadedFileRepository).saveAll(anyList());
+
+        List<FileUploadResult> results = fileService.uploadFiles(project.getId().toString(),
+                project.getUserId().toString(), List.of(file));
+
+        assertFalse(results.get(0).isSuccess());
+        assertFalse(Files.exists(fileBlobStore.pathOf(hash)), "回滚后已移入存储的内容应删除");
+        assertFalse(fileBlobRepository.existsById(hash));
+    }
+
+    private MockMultipartFile text(String filename, String content) {
+        return new MockMultipartFile("files", filename, "text/plain", content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * 按内容寻址的文件存储测试
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-12-02
+ */
+package com.historyanalysis.service;
+
+import com.historyanalysis.dto.ChunkedUploadStatus;
+import com.historyanalysis.entity.Project;
+import com.historyanalysis.entity.UploadedFile;
+import com.historyanalysis.repository.FileBlobRepository;
+import com.historyanalysis.repository.ProjectRepository;
+import com.historyanalysis.repository.UploadedFileRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 两个项目上传相同内容：磁盘上只有一份文件，第二次上传直接复用提取的文本；
+ * 删除其中一个文件不影响另一个，最后一个引用删除时磁盘文件一并删除；事务回滚时释放不删除文件、
+ * 新写入的内容被删除；分块上传完成后同样进入存储
+ */
+@SpringBootTest(properties = {"spring.jpa.show-sql=false", "analysis.queue.enabled=false",
+        "file.upload.path=target/test-uploads/"})
+@ActiveProfiles("test")
+@Import(TestFixtures.class)
+public class FileBlobStoreTest {
+
+    @Autowired
+    private TestFixtures fixtures;
+
+    @Autowired
+    private FileService fileService;
+
+    @Autowired
+    private FileBlobStore fileBlobStore;
+
+    @Autowired
+    private FileBlobRepository fileBlobRepository;
+
+    @Autowired
+    private ChunkedUploadStore chunkedUploadStore;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private UploadedFileRepository uploadedFileRepository;
+
+    @Autowired
+    private ProjectRepository projectRepository;
+
+    @Test
+    public void sameContentIsStoredAndExtractedOnce() throws Exception {
+        byte[] content = ("史记·秦始皇本纪 " + UUID.randomUUID()).getBytes(StandardCharsets.UTF_8);
+        Project first = fixtures.createProject("blob");
+        Project second = fixtures.createProject("blob");
+
+        UploadedFile a = fileService.uploadFile(first.getId().toString(), first.getUserId().toString(),
+                new MockMultipartFile("file", "shiji.txt", "text/plain", content));
+        UploadedFile extracted = awaitExtracted(a.getId());
+        Path blob = Paths.get(a.getFilePath());
+        assertEquals(fileBlobStore.pathOf(a.getFileHash()), blob);
+        assertTrue(Files.exists(blob));
+
+        UploadedFile b = fileService.uploadFile(second.getId().toString(), second.getUserId().toString(),
+                new MockMultipartFile("file", "copy.txt", "text/plain", content));
+        assertEquals(a.getFilePath(), b.getFilePath());
+        assertEquals(UploadedFile.ExtractionStatus.EXTRACTED, b.getExtractionStatus(), "相同内容不应再次解析");
+        assertEquals(extracted.getExtractedText(), b.getExtractedText());
+        assertEquals(2, fileBlobRepository.findRefCountByHash(a.getFileHash()).orElseThrow());
+
+        assertTrue(fileService.deleteFile(a.getId(), first.getUserId().toString()));
+        assertTrue(Files.exists(blob), "仍被另一个项目引用的文件不能删除");
+        assertEquals(1, fileBlobRepository.findRefCountByHash(a.getFileHash()).orElseThrow());
+
+        assertTrue(fileService.deleteFile(b.getId(), second.getUserId().toString()));
+        assertFalse(Files.exists(blob));
+        assertFalse(fileBlobRepository.existsById(a.getFileHash()));
+    }
+
+    @Test
+    public void rolledBackReleaseKeepsContent() throws Exception {
+        byte[] content = ("资治通鉴·周纪 " + UUID.randomUUID()).getBytes(StandardCharsets.UTF_8);
+        Project project = fixtures.createProject("blob");
+        UploadedFile file = fileService.uploadFile(project.getId().toString(), project.getUserId().toString(),
+                new MockMultipartFile("file", "zizhi.txt", "text/plain", content));
+        Path blob = Paths.get(file.getFilePath());
+
+        assertThrows(IllegalStateException.class, () -> transactionTemplate().executeWithoutResult(status -> {
+            assertTrue(fileBlobStore.release(file.getFileHash(), file.getFilePath()));
+            throw new IllegalStateException("后续删除失败");
+        }));
+
+        assertTrue(Files.exists(blob), "事务回滚后文件内容不能丢失");
+        assertEquals(1, fileBlobRepository.findRefCountByHash(file.getFileHash()).orElseThrow());
+    }
+
+    @Test
+    public void rolledBackStoreRemovesNewContent() throws Exception {
+        byte[] content = ("三国志·魏书 " + UUID.randomUUID()).getBytes(StandardCharsets.UTF_8);
+        FileBlobStore.StagedBlob staged = fileBlobStore.stage(new ByteArrayInputStream(content), content.length);
+        Path blob = fileBlobStore.pathOf(staged.getSha256());
+
+        assertThrows(IllegalStateException.class, () -> transactionTemplate().executeWithoutResult(status -> {
+            try {
+                assertEquals(blob, fileBlobStore.store(staged));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            assertTrue(Files.exists(blob));
+            throw new IllegalStateException("保存文件记录失败");
+        }));
+
+        assertFalse(Files.exists(blob), "回滚后没有引用的文件内容应删除");
+        assertFalse(fileBlobRepository.existsById(staged.getSha256()));
+    }
+
+    @Test
+    public void chunkedUploadCompletesIntoStore() throws Exception {
+        byte[] content = ("后汉书·光武帝纪 " + UUID.randomUUID() + " ").repeat(200).getBytes(StandardCharsets.UTF_8);
+        Project project = fixtures.createProject("blob");
+        String userId = project.getUserId().toString();
+
+        ChunkedUploadStatus status = fileService.initiateChunkedUpload(project.getId().toString(), userId,
+                "houhanshu.txt", content.length, sha256(content));
+        chunkedUploadStore.writeChunk(status.getUploadId(), userId, 0, sha256(content), new ByteArrayInputStream(content));
+        UploadedFile file = fileService.completeChunkedUpload(status.getUploadId(), userId);
+
+        assertEquals("houhanshu.txt", file.getFilename());
+        assertEquals(content.length, file.getFileSize());
+        assertArrayEquals(content, Files.readAllBytes(fileBlobStore.pathOf(file.getFileHash())));
+        assertEquals(1, projectRepository.findById(project.getId()).orElseThrow().getFileCount());
+        assertTrue(awaitExtracted(file.getId()).getExtractedText().contains("光武帝纪"));
+    }
+
+    private TransactionTemplate transactionTemplate() {
+        return new TransactionTemplate(transactionManager);
+    }
+
+    private static String sha256(byte[] data) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+    }
+
+    private UploadedFile awaitExtracted(String fileId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (System.currentTimeMillis() < deadline) {
+            UploadedFile file = uploadedFileRepository.findById(fileId).orElseThrow();
+            if (file.getExtractionStatus() == UploadedFile.ExtractionStatus.EXTRACTED) {
+                return file;
+            }
+            Thread.sleep(50);
+        }
+        throw new AssertionError("文本提取未完成, fileId=" + fileId);
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * 文件文本后台提取测试
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-30
+ */
+package com.historyanalysis.service;
+
+import com.historyanalysis.config.FileExtractionConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.tika.Tika;
+import org.apache.tika.detect.DefaultDetector;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.mime.MediaType;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.xml.sax.ContentHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 验证单个文件提取的字符数上限和超时中断
+ */
+public class FileTextExtractorTest {
+
+    @TempDir
+    Path tempDir;
+
+    private FileTextExtractor extractor;
+
+    @AfterEach
+    public void tearDown() {
+        extractor.shutdown();
+    }
+
+    @Test
+    public void extractsPlainText() throws Exception {
+        extractor = extractor(new FileExtractionConfig(), new Tika());
+        Path file = write("sample.txt", "秦始皇于公元前221年统一六国。");
+
+        String text = extractor.extract(file);
+
+        assertEquals("秦始皇于公元前221年统一六国。", text.trim());
+    }
+
+    @Test
+    public void truncatesToMaxChars() throws Exception {
+        FileExtractionConfig config = new FileExtractionConfig();
+        config.setMaxChars(100);
+        extractor = extractor(config, new Tika());
+        Path file = write("long.txt", "汉".repeat(1000));
+
+        assertEquals(100, extractor.extract(file).length());
+    }
+
+    @Test
+    public void slowParseIsInterruptedAtTimeout() throws Exception {
+        FileExtractionConfig config = new FileExtractionConfig();
+        config.setTimeout(200);
+        extractor = extractor(config, new Tika(new DefaultDetector(), new EndlessParser()));
+        Path file = write("slow.txt", "text");
+
+        long start = System.nanoTime();
+        assertThrows(TimeoutException.class, () -> extractor.extract(file));
+        assertTrue((System.nanoTime() - start) / 1_000_000 < 5000);
+        // 超时的中断不能残留到工作线程的下一个文件
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+
+    private FileTextExtractor extractor(FileExtractionConfig config, Tika tika) {
+        return new FileTextExtractor(config, null, null, new SimpleMeterRegistry(), tika);
+    }
+
+    private Path write(String name, String content) throws IOException {
+        return Files.writeString(tempDir.resolve(name), content, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 模拟卡住的解析器：一直等待，直到被中断或输入流被关闭
+     */
+    private static class EndlessParser implements Parser {
+
+        @Override
+        public Set<MediaType> getSupportedTypes(ParseContext context) {
+            return Set.of(MediaType.TEXT_PLAIN);
+        }
+
+        @Override
+        public void parse(InputStream stream, ContentHandler handler, Metadata metadata, ParseContext context)
+                throws IOException, TikaException {
+            while (true) {
+                stream.available();
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    throw new TikaException("解析被中断", e);
+                }
+            }
+        }
+    }
+}
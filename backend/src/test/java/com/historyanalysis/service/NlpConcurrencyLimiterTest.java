@@ -0,0 +1,164 @@
+/**
+ * NLP调用自适应并发限制器测试
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-28
+ */
+package com.historyanalysis.service;
+
+import com.historyanalysis.config.NlpServiceConfig;
+import com.historyanalysis.exception.NlpServiceException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 以模拟的NLP服务（并发超过处理能力后延迟随排队线性增长）验证并发上限的收敛、增长、退避和拒绝
+ */
+public class NlpConcurrencyLimiterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    public void limitShrinksTowardsServiceCapacity() throws Exception {
+        NlpServiceConfig config = new NlpServiceConfig();
+        config.getLimiter().setInitialLimit(100);
+        NlpConcurrencyLimiter limiter = new NlpConcurrencyLimiter(config, meterRegistry);
+
+        SimulatedService service = new SimulatedService(8, 5);
+        drive(limiter, service, 120, 2000);
+
+        // 处理能力为8，上限应收敛到能力的若干倍以内，而不是停留在初始的100
+        assertTrue(limiter.getLimit() < 40, "并发上限未随延迟升高而下降: " + limiter.getLimit());
+        assertTrue(meterRegistry.get("nlp.limiter.rtt").tag("endpoint", "timeline").timer().count() > 0);
+        assertTrue(meterRegistry.get("nlp.limiter.rtt.baseline").tag("endpoint", "timeline").gauge().value() > 0);
+    }
+
+    @Test
+    public void limitGrowsWhileLatencyStaysFlat() throws Exception {
+        NlpServiceConfig config = new NlpServiceConfig();
+        config.getLimiter().setInitialLimit(4);
+        NlpConcurrencyLimiter limiter = new NlpConcurrencyLimiter(config, meterRegistry);
+
+        drive(limiter, new SimulatedService(1000, 5), 64, 1000);
+
+        assertTrue(limiter.getLimit() > 16, "延迟未升高时并发上限未增长: " + limiter.getLimit());
+        assertEquals((double) limiter.getLimit(), meterRegistry.get("nlp.limiter.limit").gauge().value());
+    }
+
+    @Test
+    public void failuresBackOffMultiplicatively() {
+        NlpServiceConfig config = new NlpServiceConfig();
+        config.getLimiter().setInitialLimit(100);
+        NlpConcurrencyLimiter limiter = new NlpConcurrencyLimiter(config, meterRegistry);
+
+        for (int i = 0; i < 10; i++) {
+            assertThrows(ResourceAccessException.class, () -> limiter.execute("summary", () -> {
+                throw new ResourceAccessException("Read timed out");
+            }));
+        }
+        // 100 × 0.9^10 ≈ 34.9
+        assertEquals(34, limiter.getLimit());
+    }
+
+    @Test
+    public void callersAboveTheLimitQueueAndAreShedOnTimeout() throws Exception {
+        NlpServiceConfig config = new NlpServiceConfig();
+        config.getLimiter().setInitialLimit(1);
+        config.getLimiter().setMinLimit(1);
+        config.getLimiter().setMaxLimit(1);
+        config.getLimiter().setMaxWaitMillis(100);
+        NlpConcurrencyLimiter limiter = new NlpConcurrencyLimiter(config, meterRegistry);
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(() -> limiter.execute("summary", () -> {
+            started.countDown();
+            try {
+                return release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }));
+        holder.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        NlpServiceException error = assertThrows(NlpServiceException.class, () -> limiter.execute("summary", () -> 1));
+        assertEquals("NLP_OVERLOADED", error.getErrorCode());
+        assertEquals(1.0, meterRegistry.get("nlp.limiter.rejected").counter().count());
+
+        // 名额释放后排队的调用继续执行
+        Thread releaser = new Thread(() -> {
+            try {
+                Thread.sleep(30);
+            } catch (InterruptedException ignored) {
+                return;
+            }
+            release.countDown();
+        });
+        releaser.start();
+        config.getLimiter().setMaxWaitMillis(5000);
+        assertEquals(1, limiter.execute("summary", () -> 1));
+        holder.join(5000);
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    /**
+     * 多个调用方持续调用，直到duration结束
+     */
+    private static void drive(NlpConcurrencyLimiter limiter, SimulatedService service, int callers, long durationMillis)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + durationMillis;
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        for (int i = 0; i < callers; i++) {
+            executor.execute(() -> {
+                while (System.currentTimeMillis() < deadline) {
+                    try {
+                        limiter.execute("/api/analyze/timeline", service::call);
+                    } catch (NlpServiceException ignored) {
+                        // 被拒绝的调用方稍后重试
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(durationMillis + 10000, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * 模拟的NLP服务：capacity个请求可以同时处理，更多的请求排队，延迟按排队长度线性增加
+     */
+    private static class SimulatedService {
+        private final int capacity;
+        private final long baseMillis;
+        private final AtomicInteger active = new AtomicInteger();
+
+        SimulatedService(int capacity, long baseMillis) {
+            this.capacity = capacity;
+            this.baseMillis = baseMillis;
+        }
+
+        Integer call() {
+            int current = active.incrementAndGet();
+            try {
+                Thread.sleep(baseMillis * Math.max(1, (current + capacity - 1) / capacity));
+                return current;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } finally {
+                active.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/**
+ * NLP服务端点熔断与并发隔离测试
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-26
+ */
+package com.historyanalysis.service;
+
+import com.historyanalysis.config.NlpServiceConfig;
+import com.historyanalysis.exception.NlpServiceException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 验证端点按失败率和慢调用率熔断、熔断期间立即失败、健康检查后半开恢复，以及端点之间的并发隔离
+ */
+public class NlpEndpointGuardTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final HealthClient healthClient = new HealthClient();
+
+    @Test
+    public void opensOnFailureRateAndFailsFast() {
+        NlpEndpointGuard guard = guard(config());
+        for (int i = 0; i < 4; i++) {
+            assertThrows(ResourceAccessException.class, () -> guard.execute("/api/analyze/summary", this::unreachable));
+        }
+        assertEquals(NlpEndpointGuard.State.OPEN, guard.getState("summary"));
+
+        AtomicInteger calls = new AtomicInteger();
+        NlpServiceException error = assertThrows(NlpServiceException.class,
+                () -> guard.execute("/api/analyze/summary", calls::incrementAndGet));
+        assertEquals("NLP_CIRCUIT_OPEN", error.getErrorCode());
+        assertEquals(0, calls.get());
+        assertEquals(1.0, meterRegistry.get("nlp.circuit.rejected")
+                .tags("endpoint", "summary", "reason", "circuit_open").counter().count());
+        assertEquals(2.0, meterRegistry.get("nlp.circuit.state").tag("endpoint", "summary").gauge().value());
+
+        // 其他端点不受影响
+        assertEquals(1, guard.execute("/api/analyze/word-frequency", () -> 1));
+    }
+
+    @Test
+    public void opensOnSlowCalls() {
+        NlpServiceConfig config = config();
+        config.getCircuitBreaker().setSlowCallMillis(10);
+        NlpEndpointGuard guard = guard(config);
+
+        for (int i = 0; i < 4; i++) {
+            guard.execute("timeline", () -> sleep(20));
+        }
+        assertEquals(NlpEndpointGuard.State.OPEN, guard.getState("timeline"));
+    }
+
+    @Test
+    public void clientErrorsDoNotOpenTheCircuit() {
+        NlpEndpointGuard guard = guard(config());
+        for (int i = 0; i < 8; i++) {
+            assertThrows(HttpClientErrorException.class, () -> guard.execute("geographic", () -> {
+                throw new HttpClientErrorException(HttpStatus.BAD_REQUEST);
+            }));
+        }
+        assertEquals(NlpEndpointGuard.State.CLOSED, guard.getState("geographic"));
+    }
+
+    @Test
+    public void healthyProbeHalfOpensAndTrialCallsClose() throws Exception {
+        NlpServiceConfig config = config();
+        config.getCircuitBreaker().setOpenDuration(0);
+        NlpEndpointGuard guard = guard(config);
+        for (int i = 0; i < 4; i++) {
+            assertThrows(ResourceAccessException.class, () -> guard.execute("summary", this::unreachable));
+        }
+
+        // 健康检查失败时保持熔断
+        healthClient.healthy = false;
+        assertEquals(0, probeUntil(guard, 1));
+        assertEquals(NlpEndpointGuard.State.OPEN, guard.getState("summary"));
+
+        healthClient.healthy = true;
+        int trials = probeUntil(guard, 2);
+        awaitState(guard, NlpEndpointGuard.State.HALF_OPEN);
+
+        for (; trials < 2; trials++) {
+            assertEquals(NlpEndpointGuard.State.HALF_OPEN, guard.getState("summary"));
+            guard.execute("summary", () -> 1);
+        }
+        assertEquals(NlpEndpointGuard.State.CLOSED, guard.getState("summary"));
+    }
+
+    @Test
+    public void failedTrialCallReopens() throws Exception {
+        NlpServiceConfig config = config();
+        config.getCircuitBreaker().setOpenDuration(0);
+        NlpEndpointGuard guard = guard(config);
+        for (int i = 0; i < 4; i++) {
+            assertThrows(ResourceAccessException.class, () -> guard.execute("summary", this::unreachable));
+        }
+        probeUntil(guard, 1);
+        awaitState(guard, NlpEndpointGuard.State.HALF_OPEN);
+
+        assertThrows(ResourceAccessException.class, () -> guard.execute("summary", this::unreachable));
+        assertEquals(NlpEndpointGuard.State.OPEN, guard.getState("summary"));
+    }
+
+    @Test
+    public void hungEndpointOnlyExhaustsItsOwnBulkhead() throws Exception {
+        NlpServiceConfig config = config();
+        config.getBulkhead().getEndpointLimits().put("summary", 2);
+        config.getBulkhead().setMaxWaitMillis(0);
+        NlpEndpointGuard guard = guard(config);
+
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(2);
+        CompletableFuture<?>[] hung = new CompletableFuture<?>[2];
+        for (int i = 0; i < 2; i++) {
+            hung[i] = CompletableFuture.runAsync(() -> guard.execute("summary", () -> {
+                started.countDown();
+                try {
+                    return release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }));
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        NlpServiceException error = assertThrows(NlpServiceException.class, () -> guard.execute("summary", () -> 1));
+        assertEquals("NLP_BULKHEAD_FULL", error.getErrorCode());
+        assertEquals(2.0, meterRegistry.get("nlp.bulkhead.active").tag("endpoint", "summary").gauge().value());
+        assertEquals(1, guard.execute("word-frequency", () -> 1));
+
+        release.countDown();
+        CompletableFuture.allOf(hung).get(5, TimeUnit.SECONDS);
+        assertEquals(1, guard.execute("summary", () -> 1));
+    }
+
+    private NlpServiceConfig config() {
+        NlpServiceConfig config = new NlpServiceConfig();
+        config.getCircuitBreaker().setWindowSize(4);
+        config.getCircuitBreaker().setMinimumCalls(4);
+        config.getCircuitBreaker().setHalfOpenCalls(2);
+        return config;
+    }
+
+    private NlpEndpointGuard guard(NlpServiceConfig config) {
+        StaticListableBeanFactory beans = new StaticListableBeanFactory();
+        beans.addBean("nlpServiceClient", healthClient);
+        return new NlpEndpointGuard(config, meterRegistry, beans.getBeanProvider(NlpServiceClient.class));
+    }
+
+    private Integer unreachable() {
+        throw new ResourceAccessException("Connection refused");
+    }
+
+    private static Integer sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return 1;
+    }
+
+    /**
+     * 反复调用已熔断的端点触发健康检查，直到探测次数达到expected；返回其间成功执行的试探调用数
+     */
+    private int probeUntil(NlpEndpointGuard guard, int expected) throws InterruptedException {
+        int trials = 0;
+        long deadline = System.currentTimeMillis() + 5000;
+        while (healthClient.probes.get() < expected && System.currentTimeMillis() < deadline) {
+            try {
+                guard.execute("summary", () -> 1);
+                trials++;
+            } catch (NlpServiceException e) {
+                assertEquals("NLP_CIRCUIT_OPEN", e.getErrorCode());
+            }
+            Thread.sleep(5);
+        }
+        assertEquals(expected, healthClient.probes.get());
+        return trials;
+    }
+
+    private void awaitState(NlpEndpointGuard guard, NlpEndpointGuard.State state) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (guard.getState("summary") != state && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(state, guard.getState("summary"));
+    }
+
+    /**
+     * 只提供健康检查结果的桩客户端
+     */
+    private static class HealthClient extends NlpServiceClient {
+
+        private final AtomicInteger probes = new AtomicInteger();
+        private volatile boolean healthy = true;
+
+        HealthClient() {
+            super(null, new NlpServiceConfig(), null, null, null, null, null, null);
+        }
+
+        @Override
+        public boolean isHealthy() {
+            probes.incrementAndGet();
+            return healthy;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/**
+ * NLP服务多副本负载均衡测试
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-27
+ */
+package com.historyanalysis.service;
+
+import com.historyanalysis.config.NlpServiceConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 以按副本URL决定行为的桩调用验证副本选择、失败副本摘除和请求对冲
+ */
+public class NlpReplicaBalancerTest {
+
+    private static final List<String> REPLICAS = List.of("http://127.0.0.1:5001", "http://127.0.0.1:5002", "http://127.0.0.1:5003/");
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private NlpReplicaBalancer balancer;
+
+    @AfterEach
+    public void tearDown() {
+        balancer.shutdown();
+    }
+
+    @Test
+    public void leastOutstandingSpreadsLoadEvenly() {
+        balancer = balancer(config(NlpServiceConfig.Balancer.Strategy.LEAST_OUTSTANDING, REPLICAS));
+        Map<String, Integer> counts = acquire(30);
+
+        assertEquals(3, counts.size());
+        counts.values().forEach(count -> assertEquals(10, count));
+        assertTrue(counts.containsKey("http://127.0.0.1:5003"), "副本URL末尾的斜杠应被去掉");
+    }
+
+    @Test
+    public void powerOfTwoChoicesKeepsReplicasClose() {
+        balancer = balancer(config(NlpServiceConfig.Balancer.Strategy.POWER_OF_TWO, REPLICAS));
+        Map<String, Integer> counts = acquire(300);
+
+        int max = counts.values().stream().mapToInt(Integer::intValue).max().orElse(0);
+        int min = counts.values().stream().mapToInt(Integer::intValue).min().orElse(0);
+        assertTrue(max - min <= 3, "副本间在途请求数差距过大: " + counts);
+    }
+
+    @Test
+    public void failingReplicaIsEjected() {
+        NlpServiceConfig config = config(NlpServiceConfig.Balancer.Strategy.LEAST_OUTSTANDING, REPLICAS);
+        config.getBalancer().setFailureThreshold(2);
+        balancer = balancer(config);
+        String broken = "http://127.0.0.1:5002";
+
+        Map<String, AtomicInteger> hits = new ConcurrentHashMap<>();
+        for (int i = 0; i < 60; i++) {
+            try {
+                balancer.execute("/api/analyze/timeline", baseUrl -> {
+                    hits.computeIfAbsent(baseUrl, key -> new AtomicInteger()).incrementAndGet();
+                    if (baseUrl.equals(broken)) {
+                        throw new ResourceAccessException("Connection refused");
+                    }
+                    return baseUrl;
+                });
+            } catch (ResourceAccessException ignored) {
+                // 调用方的重试会再次选择副本
+            }
+        }
+
+        assertEquals(2, hits.get(broken).get());
+        assertEquals(58, hits.get("http://127.0.0.1:5001").get() + hits.get("http://127.0.0.1:5003").get());
+        assertEquals(1.0, meterRegistry.get("nlp.balancer.ejections").tag("replica", broken).counter().count());
+        assertEquals(1.0, meterRegistry.get("nlp.balancer.ejected").tag("replica", broken).gauge().value());
+    }
+
+    @Test
+    public void clientErrorsDoNotEject() {
+        NlpServiceConfig config = config(NlpServiceConfig.Balancer.Strategy.LEAST_OUTSTANDING, REPLICAS.subList(0, 1));
+        config.getBalancer().setFailureThreshold(1);
+        balancer = balancer(config);
+
+        for (int i = 0; i < 5; i++) {
+            assertThrows(HttpClientErrorException.class, () -> balancer.execute("/api/analyze/summary", baseUrl -> {
+                throw new HttpClientErrorException(HttpStatus.BAD_REQUEST);
+            }));
+        }
+        assertEquals(0.0, meterRegistry.get("nlp.balancer.ejected").tag("replica", REPLICAS.get(0)).gauge().value());
+    }
+
+    @Test
+    public void slowRequestIsHedgedToAnotherReplica() {
+        balancer = balancer(hedgingConfig());
+        String slow = REPLICAS.get(0);
+        AtomicBoolean slowInterrupted = new AtomicBoolean();
+        warmUp();
+
+        // 主请求落在慢副本上时才会对冲，重复直到发生一次对冲
+        for (int i = 0; i < 50 && hedges("won") == 0; i++) {
+            long start = System.nanoTime();
+            String result = balancer.execute("/api/analyze/summary", baseUrl -> {
+                if (baseUrl.equals(slow)) {
+                    try {
+                        Thread.sleep(10_000);
+                    } catch (InterruptedException e) {
+                        slowInterrupted.set(true);
+                        Thread.currentThread().interrupt();
+                        throw new ResourceAccessException("interrupted");
+                    }
+                }
+                return baseUrl;
+            });
+            assertFalse(result.equals(slow));
+            assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 5000);
+        }
+
+        assertEquals(1.0, hedges("won"));
+        assertEquals(1.0, hedges("sent"));
+        awaitTrue(slowInterrupted);
+        // 被取消的慢请求不计为副本失败
+        assertEquals(0.0, meterRegistry.get("nlp.balancer.requests").tags("replica", slow, "outcome", "failure").counter().count());
+    }
+
+    @Test
+    public void reactiveSlowRequestIsHedgedToAnotherReplica() {
+        balancer = balancer(hedgingConfig());
+        String slow = REPLICAS.get(0);
+        warmUp();
+
+        for (int i = 0; i < 50 && hedges("won") == 0; i++) {
+            String result = balancer.exchange("/api/analyze/summary", baseUrl -> baseUrl.equals(slow)
+                            ? Mono.delay(Duration.ofSeconds(10)).thenReturn(baseUrl)
+                            : Mono.just(baseUrl))
+                    .block(Duration.ofSeconds(5));
+            assertFalse(slow.equals(result));
+        }
+
+        assertEquals(1.0, hedges("won"));
+        assertEquals(0.0, meterRegistry.get("nlp.balancer.outstanding").tag("replica", slow).gauge().value());
+    }
+
+    private NlpServiceConfig config(NlpServiceConfig.Balancer.Strategy strategy, List<String> replicas) {
+        NlpServiceConfig config = new NlpServiceConfig();
+        config.setReplicas(new ArrayList<>(replicas));
+        config.getBalancer().setStrategy(strategy);
+        config.getBalancer().setHealthCheckInterval(0);
+        return config;
+    }
+
+    private NlpServiceConfig hedgingConfig() {
+        NlpServiceConfig config = config(NlpServiceConfig.Balancer.Strategy.LEAST_OUTSTANDING, REPLICAS.subList(0, 2));
+        config.getBalancer().setHedgeEnabled(true);
+        config.getBalancer().setHedgeMinSamples(5);
+        config.getBalancer().setHedgeMinDelayMillis(20);
+        return config;
+    }
+
+    private NlpReplicaBalancer balancer(NlpServiceConfig config) {
+        return new NlpReplicaBalancer(config, null, meterRegistry);
+    }
+
+    /**
+     * 连续选择副本而不结束请求，统计各副本被选中的次数
+     */
+    private Map<String, Integer> acquire(int requests) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < requests; i++) {
+            counts.merge(balancer.acquire(null).getBaseUrl(), 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    /**
+     * 积累足够的延迟样本使对冲生效
+     */
+    private void warmUp() {
+        for (int i = 0; i < 5; i++) {
+            balancer.release(balancer.acquire(null), Duration.ofMillis(1).toNanos(),
+                    NlpReplicaBalancer.Outcome.SUCCESS, "/api/analyze/summary");
+        }
+    }
+
+    private double hedges(String result) {
+        return meterRegistry.get("nlp.balancer.hedges").tag("result", result).counter().count();
+    }
+
+    private static void awaitTrue(AtomicBoolean flag) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!flag.get() && System.currentTimeMillis() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertTrue(flag.get());
+    }
+}
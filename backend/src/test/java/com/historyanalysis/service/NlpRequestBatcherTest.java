@@ -0,0 +1,193 @@
+/**
+ * NLP请求微批处理器测试
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-14
+ */
+package com.historyanalysis.service;
+
+import com.historyanalysis.config.NlpServiceConfig;
+import com.historyanalysis.dto.nlp.NlpRequest;
+import com.historyanalysis.exception.NlpServiceException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 以回显文本的桩客户端代替NLP服务，验证请求合并与结果分发，以及批次作为一次调用经过端点熔断、并发隔离和并发限制
+ */
+public class NlpRequestBatcherTest {
+
+    @Test
+    public void coalescesConcurrentRequestsAndRoutesResults() throws Exception {
+        StubClient client = new StubClient();
+        NlpRequestBatcher batcher = newBatcher(client, 8, 50);
+        try {
+            List<CompletableFuture<Map<String, Object>>> futures = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                futures.add(batcher.submit("timeline", new NlpRequest("doc-" + i)));
+            }
+            for (int i = 0; i < 20; i++) {
+                assertEquals("doc-" + i, futures.get(i).get(5, TimeUnit.SECONDS).get("echo"));
+            }
+            // 20条请求：两批满额8条 + 窗口到期发送剩余4条
+            assertEquals(List.of(8, 8, 4), client.batchSizes);
+        } finally {
+            batcher.shutdown();
+        }
+    }
+
+    @Test
+    public void keepsAnalysisTypesInSeparateBatches() throws Exception {
+        StubClient client = new StubClient();
+        NlpRequestBatcher batcher = newBatcher(client, 8, 20);
+        try {
+            CompletableFuture<Map<String, Object>> timeline = batcher.submit("timeline", new NlpRequest("a"));
+            CompletableFuture<Map<String, Object>> geographic = batcher.submit("geographic", new NlpRequest("b"));
+            assertEquals("timeline", timeline.get(5, TimeUnit.SECONDS).get("type"));
+            assertEquals("geographic", geographic.get(5, TimeUnit.SECONDS).get("type"));
+            assertEquals(2, client.batchSizes.size());
+        } finally {
+            batcher.shutdown();
+        }
+    }
+
+    @Test
+    public void failedItemOnlyAffectsItsCaller() {
+        StubClient client = new StubClient();
+        NlpRequestBatcher batcher = newBatcher(client, 2, 20);
+        try {
+            CompletableFuture<Map<String, Object>> ok = batcher.submit("summary", new NlpRequest("fine"));
+            CompletableFuture<Map<String, Object>> bad = batcher.submit("summary", new NlpRequest(""));
+            assertEquals("fine", ok.join().get("echo"));
+            assertThrows(NlpServiceException.class, () -> batcher.execute("summary", new NlpRequest("")));
+            assertTrue(bad.isCompletedExceptionally());
+        } finally {
+            batcher.shutdown();
+        }
+    }
+
+    @Test
+    public void batchTakesOneBulkheadSlotAndOneBreakerOutcome() throws Exception {
+        StubClient client = new StubClient();
+        NlpServiceConfig config = config(8, 1000);
+        config.getBulkhead().getEndpointLimits().put("summary", 2);
+        config.getCircuitBreaker().setWindowSize(4);
+        config.getCircuitBreaker().setMinimumCalls(4);
+        NlpEndpointGuard guard = guard(config);
+        NlpRequestBatcher batcher = new NlpRequestBatcher(client, guard,
+                new NlpConcurrencyLimiter(config, new SimpleMeterRegistry()), config, new SimpleMeterRegistry());
+        try {
+            // 端点上限为2时批次仍能凑满8条
+            List<CompletableFuture<Map<String, Object>>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(batcher.submit("summary", new NlpRequest("doc-" + i)));
+            }
+            for (CompletableFuture<Map<String, Object>> future : futures) {
+                future.get(5, TimeUnit.SECONDS);
+            }
+            assertEquals(List.of(8), client.batchSizes);
+
+            // 整批失败只计一次失败，不会单独触发熔断
+            client.failing = true;
+            List<CompletableFuture<Map<String, Object>>> failed = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                failed.add(batcher.submit("summary", new NlpRequest("doc-" + i)));
+            }
+            for (CompletableFuture<Map<String, Object>> future : failed) {
+                assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(NlpEndpointGuard.State.CLOSED, guard.getState("summary"));
+        } finally {
+            batcher.shutdown();
+        }
+    }
+
+    @Test
+    public void batchTakesOneLimiterSlot() throws Exception {
+        StubClient client = new StubClient();
+        NlpServiceConfig config = config(8, 1000);
+        config.getLimiter().setInitialLimit(1);
+        config.getLimiter().setMinLimit(1);
+        config.getLimiter().setMaxLimit(1);
+        config.getLimiter().setMaxWaitMillis(0);
+        NlpConcurrencyLimiter limiter = new NlpConcurrencyLimiter(config, new SimpleMeterRegistry());
+        NlpRequestBatcher batcher = new NlpRequestBatcher(client, guard(config), limiter, config, new SimpleMeterRegistry());
+        try {
+            // 并发上限为1时8条请求仍合并为一次调用，等待凑批期间不占用名额
+            List<CompletableFuture<Map<String, Object>>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(batcher.submit("timeline", new NlpRequest("doc-" + i)));
+            }
+            for (CompletableFuture<Map<String, Object>> future : futures) {
+                future.get(5, TimeUnit.SECONDS);
+            }
+            assertEquals(List.of(8), client.batchSizes);
+            assertEquals(0, limiter.getInFlight());
+        } finally {
+            batcher.shutdown();
+        }
+    }
+
+    private static NlpRequestBatcher newBatcher(StubClient client, int maxSize, long windowMillis) {
+        NlpServiceConfig config = config(maxSize, windowMillis);
+        return new NlpRequestBatcher(client, guard(config), new NlpConcurrencyLimiter(config, new SimpleMeterRegistry()),
+                config, new SimpleMeterRegistry());
+    }
+
+    private static NlpServiceConfig config(int maxSize, long windowMillis) {
+        NlpServiceConfig config = new NlpServiceConfig();
+        config.getBatch().setMaxSize(maxSize);
+        config.getBatch().setWindowMillis(windowMillis);
+        return config;
+    }
+
+    private static NlpEndpointGuard guard(NlpServiceConfig config) {
+        return new NlpEndpointGuard(config, new SimpleMeterRegistry(),
+                new StaticListableBeanFactory().getBeanProvider(NlpServiceClient.class));
+    }
+
+    /**
+     * 回显文本的桩客户端，空文本返回失败条目
+     */
+    private static class StubClient extends ReactiveNlpServiceClient {
+
+        private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        private volatile boolean failing = false;
+
+        StubClient() {
+            super(WebClient.create(), new NlpServiceConfig(), null, null);
+        }
+
+        @Override
+        public Mono<List<Map<String, Object>>> analyzeBatch(String type, List<NlpRequest> requests) {
+            batchSizes.add(requests.size());
+            if (failing) {
+                return Mono.error(new IllegalStateException("NLP服务不可用"));
+            }
+            List<Map<String, Object>> results = new ArrayList<>();
+            for (NlpRequest request : requests) {
+                if (request.getText().isEmpty()) {
+                    results.add(Map.of("success", false, "error", "文本内容不能为空"));
+                } else {
+                    results.add(Map.of("success", true, "data", Map.of("echo", request.getText(), "type", type)));
+                }
+            }
+            return Mono.just(results);
+        }
+    }
+}
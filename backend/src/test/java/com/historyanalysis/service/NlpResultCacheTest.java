@@ -0,0 +1,55 @@
+/**
+ * NLP分析结果缓存测试
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-15
+ */
+package com.historyanalysis.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.historyanalysis.config.NlpServiceConfig;
+import com.historyanalysis.dto.nlp.NlpRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * 验证缓存键的组成和本地缓存的命中统计
+ */
+public class NlpResultCacheTest {
+
+    @Test
+    public void keyDependsOnTextEndpointAndParameters() {
+        String base = NlpResultCache.key("/api/analyze/word-frequency", NlpRequest.wordFrequency("文本", 50, 2));
+
+        assertEquals(base, NlpResultCache.key("/api/analyze/word-frequency", NlpRequest.wordFrequency("文本", 50, 2)));
+        assertNotEquals(base, NlpResultCache.key("/api/analyze/word-frequency", NlpRequest.wordFrequency("文本", 20, 2)));
+        assertNotEquals(base, NlpResultCache.key("/api/analyze/word-frequency", NlpRequest.wordFrequency("文本。", 50, 2)));
+        assertNotEquals(base, NlpResultCache.key("/api/analyze/timeline", NlpRequest.wordFrequency("文本", 50, 2)));
+    }
+
+    @Test
+    public void repeatedRequestsAreServedFromLocalTier() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        NlpResultCache cache = new NlpResultCache(new NlpServiceConfig(), registry, new ObjectMapper(),
+                new StaticListableBeanFactory().getBeanProvider(StringRedisTemplate.class));
+        AtomicInteger loads = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            Map<String, Object> result = cache.get("/api/analyze/timeline", new NlpRequest("1949年10月1日"),
+                    () -> Map.of("events", loads.incrementAndGet()));
+            assertEquals(1, result.get("events"));
+        }
+
+        assertEquals(1, loads.get());
+        assertEquals(2.0, registry.get("cache.gets").tags("cache", "nlp.result", "result", "hit").functionCounter().count());
+        assertEquals(1.0, registry.get("cache.gets").tags("cache", "nlp.result", "result", "miss").functionCounter().count());
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * NLP分块结果合并与文本分块测试
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-17
+ */
+package com.historyanalysis.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 验证分块切分不丢失文本，以及词频、事件列表和统计字段的合并规则
+ */
+public class NlpResultMergerTest {
+
+    @Test
+    public void chunksCoverAllTextWithinSizeLimit() {
+        String longFile = "秦始皇统一六国。".repeat(400);
+        List<String> files = List.of("短文一。", longFile, "短文二。");
+
+        List<String> chunks = new ArrayList<>();
+        new TextChunkIterator(files.iterator(), 1000).forEachRemaining(chunks::add);
+
+        assertTrue(chunks.size() > 1);
+        chunks.forEach(chunk -> assertTrue(chunk.length() <= 1001, "块长度超过上限: " + chunk.length()));
+        assertEquals(String.join("\n", files) + "\n", String.join("", chunks));
+        // 长文件在句末切分
+        assertTrue(chunks.get(1).endsWith("。"));
+    }
+
+    @Test
+    public void mergesWordCountsEventsAndStatistics() {
+        NlpResultMerger merger = new NlpResultMerger(100, 100);
+        merger.merge(wordResult(List.of(word("秦朝", 5), word("汉朝", 3)), 100, 0.5));
+        merger.merge(wordResult(List.of(word("汉朝", 4), word("唐朝", 1)), 50, 0.7));
+
+        Map<String, Object> merged = merger.finish(2);
+
+        List<?> words = (List<?>) merged.get("word_frequency");
+        assertEquals(2, words.size());
+        assertEquals("汉朝", ((Map<?, ?>) words.get(0)).get("word"));
+        assertEquals(7L, ((Map<?, ?>) words.get(0)).get("count"));
+        assertEquals(7 / 150.0, ((Map<?, ?>) words.get(0)).get("frequency"));
+
+        Map<?, ?> statistics = (Map<?, ?>) merged.get("statistics");
+        assertEquals(150L, statistics.get("filtered_words"));
+        assertEquals(5, ((Number) statistics.get("max_frequency")).intValue());
+        assertEquals(0.6, (Double) statistics.get("lexical_diversity"), 1e-9);
+    }
+
+    @Test
+    public void concatenatesListsWithoutDuplicatesOrMutatingInput() {
+        Map<String, Object> first = new HashMap<>(Map.of("events", new ArrayList<>(List.of(Map.of("text", "1949年")))));
+        Map<String, Object> second = Map.of("events", List.of(Map.of("text", "1949年"), Map.of("text", "1978年")));
+
+        NlpResultMerger merger = new NlpResultMerger(100, 100);
+        merger.merge(first);
+        merger.merge(second);
+
+        assertEquals(2, ((List<?>) merger.finish(0).get("events")).size());
+        assertEquals(1, ((List<?>) first.get("events")).size());
+    }
+
+    private static Map<String, Object> word(String word, int count) {
+        return Map.of("word", word, "count", count, "frequency", 0.1);
+    }
+
+    private static Map<String, Object> wordResult(List<Map<String, Object>> words, int filtered, double diversity) {
+        int max = words.stream().mapToInt(w -> (Integer) w.get("count")).max().orElse(0);
+        return Map.of("word_frequency", words,
+                "statistics", Map.of("filtered_words", filtered, "max_frequency", max, "lexical_diversity", diversity),
+                "parameters", Map.of("max_results", 200));
+    }
+}
@@ -0,0 +1,214 @@
+/**
+ * NLP服务传输压缩测试
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-29
+ */
+package com.historyanalysis.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.historyanalysis.config.NlpServiceConfig;
+import com.historyanalysis.dto.nlp.NlpRequest;
+import com.historyanalysis.dto.nlp.NlpResponse;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 以本地HTTP服务模拟NLP服务，验证请求体压缩、响应解压和不支持压缩时的退回
+ */
+public class NlpTransportCodecTest {
+
+    private static final String ENDPOINT = "/api/analyze/summary";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<Received> received = new CopyOnWriteArrayList<>();
+
+    private HttpServer server;
+    private String baseUrl;
+    private volatile boolean acceptGzipRequests = true;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext(ENDPOINT, this::handle);
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void largeRequestIsCompressedAndResponseDecompressed() {
+        NlpTransportCodec codec = codec(new NlpServiceConfig());
+        NlpRequest request = new NlpRequest(text(20_000));
+
+        ResponseEntity<NlpResponse> response = codec.post(new RestTemplate(), baseUrl, ENDPOINT, request,
+                NlpTransportCodec.textLength(request));
+
+        assertEquals(1, received.size());
+        assertEquals("gzip", received.get(0).contentEncoding);
+        assertTrue(received.get(0).wireBytes * 5 < received.get(0).text.length(), "请求体应被压缩");
+        assertEquals(request.getText(), received.get(0).text);
+        assertEquals("gzip", response.getHeaders().getFirst("Content-Encoding"));
+        assertEquals(20_000, response.getBody().getData().get("length"));
+        assertEquals(1.0, requests("gzip"));
+        assertTrue(meterRegistry.get("nlp.transport.compression.ratio").summary().mean() > 5);
+    }
+
+    @Test
+    public void shortRequestIsSentUncompressed() {
+        NlpTransportCodec codec = codec(new NlpServiceConfig());
+        NlpRequest request = new NlpRequest(text(100));
+
+        ResponseEntity<NlpResponse> response = codec.post(new RestTemplate(), baseUrl, ENDPOINT, request,
+                NlpTransportCodec.textLength(request));
+
+        assertNull(received.get(0).contentEncoding);
+        assertEquals(request.getText(), received.get(0).text);
+        assertEquals(100, response.getBody().getData().get("length"));
+        assertEquals(1.0, requests("identity"));
+    }
+
+    @Test
+    public void unsupportedCompressionFallsBackAndIsRemembered() {
+        acceptGzipRequests = false;
+        NlpTransportCodec codec = codec(new NlpServiceConfig());
+        NlpRequest request = new NlpRequest(text(20_000));
+        RestTemplate restTemplate = new RestTemplate();
+
+        for (int i = 0; i < 3; i++) {
+            ResponseEntity<NlpResponse> response = codec.post(restTemplate, baseUrl, ENDPOINT, request,
+                    NlpTransportCodec.textLength(request));
+            assertEquals(20_000, response.getBody().getData().get("length"));
+        }
+
+        // 只有第一次尝试压缩，被拒绝后该副本一直不压缩
+        assertEquals(4, received.size());
+        assertEquals("gzip", received.get(0).contentEncoding);
+        received.subList(1, 4).forEach(r -> assertNull(r.contentEncoding));
+        assertEquals(1.0, meterRegistry.get("nlp.transport.fallbacks").counter().count());
+    }
+
+    @Test
+    public void reactiveRequestIsCompressedAndFallsBack() {
+        NlpServiceConfig config = new NlpServiceConfig();
+        NlpTransportCodec codec = codec(config);
+        WebClient webClient = WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create().compress(true)))
+                .build();
+        NlpRequest request = new NlpRequest(text(20_000));
+
+        NlpResponse response = codec.post(webClient, baseUrl, ENDPOINT, request, NlpTransportCodec.textLength(request))
+                .block(Duration.ofSeconds(10));
+        assertEquals(20_000, response.getData().get("length"));
+        assertEquals("gzip", received.get(0).contentEncoding);
+        assertEquals(request.getText(), received.get(0).text);
+
+        acceptGzipRequests = false;
+        String otherBaseUrl = baseUrl.replace("127.0.0.1", "localhost");
+        response = codec.post(webClient, otherBaseUrl, ENDPOINT, request, NlpTransportCodec.textLength(request))
+                .block(Duration.ofSeconds(10));
+        assertEquals(20_000, response.getData().get("length"));
+        assertEquals(3, received.size());
+        assertNull(received.get(2).contentEncoding);
+        assertEquals(1.0, meterRegistry.get("nlp.transport.fallbacks").counter().count());
+    }
+
+    private NlpTransportCodec codec(NlpServiceConfig config) {
+        return new NlpTransportCodec(config, objectMapper, meterRegistry);
+    }
+
+    private double requests(String encoding) {
+        return meterRegistry.get("nlp.transport.requests").tag("encoding", encoding).counter().count();
+    }
+
+    /**
+     * 模拟NLP服务：按需解压请求体，返回文本长度；客户端接受gzip时压缩响应
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        String contentEncoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+        byte[] wire = exchange.getRequestBody().readAllBytes();
+        if ("gzip".equals(contentEncoding) && !acceptGzipRequests) {
+            received.add(new Received(contentEncoding, wire.length, null));
+            exchange.sendResponseHeaders(415, -1);
+            exchange.close();
+            return;
+        }
+
+        InputStream body = new ByteArrayInputStream(wire);
+        if ("gzip".equals(contentEncoding)) {
+            body = new GZIPInputStream(body);
+        }
+        NlpRequest request = objectMapper.readValue(body, NlpRequest.class);
+        received.add(new Received(contentEncoding, wire.length, request.getText()));
+
+        byte[] json = objectMapper.writeValueAsBytes(Map.of("success", true,
+                "data", Map.of("length", request.getText().length(), "echo", request.getText())));
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (OutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(json);
+            }
+            json = compressed.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.sendResponseHeaders(200, json.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(json);
+        }
+    }
+
+    private static String text(int length) {
+        StringBuilder builder = new StringBuilder(length);
+        String sentence = "公元前221年，秦始皇统一六国，建立中央集权制度。";
+        while (builder.length() < length) {
+            builder.append(sentence);
+        }
+        builder.setLength(length);
+        return builder.toString();
+    }
+
+    private static class Received {
+        final String contentEncoding;
+        final int wireBytes;
+        final String text;
+
+        Received(String contentEncoding, int wireBytes, String text) {
+            this.contentEncoding = contentEncoding;
+            this.wireBytes = wireBytes;
+            this.text = text;
+        }
+    }
+}
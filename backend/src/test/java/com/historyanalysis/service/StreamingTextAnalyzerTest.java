@@ -0,0 +1,297 @@
+/**
+ * 流式文本分析并行分发测试
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-11-18
+ */
+package com.historyanalysis.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.historyanalysis.config.AnalysisStreamingConfig;
+import com.historyanalysis.config.NlpServiceConfig;
+import com.historyanalysis.exception.AnalysisCancelledException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 以确定性的桩NLP客户端验证：并行分发的合并结果与串行处理完全一致，且确实并发调用；
+ * 单个大文件的分块同样并发发送；增量重新分析只对新增文件调用NLP服务；取消后中断在途调用并不再发送新的分块
+ */
+public class StreamingTextAnalyzerTest {
+
+    private static final String[] PLACES = {"长安", "洛阳", "开封", "南京", "北京"};
+    private static final Pattern YEAR = Pattern.compile("(\\d{3,4})年");
+
+    @Test
+    public void parallelFanOutMatchesSerialResults() {
+        List<String> files = corpus(40);
+
+        StubClient serialClient = new StubClient();
+        StubClient parallelClient = new StubClient();
+        StreamingTextAnalyzer serial = analyzer(serialClient, 1);
+        StreamingTextAnalyzer parallel = analyzer(parallelClient, 8);
+        try {
+            assertEquals(serial.analyzeWordFrequency(files.iterator(), 20, 2),
+                    parallel.analyzeWordFrequency(files.iterator(), 20, 2));
+            assertEquals(serial.analyzeGeographic(files.iterator()),
+                    parallel.analyzeGeographic(files.iterator()));
+
+            Map<String, Object> serialTimeline = serial.analyzeTimeline(files.iterator());
+            assertEquals(serialTimeline, parallel.analyzeTimeline(files.iterator()));
+
+            List<?> events = (List<?>) serialTimeline.get("events");
+            for (int i = 1; i < events.size(); i++) {
+                assertTrue(year(events.get(i - 1)) <= year(events.get(i)), "事件未按时间排序");
+            }
+            assertEquals(1, serialClient.peak.get());
+            assertTrue(parallelClient.peak.get() > 1, "并行模式未并发调用NLP服务");
+        } finally {
+            serial.shutdown();
+            parallel.shutdown();
+        }
+    }
+
+    @Test
+    public void chunksOfSingleFileAreSentConcurrently() {
+        List<AnalysisTextSource> largeFile = sources(List.of(String.join("", corpus(40))));
+
+        StubClient serialClient = new StubClient();
+        StubClient parallelClient = new StubClient();
+        StreamingTextAnalyzer serial = analyzer(serialClient, 1);
+        StreamingTextAnalyzer parallel = analyzer(parallelClient, 8);
+        try {
+            assertEquals(serial.analyzeTimeline(largeFile, AnalysisProgressReporter.NONE, AnalysisCancellation.NONE),
+                    parallel.analyzeTimeline(largeFile, AnalysisProgressReporter.NONE, AnalysisCancellation.NONE));
+            assertTrue(parallelClient.calls.get() > 1, "文件应被切分为多个分块");
+            assertEquals(1, serialClient.peak.get());
+            assertTrue(parallelClient.peak.get() > 1, "单个文件的分块未并发调用NLP服务");
+        } finally {
+            serial.shutdown();
+            parallel.shutdown();
+        }
+    }
+
+    @Test
+    public void rerunOnlyAnalyzesNewFiles() {
+        List<String> files = corpus(41);
+        MemoryPartialStore store = new MemoryPartialStore();
+        StubClient client = new StubClient();
+        StreamingTextAnalyzer analyzer = analyzer(client, 4, store);
+        StreamingTextAnalyzer fresh = analyzer(new StubClient(), 4, new MemoryPartialStore());
+        try {
+            analyzer.analyzeWordFrequency(sources(files.subList(0, 40)), 20, 2, AnalysisProgressReporter.NONE, AnalysisCancellation.NONE);
+            analyzer.analyzeTimeline(sources(files.subList(0, 40)), AnalysisProgressReporter.NONE, AnalysisCancellation.NONE);
+            int firstRunCalls = client.calls.get();
+            assertTrue(firstRunCalls >= 80);
+
+            Map<String, Object> words = analyzer.analyzeWordFrequency(sources(files), 20, 2, AnalysisProgressReporter.NONE, AnalysisCancellation.NONE);
+            Map<String, Object> timeline = analyzer.analyzeTimeline(sources(files), AnalysisProgressReporter.NONE, AnalysisCancellation.NONE);
+            // 每个文件只有一块，重新分析只为新增的文件各调用一次
+            assertEquals(firstRunCalls + 2, client.calls.get());
+
+            assertEquals(fresh.analyzeWordFrequency(sources(files), 20, 2, AnalysisProgressReporter.NONE, AnalysisCancellation.NONE), words);
+            assertEquals(fresh.analyzeTimeline(sources(files), AnalysisProgressReporter.NONE, AnalysisCancellation.NONE), timeline);
+        } finally {
+            analyzer.shutdown();
+            fresh.shutdown();
+        }
+    }
+
+    @Test
+    public void cancellationInterruptsInFlightCallsAndStopsScheduling() throws Exception {
+        List<String> files = corpus(100);
+        StubClient client = new StubClient();
+        client.blockMillis = 60_000;
+        StreamingTextAnalyzer analyzer = analyzer(client, 4);
+        AnalysisCancellation cancellation = new AnalysisCancellation(1L);
+        try {
+            CompletableFuture<Map<String, Object>> run = CompletableFuture.supplyAsync(() ->
+                    analyzer.analyzeTimeline(sources(files), AnalysisProgressReporter.NONE, cancellation));
+            while (client.calls.get() < 4) {
+                Thread.sleep(5);
+            }
+
+            long start = System.nanoTime();
+            cancellation.cancel();
+            ExecutionException error = assertThrows(ExecutionException.class,
+                    () -> run.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(AnalysisCancelledException.class, error.getCause());
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000);
+
+            // 在途调用全部被中断，之后不再发送新的分块
+            while (client.inFlight.get() > 0) {
+                Thread.sleep(5);
+            }
+            assertEquals(4, client.calls.get());
+        } finally {
+            analyzer.shutdown();
+        }
+    }
+
+    private static StreamingTextAnalyzer analyzer(StubClient client, int parallelism) {
+        return analyzer(client, parallelism, new MemoryPartialStore());
+    }
+
+    private static StreamingTextAnalyzer analyzer(StubClient client, int parallelism, AnalysisPartialStore store) {
+        AnalysisStreamingConfig config = new AnalysisStreamingConfig();
+        config.setChunkSize(400);
+        config.setParallelism(parallelism);
+        return new StreamingTextAnalyzer(config, client, store);
+    }
+
+    private static List<AnalysisTextSource> sources(List<String> files) {
+        return files.stream().map(text -> new AnalysisTextSource(null, () -> text)).collect(Collectors.toList());
+    }
+
+    private static List<String> corpus(int count) {
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int j = 0; j < 20; j++) {
+                int year = 600 + (i * 37 + j * 11) % 1300;
+                text.append(year).append("年，").append(PLACES[(i + j) % PLACES.length])
+                        .append("修建宫殿，百姓安居。");
+            }
+            files.add(text.toString());
+        }
+        return files;
+    }
+
+    private static int year(Object event) {
+        return ((Number) ((Map<?, ?>) event).get("normalized_year")).intValue();
+    }
+
+    /**
+     * 按文本内容确定性地生成结果，随机延迟打乱各分块的完成顺序
+     */
+    private static class StubClient extends NlpServiceClient {
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger peak = new AtomicInteger();
+        private final AtomicInteger calls = new AtomicInteger();
+
+        /**
+         * 大于0时每次调用阻塞该时长，模拟长时间运行的NLP请求
+         */
+        private volatile long blockMillis = 0;
+
+        StubClient() {
+            super(null, new NlpServiceConfig(), null, null, null, null, null, null);
+        }
+
+        @Override
+        public Map<String, Object> analyzeWordFrequency(String text, Integer topN, Integer minLength) {
+            return call(() -> {
+                Map<String, Integer> counts = new LinkedHashMap<>();
+                text.codePoints().filter(Character::isIdeographic)
+                        .forEach(cp -> counts.merge(new String(Character.toChars(cp)), 1, Integer::sum));
+                List<Map<String, Object>> words = new ArrayList<>();
+                counts.forEach((word, count) -> words.add(Map.of("word", word, "count", count,
+                        "relevance_score", (word.hashCode() % 100) / 100.0)));
+                int total = counts.values().stream().mapToInt(Integer::intValue).sum();
+                return Map.of("word_frequency", words, "statistics", Map.of("filtered_words", total));
+            });
+        }
+
+        @Override
+        public Map<String, Object> analyzeGeographic(String text) {
+            return call(() -> {
+                List<Map<String, Object>> places = new ArrayList<>();
+                for (String place : PLACES) {
+                    int position = text.indexOf(place);
+                    if (position >= 0) {
+                        places.add(Map.of("name", place, "position", position, "confidence", 0.5 + position % 10 / 20.0));
+                    }
+                }
+                return Map.of("places", places, "summary", Map.of("total_places", places.size()));
+            });
+        }
+
+        @Override
+        public Map<String, Object> analyzeTimeline(String text) {
+            return call(() -> {
+                List<Map<String, Object>> events = new ArrayList<>();
+                Matcher matcher = YEAR.matcher(text);
+                while (matcher.find()) {
+                    Map<String, Object> event = new HashMap<>();
+                    event.put("normalized_year", Integer.parseInt(matcher.group(1)));
+                    event.put("sentence", text.substring(matcher.start(), Math.min(text.length(), matcher.end() + 8)));
+                    events.add(event);
+                }
+                return Map.of("events", events, "summary", Map.of("events_count", events.size()));
+            });
+        }
+
+        private Map<String, Object> call(Supplier<Map<String, Object>> result) {
+            calls.incrementAndGet();
+            peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(blockMillis > 0 ? blockMillis : ThreadLocalRandom.current().nextInt(1, 6));
+                return result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 内存中的中间结果存储，经JSON序列化往返以模拟数据库存储
+     */
+    private static class MemoryPartialStore extends AnalysisPartialStore {
+
+        private final ObjectMapper objectMapper = new ObjectMapper();
+        private final Map<String, String> results = new ConcurrentHashMap<>();
+
+        MemoryPartialStore() {
+            super(null, null);
+        }
+
+        @Override
+        public Optional<Map<String, Object>> find(String contentHash, String kind, String paramsKey) {
+            String json = results.get(contentHash + "|" + kind + "|" + paramsKey);
+            if (json == null) {
+                return Optional.empty();
+            }
+            try {
+                return Optional.of(objectMapper.readValue(json, new TypeReference<Map<String, Object>>() {
+                }));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void save(String contentHash, String kind, String paramsKey, Map<String, Object> result) {
+            try {
+                results.put(contentHash + "|" + kind + "|" + paramsKey, objectMapper.writeValueAsString(result));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
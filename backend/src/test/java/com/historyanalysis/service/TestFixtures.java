@@ -0,0 +1,72 @@
+/**
+ * 集成测试数据准备
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-12-05
+ */
+package com.historyanalysis.service;
+
+import com.historyanalysis.entity.AnalysisResult;
+import com.historyanalysis.entity.Project;
+import com.historyanalysis.entity.User;
+import com.historyanalysis.repository.AnalysisResultRepository;
+import com.historyanalysis.repository.ProjectRepository;
+import com.historyanalysis.repository.UserRepository;
+import org.springframework.boot.test.context.TestComponent;
+
+import java.util.UUID;
+
+/**
+ * 集成测试数据准备
+ *
+ * 测试类通过@Import引入，创建互不冲突的用户、项目和分析记录：
+ * - 用户名、邮箱和项目名带前缀和随机后缀，同一上下文中的多个测试可以重复创建
+ * - 分析记录为WORD_FREQUENCY类型，初始状态由实体默认值决定
+ */
+@TestComponent
+public class TestFixtures {
+
+    private final UserRepository userRepository;
+    private final ProjectRepository projectRepository;
+    private final AnalysisResultRepository analysisResultRepository;
+
+    public TestFixtures(UserRepository userRepository, ProjectRepository projectRepository,
+                        AnalysisResultRepository analysisResultRepository) {
+        this.userRepository = userRepository;
+        this.projectRepository = projectRepository;
+        this.analysisResultRepository = analysisResultRepository;
+    }
+
+    /**
+     * 创建一个新用户及其项目
+     *
+     * @param prefix 用户名和项目名的前缀
+     */
+    public Project createProject(String prefix) {
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        User user = new User();
+        user.setUsername(prefix + "_" + suffix);
+        user.setEmail(prefix + "_" + suffix + "@example.com");
+        user.setPasswordHash("x");
+        user = userRepository.save(user);
+
+        Project project = new Project();
+        project.setName(prefix + "-" + suffix);
+        project.setUserId(user.getId());
+        return projectRepository.save(project);
+    }
+
+    /**
+     * 在新项目中创建一条词频分析记录
+     *
+     * @param prefix 用户名和项目名的前缀
+     */
+    public AnalysisResult createAnalysis(String prefix) {
+        Project project = createProject(prefix);
+        AnalysisResult analysis = new AnalysisResult();
+        analysis.setAnalysisType(AnalysisResult.AnalysisType.WORD_FREQUENCY);
+        analysis.setProjectId(project.getId());
+        analysis.setUserId(project.getUserId());
+        return analysisResultRepository.save(analysis);
+    }
+}
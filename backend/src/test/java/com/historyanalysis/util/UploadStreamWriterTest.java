@@ -0,0 +1,83 @@
+/**
+ * 上传文件单次读取写盘测试
+ * @author AI Agent
+ * @version 1.0.0
+ * @created 2025-12-01
+ */
+package com.historyanalysis.util;
+
+import com.historyanalysis.entity.UploadedFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 验证写盘结果、摘要和文件头，以及按文件头识别类型
+ */
+public class UploadStreamWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void writesContentWithDigestAndHeadInOnePass() throws Exception {
+        byte[] content = new byte[300_000];
+        new Random(42).nextBytes(content);
+        Path target = tempDir.resolve("blob.bin");
+
+        UploadStreamWriter.WrittenFile written = UploadStreamWriter.write(new ByteArrayInputStream(content), target, 1 << 20);
+
+        assertArrayEquals(content, Files.readAllBytes(target));
+        assertEquals(content.length, written.getSize());
+        assertEquals(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content)), written.getSha256());
+        assertEquals(UploadStreamWriter.SNIFF_BYTES, written.getHead().length);
+    }
+
+    @Test
+    public void oversizedUploadIsRemoved() {
+        Path target = tempDir.resolve("big.txt");
+
+        assertThrows(IllegalArgumentException.class,
+                () -> UploadStreamWriter.write(new ByteArrayInputStream(new byte[2048]), target, 1024));
+        assertFalse(Files.exists(target));
+    }
+
+    @Test
+    public void existingTargetIsNotOverwritten() throws IOException {
+        Path target = Files.writeString(tempDir.resolve("existing.txt"), "keep");
+
+        assertThrows(IOException.class,
+                () -> UploadStreamWriter.write(new ByteArrayInputStream(new byte[10]), target, 1024));
+    }
+
+    @Test
+    public void sniffsTypeFromHead() {
+        assertEquals(UploadedFile.FileType.PDF, FileTypeSniffer.sniff("%PDF-1.7\n".getBytes(StandardCharsets.US_ASCII)));
+        assertEquals(UploadedFile.FileType.DOC, FileTypeSniffer.sniff(new byte[]{(byte) 0xD0, (byte) 0xCF, 0x11, (byte) 0xE0,
+                (byte) 0xA1, (byte) 0xB1, 0x1A, (byte) 0xE1, 0}));
+        assertEquals(UploadedFile.FileType.DOCX, FileTypeSniffer.sniff(new byte[]{0x50, 0x4B, 0x03, 0x04, 0}));
+        assertEquals(UploadedFile.FileType.HTML, FileTypeSniffer.sniff("﻿  <!DOCTYPE html><html>".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(UploadedFile.FileType.TXT, FileTypeSniffer.sniff("史记·秦始皇本纪".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(UploadedFile.FileType.TXT, FileTypeSniffer.sniff("史记".getBytes(StandardCharsets.UTF_16)));
+        assertNull(FileTypeSniffer.sniff(new byte[]{0x7F, 0x45, 0x4C, 0x46, 0, 0}));
+
+        assertTrue(FileTypeSniffer.isCompatible(UploadedFile.FileType.DOC, UploadedFile.FileType.DOCX));
+        assertFalse(FileTypeSniffer.isCompatible(UploadedFile.FileType.PDF, UploadedFile.FileType.TXT));
+        assertFalse(FileTypeSniffer.isCompatible(UploadedFile.FileType.TXT, null));
+    }
+}
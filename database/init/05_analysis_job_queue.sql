@@ -0,0 +1,13 @@
+-- 分析任务持久化队列：为analysis_results增加租约字段
+-- @author AI Agent
+-- @version 1.0.0
+-- @created 2025-11-12 10:30:00
+
+USE history_analysis;
+
+ALTER TABLE analysis_results
+    ADD COLUMN lease_owner VARCHAR(100) COMMENT '租约持有者（后端实例ID）' AFTER started_at,
+    ADD COLUMN lease_expires_at DATETIME COMMENT '租约到期时间' AFTER lease_owner,
+    ADD COLUMN attempt_count INT DEFAULT 0 COMMENT '已被领取执行的次数' AFTER lease_expires_at,
+    ADD INDEX idx_status_created_at (status, created_at),
+    ADD INDEX idx_status_lease_expires_at (status, lease_expires_at);
@@ -0,0 +1,19 @@
+-- 增量重新分析：文件内容摘要与单文件分析中间结果
+-- @author AI Agent
+-- @version 1.0.0
+-- @created 2025-11-19 09:30:00
+
+USE history_analysis;
+
+-- uploaded_files由JPA自动建表，新增的content_hash列同样由ddl-auto: update补齐；
+-- 旧数据的content_hash为空，首次分析时按文本计算摘要
+
+CREATE TABLE IF NOT EXISTS analysis_partial_results (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    content_hash VARCHAR(64) NOT NULL COMMENT '文件文本的SHA-256摘要',
+    analysis_kind VARCHAR(30) NOT NULL COMMENT '分析种类',
+    params_key VARCHAR(200) NOT NULL COMMENT '影响结果的参数与分块配置',
+    result_data LONGTEXT COMMENT '单文件分析结果（JSON）',
+    created_at DATETIME NOT NULL COMMENT '创建时间',
+    UNIQUE KEY uk_partial_hash_kind_params (content_hash, analysis_kind, params_key)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='单文件分析中间结果表';
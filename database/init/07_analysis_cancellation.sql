@@ -0,0 +1,10 @@
+-- 分析任务取消：分析状态增加CANCELLED
+-- @author AI Agent
+-- @version 1.0.0
+-- @created 2025-11-23 09:30:00
+
+USE history_analysis;
+
+-- 取消的分析保持CANCELLED状态，不再记为FAILED
+ALTER TABLE analysis_results
+    MODIFY COLUMN status ENUM('PENDING', 'PROCESSING', 'COMPLETED', 'FAILED', 'CANCELLED') DEFAULT 'PENDING' COMMENT '分析状态';
@@ -0,0 +1,17 @@
+-- 按内容寻址的文件存储：相同内容的上传文件只保存一份
+-- @author AI Agent
+-- @version 1.0.0
+-- @created 2025-12-02 09:30:00
+
+USE history_analysis;
+
+-- 磁盘文件位于 {上传目录}/blobs/ab/cd/{hash}，ref_count为引用该内容的uploaded_files记录数，归零时删除
+CREATE TABLE IF NOT EXISTS file_blobs (
+    hash VARCHAR(64) PRIMARY KEY COMMENT '文件内容的SHA-256摘要',
+    size BIGINT NOT NULL COMMENT '文件大小（字节）',
+    ref_count INT NOT NULL DEFAULT 0 COMMENT '引用计数',
+    created_at DATETIME NOT NULL COMMENT '创建时间'
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='文件内容存储表';
+
+-- uploaded_files由JPA自动建表（见06），file_hash上的索引idx_uploaded_files_file_hash同样由ddl-auto: update创建，
+-- 用于上传时按内容摘要查找已提取文本的文件；旧数据的file_hash为空，文件仍在原位置，删除时直接删除
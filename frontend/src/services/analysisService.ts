@@ -230,6 +230,24 @@ export interface AnalysisQueryParams {
   sortDirection?: 'ASC' | 'DESC'
 }
 
+// 分析进度事件接口（SSE推送）
+export interface AnalysisProgressEvent {
+  analysisId: number
+  progress: number
+  status: string
+  stage: string
+  message?: string
+  filesTotal?: number
+  filesCompleted?: number
+  filesReused?: number
+  textsLoaded?: number
+  chunksSent?: number
+  chunksCompleted?: number
+  rowsPersisted?: number
+}
+
+const API_BASE_URL = import.meta.env.VITE_API_BASE_URL || 'http://localhost:8080'
+
 // 分析服务类
 class AnalysisService {
   /**
@@ -518,6 +536,35 @@ class AnalysisService {
     }
   }
 
+  /**
+   * 订阅分析进度推送，分析结束或出错时自动关闭连接
+   * @returns 取消订阅的函数
+   */
+  subscribeAnalysisProgress(
+    id: number,
+    onProgress: (event: AnalysisProgressEvent) => void,
+    onError?: (message: string) => void
+  ): () => void {
+    const source = new EventSource(`${API_BASE_URL}/api/analysis/${id}/events`)
+
+    source.addEventListener('progress', (e) => {
+      const event = JSON.parse((e as MessageEvent).data) as AnalysisProgressEvent
+      onProgress(event)
+      if (event.status === 'COMPLETED' || event.status === 'FAILED' || event.status === 'CANCELLED') {
+        source.close()
+      }
+    })
+    source.addEventListener('error', (e) => {
+      const data = (e as MessageEvent).data
+      if (data) {
+        onError?.(JSON.parse(data).message)
+        source.close()
+      }
+    })
+
+    return () => source.close()
+  }
+
   /**
    * 批量创建分析任务
    */
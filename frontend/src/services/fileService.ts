@@ -75,6 +75,26 @@ export interface BatchUploadResult {
   }>
 }
 
+// 分块上传状态接口 - 与后端ChunkedUploadStatus匹配
+export interface ChunkedUploadStatus {
+  uploadId: string
+  fileName: string
+  fileSize: number
+  chunkSize: number
+  totalChunks: number
+  receivedChunks: number
+  receivedRanges: Array<[number, number]>  // 已接收的分块序号区间（含两端）
+}
+
+// 超过该大小的文件使用分块上传（与后端multipart单文件上限一致）
+export const CHUNKED_UPLOAD_THRESHOLD = 10 * 1024 * 1024
+
+// 同时上传的分块数
+const CHUNK_PARALLELISM = 4
+
+// 单个分块的重试次数
+const CHUNK_MAX_ATTEMPTS = 3
+
 // 文件内容预览接口
 export interface FilePreview {
   fileId: number
@@ -94,6 +114,10 @@ class FileService {
     uploadRequest: FileUploadRequest,
     onProgress?: (progress: number) => void
   ): Promise<FileInfo> {
+    if (uploadRequest.file.size > CHUNKED_UPLOAD_THRESHOLD) {
+      return this.uploadLargeFile(uploadRequest.projectId, uploadRequest.file, onProgress)
+    }
+
     try {
       const formData = new FormData()
       formData.append('file', uploadRequest.file)
@@ -119,6 +143,106 @@ class FileService {
     }
   }
 
+  /**
+   * 分块上传大文件
+   * 分块并行上传，每块带SHA-256校验和；传入uploadId时先查询已接收的分块，只补传缺少的部分
+   */
+  async uploadLargeFile(
+    projectId: number,
+    file: File,
+    onProgress?: (progress: number) => void,
+    uploadId?: string
+  ): Promise<FileInfo> {
+    try {
+      const status = uploadId
+        ? await this.getChunkedUpload(uploadId)
+        : await this.initiateChunkedUpload(projectId, file)
+
+      const received = new Set<number>()
+      status.receivedRanges.forEach(([start, end]) => {
+        for (let i = start; i <= end; i++) {
+          received.add(i)
+        }
+      })
+      const pending: number[] = []
+      for (let i = 0; i < status.totalChunks; i++) {
+        if (!received.has(i)) {
+          pending.push(i)
+        }
+      }
+
+      let done = received.size
+      const reportProgress = () => onProgress?.(Math.round((done * 100) / status.totalChunks))
+      reportProgress()
+
+      const worker = async () => {
+        for (let index = pending.shift(); index !== undefined; index = pending.shift()) {
+          const start = index * status.chunkSize
+          await this.uploadChunk(status.uploadId, index, file.slice(start, Math.min(start + status.chunkSize, file.size)))
+          done++
+          reportProgress()
+        }
+      }
+      await Promise.all(Array.from({ length: Math.min(CHUNK_PARALLELISM, pending.length) }, worker))
+
+      const response: ApiResponse<FileInfo> = await api.post(`/files/chunked-uploads/${status.uploadId}/complete`)
+      if (response.success && response.data) {
+        return response.data
+      } else {
+        throw new Error(response.message || '文件上传失败')
+      }
+    } catch (error) {
+      console.error('分块上传失败:', error)
+      throw error
+    }
+  }
+
+  /**
+   * 创建分块上传
+   */
+  async initiateChunkedUpload(projectId: number, file: File): Promise<ChunkedUploadStatus> {
+    const response: ApiResponse<ChunkedUploadStatus> = await api.post('/files/chunked-uploads', null, {
+      params: { projectId, fileName: file.name, fileSize: file.size }
+    })
+    if (response.success && response.data) {
+      return response.data
+    }
+    throw new Error(response.message || '创建分块上传失败')
+  }
+
+  /**
+   * 查询分块上传状态
+   */
+  async getChunkedUpload(uploadId: string): Promise<ChunkedUploadStatus> {
+    const response: ApiResponse<ChunkedUploadStatus> = await api.get(`/files/chunked-uploads/${uploadId}`)
+    if (response.success && response.data) {
+      return response.data
+    }
+    throw new Error(response.message || '查询分块上传失败')
+  }
+
+  /**
+   * 上传单个分块，失败时重试
+   */
+  private async uploadChunk(uploadId: string, index: number, chunk: Blob): Promise<void> {
+    const data = await chunk.arrayBuffer()
+    const digest = await crypto.subtle.digest('SHA-256', data)
+    const sha256 = Array.from(new Uint8Array(digest), b => b.toString(16).padStart(2, '0')).join('')
+
+    for (let attempt = 1; ; attempt++) {
+      try {
+        await api.put(`/files/chunked-uploads/${uploadId}/chunks/${index}`, data, {
+          headers: { 'Content-Type': 'application/octet-stream', 'X-Chunk-Sha256': sha256 }
+        })
+        return
+      } catch (error) {
+        if (attempt >= CHUNK_MAX_ATTEMPTS) {
+          throw error
+        }
+      }
+    }
+  }
+
   /**
    * 批量上传文件
    */
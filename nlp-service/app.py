@@ -6,6 +6,10 @@ Created: 2024-12-29 18:00:00
 """
 
 import os
+import io
+import gzip
+import json
+import zlib
 import logging
 import traceback
 from datetime import datetime
@@ -44,6 +48,106 @@ CORS(app, origins=['http://localhost:3000', 'http://127.0.0.1:3000'])
 # 配置
 app.config['MAX_CONTENT_LENGTH'] = 16 * 1024 * 1024  # 16MB max file size
 
+# 传输压缩：响应体达到该字节数且客户端接受gzip时压缩
+GZIP_MIN_BYTES = int(os.getenv('NLP_GZIP_MIN_BYTES', 4096))
+GZIP_LEVEL = int(os.getenv('NLP_GZIP_LEVEL', 1))
+
+
+class GzipRequestMiddleware:
+    """解压Content-Encoding为gzip的请求体
+
+    逐块解压并限制解压后的大小不超过MAX_CONTENT_LENGTH，解压后替换wsgi.input，
+    后续的request.get_json()与未压缩的请求完全一致；不支持的编码返回415，客户端据此退回不压缩
+    """
+
+    CHUNK_SIZE = 64 * 1024
+
+    def __init__(self, wsgi_app, max_length):
+        self.wsgi_app = wsgi_app
+        self.max_length = max_length
+
+    def __call__(self, environ, start_response):
+        encoding = environ.get('HTTP_CONTENT_ENCODING', '').strip().lower()
+        if not encoding or encoding == 'identity':
+            return self.wsgi_app(environ, start_response)
+        if encoding != 'gzip':
+            return self._error(start_response, '415 Unsupported Media Type',
+                               f'不支持的请求体编码: {encoding}', 'UNSUPPORTED_ENCODING')
+
+        try:
+            body = self._decompress(environ)
+        except OverflowError:
+            return self._error(start_response, '413 Request Entity Too Large',
+                               '解压后的请求体过大', 'REQUEST_TOO_LARGE')
+        except (zlib.error, EOFError) as e:
+            logger.warning(f"gzip请求体解压失败: {str(e)}")
+            return self._error(start_response, '400 Bad Request',
+                               'gzip请求体无法解压', 'INVALID_GZIP')
+
+        environ['wsgi.input'] = io.BytesIO(body)
+        environ['CONTENT_LENGTH'] = str(len(body))
+        environ.pop('HTTP_CONTENT_ENCODING', None)
+        return self.wsgi_app(environ, start_response)
+
+    def _decompress(self, environ):
+        stream = environ['wsgi.input']
+        remaining = environ.get('CONTENT_LENGTH')
+        remaining = int(remaining) if remaining else None
+        decompressor = zlib.decompressobj(16 + zlib.MAX_WBITS)
+        output = io.BytesIO()
+
+        while remaining is None or remaining > 0:
+            chunk = stream.read(self.CHUNK_SIZE if remaining is None else min(self.CHUNK_SIZE, remaining))
+            if not chunk:
+                break
+            if remaining is not None:
+                remaining -= len(chunk)
+            # 限制单次解压输出，防止高压缩比的请求体占满内存
+            data = decompressor.decompress(chunk, self.max_length + 1 - output.tell())
+            while True:
+                output.write(data)
+                if output.tell() > self.max_length:
+                    raise OverflowError()
+                if not decompressor.unconsumed_tail:
+                    break
+                data = decompressor.decompress(decompressor.unconsumed_tail,
+                                               self.max_length + 1 - output.tell())
+
+        output.write(decompressor.flush())
+        if not decompressor.eof:
+            raise EOFError('gzip数据不完整')
+        if output.tell() > self.max_length:
+            raise OverflowError()
+        return output.getvalue()
+
+    @staticmethod
+    def _error(start_response, status, message, error_code):
+        body = json.dumps({'success': False, 'message': message, 'error_code': error_code},
+                          ensure_ascii=False).encode('utf-8')
+        start_response(status, [('Content-Type', 'application/json'), ('Content-Length', str(len(body)))])
+        return [body]
+
+
+app.wsgi_app = GzipRequestMiddleware(app.wsgi_app, app.config['MAX_CONTENT_LENGTH'])
+
+
+@app.after_request
+def compress_response(response):
+    """客户端接受gzip时压缩较大的成功JSON响应"""
+    if (response.status_code < 200 or response.status_code >= 300 or response.direct_passthrough
+            or response.mimetype != 'application/json' or 'Content-Encoding' in response.headers):
+        return response
+    response.vary.add('Accept-Encoding')
+    if 'gzip' not in request.headers.get('Accept-Encoding', '').lower():
+        return response
+
+    data = response.get_data()
+    if len(data) < GZIP_MIN_BYTES:
+        return response
+    response.set_data(gzip.compress(data, compresslevel=GZIP_LEVEL))
+    response.headers['Content-Encoding'] = 'gzip'
+    return response
+
 # 数据清理函数
 def _clean_dict_for_json(obj):
     """清理字典数据，移除None键和不可序列化的值"""
@@ -425,6 +529,104 @@ def analyze_comprehensive():
             'error_code': 'COMPREHENSIVE_ERROR'
         }), 500
 
+# 批量分析支持的类型及单条处理函数，参数同时兼容下划线和驼峰命名
+def _batch_word_frequency(text, item):
+    return word_freq_analyzer.analyze(
+        text=text,
+        language='auto',
+        min_length=item.get('min_length', item.get('minLength')) or 2,
+        max_results=item.get('top_n', item.get('topN')) or 50,
+        remove_stopwords=True
+    )
+
+def _batch_summary(text, item):
+    options = {
+        'type': item.get('type') or 'comprehensive',
+        'max_sentences': item.get('max_sentences', item.get('maxSentences')) or 5
+    }
+    return text_summarizer.analyze(text, options)
+
+BATCH_HANDLERS = {
+    'word-frequency': _batch_word_frequency,
+    'timeline': lambda text, item: timeline_extractor.analyze(text),
+    'geographic': lambda text, item: geographic_extractor.analyze(text),
+    'summary': _batch_summary
+}
+
+MAX_BATCH_ITEMS = int(os.getenv('NLP_MAX_BATCH_ITEMS', 64))
+
+@app.route('/api/analyze/batch', methods=['POST'])
+def analyze_batch():
+    """批量分析接口 - 一次请求处理多条同类型的短文本
+
+    请求: {"type": "word-frequency", "items": [{"text": "...", "topN": 50}, ...]}
+    响应data: {"type": ..., "count": N, "results": [{"success": true, "data": {...}}, ...]}
+    results与items一一对应，单条失败不影响其他条目
+    """
+    try:
+        data = request.get_json()
+
+        if not data or not isinstance(data.get('items'), list):
+            return jsonify({
+                'success': False,
+                'message': '请提供要分析的文本列表',
+                'error_code': 'MISSING_ITEMS'
+            }), 400
+
+        analysis_type = data.get('type')
+        handler = BATCH_HANDLERS.get(analysis_type)
+        if handler is None:
+            return jsonify({
+                'success': False,
+                'message': f'不支持的批量分析类型: {analysis_type}',
+                'error_code': 'UNSUPPORTED_TYPE'
+            }), 400
+
+        items = data['items']
+        if len(items) > MAX_BATCH_ITEMS:
+            return jsonify({
+                'success': False,
+                'message': f'批量条目数超过上限: {MAX_BATCH_ITEMS}',
+                'error_code': 'BATCH_TOO_LARGE'
+            }), 400
+
+        logger.info(f"开始批量分析, 类型: {analysis_type}, 条目数: {len(items)}")
+
+        results = []
+        for item in items:
+            text = item.get('text') if isinstance(item, dict) else None
+            if not text or not text.strip():
+                results.append({'success': False, 'error': '文本内容不能为空', 'error_code': 'EMPTY_TEXT'})
+                continue
+            try:
+                results.append({'success': True, 'data': _clean_dict_for_json(handler(text, item))})
+            except Exception as e:
+                logger.error(f"批量分析条目失败: {str(e)}")
+                results.append({'success': False, 'error': str(e), 'error_code': 'ITEM_ERROR'})
+
+        logger.info(f"批量分析完成, 类型: {analysis_type}, 条目数: {len(items)}")
+
+        return jsonify({
+            'success': True,
+            'message': '批量分析完成',
+            'data': {
+                'type': analysis_type,
+                'count': len(results),
+                'results': results
+            },
+            'timestamp': datetime.now().isoformat()
+        }), 200
+
+    except Exception as e:
+        logger.error(f"批量分析失败: {str(e)}")
+        logger.error(f"错误详情: {traceback.format_exc()}")
+        return jsonify({
+            'success': False,
+            'message': '批量分析过程中发生错误',
+            'error': str(e),
+            'error_code': 'BATCH_ERROR'
+        }), 500
+
 @app.errorhandler(404)
 def not_found(error):
     """404错误处理"""